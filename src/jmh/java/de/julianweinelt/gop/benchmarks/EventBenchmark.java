@@ -0,0 +1,57 @@
+package de.julianweinelt.gop.benchmarks;
+
+import de.julianweinelt.gop.modules.event.*;
+import de.julianweinelt.gop.modules.statistics.ModuleAccounting;
+import de.julianweinelt.gop.modules.statistics.StatisticManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link EventManager#callEvent(Event)} with 1, 10 and 100 synchronous subscribers.
+ * Module accounting is turned off, so only the dispatch itself is measured.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class EventBenchmark {
+    private static final EventType TYPE = EventType.of("BenchmarkEvent");
+    private static final EventProperty<Integer> VALUE = TYPE.property("value", Integer.class);
+
+    @Param({"1", "10", "100"})
+    public int subscribers;
+
+    private EventManager eventManager;
+    private Event event;
+    private long sum = 0;
+
+    @Setup
+    public void subscribe() {
+        StatisticManager statistics = new StatisticManager();
+        ModuleAccounting accounting = new ModuleAccounting(statistics);
+        accounting.configure(false, 0, 0);
+        eventManager = new EventManager(statistics, accounting);
+        for (int i = 0; i < subscribers; i++) {
+            eventManager.subscribe(this, TYPE.getName(), Priority.NORMAL, false, false, "handler" + i,
+                    e -> sum += e.getInt(VALUE));
+        }
+        event = new Event(TYPE).setInt(VALUE, 1);
+    }
+
+    @Benchmark
+    public long callEvent() {
+        eventManager.callEvent(event);
+        return sum;
+    }
+
+    @Benchmark
+    public long callPooledEvent() {
+        Event e = TYPE.acquire().setInt(VALUE, 1);
+        eventManager.callEvent(e);
+        e.release();
+        return sum;
+    }
+}
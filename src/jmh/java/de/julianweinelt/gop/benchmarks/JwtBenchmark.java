@@ -0,0 +1,85 @@
+package de.julianweinelt.gop.benchmarks;
+
+import de.julianweinelt.gop.util.JWTUtil;
+import de.julianweinelt.gop.util.TabulaJWT;
+import org.jose4j.jws.AlgorithmIdentifiers;
+import org.jose4j.jws.JsonWebSignature;
+import org.jose4j.jwt.JwtClaims;
+import org.jose4j.jwt.consumer.JwtConsumer;
+import org.jose4j.jwt.consumer.JwtConsumerBuilder;
+import org.jose4j.keys.HmacKey;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Validation of a Tabula JWT, building the consumer once or on every call, and through {@link TabulaJWT}
+ * with and without its cache of verified tokens.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JwtBenchmark {
+    private static final byte[] SECRET = "benchmark-secret-with-at-least-32-bytes".getBytes(StandardCharsets.UTF_8);
+
+    private HmacKey key;
+    private String token;
+    private JwtConsumer consumer;
+    private TabulaJWT cached;
+    private TabulaJWT uncached;
+    private String tabulaToken;
+
+    @Setup
+    public void createToken() throws Exception {
+        key = new HmacKey(SECRET);
+        JwtClaims claims = new JwtClaims();
+        claims.setIssuer("GoP");
+        claims.setSubject("admin");
+        claims.setExpirationTimeMinutesInTheFuture(60);
+
+        JsonWebSignature jws = new JsonWebSignature();
+        jws.setPayload(claims.toJson());
+        jws.setAlgorithmHeaderValue(AlgorithmIdentifiers.HMAC_SHA256);
+        jws.setKey(key);
+        token = jws.getCompactSerialization();
+        consumer = buildConsumer();
+
+        JWTUtil util = new JWTUtil(SECRET, "GoP");
+        cached = new TabulaJWT(util, 10_000, 3600);
+        uncached = new TabulaJWT(util, 0, 3600);
+        tabulaToken = cached.issue("admin", 3600, Map.of());
+    }
+
+    @Benchmark
+    public JwtClaims validateWithSharedConsumer() throws Exception {
+        return consumer.processToClaims(token);
+    }
+
+    @Benchmark
+    public JwtClaims validateWithNewConsumer() throws Exception {
+        return buildConsumer().processToClaims(token);
+    }
+
+    @Benchmark
+    public TabulaJWT.Result verifyCached() {
+        return cached.verify(tabulaToken);
+    }
+
+    @Benchmark
+    public TabulaJWT.Result verifyUncached() {
+        return uncached.verify(tabulaToken);
+    }
+
+    private JwtConsumer buildConsumer() {
+        return new JwtConsumerBuilder()
+                .setRequireExpirationTime()
+                .setExpectedIssuer("GoP")
+                .setVerificationKey(key)
+                .build();
+    }
+}
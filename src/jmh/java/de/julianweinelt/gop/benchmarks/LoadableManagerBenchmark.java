@@ -0,0 +1,73 @@
+package de.julianweinelt.gop.benchmarks;
+
+import com.google.gson.reflect.TypeToken;
+import de.julianweinelt.gop.util.LoadableManager;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saving and loading module data through {@link LoadableManager}, with and without encryption.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoadableManagerBenchmark {
+    private static final Type TYPE = new TypeToken<Map<String, List<Integer>>>() {}.getType();
+
+    @Param({"false", "true"})
+    public boolean encrypt;
+
+    @Param({"1000", "100000"})
+    public int entries;
+
+    private File file;
+    private BenchmarkManager manager;
+
+    @Setup
+    public void createData() throws IOException {
+        file = Files.createTempFile("gop-bench", ".json").toFile();
+        manager = new BenchmarkManager(encrypt);
+        Map<String, List<Integer>> data = new HashMap<>();
+        for (int i = 0; i < entries; i++) data.put("pixel-" + i, List.of(i, i * 2, i * 3));
+        manager.setDataToSave(data);
+        manager.saveObject(file);
+    }
+
+    @Benchmark
+    public File save() {
+        manager.saveObject(file);
+        return file;
+    }
+
+    @Benchmark
+    public Map<String, List<Integer>> load() throws NoSuchFileException {
+        return manager.loadObject(file.getPath(), TYPE);
+    }
+
+    static class BenchmarkManager extends LoadableManager<Map<String, List<Integer>>> {
+        BenchmarkManager(boolean encrypt) {
+            super(LoggerFactory.getLogger(BenchmarkManager.class), encrypt, "0123456789abcdef");
+        }
+
+        @Override
+        public void loadData() {
+        }
+
+        @Override
+        public void saveData() {
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package de.julianweinelt.gop.benchmarks;
+
+import de.julianweinelt.gop.modules.ModuleLoader;
+import de.julianweinelt.gop.modules.Registry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+/**
+ * Discovery and sorting of N synthetic module jars, with and without the module index.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ModuleLoaderBenchmark {
+
+    @Param({"10", "80"})
+    public int modules;
+
+    private File modulesFolder;
+    private File dataFolder;
+    private Registry registry;
+    private final List<ModuleLoader> loaders = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void createJars() throws IOException {
+        File root = Files.createTempDirectory("gop-bench").toFile();
+        modulesFolder = new File(root, "modules");
+        dataFolder = new File(root, "data");
+        if (!modulesFolder.mkdirs() || !dataFolder.mkdirs()) throw new IOException("Could not create " + root);
+
+        for (int i = 0; i < modules; i++) {
+            // Every fourth module starts a new chain, all others depend on their predecessor
+            String dependencies = i % 4 == 0 ? "[]" : """
+                    [{"name": "Module%d", "minVersion": "1.0.0", "required": true, "loadPrior": "LOAD_BEFORE"}]
+                    """.formatted(i - 1);
+            String json = """
+                    {"moduleName": "Module%d", "mainClass": "bench.module%d.Main", "version": "1.0.0",
+                     "description": "Synthetic module", "authors": ["bench"], "dependencies": %s}
+                    """.formatted(i, i, dependencies);
+            try (JarOutputStream out = new JarOutputStream(new FileOutputStream(new File(modulesFolder, "Module" + i + ".jar")))) {
+                out.putNextEntry(new ZipEntry("module.json"));
+                out.write(json.getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+                out.putNextEntry(new ZipEntry("bench/module" + i + "/Main.class"));
+                out.write(new byte[512]);
+                out.closeEntry();
+            }
+        }
+        registry = new Registry();
+    }
+
+    @Setup(Level.Invocation)
+    public void dropIndexForColdRuns(BenchmarkParams params) {
+        if (params.getBenchmark().endsWith("Cold")) {
+            File index = new File(dataFolder, "module-index.json");
+            if (index.exists() && !index.delete()) throw new IllegalStateException("Could not delete " + index);
+        }
+    }
+
+    // sonst bleiben die Jars jeder Invocation über offene ModuleClassLoader geöffnet
+    @TearDown(Level.Iteration)
+    public void closeClassLoaders() {
+        for (ModuleLoader loader : loaders) loader.closeClassLoaders();
+        loaders.clear();
+    }
+
+    @Benchmark
+    public ModuleLoader discoverAndSortCold() {
+        return discoverAndSort();
+    }
+
+    @Benchmark
+    public ModuleLoader discoverAndSortWarm() {
+        return discoverAndSort();
+    }
+
+    private ModuleLoader discoverAndSort() {
+        ModuleLoader loader = new ModuleLoader(registry, modulesFolder, dataFolder);
+        loader.prepareLoading();
+        loader.sortModules();
+        loaders.add(loader);
+        return loader;
+    }
+}
@@ -1,22 +1,43 @@
 package de.julianweinelt.gop;
 
+import de.julianweinelt.gop.commands.MetricsCommand;
+import de.julianweinelt.gop.commands.ModulesCommand;
+import de.julianweinelt.gop.commands.UsersCommand;
+import de.julianweinelt.gop.configuration.Configuration;
+import de.julianweinelt.gop.configuration.ConfigurationManager;
 import de.julianweinelt.gop.modules.ModuleLoader;
 import de.julianweinelt.gop.modules.Registry;
+import de.julianweinelt.gop.session.AuthService;
+import de.julianweinelt.gop.session.SessionManager;
+import de.julianweinelt.gop.tabula.TabulaSQL;
+import de.julianweinelt.gop.tabula.TabulaServer;
+import de.julianweinelt.gop.tabula.http.HttpResponse;
+import de.julianweinelt.gop.util.JWTUtil;
+import de.julianweinelt.gop.util.LoadableManager;
+import de.julianweinelt.gop.util.TabulaJWT;
 import lombok.Getter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.File;
+import java.io.IOException;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
 
 
 @Getter
 public class GoPSystem {
     private static final Logger log = LoggerFactory.getLogger(GoPSystem.class);
     public static final String copyrightYears = "2017-2025";
+    public static final String systemVersion = "1.0.0";
 
     private static volatile GoPSystem instance;
 
+    private ConfigurationManager configurationManager;
     private Registry registry;
+    private TabulaServer tabulaServer;
+    private TabulaServer metricsServer;
+    private SessionManager sessionManager;
+    private AuthService authService;
 
     public GoPSystem() {
         instance = this;
@@ -25,8 +46,21 @@ public class GoPSystem {
     public static void main(String[] args) {
         log.info("Welcome!");
         log.info("GoP is starting up...");
-        instance.startup();
+        new GoPSystem();
+        instance.configurationManager = new ConfigurationManager();
+        instance.configurationManager.loadData();
         instance.registry = new Registry();
+        instance.registry.getPermissionManager().loadData();
+        Configuration config = instance.configurationManager.getConfiguration();
+        instance.registry.getModuleAccounting().configure(config.isModuleAccounting(), config.getSlowHandlerMillis(),
+                config.getSlowLifecycleMillis());
+        instance.registry.getEventManager().configureAsync(config.getAsyncEventThreads(), config.getAsyncEventQueueSize(),
+                config.getAsyncEventBatchSize(), config.getAsyncEventOverflowPolicy());
+        instance.startup();
+    }
+
+    public static GoPSystem getInstance() {
+        return instance;
     }
 
     private void startup() {
@@ -41,13 +75,96 @@ public class GoPSystem {
                                                   |___/                       \
                 """);
         log.info("Starting module loader...");
-        File[] modules = new File("modules").listFiles();
-        if (modules == null) return;
-        for (File f : modules) {
-            if (f.getName().endsWith(".jar")) {
-                getRegistry().getModuleLoader().loadPlugin(f.getName());
-            }
+        ModuleLoader loader = getRegistry().getModuleLoader();
+        loader.prepareLoading();
+        loader.sortModules();
+        if (configurationManager.getConfiguration().isParallelModuleLoading()) {
+            int threads = configurationManager.getConfiguration().getModuleLoadThreads();
+            loader.loadModulesParallel(threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+        } else {
+            loader.loadModules();
         }
+        loader.enableModules();
+        startTabula();
+        startMetrics();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            if (tabulaServer != null) tabulaServer.stop();
+            if (metricsServer != null) metricsServer.stop();
+            if (authService != null) authService.shutdown();
+            registry.getTabulaManager().closeSQL();
+            loader.disableModules();
+            registry.getEventManager().shutdown();
+            LoadableManager.flushAll();
+        }));
         log.info("Modules have been activated.");
+
+        registry.getCommandExecutor().registerCommand(new ModulesCommand());
+        registry.getCommandExecutor().registerCommand(new UsersCommand());
+        registry.getCommandExecutor().registerCommand(new MetricsCommand());
+        registry.getCommandExecutor().start();
+        if (configurationManager.getConfiguration().isWatchModules()) loader.setWatching(true);
+    }
+
+    private void startTabula() {
+        Configuration config = configurationManager.getConfiguration();
+        if (!config.isTabulaEnabled()) return;
+        int threads = config.getTabulaWorkerThreads();
+        tabulaServer = new TabulaServer(config.getTabulaHost(), config.getTabulaPort(),
+                threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+        tabulaServer.setStatistics(registry.getStatisticManager());
+        if (!config.getTabulaDatabaseUrl().isBlank()) {
+            registry.getTabulaManager().enableSQL(new TabulaSQL(config.getTabulaDatabaseUrl(),
+                    config.getTabulaDatabaseUser(), config.getTabulaDatabasePassword(),
+                    config.getTabulaDatabaseConnections(), config.getTabulaStatementCacheSize(),
+                    config.getTabulaQueryTimeout()), config.getTabulaDatabaseConnections(),
+                    config.getTabulaQueryCacheMillis());
+        }
+        registry.getTabulaManager().setLiveUpdatesPerSecond(config.getTabulaLiveUpdatesPerSecond());
+        TabulaJWT jwt = new TabulaJWT(new JWTUtil(jwtSecret(config), "GoP"), config.getTabulaTokenCacheSize(),
+                config.getTabulaAccessTokenMinutes() * 60L);
+        registry.getTabulaManager().setJwt(jwt);
+        sessionManager = new SessionManager(jwt, config.getTabulaAccessTokenMinutes() * 60L,
+                TimeUnit.DAYS.toMillis(config.getTabulaSessionDays()), config.isTabulaPersistSessions());
+        sessionManager.loadData();
+        authService = new AuthService(sessionManager, config.getTabulaPasswordIterations(), config.getTabulaAuthThreads(),
+                config.getTabulaLoginsPerMinutePerUser(), config.getTabulaLoginsPerMinutePerAddress());
+        authService.loadData();
+        registry.getTabulaManager().registerRoutes(tabulaServer);
+        sessionManager.registerRoutes(tabulaServer);
+        authService.registerRoutes(tabulaServer);
+        try {
+            tabulaServer.start();
+        } catch (IOException e) {
+            log.error("Could not start the Tabula server on {}:{}.", config.getTabulaHost(), config.getTabulaPort());
+            log.error(e.getMessage());
+            tabulaServer = null;
+        }
+    }
+
+    /**
+     * Serves the metrics in the Prometheus text format on GET /metrics of its own server, so it can stay
+     * bound to localhost while Tabula is reachable from outside.
+     */
+    private void startMetrics() {
+        Configuration config = configurationManager.getConfiguration();
+        if (!config.isMetricsEnabled()) return;
+        metricsServer = new TabulaServer(config.getMetricsHost(), config.getMetricsPort(), 1);
+        metricsServer.route("GET", "/metrics", request -> HttpResponse.text(200, registry.getStatisticManager().toPrometheus())
+                .header("Content-Type", "text/plain; version=0.0.4; charset=utf-8"));
+        try {
+            metricsServer.start();
+        } catch (IOException e) {
+            log.error("Could not start the metrics endpoint on {}:{}.", config.getMetricsHost(), config.getMetricsPort());
+            log.error(e.getMessage());
+            metricsServer = null;
+        }
+    }
+
+    private byte[] jwtSecret(Configuration config) {
+        if (config.getTabulaJwtSecret().isBlank()) {
+            log.warn("No tabulaJwtSecret configured, Tabula logins will be invalid after a restart.");
+            return JWTUtil.randomSecret();
+        }
+        return Base64.getDecoder().decode(config.getTabulaJwtSecret());
     }
 }
\ No newline at end of file
@@ -1,4 +1,18 @@
 package de.julianweinelt.gop.commands;
 
-public class ConsoleCommand {
+import lombok.Getter;
+
+@Getter
+public abstract class ConsoleCommand {
+    private final String name;
+    private final String description;
+    private final String usage;
+
+    protected ConsoleCommand(String name, String description, String usage) {
+        this.name = name;
+        this.description = description;
+        this.usage = usage;
+    }
+
+    public abstract void execute(String[] args);
 }
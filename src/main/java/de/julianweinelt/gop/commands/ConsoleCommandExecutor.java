@@ -1,4 +1,66 @@
 package de.julianweinelt.gop.commands;
 
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Slf4j
 public class ConsoleCommandExecutor {
+    private final Map<String, ConsoleCommand> commands = new ConcurrentHashMap<>();
+
+    public void registerCommand(ConsoleCommand command) {
+        commands.put(command.getName().toLowerCase(), command);
+    }
+
+    public void unregisterCommand(String name) {
+        commands.remove(name.toLowerCase());
+    }
+
+    public Collection<ConsoleCommand> getCommands() {
+        return commands.values();
+    }
+
+    /**
+     * Executes a single line entered into the console.
+     * The first word selects the command, all following words are passed as arguments.
+     *
+     * @param line The line entered into the console.
+     */
+    public void execute(String line) {
+        String[] parts = line.trim().split("\\s+");
+        if (parts[0].isEmpty()) return;
+        ConsoleCommand command = commands.get(parts[0].toLowerCase());
+        if (command == null) {
+            log.warn("Unknown command: {}", parts[0]);
+            return;
+        }
+        try {
+            command.execute(Arrays.copyOfRange(parts, 1, parts.length));
+        } catch (Exception e) {
+            log.error("Error while executing command {}.", command.getName());
+            log.error(e.getMessage());
+        }
+    }
+
+    /**
+     * Starts reading commands from the standard input on a separate daemon thread.
+     */
+    public void start() {
+        Thread console = new Thread(() -> {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(System.in))) {
+                String line;
+                while ((line = reader.readLine()) != null) execute(line);
+            } catch (IOException e) {
+                log.error("Console input has been closed: {}", e.getMessage());
+            }
+        }, "Console");
+        console.setDaemon(true);
+        console.start();
+    }
 }
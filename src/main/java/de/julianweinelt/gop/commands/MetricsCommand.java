@@ -0,0 +1,26 @@
+package de.julianweinelt.gop.commands;
+
+import de.julianweinelt.gop.GoPSystem;
+import de.julianweinelt.gop.modules.statistics.StatisticEntry;
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+public class MetricsCommand extends ConsoleCommand {
+
+    public MetricsCommand() {
+        super("metrics", "Shows the metrics of the system.", "metrics [filter]");
+    }
+
+    @Override
+    public void execute(String[] args) {
+        String filter = args.length > 0 ? args[0].toLowerCase() : "";
+        int shown = 0;
+        for (StatisticEntry entry : GoPSystem.getInstance().getRegistry().getStatisticManager().getEntries()) {
+            String id = entry.getName() + entry.getLabelText();
+            if (!id.toLowerCase().contains(filter)) continue;
+            log.info("{}: {}", id, entry.describe());
+            shown++;
+        }
+        if (shown == 0) log.info("No metrics{}.", filter.isEmpty() ? "" : " matching " + filter);
+    }
+}
@@ -1,4 +1,71 @@
 package de.julianweinelt.gop.commands;
 
-public class ModulesCommand {
+import de.julianweinelt.gop.GoPSystem;
+import de.julianweinelt.gop.modules.Module;
+import de.julianweinelt.gop.modules.ModuleLoader;
+import de.julianweinelt.gop.modules.statistics.ModuleAccounting;
+import de.julianweinelt.gop.modules.statistics.ModuleUsage;
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+public class ModulesCommand extends ConsoleCommand {
+
+    public ModulesCommand() {
+        super("modules", "Lists, reloads and watches modules.", "modules [list|stats|reload <name>|watch <on|off>]");
+    }
+
+    @Override
+    public void execute(String[] args) {
+        ModuleLoader loader = GoPSystem.getInstance().getRegistry().getModuleLoader();
+        if (args.length == 0 || args[0].equalsIgnoreCase("list")) {
+            StringBuilder s = new StringBuilder();
+            for (Module m : GoPSystem.getInstance().getRegistry().getModules()) {
+                s.append(m.getName()).append(" (").append(m.getVersion()).append("), ");
+            }
+            log.info("Modules: {}", s.length() == 0 ? "none" : s.substring(0, s.length() - 2));
+            return;
+        }
+
+        switch (args[0].toLowerCase()) {
+            case "stats" -> {
+                ModuleAccounting accounting = GoPSystem.getInstance().getRegistry().getModuleAccounting();
+                if (!accounting.isEnabled()) log.info("Module accounting is disabled, set moduleAccounting in the configuration to enable it.");
+                if (accounting.getUsages().isEmpty()) {
+                    log.info("No module calls recorded yet.");
+                    return;
+                }
+                log.info(String.format("%-24s %10s %12s %12s %12s %8s", "Module", "Calls", "Wall ms", "CPU ms",
+                        "Alloc MB", "Slow"));
+                for (ModuleUsage u : accounting.getUsages()) {
+                    log.info(String.format("%-24s %10d %12.1f %12.1f %12.1f %8d", u.getModule(), u.getCalls().get(),
+                            u.getWallNanos().get() / 1_000_000d, u.getCpuNanos().get() / 1_000_000d,
+                            u.getAllocatedBytes().get() / (1024d * 1024d), u.getSlowCalls().get()));
+                }
+            }
+            case "reload" -> {
+                if (args.length < 2) {
+                    log.warn("Usage: {}", getUsage());
+                    return;
+                }
+                if (loader.reloadModule(args[1])) log.info("Module {} has been reloaded.", args[1]);
+                else log.error("Module {} could not be reloaded.", args[1]);
+            }
+            case "watch" -> {
+                if (args.length < 2) {
+                    log.info("Watch mode is {}.", loader.isWatching() ? "enabled" : "disabled");
+                    return;
+                }
+                switch (args[1].toLowerCase()) {
+                    case "on" -> loader.setWatching(true);
+                    case "off" -> loader.setWatching(false);
+                    default -> {
+                        log.warn("Usage: {}", getUsage());
+                        return;
+                    }
+                }
+                log.info("Watch mode is {}.", loader.isWatching() ? "enabled" : "disabled");
+            }
+            default -> log.warn("Usage: {}", getUsage());
+        }
+    }
 }
@@ -0,0 +1,74 @@
+package de.julianweinelt.gop.commands;
+
+import de.julianweinelt.gop.GoPSystem;
+import de.julianweinelt.gop.session.AuthService;
+import de.julianweinelt.gop.tabula.FailReason;
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+public class UsersCommand extends ConsoleCommand {
+
+    public UsersCommand() {
+        super("users", "Manages the users of Tabula.", "users [add <name> <password>|password <name> <password>|remove <name>|logout <name>|stats]");
+    }
+
+    @Override
+    public void execute(String[] args) {
+        AuthService auth = GoPSystem.getInstance().getAuthService();
+        if (auth == null) {
+            log.warn("Tabula is disabled.");
+            return;
+        }
+        if (args.length == 0) {
+            log.warn("Usage: {}", getUsage());
+            return;
+        }
+
+        switch (args[0].toLowerCase()) {
+            case "add" -> {
+                if (args.length < 3) {
+                    log.warn("Usage: {}", getUsage());
+                    return;
+                }
+                auth.addUser(args[1], args[2].toCharArray()).whenComplete((reason, e) -> {
+                    if (e != null) log.error("User {} could not be added: {}", args[1], e.getMessage());
+                    else if (reason == FailReason.USERNAME_ALREADY_GIVEN) log.warn("User {} already exists.", args[1]);
+                    else log.info("User {} has been added.", args[1]);
+                });
+            }
+            case "password" -> {
+                if (args.length < 3) {
+                    log.warn("Usage: {}", getUsage());
+                    return;
+                }
+                auth.setPassword(args[1], args[2].toCharArray()).whenComplete((v, e) -> {
+                    if (e != null) log.error("The password of {} could not be changed: {}", args[1], e.getMessage());
+                    else log.info("The password of {} has been changed, all sessions have been closed.", args[1]);
+                });
+            }
+            case "remove" -> {
+                if (args.length < 2) {
+                    log.warn("Usage: {}", getUsage());
+                    return;
+                }
+                if (auth.removeUser(args[1])) log.info("User {} has been removed.", args[1]);
+                else log.warn("User {} doesn't exist.", args[1]);
+            }
+            case "logout" -> {
+                if (args.length < 2) {
+                    log.warn("Usage: {}", getUsage());
+                    return;
+                }
+                int closed = GoPSystem.getInstance().getSessionManager().logoutAll(args[1]);
+                log.info("Closed {} sessions of {}.", closed, args[1]);
+            }
+            case "stats" -> {
+                AuthService.HashStats stats = auth.getStats();
+                log.info("Hashes: {}, average {} ms, max {} ms, queued {}, rejected {}, rate limited {}",
+                        stats.hashes(), stats.averageNanos() / 1_000_000, stats.maxNanos() / 1_000_000,
+                        stats.queued(), stats.rejected(), stats.rateLimited());
+            }
+            default -> log.warn("Usage: {}", getUsage());
+        }
+    }
+}
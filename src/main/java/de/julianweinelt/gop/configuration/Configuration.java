@@ -1,4 +1,46 @@
 package de.julianweinelt.gop.configuration;
 
+import de.julianweinelt.gop.modules.event.OverflowPolicy;
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
 public class Configuration {
+    // Loads independent modules at the same time, in waves along the dependency graph.
+    // The onLoad methods of different modules then run concurrently, only enable this if all modules allow it.
+    private boolean parallelModuleLoading = false;
+    private int moduleLoadThreads = 0; // 0 = number of available processors, only used for parallelModuleLoading
+    private boolean watchModules = false;
+    private boolean moduleAccounting = false; // CPU time and allocations per module, costs time on every event
+    private long slowHandlerMillis = 50; // 0 = no warnings
+    private long slowLifecycleMillis = 2000; // 0 = no warnings
+    private int asyncEventThreads = 2;
+    private int asyncEventQueueSize = 8192;
+    private int asyncEventBatchSize = 64;
+    private OverflowPolicy asyncEventOverflowPolicy = OverflowPolicy.BLOCK;
+    private boolean tabulaEnabled = true;
+    private String tabulaHost = "127.0.0.1";
+    private int tabulaPort = 8095;
+    private int tabulaWorkerThreads = 0; // 0 = number of available processors
+    private String tabulaDatabaseUrl = ""; // empty = tables without database
+    private String tabulaDatabaseUser = "";
+    private String tabulaDatabasePassword = "";
+    private int tabulaDatabaseConnections = 4;
+    private int tabulaStatementCacheSize = 32;
+    private int tabulaQueryTimeout = 10; // seconds
+    private long tabulaQueryCacheMillis = 2000;
+    private int tabulaLiveUpdatesPerSecond = 4; // per tab
+    private String tabulaJwtSecret = ""; // Base64, empty = new secret on every start
+    private int tabulaTokenCacheSize = 10000;
+    private int tabulaAccessTokenMinutes = 15;
+    private int tabulaSessionDays = 14; // without refresh
+    private boolean tabulaPersistSessions = true;
+    private int tabulaPasswordIterations = 600000; // PBKDF2-HMAC-SHA256
+    private int tabulaAuthThreads = 0; // 0 = number of available processors
+    private int tabulaLoginsPerMinutePerUser = 5;
+    private int tabulaLoginsPerMinutePerAddress = 20;
+    private boolean metricsEnabled = true;
+    private String metricsHost = "127.0.0.1"; // Prometheus endpoint, keep it local
+    private int metricsPort = 9464;
 }
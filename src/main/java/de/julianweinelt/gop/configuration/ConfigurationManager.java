@@ -1,4 +1,37 @@
 package de.julianweinelt.gop.configuration;
 
-public class ConfigurationManager {
+import de.julianweinelt.gop.util.LoadableManager;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.nio.file.NoSuchFileException;
+
+@Slf4j
+public class ConfigurationManager extends LoadableManager<Configuration> {
+    private final File file = new File("config.json");
+
+    public ConfigurationManager() {
+        super(log, false, null);
+    }
+
+    public Configuration getConfiguration() {
+        return getSaveData();
+    }
+
+    @Override
+    public void loadData() {
+        try {
+            Configuration configuration = loadObject(file.getPath(), Configuration.class);
+            setDataToSave(configuration == null ? new Configuration() : configuration);
+        } catch (NoSuchFileException e) {
+            log.info("No configuration found, creating a new one...");
+            setDataToSave(new Configuration());
+            saveData();
+        }
+    }
+
+    @Override
+    public void saveData() {
+        saveObject(file);
+    }
 }
@@ -0,0 +1,11 @@
+package de.julianweinelt.gop.except;
+
+public class StoreException extends RuntimeException {
+  public StoreException(String message) {
+    super(message);
+  }
+
+  public StoreException(String message, Throwable cause) {
+    super(message, cause);
+  }
+}
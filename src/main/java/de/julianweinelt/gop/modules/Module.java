@@ -1,8 +1,14 @@
 package de.julianweinelt.gop.modules;
 
+import de.julianweinelt.gop.util.SystemScope;
+import de.julianweinelt.gop.util.store.LogStore;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 
+import java.io.File;
+import java.nio.file.Path;
+
 @Getter
 @Setter
 public abstract class Module {
@@ -11,8 +17,44 @@ public abstract class Module {
     private String description;
     private String[] authors;
     private String version;
+    private String minAPIVersion;
+    private Path jarURL;
+    private File dataFolder;
+
+    private boolean storesSensitiveData;
+    private boolean usesEncryption;
+    private SystemScope preferredScope;
+
+    private boolean useTabula;
+    private String tabulaPermission;
+    private String tabulaTabShortName;
+
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private LogStore store;
 
     public abstract void onLoad();
     public abstract void onEnable();
     public abstract void onDisable();
-}
\ No newline at end of file
+
+    /**
+     * Returns the key-value store of this module, located in "store" inside the data folder of the module.
+     * The store is opened with the first call and closed by the system when the module is unloaded.
+     *
+     * @return The store of this module.
+     * @throws de.julianweinelt.gop.except.StoreException If the store can't be opened.
+     */
+    public synchronized LogStore getStore() {
+        if (store == null) store = LogStore.open(new File(dataFolder, "store"));
+        return store;
+    }
+
+    /**
+     * Closes the store of this module if it has been opened.
+     */
+    public synchronized void closeStore() {
+        if (store == null) return;
+        store.close();
+        store = null;
+    }
+}
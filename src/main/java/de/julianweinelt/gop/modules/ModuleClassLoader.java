@@ -0,0 +1,98 @@
+package de.julianweinelt.gop.modules;
+
+import lombok.Getter;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The class loader of a single module.
+ * <p>
+ * Classes are looked up in the following order:
+ * <ol>
+ *     <li>The parent loader, which provides the GoP API and its libraries.</li>
+ *     <li>The jar of the module itself, if the package of the class belongs to this module.</li>
+ *     <li>The loader of the module owning the package, if that module is a declared dependency.</li>
+ *     <li>The jar of the module itself, if the package is owned by another module. This covers split
+ *     packages and libraries bundled by several modules, each module then uses its own copy.</li>
+ * </ol>
+ * The owner of a package is resolved through the {@link ModuleClassLoaderIndex}, so no jar other
+ * than the owning one and the module's own jar is ever searched for a class.
+ */
+public class ModuleClassLoader extends URLClassLoader {
+    static {
+        registerAsParallelCapable();
+    }
+
+    @Getter
+    private final String moduleName;
+    private final ModuleClassLoaderIndex index;
+    private final List<ModuleClassLoader> dependencies = new CopyOnWriteArrayList<>();
+
+    ModuleClassLoader(String moduleName, URL jarURL, ClassLoader parent, ModuleClassLoaderIndex index) {
+        super("Module-" + moduleName, new URL[]{jarURL}, parent);
+        this.moduleName = moduleName;
+        this.index = index;
+    }
+
+    void setDependencies(List<ModuleClassLoader> loaders) {
+        dependencies.clear();
+        dependencies.addAll(loaders);
+    }
+
+    void removeDependency(ModuleClassLoader loader) {
+        dependencies.remove(loader);
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        synchronized (getClassLoadingLock(name)) {
+            Class<?> c = findLoadedClass(name);
+            if (c == null) {
+                try {
+                    c = getParent().loadClass(name);
+                } catch (ClassNotFoundException ignored) {
+                    c = loadModuleClass(name);
+                }
+            }
+            if (resolve) resolveClass(c);
+            return c;
+        }
+    }
+
+    private Class<?> loadModuleClass(String name) throws ClassNotFoundException {
+        ModuleClassLoader owner = index.getOwner(packageOf(name));
+        if (owner == null || owner == this) return findClass(name);
+        if (dependencies.contains(owner)) {
+            try {
+                return owner.loadOwnClass(name);
+            } catch (ClassNotFoundException ignored) {
+                // geteiltes Package: die Klasse liegt nur im eigenen Jar
+            }
+        }
+        try {
+            return findClass(name);
+        } catch (ClassNotFoundException e) {
+            throw new ClassNotFoundException(name + " is neither part of module " + moduleName + " nor of module " +
+                    owner.getModuleName() + (dependencies.contains(owner) ? "" : ", which is not a dependency of " + moduleName));
+        }
+    }
+
+    /**
+     * Loads a class from the jar of this module only, without delegating to other modules.
+     * Used by dependent modules, which prevents delegation cycles between modules.
+     */
+    Class<?> loadOwnClass(String name) throws ClassNotFoundException {
+        synchronized (getClassLoadingLock(name)) {
+            Class<?> c = findLoadedClass(name);
+            return c != null ? c : findClass(name);
+        }
+    }
+
+    static String packageOf(String className) {
+        int i = className.lastIndexOf('.');
+        return i == -1 ? "" : className.substring(0, i);
+    }
+}
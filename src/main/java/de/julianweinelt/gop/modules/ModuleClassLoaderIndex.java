@@ -0,0 +1,107 @@
+package de.julianweinelt.gop.modules;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps track of the {@link ModuleClassLoader} of every module and of the packages each module provides.
+ * <p>
+ * The package index allows a class to be resolved with a single map lookup instead of searching every
+ * module jar. As each module has its own loader, a module can be removed again by closing its loader
+ * and dropping its packages from the index.
+ */
+@Slf4j
+public class ModuleClassLoaderIndex {
+    private final ClassLoader parent;
+    private final Map<String, ModuleClassLoader> loaders = new ConcurrentHashMap<>();
+    private final Map<String, ModuleClassLoader> packages = new ConcurrentHashMap<>();
+
+    public ModuleClassLoaderIndex(ClassLoader parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * Creates the class loader of a module and registers the packages of its jar.
+     * If a package is already provided by another module, the first module keeps it and the new module
+     * loads the classes of that package from its own jar, see {@link ModuleClassLoader}.
+     *
+     * @param moduleName     The name of the module.
+     * @param jarURL         The URL of the module jar.
+     * @param modulePackages The packages contained in the module jar.
+     * @return The new class loader.
+     */
+    public ModuleClassLoader create(String moduleName, URL jarURL, Collection<String> modulePackages) {
+        ModuleClassLoader loader = new ModuleClassLoader(moduleName, jarURL, parent, this);
+        ModuleClassLoader old = loaders.put(moduleName, loader);
+        if (old != null) remove(old);
+
+        for (String p : modulePackages) {
+            ModuleClassLoader owner = packages.putIfAbsent(p, loader);
+            if (owner != null && owner != loader) {
+                log.warn("Package {} of module {} is already provided by module {}.", p, moduleName, owner.getModuleName());
+            }
+        }
+        return loader;
+    }
+
+    /**
+     * Connects the loader of a module with the loaders of its declared dependencies.
+     * Dependencies which are not loaded are ignored.
+     *
+     * @param moduleName   The name of the module.
+     * @param dependencies The dependencies declared in the "module.json" of the module.
+     */
+    public void link(String moduleName, List<ModuleDependency> dependencies) {
+        ModuleClassLoader loader = loaders.get(moduleName);
+        if (loader == null) return;
+        List<ModuleClassLoader> dependencyLoaders = new ArrayList<>();
+        for (ModuleDependency dep : dependencies) {
+            ModuleClassLoader d = loaders.get(dep.getName());
+            if (d != null) dependencyLoaders.add(d);
+        }
+        loader.setDependencies(dependencyLoaders);
+    }
+
+    public ModuleClassLoader get(String moduleName) {
+        return loaders.get(moduleName);
+    }
+
+    ModuleClassLoader getOwner(String packageName) {
+        return packages.get(packageName);
+    }
+
+    /**
+     * Removes the loader of a module, drops its packages from the index and closes it.
+     * Other modules can't resolve classes of the module afterwards.
+     *
+     * @param moduleName The name of the module.
+     */
+    public void remove(String moduleName) {
+        ModuleClassLoader loader = loaders.remove(moduleName);
+        if (loader != null) remove(loader);
+    }
+
+    /**
+     * Removes and closes the loaders of all modules.
+     */
+    public void removeAll() {
+        for (String moduleName : List.copyOf(loaders.keySet())) remove(moduleName);
+    }
+
+    private void remove(ModuleClassLoader loader) {
+        packages.values().removeIf(l -> l == loader);
+        for (ModuleClassLoader l : loaders.values()) l.removeDependency(loader);
+        try {
+            loader.close();
+        } catch (IOException e) {
+            log.error("Could not close class loader of module {}: {}", loader.getModuleName(), e.getMessage());
+        }
+    }
+}
@@ -1,4 +1,14 @@
 package de.julianweinelt.gop.modules;
 
+import de.julianweinelt.gop.util.LoadPriority;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
 public class ModuleDependency {
+    private final String name;
+    private final String minVersion;
+    private final boolean required;
+    private final LoadPriority loadPrior;
 }
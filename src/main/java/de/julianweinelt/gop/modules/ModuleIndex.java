@@ -0,0 +1,172 @@
+package de.julianweinelt.gop.modules;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Persistent cache of the metadata found inside the module jars.
+ * <p>
+ * For every jar the parsed "module.json", the dependency list, the main class, the packages it contains
+ * and the optional "tabula.json" payload are stored together with the size, modification time and SHA-256 hash
+ * of the jar. As long as a jar has not changed, warm restarts can build their
+ * {@link ModuleLoadHolder}s from this index without opening the jar or parsing any JSON from it.
+ * <p>
+ * An entry stays valid while size and modification time match. If only the modification time
+ * differs (e.g. the same jar has been copied again), the content hash decides.
+ */
+@Slf4j
+public class ModuleIndex {
+    private static final int FORMAT_VERSION = 2;
+    private static final Gson GSON = new GsonBuilder().disableHtmlEscaping().create();
+
+    private final File file;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private volatile boolean dirty = false;
+
+    public ModuleIndex(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Reads the index file from disk. A missing, unreadable or outdated index is treated as empty.
+     */
+    public void load() {
+        entries.clear();
+        if (!file.exists()) return;
+        try (Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            IndexFile index = GSON.fromJson(reader, IndexFile.class);
+            if (index == null || index.version != FORMAT_VERSION || index.entries == null) {
+                log.info("Module index is outdated and will be rebuilt.");
+                dirty = true;
+                return;
+            }
+            entries.putAll(index.entries);
+        } catch (IOException | JsonParseException e) {
+            log.warn("Could not read module index, rebuilding it: {}", e.getMessage());
+            dirty = true;
+        }
+    }
+
+    /**
+     * Writes the index back to disk if it has changed since it was loaded.
+     * The file is written to a temporary file first and then moved over the old index.
+     */
+    public void save() {
+        if (!dirty) return;
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && parent.mkdirs()) log.info("Creating data folders...");
+        File tmp = new File(file.getPath() + ".tmp");
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8))) {
+            GSON.toJson(new IndexFile(FORMAT_VERSION, entries), writer);
+        } catch (IOException e) {
+            log.error("Could not write module index: {}", e.getMessage());
+            return;
+        }
+        try {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            dirty = false;
+        } catch (IOException e) {
+            log.error("Could not replace module index: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the cached entry of the given jar if it is still valid.
+     *
+     * @param jar The module jar.
+     * @return The cached entry, or {@code null} if the jar is unknown or has changed.
+     */
+    public Entry lookup(File jar) {
+        Entry entry = entries.get(jar.getName());
+        if (entry == null || entry.size != jar.length()) return null;
+        long lastModified = jar.lastModified();
+        if (entry.lastModified == lastModified) return entry;
+
+        try {
+            if (!entry.hash.equals(hash(jar))) return null;
+        } catch (IOException e) {
+            return null;
+        }
+        Entry touched = new Entry(entry.moduleName, entry.mainClass, entry.size, lastModified, entry.hash,
+                entry.dependencies, entry.packages, entry.manifest, entry.tabula);
+        entries.put(jar.getName(), touched);
+        dirty = true;
+        return touched;
+    }
+
+    /**
+     * Creates and stores a new entry for the given jar.
+     *
+     * @return The stored entry.
+     * @throws IOException If the jar could not be hashed.
+     */
+    public Entry put(File jar, String moduleName, String mainClass, List<ModuleDependency> dependencies,
+                     List<String> packages, JsonObject manifest, JsonObject tabula) throws IOException {
+        Entry entry = new Entry(moduleName, mainClass, jar.length(), jar.lastModified(), hash(jar),
+                dependencies, packages, manifest, tabula);
+        entries.put(jar.getName(), entry);
+        dirty = true;
+        return entry;
+    }
+
+    /**
+     * Removes the entries of all jars that are no longer present.
+     *
+     * @param jarNames The file names of the jars currently inside the "modules" folder.
+     */
+    public void retainOnly(Set<String> jarNames) {
+        if (entries.keySet().retainAll(jarNames)) dirty = true;
+    }
+
+    private static String hash(File jar) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        try (InputStream in = new FileInputStream(jar)) {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) digest.update(buffer, 0, read);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    @AllArgsConstructor
+    private static class IndexFile {
+        private int version;
+        private Map<String, Entry> entries;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Entry {
+        private final String moduleName;
+        private final String mainClass;
+        private final long size;
+        private final long lastModified;
+        private final String hash;
+        private final List<ModuleDependency> dependencies;
+        private final List<String> packages;
+        private final JsonObject manifest;
+        private final JsonObject tabula;
+    }
+}
@@ -1,4 +1,8 @@
 package de.julianweinelt.gop.modules;
 
-public class ModuleLoadHolder {
+import java.net.URL;
+import java.util.List;
+
+public record ModuleLoadHolder(String name, URL jarURl, String mainClass, int loadOrder,
+                               List<ModuleDependency> dependencies) {
 }
@@ -187,7 +187,7 @@ public class ModuleLoader2 {
                         try(InputStream iS = jarFile.getInputStream(tabulaEntry)) {
                             String tabulaString = new String(iS.readAllBytes(), StandardCharsets.UTF_8);
                             registry.getTabulaManager().createTab(moduleInstance.getName()
-                                    , JsonParser.parseString(tabulaString).getAsJsonObject().toString(),
+                                    , JsonParser.parseString(tabulaString).getAsJsonObject(),
                                     moduleInstance.getTabulaPermission(), moduleInstance.getTabulaTabShortName());
                         } catch (Exception e) {
                             log.error("Module {} could not be registered in Tabula.", name);
@@ -4,30 +4,56 @@ import com.google.gson.*;
 import de.julianweinelt.gop.GoPSystem;
 import de.julianweinelt.gop.except.ModuleInvalidException;
 import de.julianweinelt.gop.modules.event.Event;
+import de.julianweinelt.gop.modules.event.ServerEvents;
+import de.julianweinelt.gop.modules.statistics.Histogram;
+import de.julianweinelt.gop.modules.statistics.ModuleAccounting;
 import de.julianweinelt.gop.util.LoadPriority;
 import de.julianweinelt.gop.util.SystemScope;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.maven.artifact.versioning.ComparableVersion;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
-import java.net.URLClassLoader;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.zip.ZipEntry;
 
 @Slf4j
 public class ModuleLoader {
     private final Registry registry;
-    private URLClassLoader sharedLoader;
+    private final File modulesFolder;
+    private final File dataFolder;
+    private final ModuleClassLoaderIndex classLoaders = new ModuleClassLoaderIndex(getClass().getClassLoader());
     private List<ModuleLoadHolder> holders = new ArrayList<>();
+    private final ModuleIndex moduleIndex;
+    private final Map<String, ModuleIndex.Entry> metadata = new ConcurrentHashMap<>();
+    private final ModuleWatcher watcher;
 
 
     public ModuleLoader(Registry registry) {
+        this(registry, new File("modules"), new File("data"));
+    }
+
+    /**
+     * Creates a module loader working on other folders than "modules" and "data", e.g. for benchmarks.
+     *
+     * @param registry      The registry the modules are loaded into.
+     * @param modulesFolder The folder containing the module jars.
+     * @param dataFolder    The folder containing the module index and the data folders of the modules.
+     */
+    public ModuleLoader(Registry registry, File modulesFolder, File dataFolder) {
         this.registry = registry;
+        this.modulesFolder = modulesFolder;
+        this.dataFolder = dataFolder;
+        this.moduleIndex = new ModuleIndex(new File(dataFolder, "module-index.json"));
+        this.watcher = new ModuleWatcher(this, modulesFolder.toPath());
     }
 
     /**
@@ -125,68 +151,152 @@ public class ModuleLoader {
      *   </p>
      * <p>
      * - If "module.json" is missing, the module will be considered invalid and ignored.
+     * <p>
+     * The jars are opened and parsed in parallel on a pool bounded by the number of available
+     * processors. The resulting list keeps the order of the "modules" folder, and the
+     * ServerModuleDiscoverEvent is still fired on the calling thread.
+     * <p>
+     * Afterwards every module gets its own {@link ModuleClassLoader}, which is linked with the
+     * loaders of the module's declared dependencies.
      */
     public void prepareLoading() {
-        File folder = new File("modules");
-        File[] modules = folder.listFiles();
-        if (modules == null) return;
-        for (File f : modules) {
-            if (f.getName().endsWith(".jar")) {
+        File[] modules = modulesFolder.listFiles((dir, fileName) -> fileName.endsWith(".jar"));
+        if (modules == null || modules.length == 0) return;
+        moduleIndex.load();
+
+        int threads = Math.min(modules.length, Runtime.getRuntime().availableProcessors());
+        ExecutorService discoveryPool = Executors.newFixedThreadPool(threads, threadFactory("ModuleDiscovery"));
+        try {
+            // Jobs are submitted in directory order and collected in the same order, so the
+            // resulting holder list does not depend on which jar finished parsing first.
+            List<Future<ModuleLoadHolder>> jobs = new ArrayList<>(modules.length);
+            for (File f : modules) jobs.add(discoveryPool.submit(() -> readModuleHolder(f)));
+
+            for (Future<ModuleLoadHolder> job : jobs) {
                 try {
-                    Path jarPath = Path.of("modules/" + f.getName());
-
-                    try (JarFile jarFile = new JarFile(jarPath.toFile())) {
-                        ZipEntry jsonEntry = jarFile.getEntry("module.json");
-                        if (jsonEntry == null) {
-                            throw new ModuleInvalidException("The loaded file " + f.getName() + " does not contain a module.json file.");
-                        }
-
-                        try(InputStream inputStream = jarFile.getInputStream(jsonEntry)) {
-                            String jsonString = new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
-                            JsonObject json = JsonParser.parseString(jsonString).getAsJsonObject();
-
-                            URL jarURL = jarPath.toUri().toURL();
-                            List<ModuleDependency> moduleDependencies = new ArrayList<>();
-                            for (JsonElement element : json.get("dependencies").getAsJsonArray()) {
-                                JsonObject o = element.getAsJsonObject();
-                                moduleDependencies.add(
-                                        new ModuleDependency(
-                                                o.get("name").getAsString(),
-                                                o.get("minVersion").getAsString(),
-                                                o.get("required").getAsBoolean(),
-                                                LoadPriority.valueOf(o.get("loadPrior").getAsString())
-                                        )
-                                );
-                            }
-                            ModuleLoadHolder holder = new ModuleLoadHolder(
-                                    json.get("moduleName").getAsString(),
-                                    jarURL,
-                                    json.get("mainClass").getAsString(),
-                                    0,
-                                    moduleDependencies
-                            );
-                            holders.add(holder);
-                            registry.callEvent(new Event("ServerModuleDiscoverEvent").set(
-                                    "module", holder.name()
-                            ));
-                        }
-                    }
-                } catch (Exception e) {
+                    ModuleLoadHolder holder = job.get();
+                    holders.add(holder);
+                    registry.callEvent(new Event(ServerEvents.MODULE_DISCOVER).set(
+                            ServerEvents.DISCOVER_MODULE, holder.name()
+                    ));
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
                     log.error("Error while loading module.");
-                    log.error(e.getMessage());
-                    for (StackTraceElement s : e.getStackTrace()) {
+                    log.error(cause.getMessage());
+                    for (StackTraceElement s : cause.getStackTrace()) {
                         log.error(s.toString());
                     }
                 }
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Module discovery has been interrupted.");
+        } finally {
+            discoveryPool.shutdownNow();
+        }
+
+        Set<String> jarNames = new HashSet<>();
+        for (File f : modules) jarNames.add(f.getName());
+        moduleIndex.retainOnly(jarNames);
+        moduleIndex.save();
+
+        for (ModuleLoadHolder h : holders) {
+            classLoaders.create(h.name(), h.jarURl(), metadata.get(h.name()).getPackages());
         }
+        for (ModuleLoadHolder h : holders) classLoaders.link(h.name(), h.dependencies());
+    }
+
+    /**
+     * Resolves the {@link ModuleLoadHolder} of a single module jar.
+     * If the {@link ModuleIndex} still holds a valid entry for the jar, the jar is not opened at all.
+     * Otherwise its "module.json" (and "tabula.json", if present) is read and stored in the index.
+     * This method is called concurrently from the discovery pool and therefore must only touch
+     * thread safe state of the loader.
+     *
+     * @param f The jar file inside the "modules" folder.
+     * @return The holder describing the module.
+     * @throws Exception If the jar can't be read or its "module.json" is missing or malformed.
+     */
+    private ModuleLoadHolder readModuleHolder(File f) throws Exception {
+        ModuleIndex.Entry entry = moduleIndex.lookup(f);
+        if (entry == null) entry = readModuleEntry(f);
+        metadata.put(entry.getModuleName(), entry);
+
+        return new ModuleLoadHolder(
+                entry.getModuleName(),
+                f.toPath().toUri().toURL(),
+                entry.getMainClass(),
+                0,
+                entry.getDependencies()
+        );
+    }
 
-        URL[] urls = new URL[holders.size()];
-        int i = 0;
-        for (ModuleLoadHolder h : holders) urls[i] = h.jarURl();
+    /**
+     * Opens a module jar, parses its "module.json" and the optional "tabula.json" and stores
+     * the result in the {@link ModuleIndex}.
+     *
+     * @param f The jar file inside the "modules" folder.
+     * @return The fresh index entry of the jar.
+     * @throws Exception If the jar can't be read or its "module.json" is missing or malformed.
+     */
+    private ModuleIndex.Entry readModuleEntry(File f) throws Exception {
+        try (JarFile jarFile = new JarFile(f)) {
+            ZipEntry jsonEntry = jarFile.getEntry("module.json");
+            if (jsonEntry == null) {
+                throw new ModuleInvalidException("The loaded file " + f.getName() + " does not contain a module.json file.");
+            }
+
+            JsonObject json;
+            try (InputStream inputStream = jarFile.getInputStream(jsonEntry)) {
+                String jsonString = new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+                json = JsonParser.parseString(jsonString).getAsJsonObject();
+            }
+
+            JsonObject tabula = null;
+            ZipEntry tabulaEntry = jarFile.getEntry("tabula.json");
+            if (tabulaEntry != null) {
+                try (InputStream iS = jarFile.getInputStream(tabulaEntry)) {
+                    String tabulaString = new String(iS.readAllBytes(), StandardCharsets.UTF_8);
+                    tabula = JsonParser.parseString(tabulaString).getAsJsonObject();
+                }
+            }
 
-        sharedLoader = new URLClassLoader(urls, getClass().getClassLoader());
+            Set<String> packages = new TreeSet<>();
+            Enumeration<JarEntry> jarEntries = jarFile.entries();
+            while (jarEntries.hasMoreElements()) {
+                String entryName = jarEntries.nextElement().getName();
+                if (!entryName.endsWith(".class") || entryName.startsWith("META-INF/")
+                        || entryName.equals("module-info.class")) continue;
+                int slash = entryName.lastIndexOf('/');
+                packages.add(slash == -1 ? "" : entryName.substring(0, slash).replace('/', '.'));
+            }
+
+            List<ModuleDependency> moduleDependencies = new ArrayList<>();
+            for (JsonElement element : json.get("dependencies").getAsJsonArray()) {
+                JsonObject o = element.getAsJsonObject();
+                moduleDependencies.add(
+                        new ModuleDependency(
+                                o.get("name").getAsString(),
+                                o.get("minVersion").getAsString(),
+                                o.get("required").getAsBoolean(),
+                                LoadPriority.valueOf(o.get("loadPrior").getAsString())
+                        )
+                );
+            }
+            return moduleIndex.put(f, json.get("moduleName").getAsString(), json.get("mainClass").getAsString(),
+                    moduleDependencies, new ArrayList<>(packages), json, tabula);
+        }
+    }
+
+    private ThreadFactory threadFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + "-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
     }
+
     /**
      * Iterates over the sorted list of modules and loads each module in sequence.
      * Ensures that all modules are loaded in the correct order based on their dependencies.
@@ -199,6 +309,97 @@ public class ModuleLoader {
             loadModule(name);
         }
     }
+
+    /**
+     * Loads the sorted modules concurrently while still respecting their dependencies.
+     * Every module is scheduled as soon as all modules it has to wait for are done, so modules which
+     * don't share a dependency edge run their `onLoad()` at the same time. The modules are grouped into
+     * dependency waves (the length of the longest chain in front of them), which are logged for
+     * debugging purposes.
+     * <p>
+     * This mode is only used if "parallelModuleLoading" is enabled in the configuration, as the
+     * `onLoad()` of every module then has to cope with other modules loading at the same time.
+     * Otherwise the modules are loaded one after another by {@link #loadModules()}.
+     * <p>
+     * A module waits for every dependency declared with {@link LoadPriority#LOAD_BEFORE}, and every
+     * dependency declared with {@link LoadPriority#LOAD_AFTER} waits for the module.
+     * If a required LOAD_BEFORE dependency could not be loaded, the module is skipped and an error is
+     * logged. Modules on other branches of the dependency graph are not affected.
+     * <p>
+     * Example:
+     * - A and B have no dependencies, C depends on A (LOAD_BEFORE).
+     * - A and B are loaded at the same time (wave 0), C starts as soon as A is loaded (wave 1),
+     *   even if B is still loading.
+     *
+     * @param threads The maximum number of modules loaded at the same time.
+     */
+    public void loadModulesParallel(int threads) {
+        Map<String, List<String>> predecessors = new HashMap<>();
+        for (ModuleLoadHolder h : holders) predecessors.put(h.name(), new ArrayList<>());
+        for (ModuleLoadHolder h : holders) {
+            for (ModuleDependency dep : h.dependencies()) {
+                if (!predecessors.containsKey(dep.getName())) continue;
+                if (dep.getLoadPrior() == LoadPriority.LOAD_BEFORE) {
+                    predecessors.get(h.name()).add(dep.getName());
+                } else if (dep.getLoadPrior() == LoadPriority.LOAD_AFTER) {
+                    predecessors.get(dep.getName()).add(h.name());
+                }
+            }
+        }
+
+        ExecutorService loadPool = Executors.newFixedThreadPool(Math.max(1, threads), threadFactory("ModuleLoad"));
+        Set<String> loaded = ConcurrentHashMap.newKeySet();
+        Map<String, CompletableFuture<Boolean>> loads = new HashMap<>();
+        Map<String, Integer> waves = new HashMap<>();
+        Map<Integer, List<String>> waveMembers = new TreeMap<>();
+        try {
+            // The holders are topologically sorted, so every predecessor has already been scheduled.
+            for (ModuleLoadHolder h : holders) {
+                List<CompletableFuture<Boolean>> before = new ArrayList<>();
+                int wave = 0;
+                for (String p : predecessors.get(h.name())) {
+                    CompletableFuture<Boolean> load = loads.get(p);
+                    if (load == null) continue;
+                    before.add(load);
+                    wave = Math.max(wave, waves.get(p) + 1);
+                }
+                waves.put(h.name(), wave);
+                waveMembers.computeIfAbsent(wave, w -> new ArrayList<>()).add(h.name());
+
+                loads.put(h.name(), CompletableFuture.allOf(before.toArray(CompletableFuture[]::new))
+                        .thenApplyAsync(v -> loadWithDependencies(h, loaded), loadPool));
+            }
+            waveMembers.forEach((wave, names) -> log.info("Module load wave {}: {}", wave, String.join(", ", names)));
+
+            CompletableFuture.allOf(loads.values().toArray(CompletableFuture[]::new)).join();
+        } finally {
+            loadPool.shutdown();
+        }
+
+        List<String> failed = new ArrayList<>();
+        for (ModuleLoadHolder h : holders) if (!loaded.contains(h.name())) failed.add(h.name());
+        if (!failed.isEmpty()) log.error("The following modules could not be loaded: {}", String.join(", ", failed));
+    }
+
+    /**
+     * Loads a module after checking that all of its required LOAD_BEFORE dependencies have been loaded.
+     *
+     * @param h      The module to load.
+     * @param loaded The names of all modules that have been loaded successfully so far.
+     * @return {@code true} if the module has been loaded.
+     */
+    private boolean loadWithDependencies(ModuleLoadHolder h, Set<String> loaded) {
+        for (ModuleDependency dep : h.dependencies()) {
+            if (dep.isRequired() && dep.getLoadPrior() == LoadPriority.LOAD_BEFORE && !loaded.contains(dep.getName())) {
+                log.error("Module {} can't be loaded, because its required dependency {} is not available.",
+                        h.name(), dep.getName());
+                return false;
+            }
+        }
+        boolean success = loadModule(h.name());
+        if (success) loaded.add(h.name());
+        return success;
+    }
     /**
      * Loads a specific module by its name.
      * Reads the module's metadata, validates its dependencies, and initializes its main class.
@@ -209,156 +410,224 @@ public class ModuleLoader {
      * Example:
      * - If "MyModule" depends on "CoreModule", "CoreModule" must be loaded first.
      * - If "MyModule" has a main class "com.example.MyModule", the system attempts to load it dynamically.
+     * <p>
+     * The metadata collected by {@link #prepareLoading()} is reused, so the jar is only opened again
+     * if the module has not been discovered before.
      *
      * @param name The name of the module to load.
+     * @return {@code true} if the module has been loaded or was already loaded before.
      */
-    public void loadModule(String name) {
+    public boolean loadModule(String name) {
         log.info("Loading {}", name);
-        boolean hasTabulaEntry = false;
         name = name.replace(".jar", "");
+        long start = System.nanoTime();
         try {
-            Path jarPath = Path.of("modules/" + name + ".jar");
+            Path jarPath = new File(modulesFolder, name + ".jar").toPath();
 
-            try (JarFile jarFile = new JarFile(jarPath.toFile())) {
-                ZipEntry jsonEntry = jarFile.getEntry("module.json");
-                if (jsonEntry == null) {
-                    throw new ModuleInvalidException("The loaded file " + name + ".jar does not contain a module.json file.");
-                }
-                ZipEntry tabulaEntry = jarFile.getEntry("tabula.json");
-                if (tabulaEntry != null) {
-                    log.info("Module {} has a tabula.json.", name);
-                    hasTabulaEntry = true;
-                }
+            ModuleIndex.Entry entry = metadata.get(name);
+            if (entry == null) entry = readModuleEntry(jarPath.toFile());
 
-                try (InputStream inputStream = jarFile.getInputStream(jsonEntry)) {
-                    String jsonString = new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
-                    JsonObject json = JsonParser.parseString(jsonString).getAsJsonObject();
-                    List<String> authors = new ArrayList<>();
-                    for (JsonElement e : json.get("authors").getAsJsonArray()) authors.add(e.getAsString());
-                    StringBuilder autorString = new StringBuilder();
-                    for (String s : authors) autorString.append(s).append(",");
-                    log.info("Detected module with name {} created by {}.", json.get("moduleName").getAsString(), autorString);
-                    log.info("Version: {}", json.get("version").getAsString());
-
-                    if (GoPSystem.getInstance().getRegistry().getModule(name) != null) {
-                        log.warn("A module named {} seems to be already loaded. Skipping load...", name);
-                        return; // Module with the name is already loaded
-                    }
+            boolean hasTabulaEntry = entry.getTabula() != null;
+            if (hasTabulaEntry) log.info("Module {} has a tabula.json.", name);
 
-                    String mainClassName = json.get("mainClass").getAsString();
-                    //URLClassLoader classLoader = new URLClassLoader(new URL[]{jarURL}, getClass().getClassLoader());
-                    URLClassLoader classLoader = sharedLoader;
+            JsonObject json = entry.getManifest();
+            List<String> authors = new ArrayList<>();
+            for (JsonElement e : json.get("authors").getAsJsonArray()) authors.add(e.getAsString());
+            StringBuilder autorString = new StringBuilder();
+            for (String s : authors) autorString.append(s).append(",");
+            log.info("Detected module with name {} created by {}.", json.get("moduleName").getAsString(), autorString);
+            log.info("Version: {}", json.get("version").getAsString());
 
-                    log.info("Loading {}", mainClassName);
+            if (GoPSystem.getInstance().getRegistry().getModule(name) != null) {
+                log.warn("A module named {} seems to be already loaded. Skipping load...", name);
+                return true; // Module with the name is already loaded
+            }
 
-                    Class<?> mainClass = Class.forName(mainClassName, true, classLoader);
+            String mainClassName = json.get("mainClass").getAsString();
+            ModuleClassLoader classLoader = classLoaders.get(name);
+            if (classLoader == null) {
+                classLoader = classLoaders.create(name, jarPath.toUri().toURL(), entry.getPackages());
+                classLoaders.link(name, entry.getDependencies());
+            }
 
-                    if (!Module.class.isAssignableFrom(mainClass)) {
-                        throw new ModuleInvalidException("Main class must implement Module interface");
-                    }
+            log.info("Loading {}", mainClassName);
 
-                    Module moduleInstance = (Module) mainClass.getDeclaredConstructor().newInstance();
-                    moduleInstance.setJarURL(jarPath);
-                    log.info("Module Classloader: {}", moduleInstance.getClass().getClassLoader());
-
-                    try {
-                        moduleInstance.setName(json.get("moduleName").getAsString());
-                        moduleInstance.setDescription(json.get("description").getAsString());
-                        moduleInstance.setVersion(json.get("version").getAsString());
-                    } catch (NullPointerException ignored) {
-                        log.error("It looks like the author of the Module {} forgot to add important information" +
-                                " to their module.json. Please contact them for support.", name);
-                        log.error("Module {} can't be loaded due to a fatal error while loading.", name);
-                        return;
-                    }
+            Class<?> mainClass = Class.forName(mainClassName, true, classLoader);
 
-                    try {
-                        JsonElement minAPI = json.get("minAPIVersion");
-                        if (minAPI == null) log.warn("Module {} does not request a minimum API version. " +
-                                "This is recommended, as the API may change. Please report any problems" +
-                                " related to this module to the corresponding author(s).", moduleInstance.getName());
-                        else {
-                            moduleInstance.setMinAPIVersion(minAPI.getAsString());
-                            ComparableVersion moduleVersion = new ComparableVersion(minAPI.getAsString());
-                            ComparableVersion systemVersion = new ComparableVersion(GoPSystem.systemVersion);
-                            if (systemVersion.compareTo(moduleVersion) > 0)
-                                log.warn("Module {} is using an older version of" +
-                                                " GoP: {}, but the server is using {}. Expect weird things while using.",
-                                        name, minAPI.getAsString(), GoPSystem.systemVersion);
-                        }
-                        moduleInstance.setStoresSensitiveData(json.get("storesSensitiveData").getAsBoolean());
-                        moduleInstance.setUsesEncryption(json.get("usesEncryption").getAsBoolean());
-                        moduleInstance.setPreferredScope(SystemScope.valueOf(json.get("preferredScope").getAsString()
-                                .replace("Scope.", "")));
-
-                        JsonObject clientOptions = json.get("client").getAsJsonObject();
-                        moduleInstance.setUseTabula(clientOptions.get("hasTab").getAsBoolean() && hasTabulaEntry);
-                        moduleInstance.setTabulaPermission(clientOptions.get("tabViewPermission").getAsString());
-                        moduleInstance.setTabulaTabShortName(clientOptions.get("tabShortName").getAsString());
-
-                    } catch (NullPointerException ignored) {
-                        log.error("The Module.json of {} provides some broken information. Please let the Author(s) " +
-                                "correct them.", moduleInstance.getName());
-                    } catch (IllegalArgumentException ignored) {
-                        log.error("Module {} defined an illegal scope for running. Please contact the author(s) if there " +
-                                "are problems while using this module", name);
-                    }
-                    moduleInstance.onLoad();
-                    GoPSystem.getInstance().getRegistry().addModule(moduleInstance);
-                    StringBuilder s = new StringBuilder();
-                    for (Module m : GoPSystem.getInstance().getRegistry().getModules()) {
-                        s.append(m.getName()).append(", ");
-                    }
-                    s = new StringBuilder(s.substring(0, s.length() - 2));
-                    log.info(s.toString());
-
-                    File dataFolder = new File("data/" + moduleInstance.getName());
-                    if (dataFolder.mkdir()) log.info("Created new data folder for {}.", moduleInstance.getName());
-                    registry.callEvent(new Event("ServerModuleLoadEvent")
-                            .set("module", json.get("moduleName").getAsString())
-                            .set("version", json.get("version").getAsString())
-                            .set("description", json.get("description").getAsString())
-                            .set("mainClass", json.get("mainClass").getAsString())
-                            .set("preferredScope", SystemScope.valueOf(json.get("preferredScope").getAsString().replace("Scope.", "")))
-                            .set("storesSensitiveData", json.get("storesSensitiveData").getAsBoolean())
-                            .set("usesEncryption", json.get("usesEncryption").getAsBoolean())
-                            .set("usesTabula", json.get("usesTabula").getAsBoolean())
-                    );
-
-
-                    if (hasTabulaEntry) {
-                        log.info("Registering module {} into Tabula Registry...", name);
-
-                        try (InputStream iS = jarFile.getInputStream(tabulaEntry)) {
-                            String tabulaString = new String(iS.readAllBytes(), StandardCharsets.UTF_8);
-                            registry.getTabulaManager().createTab(moduleInstance.getName()
-                                    , JsonParser.parseString(tabulaString).getAsJsonObject().toString(),
-                                    moduleInstance.getTabulaPermission(), moduleInstance.getTabulaTabShortName());
-                        } catch (Exception e) {
-                            log.error("Module {} could not be registered in Tabula.", name);
-                            log.error(e.getMessage());
-                            printStacktrace(e);
-                        }
-                    }
+            if (!Module.class.isAssignableFrom(mainClass)) {
+                throw new ModuleInvalidException("Main class must implement Module interface");
+            }
 
-                    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-                        log.info("Stopping {}...", moduleInstance.getName());
-                        moduleInstance.onDisable();
-                    }));
+            Module moduleInstance = (Module) mainClass.getDeclaredConstructor().newInstance();
+            moduleInstance.setJarURL(jarPath);
+            log.info("Module Classloader: {}", moduleInstance.getClass().getClassLoader());
+
+            try {
+                moduleInstance.setName(json.get("moduleName").getAsString());
+                moduleInstance.setDescription(json.get("description").getAsString());
+                moduleInstance.setVersion(json.get("version").getAsString());
+            } catch (NullPointerException ignored) {
+                log.error("It looks like the author of the Module {} forgot to add important information" +
+                        " to their module.json. Please contact them for support.", name);
+                log.error("Module {} can't be loaded due to a fatal error while loading.", name);
+                return false;
+            }
+
+            try {
+                JsonElement minAPI = json.get("minAPIVersion");
+                if (minAPI == null) log.warn("Module {} does not request a minimum API version. " +
+                        "This is recommended, as the API may change. Please report any problems" +
+                        " related to this module to the corresponding author(s).", moduleInstance.getName());
+                else {
+                    moduleInstance.setMinAPIVersion(minAPI.getAsString());
+                    ComparableVersion moduleVersion = new ComparableVersion(minAPI.getAsString());
+                    ComparableVersion systemVersion = new ComparableVersion(GoPSystem.systemVersion);
+                    if (systemVersion.compareTo(moduleVersion) > 0)
+                        log.warn("Module {} is using an older version of" +
+                                        " GoP: {}, but the server is using {}. Expect weird things while using.",
+                                name, minAPI.getAsString(), GoPSystem.systemVersion);
                 }
+                moduleInstance.setStoresSensitiveData(json.get("storesSensitiveData").getAsBoolean());
+                moduleInstance.setUsesEncryption(json.get("usesEncryption").getAsBoolean());
+                moduleInstance.setPreferredScope(SystemScope.valueOf(json.get("preferredScope").getAsString()
+                        .replace("Scope.", "")));
+
+                JsonObject clientOptions = json.get("client").getAsJsonObject();
+                moduleInstance.setUseTabula(clientOptions.get("hasTab").getAsBoolean() && hasTabulaEntry);
+                moduleInstance.setTabulaPermission(clientOptions.get("tabViewPermission").getAsString());
+                moduleInstance.setTabulaTabShortName(clientOptions.get("tabShortName").getAsString());
+
+            } catch (NullPointerException ignored) {
+                log.error("The Module.json of {} provides some broken information. Please let the Author(s) " +
+                        "correct them.", moduleInstance.getName());
+            } catch (IllegalArgumentException ignored) {
+                log.error("Module {} defined an illegal scope for running. Please contact the author(s) if there " +
+                        "are problems while using this module", name);
+            }
+            File moduleDataFolder = new File(dataFolder, moduleInstance.getName());
+            if (moduleDataFolder.mkdirs()) log.info("Created new data folder for {}.", moduleInstance.getName());
+            moduleInstance.setDataFolder(moduleDataFolder);
+
+            lifecycle(moduleInstance.getName(), "onLoad", null, moduleInstance::onLoad);
+            GoPSystem.getInstance().getRegistry().addModule(moduleInstance);
+            StringBuilder s = new StringBuilder();
+            for (Module m : GoPSystem.getInstance().getRegistry().getModules()) {
+                s.append(m.getName()).append(", ");
+            }
+            s = new StringBuilder(s.substring(0, s.length() - 2));
+            log.info(s.toString());
+
+            registry.callEvent(new Event(ServerEvents.MODULE_LOAD)
+                    .set(ServerEvents.LOAD_MODULE, json.get("moduleName").getAsString())
+                    .set(ServerEvents.LOAD_VERSION, json.get("version").getAsString())
+                    .set(ServerEvents.LOAD_DESCRIPTION, json.get("description").getAsString())
+                    .set(ServerEvents.LOAD_MAIN_CLASS, json.get("mainClass").getAsString())
+                    .set(ServerEvents.LOAD_PREFERRED_SCOPE, SystemScope.valueOf(json.get("preferredScope").getAsString().replace("Scope.", "")))
+                    .setBoolean(ServerEvents.LOAD_STORES_SENSITIVE_DATA, json.get("storesSensitiveData").getAsBoolean())
+                    .setBoolean(ServerEvents.LOAD_USES_ENCRYPTION, json.get("usesEncryption").getAsBoolean())
+                    .setBoolean(ServerEvents.LOAD_USES_TABULA, json.get("usesTabula").getAsBoolean())
+            );
+
 
+            if (hasTabulaEntry) {
+                log.info("Registering module {} into Tabula Registry...", name);
+
+                try {
+                    registry.getTabulaManager().createTab(moduleInstance.getName(), entry.getTabula(),
+                            moduleInstance.getTabulaPermission(), moduleInstance.getTabulaTabShortName());
+                } catch (Exception e) {
+                    log.error("Module {} could not be registered in Tabula.", name);
+                    log.error(e.getMessage());
+                    printStacktrace(e);
+                }
             }
+            timing("gop_module_load_seconds", "Time it takes to load a module", name).recordSince(start);
+            return true;
         } catch (Exception e) {
             log.error("Error while loading module {}.", name);
             log.error(e.getMessage());
             printStacktrace(e);
+            return false;
+        }
+    }
+
+    /**
+     * Calls `onEnable()` of every loaded module in load order.
+     */
+    public void enableModules() {
+        for (Module m : registry.getModules()) enableModule(m);
+    }
+
+    private boolean enableModule(Module m) {
+        try {
+            lifecycle(m.getName(), "onEnable",
+                    timing("gop_module_enable_seconds", "Time onEnable() of a module takes", m.getName()), m::onEnable);
+            return true;
+        } catch (Exception e) {
+            log.error("Error while enabling module {}.", m.getName());
+            log.error(e.getMessage());
+            printStacktrace(e);
+            return false;
+        }
+    }
+
+    /**
+     * Calls `onDisable()` of every loaded module in reverse load order.
+     * This is used when the system shuts down.
+     */
+    public void disableModules() {
+        List<Module> modules = new ArrayList<>(registry.getModules());
+        Collections.reverse(modules);
+        for (Module m : modules) {
+            log.info("Stopping {}...", m.getName());
+            try {
+                lifecycle(m.getName(), "onDisable",
+                        timing("gop_module_disable_seconds", "Time onDisable() of a module takes", m.getName()), m::onDisable);
+            } catch (Exception e) {
+                log.error("Error while disabling module {}.", m.getName());
+                log.error(e.getMessage());
+            }
+            closeStore(m);
+        }
+    }
+
+    private Histogram timing(String metric, String description, String module) {
+        return registry.getStatisticManager().histogram(metric, description, "module", module);
+    }
+
+    /**
+     * Calls a lifecycle method and attributes its time and memory to the module, see {@link ModuleAccounting}.
+     *
+     * @param histogram Additionally records the duration if not null.
+     */
+    private void lifecycle(String module, String method, Histogram histogram, Runnable call) {
+        ModuleAccounting accounting = registry.getModuleAccounting();
+        long start = System.nanoTime();
+        long cpu = accounting.cpuTime();
+        long allocated = accounting.allocatedBytes();
+        try {
+            call.run();
+            if (histogram != null) histogram.recordSince(start);
+        } finally {
+            // auch ein fehlgeschlagener Aufruf hat Zeit gekostet
+            accounting.recordLifecycle(accounting.getUsage(module), method, start, cpu, allocated);
+        }
+    }
+
+    private void closeStore(Module m) {
+        try {
+            m.closeStore();
+        } catch (Exception e) {
+            log.error("Could not close the store of module {}.", m.getName());
+            log.error(e.getMessage());
         }
     }
 
     /**
      * Unloads a specific module by its name.
      * Calls the module's `onDisable()` method to allow proper cleanup before removal.
-     * The module is then removed from the registry to free up resources.
+     * The module is then removed from the registry, its event listeners and its Tabula tab are dropped
+     * and its class loader is closed to free up resources.
      * <p>
      * Example:
      * - If "MyModule" is active and needs to be disabled, calling `unloadPlugin("MyModule")`
@@ -367,9 +636,142 @@ public class ModuleLoader {
      * @param name The name of the module to unload.
      */
     public void unloadPlugin(String name) {
+        Module module = registry.getModule(name);
+        if (module == null) {
+            log.warn("Module {} is not loaded.", name);
+            return;
+        }
         log.info("Disabling {}...", name);
-        GoPSystem.getInstance().getRegistry().getModule(name).onDisable();
-        GoPSystem.getInstance().getRegistry().removeModule(name);
+        try {
+            lifecycle(name, "onDisable",
+                    timing("gop_module_disable_seconds", "Time onDisable() of a module takes", name), module::onDisable);
+        } catch (Exception e) {
+            log.error("Error while disabling module {}.", name);
+            log.error(e.getMessage());
+            printStacktrace(e);
+        }
+        closeStore(module);
+        registry.removeModule(name);
+        registry.getEventManager().unregisterListeners(module);
+        registry.getTabulaManager().removeTab(name);
+        classLoaders.remove(name);
+    }
+
+    /**
+     * Reloads a single module from its jar without restarting the system.
+     * The module is unloaded, its jar is read again and the new version is loaded and enabled.
+     * Modules depending on it keep references to the classes of the old version, so they are
+     * unloaded before and loaded again after the module.
+     * <p>
+     * If the jar has been removed, the module is only unloaded. If the module has not been loaded
+     * before, it is loaded for the first time.
+     * <p>
+     * Example:
+     * - "ShopModule" depends on "CoreModule".
+     * - Calling `reloadModule("CoreModule")` unloads ShopModule and CoreModule, then loads and enables
+     *   the new CoreModule and afterwards ShopModule again.
+     *
+     * @param name The name of the module to reload.
+     * @return {@code true} if the module has been loaded again.
+     */
+    public synchronized boolean reloadModule(String name) {
+        // Tabula-Clients bekommen erst am Ende nur die wirklich geänderten Tabs
+        registry.getTabulaManager().beginUpdate();
+        try {
+            return reload(name);
+        } finally {
+            registry.getTabulaManager().endUpdate();
+        }
+    }
+
+    private boolean reload(String name) {
+        List<String> dependents = findDependents(name);
+        List<String> loadedDependents = new ArrayList<>();
+        for (String d : dependents) if (registry.getModule(d) != null) loadedDependents.add(d);
+
+        for (int i = loadedDependents.size() - 1; i >= 0; i--) unloadPlugin(loadedDependents.get(i));
+        if (registry.getModule(name) != null) unloadPlugin(name);
+        metadata.remove(name);
+        classLoaders.remove(name);
+
+        File jar = new File(modulesFolder, name + ".jar");
+        boolean success = false;
+        if (!jar.exists()) {
+            holders.removeIf(h -> h.name().equals(name));
+            log.info("The jar of module {} has been removed.", name);
+        } else {
+            try {
+                ModuleLoadHolder holder = readModuleHolder(jar);
+                moduleIndex.save();
+                holders.removeIf(h -> h.name().equals(holder.name()));
+                holders.add(holder);
+                sortModules();
+                success = loadModule(name) && enableModule(registry.getModule(name));
+            } catch (Exception e) {
+                log.error("Error while reloading module {}.", name);
+                log.error(e.getMessage());
+                printStacktrace(e);
+            }
+        }
+
+        for (String d : loadedDependents) {
+            if (loadModule(d)) enableModule(registry.getModule(d));
+        }
+        return success;
+    }
+
+    /**
+     * Collects all modules which directly or indirectly depend on the given module, in load order.
+     */
+    private List<String> findDependents(String name) {
+        Set<String> affected = new LinkedHashSet<>();
+        affected.add(name);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (ModuleLoadHolder h : holders) {
+                if (affected.contains(h.name())) continue;
+                for (ModuleDependency dep : h.dependencies()) {
+                    if (affected.contains(dep.getName())) {
+                        affected.add(h.name());
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        }
+        List<String> dependents = new ArrayList<>();
+        for (ModuleLoadHolder h : holders) if (!h.name().equals(name) && affected.contains(h.name())) dependents.add(h.name());
+        return dependents;
+    }
+
+    /**
+     * Closes the class loaders of all modules, e.g. once the modules have been disabled or a loader only
+     * used for discovery is dropped. Classes of the modules can't be loaded afterwards.
+     */
+    public void closeClassLoaders() {
+        classLoaders.removeAll();
+    }
+
+    public boolean isWatching() {
+        return watcher.isRunning();
+    }
+
+    /**
+     * Enables or disables the watch mode, which reloads modules automatically when their jar changes.
+     *
+     * @param watching {@code true} to watch the "modules" folder.
+     */
+    public void setWatching(boolean watching) {
+        if (!watching) {
+            watcher.stop();
+            return;
+        }
+        try {
+            watcher.start();
+        } catch (IOException e) {
+            log.error("Could not watch the modules folder: {}", e.getMessage());
+        }
     }
 
     /**
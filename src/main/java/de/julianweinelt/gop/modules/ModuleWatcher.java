@@ -0,0 +1,89 @@
+package de.julianweinelt.gop.modules;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the "modules" folder and reloads a module whenever its jar is added, replaced or removed.
+ * <p>
+ * Copying a jar usually produces several file system events. Changes are therefore collected until
+ * the folder has been quiet for {@link #QUIET_PERIOD_MILLIS} before the affected modules are reloaded.
+ */
+@Slf4j
+public class ModuleWatcher {
+    private static final long QUIET_PERIOD_MILLIS = 1000;
+
+    private final ModuleLoader loader;
+    private final Path folder;
+    private WatchService watchService;
+    private Thread thread;
+
+    public ModuleWatcher(ModuleLoader loader, Path folder) {
+        this.loader = loader;
+        this.folder = folder;
+    }
+
+    public synchronized boolean isRunning() {
+        return thread != null;
+    }
+
+    public synchronized void start() throws IOException {
+        if (thread != null) return;
+        watchService = folder.getFileSystem().newWatchService();
+        folder.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        WatchService service = watchService;
+        thread = new Thread(() -> watch(service), "ModuleWatcher");
+        thread.setDaemon(true);
+        thread.start();
+        log.info("Watching {} for changed modules.", folder);
+    }
+
+    public synchronized void stop() {
+        if (thread == null) return;
+        thread.interrupt();
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            log.error("Could not close module watcher: {}", e.getMessage());
+        }
+        thread = null;
+        watchService = null;
+        log.info("Stopped watching {}.", folder);
+    }
+
+    private void watch(WatchService service) {
+        Set<String> changed = new LinkedHashSet<>();
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = changed.isEmpty()
+                        ? service.take()
+                        : service.poll(QUIET_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+                if (key == null) {
+                    for (String jarName : changed) {
+                        String name = jarName.substring(0, jarName.length() - ".jar".length());
+                        log.info("Detected a change of {}, reloading module {}...", jarName, name);
+                        loader.reloadModule(name);
+                    }
+                    changed.clear();
+                    continue;
+                }
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) continue;
+                    String fileName = event.context().toString();
+                    if (fileName.endsWith(".jar")) changed.add(fileName);
+                }
+                key.reset();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException ignored) {
+            // The watcher has been stopped
+        }
+    }
+}
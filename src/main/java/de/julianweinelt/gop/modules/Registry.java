@@ -1,20 +1,54 @@
 package de.julianweinelt.gop.modules;
 
+import de.julianweinelt.gop.commands.ConsoleCommandExecutor;
+import de.julianweinelt.gop.modules.event.Event;
 import de.julianweinelt.gop.modules.event.EventManager;
+import de.julianweinelt.gop.modules.statistics.ModuleAccounting;
+import de.julianweinelt.gop.modules.statistics.StatisticManager;
+import de.julianweinelt.gop.permission.PermissionManager;
+import de.julianweinelt.gop.tabula.TabulaManager;
 import lombok.Getter;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 @Getter
 public class Registry {
-    private final List<Module> modules = new ArrayList<>();
+    // Modules may be added concurrently while they are loaded in parallel.
+    private final List<Module> modules = new CopyOnWriteArrayList<>();
 
+    private final StatisticManager statisticManager;
+    private final ModuleAccounting moduleAccounting;
     private final ModuleLoader moduleLoader;
     private final EventManager eventManager;
+    private final PermissionManager permissionManager;
+    private final TabulaManager tabulaManager;
+    private final ConsoleCommandExecutor commandExecutor;
 
     public Registry() {
-        moduleLoader = new ModuleLoader();
-        eventManager = new EventManager();
+        statisticManager = new StatisticManager();
+        moduleAccounting = new ModuleAccounting(statisticManager);
+        moduleLoader = new ModuleLoader(this);
+        eventManager = new EventManager(statisticManager, moduleAccounting);
+        permissionManager = new PermissionManager();
+        tabulaManager = new TabulaManager(eventManager, permissionManager);
+        commandExecutor = new ConsoleCommandExecutor();
     }
-}
\ No newline at end of file
+
+    public void callEvent(Event event) {
+        eventManager.callEvent(event);
+    }
+
+    public void addModule(Module module) {
+        modules.add(module);
+    }
+
+    public Module getModule(String name) {
+        for (Module m : modules) if (m.getName().equals(name)) return m;
+        return null;
+    }
+
+    public void removeModule(String name) {
+        modules.removeIf(m -> m.getName().equals(name));
+    }
+}
@@ -0,0 +1,155 @@
+package de.julianweinelt.gop.modules.event;
+
+import de.julianweinelt.gop.modules.statistics.ModuleAccounting;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Delivers events to handlers on background threads.
+ * <p>
+ * The dispatcher consists of a fixed number of shards, each with its own {@link EventRingBuffer} and
+ * its own thread. Events are assigned to a shard by their {@link Event#getKey() key}, so all events
+ * with the same key are delivered in the order they were published. The shard threads drain their
+ * buffers in batches to keep the locking overhead low when many events are published at once.
+ * <p>
+ * The order is not kept for events the caller delivers itself: with {@link OverflowPolicy#CALLER_RUNS}
+ * when the buffer is full, and with {@link OverflowPolicy#BLOCK} when the caller is interrupted while
+ * waiting. Such an event may be handled before earlier events with the same key which are still queued.
+ * After {@link #shutdown()}, events are delivered on the caller's thread once the shard has delivered
+ * its queued events, so the order is kept. Shutting down closes the buffers, so an event is either
+ * queued before its shard thread stops or delivered by the caller, but never left in a buffer.
+ */
+public class AsyncEventDispatcher {
+    private static final long POLL_MILLIS = 500;
+
+    private final EventRingBuffer<Delivery>[] buffers;
+    private final Thread[] threads;
+    private final int batchSize;
+    private final OverflowPolicy overflowPolicy;
+    private final ModuleAccounting accounting;
+    private final LongAdder dropped = new LongAdder();
+    private volatile boolean running = true;
+
+    @SuppressWarnings("unchecked")
+    public AsyncEventDispatcher(int shards, int capacity, int batchSize, OverflowPolicy overflowPolicy,
+                                ModuleAccounting accounting) {
+        this.batchSize = Math.max(1, batchSize);
+        this.overflowPolicy = overflowPolicy;
+        this.accounting = accounting;
+        buffers = new EventRingBuffer[Math.max(1, shards)];
+        threads = new Thread[buffers.length];
+        for (int i = 0; i < buffers.length; i++) {
+            EventRingBuffer<Delivery> buffer = new EventRingBuffer<>(capacity);
+            buffers[i] = buffer;
+            String threadName = "EventDispatcher-" + (i + 1);
+            threads[i] = new Thread(() -> drain(buffer), threadName);
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+    }
+
+    /**
+     * Queues an event for the given handlers.
+     *
+     * @param event    The event to deliver.
+     * @param handlers The handlers which should receive the event, sorted by priority.
+     */
+    public void dispatch(Event event, RegisteredHandler[] handlers) {
+        Delivery delivery = new Delivery(event, handlers);
+        int shard = Math.floorMod(event.getKey().hashCode(), buffers.length);
+        EventRingBuffer<Delivery> buffer = buffers[shard];
+        if (!running) {
+            deliverAfterShutdown(shard, delivery);
+            return;
+        }
+        switch (overflowPolicy) {
+            case BLOCK -> {
+                try {
+                    if (!buffer.put(delivery)) deliverAfterShutdown(shard, delivery);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    deliver(delivery);
+                }
+            }
+            case DROP_OLDEST -> {
+                Delivery removed = buffer.offerDroppingOldest(delivery);
+                if (removed == delivery) deliverAfterShutdown(shard, delivery);
+                else if (removed != null) dropped.increment();
+            }
+            case CALLER_RUNS -> {
+                if (buffer.offer(delivery)) return;
+                // voll oder inzwischen geschlossen
+                if (running) deliver(delivery);
+                else deliverAfterShutdown(shard, delivery);
+            }
+        }
+    }
+
+    /**
+     * @return The number of events which have been dropped because a buffer was full.
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Stops the dispatcher threads after all queued events have been delivered.
+     */
+    public void shutdown() {
+        running = false;
+        for (EventRingBuffer<Delivery> buffer : buffers) buffer.close();
+        for (Thread t : threads) {
+            try {
+                t.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Delivers an event on the caller's thread once the thread of its shard has delivered the events
+     * which were queued before {@link #shutdown()}.
+     */
+    private void deliverAfterShutdown(int shard, Delivery delivery) {
+        Thread thread = threads[shard];
+        // ein Handler auf dem Shard-Thread selbst würde auf sich warten
+        if (Thread.currentThread() != thread) {
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        deliver(delivery);
+    }
+
+    private void drain(EventRingBuffer<Delivery> buffer) {
+        Object[] batch = new Object[batchSize];
+        try {
+            int n;
+            // drainTo liefert -1 erst, wenn der Buffer geschlossen und leer ist
+            while ((n = buffer.drainTo(batch, POLL_MILLIS, TimeUnit.MILLISECONDS)) >= 0) {
+                for (int i = 0; i < n; i++) {
+                    deliver((Delivery) batch[i]);
+                    batch[i] = null;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    void deliver(Delivery delivery) {
+        Event event = delivery.event();
+        for (RegisteredHandler h : delivery.handlers()) {
+            if (h.isIgnoreCancelled() && event.isCancelled()) continue;
+            EventManager.invoke(accounting, h, event);
+        }
+    }
+
+    record Delivery(Event event, RegisteredHandler[] handlers) {
+    }
+}
@@ -1,18 +1,203 @@
 package de.julianweinelt.gop.modules.event;
 
+import de.julianweinelt.gop.except.EventPropertyKeyInvalidException;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
-import lombok.extern.slf4j.Slf4j;
 
-import java.lang.annotation.*;
-import java.lang.reflect.Method;
-import java.util.*;
+import java.util.Arrays;
 
 
 // Basisklasse für Events
-@Setter
-@Getter
+// Die Werte liegen in flachen Arrays, deren Slots von den EventPropertys des EventTypes vorgegeben werden.
 public class Event {
+    @Getter
+    private final EventType type;
+    private Object[] values;
+    private long[] primitives;
+    private long assigned = 0; // Bit n ist gesetzt, wenn die Property mit ordinal n einen Wert hat
+
+    @Getter
+    @Setter
     private boolean cancelled = false;
+    @Setter
+    private String key; // Events mit gleichem Key werden asynchron in Reihenfolge zugestellt
+    @Getter
+    @Setter(AccessLevel.PACKAGE)
+    private boolean pooled = false;
+
+    public Event(String name) {
+        this(EventType.of(name));
+    }
+
+    public Event(EventType type) {
+        this.type = type;
+        this.values = new Object[type.getObjectSlots()];
+        this.primitives = new long[type.getPrimitiveSlots()];
+    }
+
+    public String getName() {
+        return type.getName();
+    }
+
+    public String getKey() {
+        return key != null ? key : type.getName();
+    }
+
+    public <T> Event set(EventProperty<T> property, T value) {
+        switch (property.getKind()) {
+            case BOOLEAN -> setPrimitive(property, (Boolean) value ? 1 : 0);
+            case INT -> setPrimitive(property, (Integer) value);
+            case LONG -> setPrimitive(property, (Long) value);
+            case DOUBLE -> setPrimitive(property, Double.doubleToRawLongBits((Double) value));
+            default -> {
+                check(property);
+                if (property.getSlot() >= values.length) values = Arrays.copyOf(values, type.getObjectSlots());
+                values[property.getSlot()] = value;
+                markAssigned(property);
+            }
+        }
+        return this;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T get(EventProperty<T> property) {
+        checkAssigned(property);
+        return switch (property.getKind()) {
+            case BOOLEAN -> (T) Boolean.valueOf(primitives[property.getSlot()] != 0);
+            case INT -> (T) Integer.valueOf((int) primitives[property.getSlot()]);
+            case LONG -> (T) Long.valueOf(primitives[property.getSlot()]);
+            case DOUBLE -> (T) Double.valueOf(Double.longBitsToDouble(primitives[property.getSlot()]));
+            default -> (T) values[property.getSlot()];
+        };
+    }
+
+    public Event setBoolean(EventProperty<Boolean> property, boolean value) {
+        return setPrimitive(property, value ? 1 : 0);
+    }
+
+    public boolean getBoolean(EventProperty<Boolean> property) {
+        checkAssigned(property);
+        return primitives[property.getSlot()] != 0;
+    }
+
+    public Event setInt(EventProperty<Integer> property, int value) {
+        return setPrimitive(property, value);
+    }
+
+    public int getInt(EventProperty<Integer> property) {
+        checkAssigned(property);
+        return (int) primitives[property.getSlot()];
+    }
+
+    public Event setLong(EventProperty<Long> property, long value) {
+        return setPrimitive(property, value);
+    }
+
+    public long getLong(EventProperty<Long> property) {
+        checkAssigned(property);
+        return primitives[property.getSlot()];
+    }
+
+    public Event setDouble(EventProperty<Double> property, double value) {
+        return setPrimitive(property, Double.doubleToRawLongBits(value));
+    }
+
+    public double getDouble(EventProperty<Double> property) {
+        checkAssigned(property);
+        return Double.longBitsToDouble(primitives[property.getSlot()]);
+    }
+
+    /**
+     * Sets a value by the key of its property. Unknown keys are declared on the {@link EventType} with the
+     * type {@code Object}, so they accept any value, like before properties were typed. Values of properties
+     * declared through {@link EventType#property(String, Class)} must match their type.
+     * Prefer {@link #set(EventProperty, Object)} for frequent events.
+     */
+    @SuppressWarnings("unchecked")
+    public Event set(String key, Object value) {
+        EventProperty<?> property = type.getProperty(key);
+        if (property == null) property = type.property(key, Object.class);
+        if (value != null && !property.getType().isInstance(value)) {
+            throw new EventPropertyKeyInvalidException("Property " + key + " of " + getName() + " is of type "
+                    + property.getType().getSimpleName() + ", not " + value.getClass().getSimpleName());
+        }
+        return set((EventProperty<Object>) property, value);
+    }
+
+    /**
+     * Reads a value by the key of its property. Primitive values are returned boxed.
+     */
+    public Object get(String key) {
+        EventProperty<?> property = type.getProperty(key);
+        if (property == null) throw new EventPropertyKeyInvalidException("Event " + getName() + " has no property " + key);
+        return get(property);
+    }
+
+    /**
+     * @return Whether a value has been set for the key.
+     */
+    public boolean has(String key) {
+        EventProperty<?> property = type.getProperty(key);
+        return property != null && isAssigned(property);
+    }
+
+    /**
+     * Creates an independent copy of this event, which is not part of any pool.
+     */
+    public Event copy() {
+        Event copy = new Event(type);
+        copy.values = values.clone();
+        copy.primitives = primitives.clone();
+        copy.assigned = assigned;
+        copy.cancelled = cancelled;
+        copy.key = key;
+        return copy;
+    }
+
+    /**
+     * Clears this event and gives it back to the pool of its type. Only events taken with
+     * {@link EventType#acquire()} are pooled, the event must not be used afterwards.
+     */
+    public void release() {
+        if (!pooled) return;
+        Arrays.fill(values, null);
+        Arrays.fill(primitives, 0);
+        assigned = 0;
+        cancelled = false;
+        key = null;
+        type.release(this);
+    }
+
+    private Event setPrimitive(EventProperty<?> property, long value) {
+        check(property);
+        if (property.getSlot() >= primitives.length) primitives = Arrays.copyOf(primitives, type.getPrimitiveSlots());
+        primitives[property.getSlot()] = value;
+        markAssigned(property);
+        return this;
+    }
+
+    private void check(EventProperty<?> property) {
+        if (property.getEventType() != type) {
+            throw new EventPropertyKeyInvalidException("Property " + property.getKey() + " belongs to "
+                    + property.getEventType().getName() + ", not to " + getName());
+        }
+    }
+
+    private void markAssigned(EventProperty<?> property) {
+        if (property.getOrdinal() < 64) assigned |= 1L << property.getOrdinal();
+    }
+
+    private boolean isAssigned(EventProperty<?> property) {
+        return property.getOrdinal() < 64
+                ? (assigned & (1L << property.getOrdinal())) != 0
+                : property.getSlot() < (property.isPrimitive() ? primitives.length : values.length);
+    }
 
-}
\ No newline at end of file
+    private void checkAssigned(EventProperty<?> property) {
+        check(property);
+        if (!isAssigned(property)) {
+            throw new EventPropertyKeyInvalidException("Event " + getName() + " has no value for " + property.getKey());
+        }
+    }
+}
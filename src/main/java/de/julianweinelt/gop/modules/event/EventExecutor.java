@@ -0,0 +1,7 @@
+package de.julianweinelt.gop.modules.event;
+
+// Ein an seinen Listener gebundener Handler, der bereits beim Registrieren erzeugt wird
+@FunctionalInterface
+public interface EventExecutor {
+    void execute(Event event) throws Throwable;
+}
@@ -5,7 +5,12 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
-// Annotation für EventHandler
+// Annotation für EventHandler, gleichbedeutend mit @Subscribe
 @Retention(RetentionPolicy.RUNTIME)
 @Target(ElementType.METHOD)
-@interface EventHandler {}
\ No newline at end of file
+public @interface EventHandler {
+    String value();
+    Priority priority() default Priority.NORMAL;
+    boolean ignoreCancelled() default false;
+    boolean async() default false;
+}
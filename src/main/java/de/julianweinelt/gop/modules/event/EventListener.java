@@ -0,0 +1,5 @@
+package de.julianweinelt.gop.modules.event;
+
+// Marker für Klassen, die Methoden mit @Subscribe enthalten
+public interface EventListener {
+}
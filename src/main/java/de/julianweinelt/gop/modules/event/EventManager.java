@@ -0,0 +1,240 @@
+package de.julianweinelt.gop.modules.event;
+
+import de.julianweinelt.gop.modules.Module;
+import de.julianweinelt.gop.modules.statistics.ModuleAccounting;
+import de.julianweinelt.gop.modules.statistics.StatisticManager;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.invoke.*;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dispatches events to the handlers registered for their name.
+ * <p>
+ * Handler methods are resolved once when a listener is registered. Each method is bound to its
+ * listener instance through {@link LambdaMetafactory}, or through a bound {@link MethodHandle} if the
+ * listener class can't be accessed with full privileges, and stored in the {@link HandlerList} of its
+ * event. Calling an event is therefore a single map lookup followed by an array walk.
+ * <p>
+ * Handlers declared with {@code async = true} are delivered by the {@link AsyncEventDispatcher} after
+ * all synchronous handlers have run on the calling thread. This way a synchronous handler can still
+ * cancel the event, and asynchronous handlers see the final cancelled state. Whole events can be
+ * delivered asynchronously with {@link #callEventAsync(Event)}.
+ * <p>
+ * The time the synchronous handlers of an event take is recorded per event name as
+ * "gop_event_dispatch_seconds", see {@link StatisticManager}. Every handler call is attributed to the
+ * module owning the handler, see {@link ModuleAccounting}.
+ */
+@Slf4j
+public class EventManager {
+    private final Map<String, HandlerList> handlerLists = new ConcurrentHashMap<>();
+    private final StatisticManager statistics;
+    private final ModuleAccounting accounting;
+    private int asyncThreads = 2;
+    private int asyncCapacity = 8192;
+    private int asyncBatchSize = 64;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+    private volatile AsyncEventDispatcher asyncDispatcher;
+
+    public EventManager(StatisticManager statistics, ModuleAccounting accounting) {
+        this.statistics = statistics;
+        this.accounting = accounting;
+    }
+
+    /**
+     * Configures the asynchronous delivery. Must be called before the first asynchronous event is published.
+     *
+     * @param threads        The number of dispatcher threads. Events with the same key always use the same thread.
+     * @param capacity       The number of events each dispatcher thread can queue.
+     * @param batchSize      The maximum number of events a dispatcher thread takes from its queue at once.
+     * @param overflowPolicy What happens if an event is published while the queue is full.
+     */
+    public synchronized void configureAsync(int threads, int capacity, int batchSize, OverflowPolicy overflowPolicy) {
+        if (asyncDispatcher != null) {
+            log.warn("Asynchronous event delivery is already running, the new settings are ignored.");
+            return;
+        }
+        this.asyncThreads = threads;
+        this.asyncCapacity = capacity;
+        this.asyncBatchSize = batchSize;
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * Registers a listener. All of its methods annotated with {@link Subscribe} or {@link EventHandler}
+     * will receive the events with the matching name.
+     *
+     * @param owner    The owner of the listener, usually the module registering it.
+     * @param listener The listener to register.
+     */
+    public void registerListener(Object owner, EventListener listener) {
+        registerListener(owner, listener, null);
+    }
+
+    /**
+     * Registers a listener, using the given lookup to access its handler methods.
+     * Passing {@code MethodHandles.lookup()} from inside the listener class allows the handlers to be
+     * bound as direct lambdas, even if they are private.
+     *
+     * @param owner    The owner of the listener, usually the module registering it.
+     * @param listener The listener to register.
+     * @param lookup   A lookup with access to the listener class, or {@code null}.
+     */
+    public void registerListener(Object owner, EventListener listener, MethodHandles.Lookup lookup) {
+        for (Class<?> c = listener.getClass(); c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Method m : c.getDeclaredMethods()) {
+                Subscribe subscribe = m.getAnnotation(Subscribe.class);
+                EventHandler handler = m.getAnnotation(EventHandler.class);
+                if (subscribe == null && handler == null) continue;
+
+                String eventName = subscribe != null ? subscribe.value() : handler.value();
+                Priority priority = subscribe != null ? subscribe.priority() : handler.priority();
+                boolean ignoreCancelled = subscribe != null ? subscribe.ignoreCancelled() : handler.ignoreCancelled();
+                boolean async = subscribe != null ? subscribe.async() : handler.async();
+
+                if (Modifier.isStatic(m.getModifiers()) || m.getParameterCount() != 1
+                        || !Event.class.isAssignableFrom(m.getParameterTypes()[0])) {
+                    log.error("Handler {}#{} must be an instance method with a single Event parameter.",
+                            c.getName(), m.getName());
+                    continue;
+                }
+                try {
+                    subscribe(owner, eventName, priority, ignoreCancelled, async, c.getName() + "#" + m.getName(),
+                            bind(listener, m, lookup));
+                } catch (Throwable t) {
+                    log.error("Could not register handler {}#{}: {}", c.getName(), m.getName(), t.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Registers a single handler for the event with the given name.
+     *
+     * @param owner           The owner of the handler, used to unregister it again.
+     * @param eventName       The name of the event.
+     * @param priority        The priority of the handler.
+     * @param ignoreCancelled Whether the handler is skipped for cancelled events.
+     * @param async           Whether the handler is called on a dispatcher thread.
+     * @param name            A name describing the handler, used for logging.
+     * @param executor        The handler.
+     */
+    public void subscribe(Object owner, String eventName, Priority priority, boolean ignoreCancelled,
+                          boolean async, String name, EventExecutor executor) {
+        handlerLists.computeIfAbsent(eventName, n -> new HandlerList(statistics.histogram("gop_event_dispatch_seconds",
+                        "Time the synchronous handlers of an event take", "event", n)))
+                .add(new RegisteredHandler(owner, name, priority, ignoreCancelled, async, executor,
+                        accounting.getUsage(owner instanceof Module m ? m.getName() : ModuleAccounting.SYSTEM)));
+    }
+
+    /**
+     * Removes all handlers registered by the given owner.
+     *
+     * @param owner The owner of the handlers, usually a module which is being unloaded.
+     */
+    public void unregisterListeners(Object owner) {
+        for (HandlerList list : handlerLists.values()) list.removeIf(h -> h.getOwner() == owner);
+    }
+
+    /**
+     * Calls all synchronous handlers of the event on the current thread and queues the event for its
+     * asynchronous handlers afterwards.
+     *
+     * @param event The event to call.
+     */
+    public void callEvent(Event event) {
+        HandlerList list = handlerLists.get(event.getName());
+        if (list == null) return;
+        RegisteredHandler[] handlers = list.getHandlers();
+        if (handlers.length > 0) {
+            long start = System.nanoTime();
+            for (RegisteredHandler h : handlers) {
+                if (h.isIgnoreCancelled() && event.isCancelled()) continue;
+                invoke(accounting, h, event);
+            }
+            list.getDispatchTime().recordSince(start);
+        }
+        RegisteredHandler[] async = list.getAsyncHandlers();
+        // Pooled events are given back by the caller as soon as this method returns
+        if (async.length > 0) getAsyncDispatcher().dispatch(event.isPooled() ? event.copy() : event, async);
+    }
+
+    /**
+     * Queues the event and delivers it to all of its handlers on a dispatcher thread, in order of priority.
+     * The caller does not wait for any handler, so it can't see whether the event has been cancelled.
+     *
+     * @param event The event to call.
+     */
+    public void callEventAsync(Event event) {
+        HandlerList list = handlerLists.get(event.getName());
+        if (list == null || list.isEmpty()) return;
+        getAsyncDispatcher().dispatch(event.isPooled() ? event.copy() : event, list.getAllHandlers());
+    }
+
+    /**
+     * Delivers all queued asynchronous events and stops the dispatcher threads.
+     */
+    public void shutdown() {
+        AsyncEventDispatcher dispatcher = asyncDispatcher;
+        if (dispatcher != null) dispatcher.shutdown();
+    }
+
+    private AsyncEventDispatcher getAsyncDispatcher() {
+        AsyncEventDispatcher dispatcher = asyncDispatcher;
+        if (dispatcher == null) {
+            synchronized (this) {
+                dispatcher = asyncDispatcher;
+                if (dispatcher == null) {
+                    dispatcher = new AsyncEventDispatcher(asyncThreads, asyncCapacity, asyncBatchSize, overflowPolicy,
+                            accounting);
+                    asyncDispatcher = dispatcher;
+                }
+            }
+        }
+        return dispatcher;
+    }
+
+    /**
+     * Calls a single handler and attributes the time and memory it used to its module.
+     */
+    static void invoke(ModuleAccounting accounting, RegisteredHandler h, Event event) {
+        long wall = System.nanoTime();
+        long cpu = accounting.cpuTime();
+        long allocated = accounting.allocatedBytes();
+        try {
+            h.getExecutor().execute(event);
+        } catch (Throwable t) {
+            log.error("Error while passing event {} to {}: {}", event.getName(), h.getName(), t.getMessage());
+        }
+        accounting.recordHandler(h.getUsage(), h.getName(), event.getName(), wall, cpu, allocated);
+    }
+
+    private EventExecutor bind(Object listener, Method method, MethodHandles.Lookup lookup) throws Throwable {
+        Class<?> declaring = method.getDeclaringClass();
+        MethodHandles.Lookup caller = lookup != null && lookup.lookupClass() == declaring
+                ? lookup
+                : MethodHandles.privateLookupIn(declaring, MethodHandles.lookup());
+        MethodHandle handle = caller.unreflect(method);
+
+        if (caller.hasFullPrivilegeAccess()) {
+            try {
+                CallSite site = LambdaMetafactory.metafactory(caller, "execute",
+                        MethodType.methodType(EventExecutor.class, declaring),
+                        MethodType.methodType(void.class, Event.class),
+                        handle,
+                        MethodType.methodType(void.class, method.getParameterTypes()[0]));
+                return (EventExecutor) site.getTarget().invoke(listener);
+            } catch (LambdaConversionException ignored) {
+                // Fall back to the bound method handle below
+            }
+        }
+        MethodHandle bound = handle.bindTo(listener).asType(MethodType.methodType(void.class, Event.class));
+        // als Block, sonst hätte der Aufruf den Typ (Event)Object und invokeExact würde fehlschlagen
+        return event -> {
+            bound.invokeExact(event);
+        };
+    }
+}
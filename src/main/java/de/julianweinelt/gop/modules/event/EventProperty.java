@@ -0,0 +1,52 @@
+package de.julianweinelt.gop.modules.event;
+
+import lombok.Getter;
+
+/**
+ * A typed key of an {@link EventType}.
+ * <p>
+ * Every property owns a fixed slot inside the events of its type, which is assigned when the property
+ * is created. Reading or writing a property is therefore an array access. Boolean, int, long and double
+ * properties are stored unboxed and can be read without allocation through the primitive getters of
+ * {@link Event}.
+ *
+ * @param <T> The type of the value.
+ */
+@Getter
+public final class EventProperty<T> {
+    private final EventType eventType;
+    private final String key;
+    private final Class<T> type;
+    private final Kind kind;
+    private final int ordinal; // Position unter allen Properties des Typs
+    private final int slot;    // Index im Objekt- oder im Primitiv-Array des Events
+
+    EventProperty(EventType eventType, String key, Class<T> type, Kind kind, int ordinal, int slot) {
+        this.eventType = eventType;
+        this.key = key;
+        this.type = type;
+        this.kind = kind;
+        this.ordinal = ordinal;
+        this.slot = slot;
+    }
+
+    public boolean isPrimitive() {
+        return kind != Kind.OBJECT;
+    }
+
+    public enum Kind {
+        OBJECT,
+        BOOLEAN,
+        INT,
+        LONG,
+        DOUBLE;
+
+        static Kind of(Class<?> type) {
+            if (type == Boolean.class) return BOOLEAN;
+            if (type == Integer.class) return INT;
+            if (type == Long.class) return LONG;
+            if (type == Double.class) return DOUBLE;
+            return OBJECT;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package de.julianweinelt.gop.modules.event;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded ring buffer with many producers and a single consumer.
+ * <p>
+ * Producers insert single elements, the consumer always drains as many elements as are available
+ * (up to the size of its batch) with one lock acquisition. Once the buffer is {@link #close() closed},
+ * no element is accepted anymore, while the consumer still receives the elements which are left.
+ *
+ * @param <E> The type of the elements.
+ */
+public class EventRingBuffer<E> {
+    private final Object[] items;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private int head = 0;
+    private int tail = 0;
+    private int count = 0;
+    private boolean closed = false;
+
+    public EventRingBuffer(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be positive");
+        items = new Object[capacity];
+    }
+
+    /**
+     * Inserts an element if there is space left.
+     *
+     * @return {@code false} if the buffer is full or closed.
+     */
+    public boolean offer(E e) {
+        lock.lock();
+        try {
+            if (closed || count == items.length) return false;
+            enqueue(e);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Inserts an element, waiting for space if the buffer is full.
+     *
+     * @return {@code false} if the buffer is closed, also if it has been closed while waiting.
+     */
+    public boolean put(E e) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (!closed && count == items.length) notFull.await();
+            if (closed) return false;
+            enqueue(e);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Inserts an element, removing the oldest element if the buffer is full.
+     *
+     * @return The removed element, {@code null} if there was space left, or the given element itself
+     * if the buffer is closed.
+     */
+    @SuppressWarnings("unchecked")
+    public E offerDroppingOldest(E e) {
+        lock.lock();
+        try {
+            if (closed) return e;
+            E dropped = null;
+            if (count == items.length) {
+                dropped = (E) items[head];
+                items[head] = null;
+                head = (head + 1) % items.length;
+                count--;
+            }
+            enqueue(e);
+            return dropped;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Moves up to {@code target.length} elements into the target array, waiting up to the given time
+     * if the buffer is empty.
+     *
+     * @return The number of elements moved, or {@code -1} if the buffer is closed and empty.
+     */
+    public int drainTo(Object[] target, long timeout, TimeUnit unit) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            long nanos = unit.toNanos(timeout);
+            while (count == 0) {
+                if (closed) return -1;
+                if (nanos <= 0) return 0;
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            int n = Math.min(count, target.length);
+            for (int i = 0; i < n; i++) {
+                target[i] = items[head];
+                items[head] = null;
+                head = (head + 1) % items.length;
+            }
+            count -= n;
+            notFull.signalAll();
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops accepting elements. Waiting producers return, the consumer can still drain the elements left.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notFull.signalAll();
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void enqueue(E e) {
+        items[tail] = e;
+        tail = (tail + 1) % items.length;
+        count++;
+        notEmpty.signal();
+    }
+}
@@ -0,0 +1,102 @@
+package de.julianweinelt.gop.modules.event;
+
+import de.julianweinelt.gop.except.EventPropertyKeyInvalidException;
+import lombok.Getter;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Describes all events with the same name and the {@link EventProperty properties} they carry.
+ * <p>
+ * Properties should be declared once, e.g. as constants, and then be used to read and write the values
+ * of an {@link Event}. Events of types with a high rate can be taken from a per thread pool with
+ * {@link #acquire()} and given back with {@link Event#release()}.
+ * <p>
+ * Example:
+ * <pre>{@code
+ * EventType PIXEL_CHANGED = EventType.of("PixelChangedEvent");
+ * EventProperty<Integer> X = PIXEL_CHANGED.property("x", Integer.class);
+ *
+ * Event e = PIXEL_CHANGED.acquire().setInt(X, 12);
+ * registry.callEvent(e);
+ * e.release();
+ * }</pre>
+ */
+public final class EventType {
+    private static final Map<String, EventType> TYPES = new ConcurrentHashMap<>();
+    private static final int POOL_SIZE = 16;
+
+    @Getter
+    private final String name;
+    private final Map<String, EventProperty<?>> properties = new ConcurrentHashMap<>();
+    private final ThreadLocal<ArrayDeque<Event>> pool = ThreadLocal.withInitial(ArrayDeque::new);
+    private volatile int propertyCount = 0;
+    private volatile int objectSlots = 0;
+    private volatile int primitiveSlots = 0;
+
+    private EventType(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Returns the type of the events with the given name, creating it if necessary.
+     */
+    public static EventType of(String name) {
+        return TYPES.computeIfAbsent(name, EventType::new);
+    }
+
+    /**
+     * Declares a property of this type. Declaring the same key twice returns the existing property.
+     *
+     * @throws EventPropertyKeyInvalidException If the key has already been declared with another type.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized <T> EventProperty<T> property(String key, Class<T> type) {
+        EventProperty<?> existing = properties.get(key);
+        if (existing != null) {
+            if (existing.getType() != type) {
+                throw new EventPropertyKeyInvalidException("Property " + key + " of " + name + " is of type "
+                        + existing.getType().getSimpleName() + ", not " + type.getSimpleName());
+            }
+            return (EventProperty<T>) existing;
+        }
+        EventProperty.Kind kind = EventProperty.Kind.of(type);
+        int slot = kind == EventProperty.Kind.OBJECT ? objectSlots++ : primitiveSlots++;
+        EventProperty<T> property = new EventProperty<>(this, key, type, kind, propertyCount++, slot);
+        properties.put(key, property);
+        return property;
+    }
+
+    /**
+     * @return The property with the given key, or {@code null} if it has not been declared.
+     */
+    public EventProperty<?> getProperty(String key) {
+        return properties.get(key);
+    }
+
+    int getObjectSlots() {
+        return objectSlots;
+    }
+
+    int getPrimitiveSlots() {
+        return primitiveSlots;
+    }
+
+    /**
+     * Takes a cleared event of this type from the pool of the current thread, or creates a new one.
+     * The event should be given back with {@link Event#release()} once it has been called.
+     */
+    public Event acquire() {
+        Event event = pool.get().pollFirst();
+        if (event == null) event = new Event(this);
+        event.setPooled(true);
+        return event;
+    }
+
+    void release(Event event) {
+        ArrayDeque<Event> events = pool.get();
+        if (events.size() < POOL_SIZE) events.addFirst(event);
+    }
+}
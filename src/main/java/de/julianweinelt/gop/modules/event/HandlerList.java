@@ -0,0 +1,89 @@
+package de.julianweinelt.gop.modules.event;
+
+import de.julianweinelt.gop.modules.statistics.Histogram;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * The handlers of one event name, kept as an array which is already sorted by {@link Priority}.
+ * <p>
+ * Synchronous and asynchronous handlers are kept in separate arrays. The arrays are replaced on every
+ * change, so dispatching an event only reads volatile fields and walks the arrays without locking or
+ * allocating.
+ */
+public class HandlerList {
+    private static final RegisteredHandler[] EMPTY = new RegisteredHandler[0];
+
+    private volatile RegisteredHandler[] handlers = EMPTY;
+    private volatile RegisteredHandler[] asyncHandlers = EMPTY;
+    private final Histogram dispatchTime;
+
+    /**
+     * @param dispatchTime Records how long the synchronous handlers of an event take together.
+     */
+    public HandlerList(Histogram dispatchTime) {
+        this.dispatchTime = dispatchTime;
+    }
+
+    public Histogram getDispatchTime() {
+        return dispatchTime;
+    }
+
+    public RegisteredHandler[] getHandlers() {
+        return handlers;
+    }
+
+    public RegisteredHandler[] getAsyncHandlers() {
+        return asyncHandlers;
+    }
+
+    /**
+     * @return All handlers sorted by priority, regardless of whether they are asynchronous.
+     */
+    public RegisteredHandler[] getAllHandlers() {
+        RegisteredHandler[] sync = handlers;
+        RegisteredHandler[] async = asyncHandlers;
+        if (async.length == 0) return sync;
+        if (sync.length == 0) return async;
+        RegisteredHandler[] all = Arrays.copyOf(sync, sync.length + async.length);
+        System.arraycopy(async, 0, all, sync.length, async.length);
+        Arrays.sort(all, Comparator.comparing(RegisteredHandler::getPriority));
+        return all;
+    }
+
+    public synchronized void add(RegisteredHandler handler) {
+        if (handler.isAsync()) asyncHandlers = append(asyncHandlers, handler);
+        else handlers = append(handlers, handler);
+    }
+
+    public synchronized boolean removeIf(Predicate<RegisteredHandler> filter) {
+        RegisteredHandler[] sync = remove(handlers, filter);
+        RegisteredHandler[] async = remove(asyncHandlers, filter);
+        boolean changed = sync != handlers || async != asyncHandlers;
+        handlers = sync;
+        asyncHandlers = async;
+        return changed;
+    }
+
+    public boolean isEmpty() {
+        return handlers.length == 0 && asyncHandlers.length == 0;
+    }
+
+    private static RegisteredHandler[] append(RegisteredHandler[] array, RegisteredHandler handler) {
+        RegisteredHandler[] updated = Arrays.copyOf(array, array.length + 1);
+        updated[array.length] = handler;
+        // Stable sort, handlers with the same priority keep their registration order
+        Arrays.sort(updated, Comparator.comparing(RegisteredHandler::getPriority));
+        return updated;
+    }
+
+    private static RegisteredHandler[] remove(RegisteredHandler[] array, Predicate<RegisteredHandler> filter) {
+        List<RegisteredHandler> remaining = new ArrayList<>(array.length);
+        for (RegisteredHandler h : array) if (!filter.test(h)) remaining.add(h);
+        return remaining.size() == array.length ? array : remaining.toArray(EMPTY);
+    }
+}
@@ -0,0 +1,8 @@
+package de.julianweinelt.gop.modules.event;
+
+// Verhalten, wenn die Warteschlange für asynchrone Events voll ist
+public enum OverflowPolicy {
+    BLOCK,          // Der Aufrufer wartet, bis wieder Platz frei ist
+    DROP_OLDEST,    // Das älteste wartende Event wird verworfen
+    CALLER_RUNS     // Die Handler werden direkt im Thread des Aufrufers ausgeführt, noch wartende Events mit gleichem Key können dabei überholt werden
+}
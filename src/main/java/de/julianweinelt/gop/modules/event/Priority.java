@@ -0,0 +1,11 @@
+package de.julianweinelt.gop.modules.event;
+
+// Reihenfolge, in der die Handler eines Events aufgerufen werden (von oben nach unten)
+public enum Priority {
+    HIGHEST,
+    HIGH,
+    NORMAL,
+    LOW,
+    LOWEST,
+    MONITOR
+}
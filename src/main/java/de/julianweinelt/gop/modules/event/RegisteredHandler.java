@@ -0,0 +1,17 @@
+package de.julianweinelt.gop.modules.event;
+
+import de.julianweinelt.gop.modules.statistics.ModuleUsage;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class RegisteredHandler {
+    private final Object owner;
+    private final String name;
+    private final Priority priority;
+    private final boolean ignoreCancelled;
+    private final boolean async;
+    private final EventExecutor executor;
+    private final ModuleUsage usage; // the usage of the owning module, see ModuleAccounting
+}
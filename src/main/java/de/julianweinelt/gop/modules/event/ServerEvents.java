@@ -0,0 +1,22 @@
+package de.julianweinelt.gop.modules.event;
+
+import de.julianweinelt.gop.util.SystemScope;
+
+// Events, die vom System selbst ausgelöst werden
+public final class ServerEvents {
+    public static final EventType MODULE_DISCOVER = EventType.of("ServerModuleDiscoverEvent");
+    public static final EventProperty<String> DISCOVER_MODULE = MODULE_DISCOVER.property("module", String.class);
+
+    public static final EventType MODULE_LOAD = EventType.of("ServerModuleLoadEvent");
+    public static final EventProperty<String> LOAD_MODULE = MODULE_LOAD.property("module", String.class);
+    public static final EventProperty<String> LOAD_VERSION = MODULE_LOAD.property("version", String.class);
+    public static final EventProperty<String> LOAD_DESCRIPTION = MODULE_LOAD.property("description", String.class);
+    public static final EventProperty<String> LOAD_MAIN_CLASS = MODULE_LOAD.property("mainClass", String.class);
+    public static final EventProperty<SystemScope> LOAD_PREFERRED_SCOPE = MODULE_LOAD.property("preferredScope", SystemScope.class);
+    public static final EventProperty<Boolean> LOAD_STORES_SENSITIVE_DATA = MODULE_LOAD.property("storesSensitiveData", Boolean.class);
+    public static final EventProperty<Boolean> LOAD_USES_ENCRYPTION = MODULE_LOAD.property("usesEncryption", Boolean.class);
+    public static final EventProperty<Boolean> LOAD_USES_TABULA = MODULE_LOAD.property("usesTabula", Boolean.class);
+
+    private ServerEvents() {
+    }
+}
@@ -0,0 +1,16 @@
+package de.julianweinelt.gop.modules.event;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// Markiert eine Methode eines EventListeners, die das Event mit dem angegebenen Namen empfängt
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Subscribe {
+    String value();
+    Priority priority() default Priority.NORMAL;
+    boolean ignoreCancelled() default false;
+    boolean async() default false;
+}
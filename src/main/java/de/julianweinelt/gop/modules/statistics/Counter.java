@@ -0,0 +1,57 @@
+package de.julianweinelt.gop.modules.statistics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A value which only goes up, e.g. the number of handled requests. Counting from many threads at once
+ * doesn't contend, see {@link LongAdder}.
+ * <p>
+ * Counters can count in a smaller unit than they are exported in, e.g. nanoseconds for a counter named
+ * "..._seconds_total" with a unit of {@code 1e-9}.
+ */
+public class Counter extends StatisticEntry {
+    private final LongAdder value = new LongAdder();
+    private final double unit;
+
+    public Counter(String name, String description, String... labels) {
+        this(name, description, 1, labels);
+    }
+
+    /**
+     * @param unit The factor applied to the value in the Prometheus output.
+     */
+    public Counter(String name, String description, double unit, String... labels) {
+        super(name, description, labels);
+        this.unit = unit;
+    }
+
+    public void increment() {
+        value.increment();
+    }
+
+    public void add(long amount) {
+        value.add(amount);
+    }
+
+    public long get() {
+        return value.sum();
+    }
+
+    @Override
+    public String getType() {
+        return "counter";
+    }
+
+    @Override
+    public void writePrometheus(StringBuilder out) {
+        out.append(getName()).append(getLabelText()).append(' ');
+        if (unit == 1) out.append(get());
+        else out.append(get() * unit);
+        out.append('\n');
+    }
+
+    @Override
+    public String describe() {
+        return String.valueOf(get());
+    }
+}
@@ -0,0 +1,35 @@
+package de.julianweinelt.gop.modules.statistics;
+
+import java.util.function.DoubleSupplier;
+
+/**
+ * A value read when the metrics are requested, e.g. the size of a queue. Nothing is recorded in between.
+ */
+public class Gauge extends StatisticEntry {
+    private final DoubleSupplier value;
+
+    public Gauge(String name, String description, DoubleSupplier value, String... labels) {
+        super(name, description, labels);
+        this.value = value;
+    }
+
+    public double get() {
+        return value.getAsDouble();
+    }
+
+    @Override
+    public String getType() {
+        return "gauge";
+    }
+
+    @Override
+    public void writePrometheus(StringBuilder out) {
+        out.append(getName()).append(getLabelText()).append(' ').append(get()).append('\n');
+    }
+
+    @Override
+    public String describe() {
+        double v = get();
+        return v == Math.rint(v) ? String.valueOf((long) v) : String.format("%.3f", v);
+    }
+}
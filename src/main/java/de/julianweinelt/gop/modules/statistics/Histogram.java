@@ -0,0 +1,135 @@
+package de.julianweinelt.gop.modules.statistics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records durations in nanoseconds and answers percentiles, similar to an HdrHistogram.
+ * <p>
+ * Every power of two is split into 16 buckets, so a percentile is at most about 6% off the real value,
+ * from nanoseconds up to centuries. Recording a value only increments one bucket, its memory is fixed
+ * (960 buckets) and nothing is allocated.
+ * <p>
+ * Example:
+ * <pre>{@code
+ * long start = System.nanoTime();
+ * module.onEnable();
+ * histogram.recordSince(start);
+ * histogram.getPercentile(0.99); // in nanoseconds
+ * }</pre>
+ */
+public class Histogram extends StatisticEntry {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public Histogram(String name, String description, String... labels) {
+        super(name, description, labels);
+    }
+
+    /**
+     * @param nanos The duration to record, negative values are recorded as 0.
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucket(value));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Records the time passed since {@code startNanos}, taken from {@link System#nanoTime()}.
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getSum() {
+        return sum.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @param quantile The quantile between 0 and 1, e.g. 0.99.
+     * @return The upper bound of the bucket containing the quantile in nanoseconds, 0 if nothing has been recorded.
+     */
+    public long getPercentile(double quantile) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) total += snapshot[i] = counts.get(i);
+        return percentile(snapshot, total, quantile);
+    }
+
+    @Override
+    public String getType() {
+        return "summary";
+    }
+
+    @Override
+    public void writePrometheus(StringBuilder out) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) total += snapshot[i] = counts.get(i);
+        for (double q : QUANTILES) {
+            out.append(getName()).append(labelText("quantile", String.valueOf(q))).append(' ')
+                    .append(seconds(percentile(snapshot, total, q))).append('\n');
+        }
+        out.append(getName()).append("_sum").append(getLabelText()).append(' ').append(seconds(getSum())).append('\n');
+        out.append(getName()).append("_count").append(getLabelText()).append(' ').append(total).append('\n');
+    }
+
+    @Override
+    public String describe() {
+        return String.format("count %d, p50 %s, p99 %s, max %s", getCount(), millis(getPercentile(0.5)),
+                millis(getPercentile(0.99)), millis(getMax()));
+    }
+
+    private long percentile(long[] snapshot, long total, double quantile) {
+        if (total == 0) return 0;
+        long target = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= target) return Math.min(upperBound(i), getMax());
+        }
+        return getMax();
+    }
+
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int mantissa = (int) (value >>> (exponent - SUB_BUCKET_BITS));
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + (mantissa - SUB_BUCKETS);
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int shift = bucket / SUB_BUCKETS - 1;
+        long mantissa = SUB_BUCKETS + bucket % SUB_BUCKETS;
+        // beim obersten Bucket läuft das über und ergibt genau Long.MAX_VALUE
+        return ((mantissa + 1) << shift) - 1;
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / 1_000_000_000d;
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.3f ms", nanos / 1_000_000d);
+    }
+}
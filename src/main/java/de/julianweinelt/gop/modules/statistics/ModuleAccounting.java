@@ -0,0 +1,168 @@
+package de.julianweinelt.gop.modules.statistics;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Attributes the wall time, CPU time and allocated memory of event handlers and lifecycle methods to the
+ * module they belong to, so a degraded node shows which module is responsible.
+ * <p>
+ * The CPU time and the allocated bytes are read from the {@link com.sun.management.ThreadMXBean} of the
+ * calling thread before and after each call. If the JVM doesn't support one of them, it is reported as 0.
+ * Calls slower than the configured thresholds are logged, at most once every 10 seconds per module.
+ * Handlers registered by the system itself instead of a module are collected under {@link #SYSTEM}.
+ * <p>
+ * Accounting is disabled until {@link #configure(boolean, long, long)} enables it, as it adds four reads of
+ * the thread counters to every handler call.
+ * <p>
+ * Example:
+ * <pre>{@code
+ * ModuleUsage usage = accounting.getUsage(module.getName());
+ * long wall = System.nanoTime(), cpu = accounting.cpuTime(), allocated = accounting.allocatedBytes();
+ * module.onEnable();
+ * accounting.recordLifecycle(usage, "onEnable", wall, cpu, allocated);
+ * }</pre>
+ */
+@Slf4j
+public class ModuleAccounting {
+    /**
+     * The usage of everything that is not a module, e.g. the live updates of Tabula.
+     */
+    public static final String SYSTEM = "system";
+    private static final long WARNING_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final StatisticManager statistics;
+    private final com.sun.management.ThreadMXBean threads;
+    private final Map<String, ModuleUsage> usages = new ConcurrentHashMap<>();
+    private volatile boolean cpuSupported = false;
+    private volatile boolean allocationSupported = false;
+    @Getter
+    private volatile boolean enabled = false;
+    private volatile long slowHandlerNanos = TimeUnit.MILLISECONDS.toNanos(50);
+    private volatile long slowLifecycleNanos = TimeUnit.SECONDS.toNanos(2);
+
+    public ModuleAccounting(StatisticManager statistics) {
+        this.statistics = statistics;
+        this.threads = ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean sun ? sun : null;
+    }
+
+    /**
+     * @param enabled             Whether calls are measured at all. Enabling turns on the thread counters of the JVM.
+     * @param slowHandlerMillis   Event handlers taking longer are logged, 0 to disable.
+     * @param slowLifecycleMillis Lifecycle methods taking longer are logged, 0 to disable.
+     */
+    public synchronized void configure(boolean enabled, long slowHandlerMillis, long slowLifecycleMillis) {
+        if (enabled && !this.enabled) enableCounters();
+        this.enabled = enabled;
+        this.slowHandlerNanos = slowHandlerMillis > 0 ? TimeUnit.MILLISECONDS.toNanos(slowHandlerMillis) : Long.MAX_VALUE;
+        this.slowLifecycleNanos = slowLifecycleMillis > 0 ? TimeUnit.MILLISECONDS.toNanos(slowLifecycleMillis) : Long.MAX_VALUE;
+    }
+
+    private void enableCounters() {
+        if (threads == null) {
+            log.warn("The JVM has no thread CPU and allocation counters, modules are only timed.");
+            return;
+        }
+        try {
+            if (threads.isCurrentThreadCpuTimeSupported()) {
+                if (!threads.isThreadCpuTimeEnabled()) threads.setThreadCpuTimeEnabled(true);
+                cpuSupported = true;
+            }
+            if (threads.isThreadAllocatedMemorySupported()) {
+                if (!threads.isThreadAllocatedMemoryEnabled()) threads.setThreadAllocatedMemoryEnabled(true);
+                allocationSupported = true;
+            }
+        } catch (UnsupportedOperationException | SecurityException e) {
+            log.warn("Could not enable the thread CPU and allocation counters, modules are only timed.");
+            log.warn(e.getMessage());
+        }
+    }
+
+    /**
+     * @return The usage of a module, created on first use. Callers recording often should keep it.
+     */
+    public ModuleUsage getUsage(String module) {
+        return usages.computeIfAbsent(module, m -> new ModuleUsage(m, statistics));
+    }
+
+    /**
+     * @return The usage of all modules, the module with the most CPU time first.
+     */
+    public List<ModuleUsage> getUsages() {
+        List<ModuleUsage> list = new ArrayList<>(usages.values());
+        list.sort(Comparator.comparingLong((ModuleUsage u) -> u.getCpuNanos().get())
+                .thenComparingLong(u -> u.getWallNanos().get()).reversed());
+        return list;
+    }
+
+    /**
+     * @return The CPU time of the current thread in nanoseconds, 0 if not measured.
+     */
+    public long cpuTime() {
+        return enabled && cpuSupported ? threads.getCurrentThreadCpuTime() : 0;
+    }
+
+    /**
+     * @return The bytes allocated by the current thread so far, 0 if not measured.
+     */
+    public long allocatedBytes() {
+        return enabled && allocationSupported ? threads.getCurrentThreadAllocatedBytes() : 0;
+    }
+
+    /**
+     * Records a call of an event handler, started when the given values have been taken.
+     */
+    public void recordHandler(ModuleUsage usage, String handler, String event, long startWall, long startCpu,
+                              long startAllocated) {
+        if (!enabled) return;
+        long wall = System.nanoTime() - startWall;
+        long cpu = cpuTime() - startCpu;
+        long allocated = allocatedBytes() - startAllocated;
+        record(usage, wall, cpu, allocated);
+        if (wall >= slowHandlerNanos) slow(usage, wall, cpu, allocated, "Handler " + handler + " for event " + event);
+    }
+
+    /**
+     * Records a call of a lifecycle method like "onEnable", started when the given values have been taken.
+     */
+    public void recordLifecycle(ModuleUsage usage, String method, long startWall, long startCpu, long startAllocated) {
+        if (!enabled) return;
+        long wall = System.nanoTime() - startWall;
+        long cpu = cpuTime() - startCpu;
+        long allocated = allocatedBytes() - startAllocated;
+        record(usage, wall, cpu, allocated);
+        if (wall >= slowLifecycleNanos) slow(usage, wall, cpu, allocated, method + "()");
+    }
+
+    private void record(ModuleUsage usage, long wall, long cpu, long allocated) {
+        usage.getCalls().increment();
+        usage.getWallNanos().add(wall);
+        if (cpuSupported) usage.getCpuNanos().add(cpu);
+        if (allocationSupported) usage.getAllocatedBytes().add(allocated);
+    }
+
+    private void slow(ModuleUsage usage, long wall, long cpu, long allocated, String call) {
+        usage.getSlowCalls().increment();
+        long now = System.nanoTime();
+        long last = usage.getLastWarning().get();
+        // höchstens eine Warnung pro Modul alle 10 Sekunden, der Rest wird nur gezählt
+        if (last != Long.MIN_VALUE && now - last < WARNING_INTERVAL_NANOS || !usage.getLastWarning().compareAndSet(last, now)) {
+            usage.getSuppressedWarnings().incrementAndGet();
+            return;
+        }
+        long suppressed = usage.getSuppressedWarnings().getAndSet(0);
+        log.warn("{} of module {} took {} ms (CPU {} ms, {} KB allocated){}.", call, usage.getModule(),
+                TimeUnit.NANOSECONDS.toMillis(wall),
+                cpuSupported ? TimeUnit.NANOSECONDS.toMillis(cpu) : "?",
+                allocationSupported ? allocated / 1024 : "?",
+                suppressed > 0 ? ", " + suppressed + " more slow calls since the last warning" : "");
+    }
+}
@@ -0,0 +1,35 @@
+package de.julianweinelt.gop.modules.statistics;
+
+import lombok.Getter;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The resources a module has used so far in its event handlers and lifecycle methods, see
+ * {@link ModuleAccounting}. The counters are also exported as metrics labelled with the module.
+ */
+@Getter
+public class ModuleUsage {
+    private final String module;
+    private final Counter calls;
+    private final Counter wallNanos;
+    private final Counter cpuNanos;
+    private final Counter allocatedBytes;
+    private final Counter slowCalls;
+    private final AtomicLong lastWarning = new AtomicLong(Long.MIN_VALUE);
+    private final AtomicLong suppressedWarnings = new AtomicLong();
+
+    ModuleUsage(String module, StatisticManager statistics) {
+        this.module = module;
+        this.calls = statistics.counter("gop_module_calls_total",
+                "Event handler and lifecycle calls of a module", "module", module);
+        this.wallNanos = statistics.counter("gop_module_wall_seconds_total",
+                "Time spent in the event handlers and lifecycle methods of a module", 1e-9, "module", module);
+        this.cpuNanos = statistics.counter("gop_module_cpu_seconds_total",
+                "CPU time used by the event handlers and lifecycle methods of a module", 1e-9, "module", module);
+        this.allocatedBytes = statistics.counter("gop_module_allocated_bytes_total",
+                "Memory allocated by the event handlers and lifecycle methods of a module", "module", module);
+        this.slowCalls = statistics.counter("gop_module_slow_calls_total",
+                "Calls of a module slower than the configured threshold", "module", module);
+    }
+}
@@ -1,4 +1,65 @@
 package de.julianweinelt.gop.modules.statistics;
 
-public class StatisticEntry {
+import lombok.Getter;
+
+/**
+ * A single metric kept by the {@link StatisticManager}, identified by its name and labels.
+ * <p>
+ * Metrics with the same name but other labels (e.g. one per module) share their description and type.
+ * Names follow the Prometheus conventions, e.g. "gop_module_enable_seconds".
+ */
+@Getter
+public abstract class StatisticEntry {
+    private final String name;
+    private final String description;
+    private final String[] labels;
+    private final String labelText;
+
+    /**
+     * @param labels Label names and values in turns, e.g. {@code "module", "Shop"}.
+     */
+    protected StatisticEntry(String name, String description, String... labels) {
+        if (labels.length % 2 != 0) throw new IllegalArgumentException("Labels must be given as name-value pairs.");
+        this.name = name;
+        this.description = description;
+        this.labels = labels.clone();
+        this.labelText = labelText(labels);
+    }
+
+    /**
+     * @return The Prometheus type, e.g. "counter".
+     */
+    public abstract String getType();
+
+    /**
+     * Writes the samples of this metric in the Prometheus text format.
+     */
+    public abstract void writePrometheus(StringBuilder out);
+
+    /**
+     * @return A short, human-readable summary of the current value.
+     */
+    public abstract String describe();
+
+    /**
+     * @return The label text with an additional label, e.g. {@code {module="Shop",quantile="0.99"}}.
+     */
+    protected String labelText(String name, String value) {
+        String extra = name + "=\"" + value + "\"";
+        return labelText.isEmpty() ? "{" + extra + "}" : labelText.substring(0, labelText.length() - 1) + "," + extra + "}";
+    }
+
+    static String labelText(String... labels) {
+        if (labels.length == 0) return "";
+        StringBuilder s = new StringBuilder("{");
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) s.append(',');
+            s.append(labels[i]).append("=\"").append(escape(labels[i + 1])).append('"');
+        }
+        return s.append('}').toString();
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
 }
@@ -0,0 +1,92 @@
+package de.julianweinelt.gop.modules.statistics;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.DoubleSupplier;
+import java.util.function.Function;
+
+/**
+ * Keeps all metrics of the system, see {@link Counter}, {@link Histogram} and {@link Gauge}.
+ * <p>
+ * Metrics are created on first use and then shared: asking twice for the same name and labels returns the
+ * same instance. Callers recording often should keep the instance instead of looking it up every time.
+ * <p>
+ * Example:
+ * <pre>{@code
+ * Histogram enable = statistics.histogram("gop_module_enable_seconds", "Duration of onEnable()", "module", name);
+ * long start = System.nanoTime();
+ * module.onEnable();
+ * enable.recordSince(start);
+ * }</pre>
+ */
+public class StatisticManager {
+    private final Map<String, StatisticEntry> entries = new ConcurrentHashMap<>();
+
+    public Counter counter(String name, String description, String... labels) {
+        return get(name, labels, Counter.class, k -> new Counter(name, description, labels));
+    }
+
+    /**
+     * @param unit The factor applied to the value in the Prometheus output, see {@link Counter}.
+     */
+    public Counter counter(String name, String description, double unit, String... labels) {
+        return get(name, labels, Counter.class, k -> new Counter(name, description, unit, labels));
+    }
+
+    public Histogram histogram(String name, String description, String... labels) {
+        return get(name, labels, Histogram.class, k -> new Histogram(name, description, labels));
+    }
+
+    /**
+     * Registers a gauge, replacing an existing gauge with the same name and labels.
+     */
+    public Gauge gauge(String name, String description, DoubleSupplier value, String... labels) {
+        Gauge gauge = new Gauge(name, description, value, labels);
+        entries.put(key(name, labels), gauge);
+        return gauge;
+    }
+
+    public void remove(String name, String... labels) {
+        entries.remove(key(name, labels));
+    }
+
+    /**
+     * @return All metrics sorted by name and labels.
+     */
+    public List<StatisticEntry> getEntries() {
+        List<StatisticEntry> list = new ArrayList<>(entries.values());
+        list.sort(Comparator.comparing(StatisticEntry::getName).thenComparing(StatisticEntry::getLabelText));
+        return list;
+    }
+
+    /**
+     * @return All metrics in the Prometheus text format (version 0.0.4).
+     */
+    public String toPrometheus() {
+        StringBuilder out = new StringBuilder(4096);
+        String current = null;
+        for (StatisticEntry entry : getEntries()) {
+            if (!entry.getName().equals(current)) {
+                current = entry.getName();
+                out.append("# HELP ").append(current).append(' ').append(entry.getDescription().replace("\n", " ")).append('\n');
+                out.append("# TYPE ").append(current).append(' ').append(entry.getType()).append('\n');
+            }
+            entry.writePrometheus(out);
+        }
+        return out.toString();
+    }
+
+    private <T extends StatisticEntry> T get(String name, String[] labels, Class<T> type, Function<String, T> factory) {
+        String key = key(name, labels);
+        StatisticEntry entry = entries.get(key);
+        if (entry == null) entry = entries.computeIfAbsent(key, factory);
+        if (!type.isInstance(entry)) {
+            throw new IllegalArgumentException("Metric " + name + " is a " + entry.getType() + ", not a " + type.getSimpleName());
+        }
+        return type.cast(entry);
+    }
+
+    private static String key(String name, String[] labels) {
+        return name + StatisticEntry.labelText(labels);
+    }
+}
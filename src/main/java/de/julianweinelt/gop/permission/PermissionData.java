@@ -0,0 +1,16 @@
+package de.julianweinelt.gop.permission;
+
+import lombok.Getter;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The content of "permissions.json": all roles and the roles of every user.
+ */
+@Getter
+public class PermissionData {
+    private final Map<String, Role> roles = new LinkedHashMap<>();
+    private final Map<String, List<String>> users = new LinkedHashMap<>();
+}
@@ -0,0 +1,190 @@
+package de.julianweinelt.gop.permission;
+
+import de.julianweinelt.gop.util.LoadableManager;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.nio.file.NoSuchFileException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Keeps the roles and the roles of the users, stored in "permissions.json".
+ * <p>
+ * The permissions of a user are resolved once: the nodes of all roles (including their parents) are
+ * compiled into a {@link PermissionTrie}, which is cached for the user. Users with the same roles share
+ * the same trie, so e.g. the tabs visible for it only have to be determined once.
+ * <p>
+ * Changing a role drops all cached tries, changing the roles of a user only the trie of this user. The
+ * listeners registered with {@link #addInvalidationListener(Consumer)} are told about it, so they can
+ * drop what they have cached per session.
+ * <p>
+ * Example:
+ * <pre>{@code
+ * PermissionManager permissions = registry.getPermissionManager();
+ * permissions.setRole(new Role("admin", List.of("tabula.*"), List.of()));
+ * permissions.setUserRoles("julian", List.of("admin"));
+ * permissions.has("julian", "tabula.shop.view"); // true
+ * }</pre>
+ */
+@Slf4j
+public class PermissionManager extends LoadableManager<PermissionData> {
+    private final File file;
+
+    private final Map<String, PermissionTrie> userCache = new ConcurrentHashMap<>();
+    private final Map<String, PermissionTrie> roleSetCache = new ConcurrentHashMap<>();
+    private final List<Consumer<String>> invalidationListeners = new CopyOnWriteArrayList<>();
+    private final AtomicLong version = new AtomicLong();
+    // Version und Caches werden nur unter dieser Sperre zusammen geändert
+    private final Object cacheLock = new Object();
+
+    public PermissionManager() {
+        this(new File("permissions.json"));
+    }
+
+    PermissionManager(File file) {
+        super(log, false, null, true);
+        this.file = file;
+        setDataToSave(new PermissionData());
+    }
+
+    @Override
+    public void loadData() {
+        try {
+            PermissionData data = loadObject(file.getPath(), PermissionData.class);
+            setDataToSave(data == null ? new PermissionData() : data);
+        } catch (NoSuchFileException e) {
+            log.info("No permissions found, creating a new file...");
+            setDataToSave(new PermissionData());
+            saveData();
+        }
+        invalidate(null);
+    }
+
+    @Override
+    public void saveData() {
+        saveObject(file);
+    }
+
+    /**
+     * @return The resolved permissions of the user. Users without roles get the permissions of the role "default".
+     */
+    public PermissionTrie getPermissions(String user) {
+        PermissionTrie trie = userCache.get(user);
+        if (trie != null) return trie;
+        long before = version.get();
+        Set<String> roles = new TreeSet<>();
+        synchronized (this) {
+            List<String> assigned = getSaveData().getUsers().get(user);
+            for (String role : assigned == null || assigned.isEmpty() ? List.of("default") : assigned) {
+                collectRoles(role, roles);
+            }
+        }
+        String key = String.join(",", roles);
+        trie = roleSetCache.get(key);
+        if (trie == null) trie = compile(roles);
+        synchronized (cacheLock) {
+            // nur cachen, wenn sich währenddessen nichts geändert hat
+            if (version.get() != before) return trie;
+            PermissionTrie shared = roleSetCache.putIfAbsent(key, trie);
+            if (shared != null) trie = shared;
+            userCache.put(user, trie);
+        }
+        return trie;
+    }
+
+    public boolean has(String user, String permission) {
+        return getPermissions(user).has(permission);
+    }
+
+    public synchronized Role getRole(String name) {
+        return getSaveData().getRoles().get(name);
+    }
+
+    public synchronized Collection<Role> getRoles() {
+        return List.copyOf(getSaveData().getRoles().values());
+    }
+
+    /**
+     * Adds or replaces a role and saves the permissions.
+     */
+    public void setRole(Role role) {
+        synchronized (this) {
+            getSaveData().getRoles().put(role.getName(), role);
+            saveData();
+        }
+        invalidate(null);
+    }
+
+    public void removeRole(String name) {
+        synchronized (this) {
+            if (getSaveData().getRoles().remove(name) == null) return;
+            saveData();
+        }
+        invalidate(null);
+    }
+
+    public synchronized List<String> getUserRoles(String user) {
+        List<String> roles = getSaveData().getUsers().get(user);
+        return roles == null ? List.of() : List.copyOf(roles);
+    }
+
+    /**
+     * Sets the roles of a user and saves the permissions.
+     */
+    public void setUserRoles(String user, List<String> roles) {
+        synchronized (this) {
+            getSaveData().getUsers().put(user, new ArrayList<>(roles));
+            saveData();
+        }
+        invalidate(user);
+    }
+
+    /**
+     * @param listener Called with the name of the user whose permissions changed, or {@code null} if the
+     *                 permissions of all users may have changed.
+     */
+    public void addInvalidationListener(Consumer<String> listener) {
+        invalidationListeners.add(listener);
+    }
+
+    private void invalidate(String user) {
+        synchronized (cacheLock) {
+            version.incrementAndGet();
+            if (user == null) {
+                roleSetCache.clear();
+                userCache.clear();
+            } else {
+                userCache.remove(user);
+            }
+        }
+        for (Consumer<String> listener : invalidationListeners) {
+            try {
+                listener.accept(user);
+            } catch (Exception e) {
+                log.error("Error while invalidating cached permissions.");
+                log.error(e.getMessage());
+            }
+        }
+    }
+
+    private void collectRoles(String name, Set<String> roles) {
+        // Zyklen in den Eltern-Rollen werden über das Set abgefangen
+        if (!roles.add(name)) return;
+        Role role = getSaveData().getRoles().get(name);
+        if (role == null || role.getParents() == null) return;
+        for (String parent : role.getParents()) collectRoles(parent, roles);
+    }
+
+    private synchronized PermissionTrie compile(Set<String> roleNames) {
+        List<String> nodes = new ArrayList<>();
+        for (String name : roleNames) {
+            Role role = getSaveData().getRoles().get(name);
+            if (role != null && role.getPermissions() != null) nodes.addAll(role.getPermissions());
+        }
+        return PermissionTrie.compile(nodes);
+    }
+}
@@ -0,0 +1,94 @@
+package de.julianweinelt.gop.permission;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A set of permission nodes compiled into a trie, so checking a permission only walks its segments.
+ * <p>
+ * Nodes are separated by dots. A node ending in {@code .*} grants everything below it, a single {@code *}
+ * grants everything. Nodes starting with {@code -} deny instead of grant. The most specific node decides;
+ * if a grant and a deny are equally specific, the deny wins.
+ * <p>
+ * Example:
+ * <pre>{@code
+ * PermissionTrie trie = PermissionTrie.compile(List.of("tabula.*", "-tabula.shop.refund", "pixels.view"));
+ * trie.has("tabula.shop.view");   // true
+ * trie.has("tabula.shop.refund"); // false
+ * trie.has("pixels.edit");        // false
+ * }</pre>
+ * Tries are immutable and can be shared by all threads.
+ */
+public final class PermissionTrie {
+    private static final byte UNSET = 0;
+    private static final byte ALLOW = 1;
+    private static final byte DENY = -1;
+
+    private final Node root = new Node();
+
+    private PermissionTrie() {
+    }
+
+    /**
+     * @param nodes The permission nodes, e.g. the permissions of all roles of a user.
+     * @return The compiled trie.
+     */
+    public static PermissionTrie compile(Collection<String> nodes) {
+        PermissionTrie trie = new PermissionTrie();
+        for (String raw : nodes) {
+            if (raw == null) continue;
+            String node = raw.trim().toLowerCase();
+            byte decision = ALLOW;
+            if (node.startsWith("-")) {
+                decision = DENY;
+                node = node.substring(1);
+            }
+            if (node.isEmpty()) continue;
+
+            boolean wildcard = node.equals("*") || node.endsWith(".*");
+            String path = node.equals("*") ? "" : wildcard ? node.substring(0, node.length() - 2) : node;
+            Node current = trie.root;
+            if (!path.isEmpty()) {
+                for (String segment : path.split("\\.")) current = current.children.computeIfAbsent(segment, s -> new Node());
+            }
+            if (wildcard) current.wildcard = merge(current.wildcard, decision);
+            else current.exact = merge(current.exact, decision);
+        }
+        return trie;
+    }
+
+    /**
+     * @param permission The permission to check, e.g. "tabula.shop.view". {@code null} or empty is always granted.
+     * @return Whether the permission is granted.
+     */
+    public boolean has(String permission) {
+        if (permission == null || permission.isEmpty()) return true;
+        String node = permission.toLowerCase();
+        Node current = root;
+        byte decision = UNSET;
+        int start = 0;
+        while (true) {
+            // ein Wildcard gilt für alles unterhalb des Knotens
+            if (current.wildcard != UNSET) decision = current.wildcard;
+            int end = node.indexOf('.', start);
+            Node next = current.children.get(end < 0 ? node.substring(start) : node.substring(start, end));
+            if (next == null) return decision == ALLOW;
+            current = next;
+            if (end < 0) break;
+            start = end + 1;
+        }
+        if (current.exact != UNSET) decision = current.exact;
+        return decision == ALLOW;
+    }
+
+    private static byte merge(byte existing, byte decision) {
+        return existing == DENY || decision == DENY ? DENY : ALLOW;
+    }
+
+    private static final class Node {
+        private final Map<String, Node> children = new HashMap<>(4);
+        private byte exact = UNSET;
+        private byte wildcard = UNSET;
+    }
+}
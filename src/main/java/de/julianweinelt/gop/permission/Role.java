@@ -0,0 +1,32 @@
+package de.julianweinelt.gop.permission;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A named set of permission nodes. A role also has all permissions of its parents.
+ * <p>
+ * Example:
+ * <pre>{@code
+ * {"name": "moderator", "permissions": ["tabula.players.*", "-tabula.players.ban"], "parents": ["default"]}
+ * }</pre>
+ */
+@Getter
+@Setter
+public class Role {
+    private String name;
+    private List<String> permissions = new ArrayList<>();
+    private List<String> parents = new ArrayList<>();
+
+    public Role() {
+    }
+
+    public Role(String name, List<String> permissions, List<String> parents) {
+        this.name = name;
+        this.permissions = new ArrayList<>(permissions);
+        this.parents = new ArrayList<>(parents);
+    }
+}
@@ -0,0 +1,274 @@
+package de.julianweinelt.gop.session;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import de.julianweinelt.gop.tabula.FailReason;
+import de.julianweinelt.gop.tabula.TabulaServer;
+import de.julianweinelt.gop.tabula.http.HttpResponse;
+import de.julianweinelt.gop.util.LoadableManager;
+import de.julianweinelt.gop.util.RateLimiter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.nio.file.NoSuchFileException;
+import java.util.Arrays;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Checks the passwords of the Tabula users and opens their sessions.
+ * <p>
+ * Password hashes are slow on purpose, so they run on their own pool with one thread per core and a
+ * bounded queue instead of on the threads of the Tabula server. A burst of logins can therefore neither
+ * block the dashboards nor queue up unlimited work: logins beyond the queue are answered with 503.
+ * Before anything is hashed, every login takes an attempt from the bucket of the user and of the IP
+ * address, see {@link RateLimiter}.
+ * <p>
+ * The passwords are stored as hashes in "credentials.json". Logins of unknown users hash anyway, so they
+ * take as long as logins with a wrong password.
+ * <p>
+ * Example:
+ * <pre>{@code
+ * authService.setPassword("julian", "secret".toCharArray()).join();
+ * SessionTokens tokens = authService.login("julian", "secret".toCharArray(), "127.0.0.1").join();
+ * }</pre>
+ */
+@Slf4j
+public class AuthService extends LoadableManager<CredentialData> {
+    private static final int QUEUE_PER_THREAD = 16;
+
+    private final File file = new File("credentials.json");
+    private final SessionManager sessions;
+    private final PasswordHasher hasher;
+    private final RateLimiter userLimiter;
+    private final RateLimiter addressLimiter;
+    private final ThreadPoolExecutor executor;
+    private final String unknownUserHash;
+
+    private final LongAdder hashes = new LongAdder();
+    private final LongAdder hashNanos = new LongAdder();
+    private final LongAccumulator maxHashNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder rateLimited = new LongAdder();
+
+    /**
+     * @param sessions         Opens the sessions of successful logins.
+     * @param iterations       The PBKDF2 iterations of new hashes.
+     * @param threads          The threads hashing passwords, 0 for one per core.
+     * @param loginsPerUser    The login attempts per minute and user.
+     * @param loginsPerAddress The login attempts per minute and IP address.
+     */
+    public AuthService(SessionManager sessions, int iterations, int threads, int loginsPerUser, int loginsPerAddress) {
+        super(log, false, null, true);
+        this.sessions = sessions;
+        this.hasher = new PasswordHasher(iterations);
+        this.userLimiter = new RateLimiter(loginsPerUser, loginsPerUser);
+        this.addressLimiter = new RateLimiter(loginsPerAddress, loginsPerAddress);
+        int size = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadId = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(size * QUEUE_PER_THREAD), r -> {
+            Thread t = new Thread(r, "Tabula-Auth-" + threadId.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }, new ThreadPoolExecutor.AbortPolicy());
+        this.unknownUserHash = hasher.hash("unknown".toCharArray());
+        setDataToSave(new CredentialData());
+    }
+
+    @Override
+    public void loadData() {
+        try {
+            CredentialData data = loadObject(file.getPath(), CredentialData.class);
+            setDataToSave(data == null ? new CredentialData() : data);
+        } catch (NoSuchFileException e) {
+            log.info("No Tabula users found, add one with \"users add <name> <password>\".");
+        }
+    }
+
+    @Override
+    public void saveData() {
+        saveObject(file);
+    }
+
+    /**
+     * Checks the password of a user and opens a session.
+     *
+     * @param user     The name of the user.
+     * @param password The password, cleared after the check.
+     * @param address  The IP address of the client.
+     * @return The tokens of the new session, or why the login failed. Fails with a
+     *         {@link RejectedExecutionException} if too many logins are waiting.
+     */
+    public CompletableFuture<SessionTokens> login(String user, char[] password, String address) {
+        if (!addressLimiter.tryAcquire(address) || !userLimiter.tryAcquire(user)) {
+            Arrays.fill(password, '\0');
+            rateLimited.increment();
+            return CompletableFuture.completedFuture(SessionTokens.failed(FailReason.TOO_MANY_ATTEMPTS));
+        }
+        return submit(() -> {
+            try {
+                String stored = getSaveData().getPasswords().get(user);
+                boolean valid = timed(() -> hasher.verify(password, stored == null ? unknownUserHash : stored));
+                if (!valid || stored == null) return SessionTokens.failed(FailReason.WRONG_CREDENTIALS);
+                if (hasher.needsRehash(stored)) updatePassword(user, stored, timed(() -> hasher.hash(password)));
+                return sessions.create(user);
+            } finally {
+                Arrays.fill(password, '\0');
+            }
+        });
+    }
+
+    /**
+     * Adds a user.
+     *
+     * @return {@code null} on success, {@link FailReason#USERNAME_ALREADY_GIVEN} if the user exists.
+     */
+    public CompletableFuture<FailReason> addUser(String user, char[] password) {
+        return submit(() -> {
+            String hash = hashAndClear(password);
+            if (getSaveData().getPasswords().putIfAbsent(user, hash) != null) return FailReason.USERNAME_ALREADY_GIVEN;
+            saveData();
+            return null;
+        });
+    }
+
+    /**
+     * Sets the password of a user, adding the user if necessary, and closes all sessions of the user.
+     */
+    public CompletableFuture<Void> setPassword(String user, char[] password) {
+        return submit(() -> {
+            getSaveData().getPasswords().put(user, hashAndClear(password));
+            saveData();
+            sessions.logoutAll(user);
+            return null;
+        });
+    }
+
+    /**
+     * Removes a user and closes all sessions of the user.
+     *
+     * @return Whether the user existed.
+     */
+    public boolean removeUser(String user) {
+        if (getSaveData().getPasswords().remove(user) == null) return false;
+        saveData();
+        sessions.logoutAll(user);
+        return true;
+    }
+
+    public boolean hasUser(String user) {
+        return getSaveData().getPasswords().containsKey(user);
+    }
+
+    /**
+     * @return The latency of the password hashes and the rejected logins so far.
+     */
+    public HashStats getStats() {
+        long count = hashes.sum();
+        return new HashStats(count, count == 0 ? 0 : hashNanos.sum() / count, maxHashNanos.get(),
+                executor.getQueue().size(), rejected.sum(), rateLimited.sum());
+    }
+
+    /**
+     * Registers the login endpoint: POST /api/login with {"user": "...", "password": "..."}. Answers with
+     * {@link SessionTokens}, 401 for wrong credentials, 429 if rate limited and 503 if overloaded.
+     *
+     * @param server The server to register the endpoint on.
+     */
+    public void registerRoutes(TabulaServer server) {
+        server.routeAsync("POST", "/api/login", request -> {
+            JsonObject body;
+            try {
+                JsonElement element = JsonParser.parseString(request.getBodyAsString());
+                body = element.isJsonObject() ? element.getAsJsonObject() : null;
+            } catch (RuntimeException e) {
+                body = null;
+            }
+            if (body == null || !body.has("user") || !body.has("password")) {
+                return CompletableFuture.completedFuture(HttpResponse.status(400));
+            }
+            String user = body.get("user").getAsString();
+            String address = address(request.getRemoteAddress());
+            return login(user, body.get("password").getAsString().toCharArray(), address)
+                    .handle((tokens, error) -> {
+                        if (error != null) return HttpResponse.status(503).header("Retry-After", "1");
+                        if (tokens.failReason() == FailReason.TOO_MANY_ATTEMPTS) {
+                            long retry = Math.max(userLimiter.getRetryMillis(user), addressLimiter.getRetryMillis(address));
+                            return HttpResponse.status(429).header("Retry-After", String.valueOf(Math.max(1, (retry + 999) / 1000)));
+                        }
+                        return SessionManager.respond(tokens);
+                    });
+        });
+    }
+
+    /**
+     * Stops the hashing threads. Logins still waiting are dropped.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private <T> CompletableFuture<T> submit(Callable<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(task.call());
+                } catch (Exception e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private <T> T timed(Callable<T> hash) throws Exception {
+        long start = System.nanoTime();
+        try {
+            return hash.call();
+        } finally {
+            long nanos = System.nanoTime() - start;
+            hashes.increment();
+            hashNanos.add(nanos);
+            maxHashNanos.accumulate(nanos);
+        }
+    }
+
+    private String hashAndClear(char[] password) throws Exception {
+        try {
+            return timed(() -> hasher.hash(password));
+        } finally {
+            Arrays.fill(password, '\0');
+        }
+    }
+
+    private void updatePassword(String user, String old, String hash) {
+        // nur ersetzen, wenn das Passwort nicht gerade geändert wurde
+        if (getSaveData().getPasswords().replace(user, old, hash)) saveData();
+    }
+
+    private static String address(InetSocketAddress address) {
+        return address == null || address.getAddress() == null ? "unknown" : address.getAddress().getHostAddress();
+    }
+
+    /**
+     * A snapshot of {@link #getStats()}.
+     *
+     * @param hashes       The passwords hashed so far.
+     * @param averageNanos The average time of a hash.
+     * @param maxNanos     The longest time of a hash.
+     * @param queued       The logins waiting for a thread.
+     * @param rejected     The logins rejected because the queue was full.
+     * @param rateLimited  The logins rejected by the rate limits.
+     */
+    public record HashStats(long hashes, long averageNanos, long maxNanos, int queued, long rejected, long rateLimited) {
+    }
+}
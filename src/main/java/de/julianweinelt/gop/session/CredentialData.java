@@ -0,0 +1,13 @@
+package de.julianweinelt.gop.session;
+
+import lombok.Getter;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The content of "credentials.json": the password hash of every Tabula user, see {@link PasswordHasher}.
+ */
+@Getter
+public class CredentialData {
+    private final ConcurrentHashMap<String, String> passwords = new ConcurrentHashMap<>();
+}
@@ -0,0 +1,59 @@
+package de.julianweinelt.gop.session;
+
+import lombok.Getter;
+
+/**
+ * A login of a Tabula client. The session lives as long as its refresh token, every refresh replaces the
+ * refresh token and extends the session.
+ * <p>
+ * Only the SHA-256 hashes of the refresh tokens are kept, so a leaked "sessions.json" can't be used to log in.
+ */
+@Getter
+public class Session {
+    private String id;
+    private String user;
+    private long createdAt;
+    private volatile long expiresAt;
+    private volatile String refreshHash;
+    private volatile String previousRefreshHash;
+    private volatile String accessTokenId;
+    private volatile long accessExpiresAt;
+    private transient volatile boolean closed;
+
+    Session() {
+    }
+
+    Session(String id, String user, String refreshHash, long createdAt, long expiresAt) {
+        this.id = id;
+        this.user = user;
+        this.refreshHash = refreshHash;
+        this.createdAt = createdAt;
+        this.expiresAt = expiresAt;
+    }
+
+    void rotate(String refreshHash, long expiresAt) {
+        this.previousRefreshHash = this.refreshHash;
+        this.refreshHash = refreshHash;
+        this.expiresAt = expiresAt;
+    }
+
+    void setAccessToken(String tokenId, long expiresAt) {
+        this.accessTokenId = tokenId;
+        this.accessExpiresAt = expiresAt;
+    }
+
+    void close() {
+        closed = true;
+    }
+
+    /**
+     * @return A copy for saving, must be called while holding the lock of the session.
+     */
+    Session copy() {
+        Session copy = new Session(id, user, refreshHash, createdAt, expiresAt);
+        copy.previousRefreshHash = previousRefreshHash;
+        copy.accessTokenId = accessTokenId;
+        copy.accessExpiresAt = accessExpiresAt;
+        return copy;
+    }
+}
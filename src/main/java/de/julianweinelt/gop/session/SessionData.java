@@ -0,0 +1,13 @@
+package de.julianweinelt.gop.session;
+
+import lombok.Getter;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The content of "sessions.json": all open sessions by their id.
+ */
+@Getter
+public class SessionData {
+    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();
+}
@@ -0,0 +1,321 @@
+package de.julianweinelt.gop.session;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import de.julianweinelt.gop.tabula.FailReason;
+import de.julianweinelt.gop.tabula.TabulaServer;
+import de.julianweinelt.gop.tabula.http.HttpRequest;
+import de.julianweinelt.gop.tabula.http.HttpResponse;
+import de.julianweinelt.gop.util.LoadableManager;
+import de.julianweinelt.gop.util.TabulaJWT;
+import de.julianweinelt.gop.util.TimingWheel;
+import lombok.extern.slf4j.Slf4j;
+import org.jose4j.lang.JoseException;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the sessions of the Tabula clients.
+ * <p>
+ * A login creates a session with a short-lived access token (see {@link TabulaJWT}) and a refresh token.
+ * Every refresh replaces the refresh token, so each one can only be used once. If a replaced refresh
+ * token is used again, it has been stolen (or the client is broken) and the whole session is closed.
+ * <p>
+ * Sessions are kept in a {@link ConcurrentHashMap}, refreshing one only locks the session itself. Expired
+ * sessions are removed by a {@link TimingWheel} instead of being searched for. If persistence is enabled,
+ * the sessions are written to "sessions.json" in the background, so a restart doesn't log out every client.
+ * Every session is only changed while holding its own lock, so the background save copies them under that lock.
+ * <p>
+ * Example:
+ * <pre>{@code
+ * SessionTokens tokens = sessionManager.create("julian");
+ * // later, before tokens.accessToken() expires
+ * SessionTokens next = sessionManager.refresh(tokens.refreshToken());
+ * }</pre>
+ */
+@Slf4j
+public class SessionManager extends LoadableManager<SessionData> {
+    private static final Gson GSON = new Gson();
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final int TOKEN_BYTES = 32;
+    private static final long TICK_MILLIS = 1000;
+    private static final int WHEEL_SIZE = 512;
+    private static final long WRITE_BEHIND_MILLIS = 5000;
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    });
+
+    private final File file = new File("sessions.json");
+    private final TabulaJWT jwt;
+    private final long accessTokenSeconds;
+    private final long sessionMillis;
+    private final boolean persistent;
+    // Hashes des aktuellen und des vorherigen Refresh-Tokens jeder Session
+    private final Map<String, Session> byRefreshHash = new ConcurrentHashMap<>();
+    private final TimingWheel<Session> expiry = new TimingWheel<>("Session-Expiry", TICK_MILLIS, WHEEL_SIZE, this::expire);
+
+    /**
+     * @param jwt                Issues the access tokens.
+     * @param accessTokenSeconds The lifetime of an access token.
+     * @param sessionMillis      The time a session stays open without being refreshed.
+     * @param persistent         Whether the sessions are saved to "sessions.json".
+     */
+    public SessionManager(TabulaJWT jwt, long accessTokenSeconds, long sessionMillis, boolean persistent) {
+        super(log, false, null, false);
+        this.jwt = jwt;
+        this.accessTokenSeconds = accessTokenSeconds;
+        this.sessionMillis = sessionMillis;
+        this.persistent = persistent;
+        setDataToSave(new SessionData());
+        if (persistent) enableWriteBehind(file, WRITE_BEHIND_MILLIS);
+    }
+
+    @Override
+    public void loadData() {
+        if (!persistent) return;
+        SessionData data;
+        try {
+            data = loadObject(file.getPath(), SessionData.class);
+        } catch (NoSuchFileException e) {
+            return;
+        }
+        if (data == null) return;
+        long now = System.currentTimeMillis();
+        for (Session session : data.getSessions().values()) {
+            if (session.getExpiresAt() <= now || session.getRefreshHash() == null) continue;
+            add(session);
+        }
+        log.info("Restored {} Tabula sessions.", getSaveData().getSessions().size());
+    }
+
+    @Override
+    public void saveData() {
+        if (persistent) saveObject(file);
+    }
+
+    @Override
+    protected SessionData snapshot(SessionData data) {
+        SessionData copy = new SessionData();
+        for (Session session : data.getSessions().values()) {
+            synchronized (session) {
+                if (!session.isClosed()) copy.getSessions().put(session.getId(), session.copy());
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Opens a new session. The credentials of the user must have been checked before.
+     *
+     * @param user The name of the user.
+     * @return The tokens of the session.
+     */
+    public SessionTokens create(String user) {
+        long now = System.currentTimeMillis();
+        String refreshToken = randomToken();
+        Session session = new Session(randomToken(), user, hash(refreshToken), now, now + sessionMillis);
+        synchronized (session) {
+            add(session);
+            markDirty();
+            return issue(session, refreshToken);
+        }
+    }
+
+    /**
+     * Replaces a refresh token with new tokens and extends the session.
+     *
+     * @param refreshToken The current refresh token of the session.
+     * @return The new tokens, or the reason why the session can't be refreshed.
+     */
+    public SessionTokens refresh(String refreshToken) {
+        if (refreshToken == null || refreshToken.isEmpty()) return SessionTokens.failed(FailReason.TOKEN_INVALID);
+        String hash = hash(refreshToken);
+        Session session = byRefreshHash.get(hash);
+        if (session == null) return SessionTokens.failed(FailReason.TOKEN_INVALID);
+        long now = System.currentTimeMillis();
+        synchronized (session) {
+            if (session.isClosed()) return SessionTokens.failed(FailReason.TOKEN_INVALID);
+            if (session.getExpiresAt() <= now) {
+                close(session);
+                return SessionTokens.failed(FailReason.TOKEN_EXPIRED);
+            }
+            if (!hash.equals(session.getRefreshHash())) {
+                log.warn("A replaced refresh token of {} has been used again, closing the session.", session.getUser());
+                close(session);
+                return SessionTokens.failed(FailReason.TOKEN_INVALID);
+            }
+            String next = randomToken();
+            String previous = session.getPreviousRefreshHash();
+            if (previous != null) byRefreshHash.remove(previous, session);
+            session.rotate(hash(next), now + sessionMillis);
+            byRefreshHash.put(session.getRefreshHash(), session);
+            // das alte Access-Token wird durch das neue ersetzt
+            jwt.revokeId(session.getAccessTokenId(), session.getAccessExpiresAt());
+            markDirty();
+            return issue(session, next);
+        }
+    }
+
+    /**
+     * Closes the session of a refresh token and revokes its access token.
+     *
+     * @return Whether a session has been closed.
+     */
+    public boolean logout(String refreshToken) {
+        if (refreshToken == null || refreshToken.isEmpty()) return false;
+        Session session = byRefreshHash.get(hash(refreshToken));
+        if (session == null) return false;
+        synchronized (session) {
+            if (session.isClosed()) return false;
+            close(session);
+            return true;
+        }
+    }
+
+    /**
+     * Closes all sessions of a user, e.g. after the password has been changed.
+     *
+     * @return The number of closed sessions.
+     */
+    public int logoutAll(String user) {
+        int closed = 0;
+        for (Session session : getSaveData().getSessions().values()) {
+            if (!session.getUser().equals(user)) continue;
+            synchronized (session) {
+                if (session.isClosed()) continue;
+                close(session);
+                closed++;
+            }
+        }
+        return closed;
+    }
+
+    /**
+     * @return The open sessions of a user.
+     */
+    public List<Session> getSessions(String user) {
+        List<Session> sessions = new ArrayList<>();
+        for (Session session : getSaveData().getSessions().values()) {
+            if (session.getUser().equals(user)) sessions.add(session);
+        }
+        return sessions;
+    }
+
+    /**
+     * Registers the endpoints of the sessions:
+     * <ul>
+     *     <li>POST /api/session/refresh - {"refreshToken": "..."}, answers with new {@link SessionTokens} or 401</li>
+     *     <li>POST /api/session/logout - {"refreshToken": "..."}, answers with 204</li>
+     * </ul>
+     *
+     * @param server The server to register the endpoints on.
+     */
+    public void registerRoutes(TabulaServer server) {
+        server.route("POST", "/api/session/refresh", request -> {
+            String refreshToken = refreshToken(request);
+            if (refreshToken == null) return HttpResponse.status(400);
+            return respond(refresh(refreshToken));
+        });
+        server.route("POST", "/api/session/logout", request -> {
+            String refreshToken = refreshToken(request);
+            if (refreshToken == null) return HttpResponse.status(400);
+            logout(refreshToken);
+            return HttpResponse.status(204);
+        });
+    }
+
+    /**
+     * Answers a login or refresh with the tokens, or with 401 and the reason.
+     */
+    public static HttpResponse respond(SessionTokens tokens) {
+        if (!tokens.isValid()) {
+            return HttpResponse.json(401, "{\"reason\":\"" + tokens.failReason().name() + "\"}");
+        }
+        return HttpResponse.json(200, GSON.toJson(tokens)).header("Cache-Control", "no-store");
+    }
+
+    private static String refreshToken(HttpRequest request) {
+        try {
+            JsonElement body = JsonParser.parseString(request.getBodyAsString());
+            if (!body.isJsonObject()) return null;
+            JsonObject object = body.getAsJsonObject();
+            return object.has("refreshToken") ? object.get("refreshToken").getAsString() : null;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Must be called while holding the lock of the session.
+     */
+    private SessionTokens issue(Session session, String refreshToken) {
+        String accessToken;
+        try {
+            accessToken = jwt.issue(session.getUser(), accessTokenSeconds, Map.of("sid", session.getId()));
+        } catch (JoseException e) {
+            log.error("Could not sign the access token of {}.", session.getUser());
+            log.error(e.getMessage());
+            return SessionTokens.failed(FailReason.TOKEN_INVALID);
+        }
+        // legt das Token gleich im Cache ab, die erste Anfrage des Clients prüft keine Signatur mehr
+        TabulaJWT.Result result = jwt.verify(accessToken);
+        session.setAccessToken(result.getTokenId(), result.getExpiresAt());
+        return new SessionTokens(null, session.getUser(), accessToken, refreshToken, result.getExpiresAt(),
+                session.getExpiresAt());
+    }
+
+    private void add(Session session) {
+        getSaveData().getSessions().put(session.getId(), session);
+        byRefreshHash.put(session.getRefreshHash(), session);
+        if (session.getPreviousRefreshHash() != null) byRefreshHash.put(session.getPreviousRefreshHash(), session);
+        expiry.schedule(session, session.getExpiresAt());
+    }
+
+    /**
+     * Must be called while holding the lock of the session.
+     */
+    private void close(Session session) {
+        session.close();
+        getSaveData().getSessions().remove(session.getId(), session);
+        byRefreshHash.remove(session.getRefreshHash(), session);
+        if (session.getPreviousRefreshHash() != null) byRefreshHash.remove(session.getPreviousRefreshHash(), session);
+        jwt.revokeId(session.getAccessTokenId(), session.getAccessExpiresAt());
+        markDirty();
+    }
+
+    private void expire(Session session) {
+        synchronized (session) {
+            if (session.isClosed()) return;
+            // seit dem Einplanen refreshte Sessions werden neu eingeplant
+            if (session.getExpiresAt() > System.currentTimeMillis()) {
+                expiry.schedule(session, session.getExpiresAt());
+                return;
+            }
+            close(session);
+        }
+    }
+
+    private static String randomToken() {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        RANDOM.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    private static String hash(String token) {
+        byte[] digest = SHA256.get().digest(token.getBytes(StandardCharsets.UTF_8));
+        return Base64.getEncoder().encodeToString(digest);
+    }
+}
@@ -0,0 +1,23 @@
+package de.julianweinelt.gop.session;
+
+import de.julianweinelt.gop.tabula.FailReason;
+
+/**
+ * The answer to a login or refresh. On success, the client uses the access token for its requests and the
+ * refresh token once to get new tokens before the access token expires.
+ *
+ * @param failReason           Why no tokens were issued, {@code null} on success.
+ * @param accessTokenExpiresAt The expiration of the access token in milliseconds since the epoch.
+ * @param sessionExpiresAt     The expiration of the refresh token and the session.
+ */
+public record SessionTokens(FailReason failReason, String user, String accessToken, String refreshToken,
+                            long accessTokenExpiresAt, long sessionExpiresAt) {
+
+    public static SessionTokens failed(FailReason reason) {
+        return new SessionTokens(reason, null, null, null, 0, 0);
+    }
+
+    public boolean isValid() {
+        return failReason == null;
+    }
+}
@@ -0,0 +1,36 @@
+package de.julianweinelt.gop.tabula;
+
+import de.julianweinelt.gop.tabula.config.TabulaTab;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * A {@link TabulaTab} together with its JSON form, encoded once as UTF-8, and an ETag derived from it.
+ * Requests for a tab just write out the cached bytes, or answer with 304 if the client already has them.
+ */
+@Getter
+@AllArgsConstructor
+public class CompiledTab {
+    private final TabulaTab tab;
+    private final byte[] json;
+    private final String etag;
+
+    static CompiledTab of(TabulaTab tab, String json) {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        return new CompiledTab(tab, bytes, etag(bytes));
+    }
+
+    static String etag(byte[] content) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(content);
+            return "\"" + HexFormat.of().formatHex(hash, 0, 16) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -1,8 +1,9 @@
-package de.julianweinelt.gop.authmodule.auth;
+package de.julianweinelt.gop.tabula;
 
 public enum FailReason {
     TOKEN_INVALID,
     TOKEN_EXPIRED,
     WRONG_CREDENTIALS,
-    USERNAME_ALREADY_GIVEN
+    USERNAME_ALREADY_GIVEN,
+    TOO_MANY_ATTEMPTS
 }
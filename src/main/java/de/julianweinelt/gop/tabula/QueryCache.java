@@ -0,0 +1,86 @@
+package de.julianweinelt.gop.tabula;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the pages of Tabula tables for a short time, so admins looking at the same table share one query.
+ * <p>
+ * A query which is already running is not started a second time, the other clients wait for its result.
+ * A page is stored as the list of "rows" messages (without the id of the request) sent to the first client.
+ */
+final class QueryCache {
+    private final long ttlMillis;
+    private final int maxEntries;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    QueryCache(long ttlMillis, int maxEntries) {
+        this.ttlMillis = Math.max(0, ttlMillis);
+        this.maxEntries = Math.max(1, maxEntries);
+    }
+
+    /**
+     * Returns the cached or running query for the key, or registers a new one. If {@link Lookup#owner()} is set,
+     * the caller has to run the query and call {@link #complete} or {@link #fail}.
+     */
+    Lookup lookup(String key) {
+        long now = System.currentTimeMillis();
+        while (true) {
+            Entry entry = entries.get(key);
+            if (entry != null && (entry.expires == 0 || entry.expires > now)) return new Lookup(entry.result, false);
+            Entry fresh = new Entry();
+            boolean added = entry == null ? entries.putIfAbsent(key, fresh) == null : entries.replace(key, entry, fresh);
+            if (added) {
+                if (entries.size() > maxEntries) sweep(now);
+                return new Lookup(fresh.result, true);
+            }
+        }
+    }
+
+    void complete(String key, CompletableFuture<List<String>> result, List<String> messages) {
+        Entry entry = entries.get(key);
+        if (entry != null && entry.result == result) {
+            entry.expires = System.currentTimeMillis() + ttlMillis;
+            if (ttlMillis == 0 || entry.stale) entries.remove(key, entry);
+        }
+        result.complete(List.copyOf(messages));
+    }
+
+    void fail(String key, CompletableFuture<List<String>> result, Throwable cause) {
+        Entry entry = entries.get(key);
+        if (entry != null && entry.result == result) entries.remove(key, entry);
+        result.completeExceptionally(cause);
+    }
+
+    /**
+     * Removes the pages whose key starts with the prefix. Running queries may already have read the old
+     * data, so their result is only given to the clients already waiting for it and not kept afterwards.
+     */
+    void invalidate(String prefix) {
+        entries.entrySet().removeIf(e -> {
+            if (!e.getKey().startsWith(prefix)) return false;
+            e.getValue().stale = true;
+            return e.getValue().expires != 0;
+        });
+    }
+
+    void clear() {
+        entries.clear();
+    }
+
+    private void sweep(long now) {
+        entries.values().removeIf(e -> e.expires != 0 && e.expires <= now);
+    }
+
+    record Lookup(CompletableFuture<List<String>> result, boolean owner) {
+    }
+
+    private static final class Entry {
+        private final CompletableFuture<List<String>> result = new CompletableFuture<>();
+        // 0 = Abfrage läuft noch
+        private volatile long expires = 0;
+        private volatile boolean stale = false;
+    }
+}
@@ -0,0 +1,682 @@
+package de.julianweinelt.gop.tabula;
+
+import de.julianweinelt.gop.tabula.http.HttpHandler;
+import de.julianweinelt.gop.tabula.http.HttpRequest;
+import de.julianweinelt.gop.tabula.http.HttpResponse;
+import de.julianweinelt.gop.tabula.http.WebSocketListener;
+import de.julianweinelt.gop.tabula.http.WebSocketSession;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The state of a single client connection of the {@link TabulaServer}.
+ * <p>
+ * Everything except the {@link WebSocketSession} methods runs on the event loop thread. Requests are
+ * parsed as soon as their bytes arrive, so a client may send several requests without waiting
+ * (pipelining). The handlers run in parallel on the worker threads, but every request gets a slot
+ * in {@link #inflight} and the responses are written strictly in the order of these slots.
+ * <p>
+ * After a WebSocket upgrade the same buffers carry WebSocket frames instead.
+ */
+@Slf4j
+final class TabulaConnection implements WebSocketSession {
+    private static final int MAX_HEADER_SIZE = 16 * 1024;
+    private static final int MAX_BODY_SIZE = 1024 * 1024;
+    private static final int MAX_MESSAGE_SIZE = 1024 * 1024;
+    private static final int MAX_PIPELINED = 16;
+    private static final long MAX_BACKLOG = 4 * 1024 * 1024;
+    private static final long HTTP_IDLE_MILLIS = 60_000;
+    private static final long PING_INTERVAL_MILLIS = 30_000;
+    private static final long WEBSOCKET_IDLE_MILLIS = 75_000;
+    private static final String WEBSOCKET_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    private static final byte[] HEADER_END = {'\r', '\n', '\r', '\n'};
+
+    private final TabulaServer server;
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private final InetSocketAddress remoteAddress;
+
+    private ByteBuffer in = ByteBuffer.allocate(8 * 1024);
+    private final ArrayDeque<Slot> inflight = new ArrayDeque<>();
+    private final ArrayDeque<ByteBuffer> outbound = new ArrayDeque<>();
+    private final Queue<ByteBuffer> pushed = new ConcurrentLinkedQueue<>();
+    private final AtomicLong backlog = new AtomicLong();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private final Object drainLock = new Object();
+    private volatile int drainWaiters = 0;
+
+    private boolean paused = false;
+    private boolean stopParsing = false;
+    private boolean inputClosed = false;
+    private boolean closeAfterWrite = false;
+    private volatile boolean closeRequested = false;
+    private volatile boolean closed = false;
+    private long lastActivity = System.currentTimeMillis();
+    private long pingSent = 0;
+
+    // WebSocket
+    private volatile WebSocketListener listener;
+    private HttpRequest upgradeRequest;
+    private String messageRoute;
+    private int messageOpcode = -1;
+    private ByteArrayOutputStream message;
+    private final Queue<Runnable> listenerCalls = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean listenerRunning = new AtomicBoolean(false);
+    private final AtomicBoolean closeNotified = new AtomicBoolean(false);
+    private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+
+    TabulaConnection(TabulaServer server, SocketChannel channel, SelectionKey key) throws IOException {
+        this.server = server;
+        this.channel = channel;
+        this.key = key;
+        this.remoteAddress = (InetSocketAddress) channel.getRemoteAddress();
+    }
+
+    /**
+     * Reads the available bytes and handles all complete requests or frames.
+     */
+    void onReadable() {
+        try {
+            if (!in.hasRemaining()) grow(in.capacity() * 2);
+            int read = channel.read(in);
+            if (read < 0) {
+                inputClosed = true;
+                setInterest(SelectionKey.OP_READ, false);
+            } else {
+                lastActivity = System.currentTimeMillis();
+            }
+            handleInput();
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    void onWritable() {
+        write();
+    }
+
+    /**
+     * Called on the event loop after a handler finished or a message has been queued from another thread.
+     */
+    void process() {
+        scheduled.set(false);
+        if (closed) return;
+        flushReady();
+        if (paused && inflight.isEmpty() && !closeAfterWrite) {
+            paused = false;
+            setInterest(SelectionKey.OP_READ, !inputClosed);
+            handleInput();
+        }
+    }
+
+    boolean markScheduled() {
+        return scheduled.compareAndSet(false, true);
+    }
+
+    /**
+     * Closes idle connections and keeps WebSocket sessions alive with pings.
+     */
+    void checkIdle(long now) {
+        if (closed) return;
+        long idle = now - lastActivity;
+        if (listener != null) {
+            if (idle > WEBSOCKET_IDLE_MILLIS) close();
+            else if (idle > PING_INTERVAL_MILLIS && pingSent < lastActivity) {
+                pingSent = now;
+                queue(frame(0x9, new byte[0]));
+                write();
+            }
+        } else if (inflight.isEmpty() && outbound.isEmpty() && idle > HTTP_IDLE_MILLIS) {
+            close();
+        }
+    }
+
+    private void handleInput() {
+        in.flip();
+        try {
+            while (!stopParsing && !paused && !closed) {
+                if (listener != null) {
+                    if (!parseFrame()) break;
+                } else if (inflight.size() >= MAX_PIPELINED) {
+                    pause();
+                } else if (!parseRequest()) {
+                    break;
+                }
+            }
+        } finally {
+            in.compact();
+        }
+        flushReady();
+        if (inputClosed && inflight.isEmpty() && outbound.isEmpty()) close();
+    }
+
+    /**
+     * Stops reading, because the connection is closed after the pending responses.
+     */
+    private void stopParsing() {
+        stopParsing = true;
+        setInterest(SelectionKey.OP_READ, false);
+    }
+
+    private void queue(ByteBuffer buffer) {
+        backlog.addAndGet(buffer.remaining());
+        outbound.add(buffer);
+    }
+
+    private void pause() {
+        paused = true;
+        setInterest(SelectionKey.OP_READ, false);
+    }
+
+    /**
+     * Parses one request from the input buffer.
+     *
+     * @return {@code false} if the request is not complete yet.
+     */
+    private boolean parseRequest() {
+        int start = in.position();
+        int headerEnd = indexOf(in, HEADER_END, start);
+        if (headerEnd < 0) {
+            if (in.remaining() > MAX_HEADER_SIZE) fail(431);
+            return false;
+        }
+        String head = new String(in.array(), in.arrayOffset() + start, headerEnd - start, StandardCharsets.ISO_8859_1);
+        String[] lines = head.split("\r\n");
+        String[] requestLine = lines[0].split(" ");
+        if (requestLine.length != 3 || !requestLine[2].startsWith("HTTP/1.")) {
+            fail(400);
+            return false;
+        }
+        Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (int i = 1; i < lines.length; i++) {
+            int colon = lines[i].indexOf(':');
+            if (colon <= 0) {
+                fail(400);
+                return false;
+            }
+            headers.put(lines[i].substring(0, colon).trim(), lines[i].substring(colon + 1).trim());
+        }
+        if (headers.containsKey("Transfer-Encoding")) {
+            fail(501);
+            return false;
+        }
+        int length;
+        try {
+            length = Integer.parseInt(headers.getOrDefault("Content-Length", "0"));
+        } catch (NumberFormatException e) {
+            fail(400);
+            return false;
+        }
+        if (length < 0 || length > MAX_BODY_SIZE) {
+            fail(413);
+            return false;
+        }
+        int bodyStart = headerEnd + HEADER_END.length;
+        if (in.limit() - bodyStart < length) {
+            // Der Body ist noch nicht vollständig angekommen
+            int needed = bodyStart - start + length;
+            if (needed > in.capacity()) {
+                in.position(start);
+                growReadable(needed);
+            }
+            return false;
+        }
+        byte[] body = Arrays.copyOfRange(in.array(), in.arrayOffset() + bodyStart, in.arrayOffset() + bodyStart + length);
+        in.position(bodyStart + length);
+
+        HttpRequest request = new HttpRequest(requestLine[0], requestLine[1], requestLine[2], headers, body, remoteAddress);
+        String connection = headers.getOrDefault("Connection", "");
+        boolean keepAlive = requestLine[2].equals("HTTP/1.0")
+                ? connection.equalsIgnoreCase("keep-alive")
+                : !connection.equalsIgnoreCase("close");
+
+        if ("websocket".equalsIgnoreCase(headers.get("Upgrade"))) {
+            if (!inflight.isEmpty()) {
+                // The upgrade has to wait until all earlier responses have been written
+                in.position(start);
+                pause();
+                return false;
+            }
+            return upgrade(request);
+        }
+
+        Slot slot = new Slot(keepAlive, request.getMethod().equals("HEAD"));
+        inflight.add(slot);
+        if (!keepAlive) stopParsing();
+
+        HttpHandler handler = server.getRouter().resolve(request);
+        if (handler == null) {
+            slot.complete(HttpResponse.status(404));
+            return true;
+        }
+        long received = System.nanoTime();
+        boolean accepted = server.dispatch(() -> {
+            CompletableFuture<HttpResponse> future;
+            try {
+                future = handler.handleAsync(request);
+            } catch (Exception e) {
+                future = CompletableFuture.failedFuture(e);
+            }
+            // asynchrone Handler schließen den Slot auf ihrem eigenen Thread ab
+            future.whenComplete((response, error) -> {
+                if (error != null) {
+                    log.error("Error while handling {} {}.", request.getMethod(), request.getPath());
+                    log.error(error.getMessage());
+                    response = HttpResponse.status(500);
+                } else if (response == null) {
+                    response = HttpResponse.status(204);
+                }
+                slot.complete(response);
+                server.schedule(this);
+                server.recordRequest(request.getRoute(), received);
+            });
+        });
+        if (!accepted) slot.complete(HttpResponse.status(503));
+        return true;
+    }
+
+    /**
+     * Answers a malformed request and closes the connection afterwards.
+     */
+    private void fail(int status) {
+        Slot slot = new Slot(false, false);
+        slot.complete(HttpResponse.status(status));
+        inflight.add(slot);
+        stopParsing();
+    }
+
+    private boolean upgrade(HttpRequest request) {
+        WebSocketListener target = server.getWebSocket(request.getPath());
+        String clientKey = request.getHeader("Sec-WebSocket-Key");
+        if (target == null || !request.getMethod().equals("GET")) {
+            fail(404);
+            return false;
+        }
+        if (clientKey == null || !"13".equals(request.getHeader("Sec-WebSocket-Version"))) {
+            fail(400);
+            return false;
+        }
+        String accept;
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            accept = Base64.getEncoder().encodeToString(
+                    sha1.digest((clientKey + WEBSOCKET_GUID).getBytes(StandardCharsets.ISO_8859_1)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        String response = "HTTP/1.1 101 Switching Protocols\r\n"
+                + "Upgrade: websocket\r\n"
+                + "Connection: Upgrade\r\n"
+                + "Sec-WebSocket-Accept: " + accept + "\r\n\r\n";
+        queue(ByteBuffer.wrap(response.getBytes(StandardCharsets.ISO_8859_1)));
+        upgradeRequest = request;
+        messageRoute = "WS " + request.getPath();
+        listener = target;
+        server.addSession(this);
+        callListener(() -> target.onOpen(this));
+        return true;
+    }
+
+    /**
+     * Parses one WebSocket frame from the input buffer.
+     *
+     * @return {@code false} if the frame is not complete yet or the connection is closing.
+     */
+    private boolean parseFrame() {
+        int start = in.position();
+        if (in.remaining() < 2) return false;
+        int b0 = in.get(start) & 0xFF;
+        int b1 = in.get(start + 1) & 0xFF;
+        boolean fin = (b0 & 0x80) != 0;
+        int opcode = b0 & 0x0F;
+        long length = b1 & 0x7F;
+        int headerLength = 2;
+        if (length == 126) {
+            if (in.remaining() < 4) return false;
+            length = in.getShort(start + 2) & 0xFFFF;
+            headerLength = 4;
+        } else if (length == 127) {
+            if (in.remaining() < 10) return false;
+            length = in.getLong(start + 2);
+            headerLength = 10;
+        }
+        if ((b1 & 0x80) == 0) return protocolError(1002, "Client frames must be masked");
+        if (length < 0 || length > MAX_MESSAGE_SIZE) return protocolError(1009, "Message too big");
+        if (opcode >= 0x8 && (!fin || length > 125)) return protocolError(1002, "Invalid control frame");
+
+        int frameLength = headerLength + 4 + (int) length;
+        if (in.remaining() < frameLength) {
+            if (frameLength > in.capacity()) growReadable(frameLength);
+            return false;
+        }
+        int maskStart = start + headerLength;
+        byte[] payload = new byte[(int) length];
+        for (int i = 0; i < payload.length; i++) {
+            payload[i] = (byte) (in.get(maskStart + 4 + i) ^ in.get(maskStart + (i & 3)));
+        }
+        in.position(start + frameLength);
+
+        switch (opcode) {
+            case 0x0 -> {
+                if (messageOpcode < 0) return protocolError(1002, "Unexpected continuation frame");
+                if (message.size() + payload.length > MAX_MESSAGE_SIZE) return protocolError(1009, "Message too big");
+                message.writeBytes(payload);
+                if (fin) {
+                    deliver(messageOpcode, message.toByteArray());
+                    messageOpcode = -1;
+                    message = null;
+                }
+            }
+            case 0x1, 0x2 -> {
+                if (messageOpcode >= 0) return protocolError(1002, "Expected continuation frame");
+                if (fin) {
+                    deliver(opcode, payload);
+                } else {
+                    messageOpcode = opcode;
+                    message = new ByteArrayOutputStream();
+                    message.writeBytes(payload);
+                }
+            }
+            case 0x8 -> {
+                queue(frame(0x8, payload.length >= 2 ? Arrays.copyOf(payload, 2) : new byte[0]));
+                closeAfterWrite = true;
+                stopParsing();
+                return false;
+            }
+            case 0x9 -> queue(frame(0xA, payload));
+            case 0xA -> {
+                // Pong, lastActivity has already been updated
+            }
+            default -> {
+                return protocolError(1002, "Unknown opcode " + opcode);
+            }
+        }
+        return true;
+    }
+
+    private boolean protocolError(int code, String reason) {
+        queue(closeFrame(code, reason));
+        closeAfterWrite = true;
+        stopParsing();
+        return false;
+    }
+
+    private void deliver(int opcode, byte[] payload) {
+        WebSocketListener target = listener;
+        if (opcode == 0x1) {
+            String text = new String(payload, StandardCharsets.UTF_8);
+            long start = System.nanoTime();
+            callListener(() -> {
+                target.onMessage(this, text);
+                server.recordRequest(messageRoute, start);
+            });
+        } else {
+            callListener(() -> target.onBinary(this, payload));
+        }
+    }
+
+    /**
+     * Runs the listener calls of this session one after another on the worker threads.
+     */
+    private void callListener(Runnable call) {
+        listenerCalls.add(call);
+        runListenerCalls();
+    }
+
+    private void runListenerCalls() {
+        if (!listenerRunning.compareAndSet(false, true)) return;
+        boolean accepted = server.dispatch(() -> {
+            Runnable call;
+            while ((call = listenerCalls.poll()) != null) {
+                try {
+                    call.run();
+                } catch (Exception e) {
+                    log.error("Error in WebSocket listener for {}.", upgradeRequest.getPath());
+                    log.error(e.getMessage());
+                }
+            }
+            listenerRunning.set(false);
+            if (!listenerCalls.isEmpty()) runListenerCalls();
+        });
+        if (!accepted) {
+            listenerRunning.set(false);
+            listenerCalls.clear();
+            close(1013, "Server overloaded");
+        }
+    }
+
+    /**
+     * Moves finished responses (in request order) and messages from other threads to the outgoing queue.
+     */
+    private void flushReady() {
+        while (!inflight.isEmpty() && inflight.peek().response != null) {
+            Slot slot = inflight.poll();
+            queue(slot.response.encode(slot.keepAlive, slot.head));
+            if (!slot.keepAlive) {
+                closeAfterWrite = true;
+                inflight.clear();
+                break;
+            }
+        }
+        ByteBuffer frame;
+        while ((frame = pushed.poll()) != null) outbound.add(frame);
+        if (closeRequested) {
+            closeAfterWrite = true;
+            stopParsing();
+        }
+        write();
+    }
+
+    private void write() {
+        if (closed) return;
+        try {
+            while (!outbound.isEmpty()) {
+                ByteBuffer[] buffers = new ByteBuffer[Math.min(outbound.size(), 16)];
+                Iterator<ByteBuffer> it = outbound.iterator();
+                for (int i = 0; i < buffers.length; i++) buffers[i] = it.next();
+                long written = channel.write(buffers);
+                backlog.addAndGet(-written);
+                while (!outbound.isEmpty() && !outbound.peek().hasRemaining()) outbound.poll();
+                if (written == 0) break;
+            }
+        } catch (IOException e) {
+            close();
+            return;
+        }
+        if (drainWaiters > 0) notifyDrain();
+        setInterest(SelectionKey.OP_WRITE, !outbound.isEmpty());
+        if (outbound.isEmpty() && (closeAfterWrite || (inputClosed && inflight.isEmpty()))) close();
+    }
+
+    void close() {
+        if (closed) return;
+        closed = true;
+        key.cancel();
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+        server.removeConnection(this);
+        if (drainWaiters > 0) notifyDrain();
+        WebSocketListener target = listener;
+        if (target != null && closeNotified.compareAndSet(false, true)) {
+            server.removeSession(this);
+            callListener(() -> target.onClose(this));
+        }
+    }
+
+    private void notifyDrain() {
+        synchronized (drainLock) {
+            drainLock.notifyAll();
+        }
+    }
+
+    private void setInterest(int op, boolean enabled) {
+        if (!key.isValid()) return;
+        int ops = key.interestOps();
+        key.interestOps(enabled ? ops | op : ops & ~op);
+    }
+
+    private void grow(int capacity) {
+        if (capacity > MAX_HEADER_SIZE + MAX_BODY_SIZE + 16) capacity = MAX_HEADER_SIZE + MAX_BODY_SIZE + 16;
+        if (capacity <= in.capacity()) return;
+        ByteBuffer bigger = ByteBuffer.allocate(capacity);
+        in.flip();
+        bigger.put(in);
+        in = bigger;
+    }
+
+    /**
+     * Grows the buffer while it is in read mode (inside {@link #handleInput()}).
+     */
+    private void growReadable(int needed) {
+        ByteBuffer bigger = ByteBuffer.allocate(Math.max(needed, in.capacity() * 2));
+        bigger.put(in);
+        bigger.flip();
+        in = bigger;
+    }
+
+    private static int indexOf(ByteBuffer buffer, byte[] pattern, int from) {
+        byte[] array = buffer.array();
+        int offset = buffer.arrayOffset();
+        outer:
+        for (int i = from; i <= buffer.limit() - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (array[offset + i + j] != pattern[j]) continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    static ByteBuffer frame(int opcode, byte[] payload) {
+        int headerLength = payload.length < 126 ? 2 : payload.length <= 0xFFFF ? 4 : 10;
+        ByteBuffer buffer = ByteBuffer.allocate(headerLength + payload.length);
+        buffer.put((byte) (0x80 | opcode));
+        if (payload.length < 126) {
+            buffer.put((byte) payload.length);
+        } else if (payload.length <= 0xFFFF) {
+            buffer.put((byte) 126).putShort((short) payload.length);
+        } else {
+            buffer.put((byte) 127).putLong(payload.length);
+        }
+        return buffer.put(payload).flip();
+    }
+
+    private static ByteBuffer closeFrame(int code, String reason) {
+        byte[] text = reason.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer payload = ByteBuffer.allocate(2 + Math.min(text.length, 123));
+        payload.putShort((short) code).put(text, 0, payload.remaining());
+        return frame(0x8, payload.array());
+    }
+
+    // WebSocketSession, may be called from any thread
+
+    @Override
+    public boolean send(String message) {
+        return push(frame(0x1, message.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Override
+    public boolean send(byte[] data) {
+        return push(frame(0x2, data));
+    }
+
+    private boolean push(ByteBuffer frame) {
+        if (!isOpen()) return false;
+        if (backlog.addAndGet(frame.remaining()) > MAX_BACKLOG) {
+            log.warn("Tabula client {} can't keep up, closing the connection.", remoteAddress);
+            close(1008, "Too slow");
+            return false;
+        }
+        pushed.add(frame);
+        server.schedule(this);
+        return true;
+    }
+
+    @Override
+    public boolean awaitDrain(long maxQueuedBytes, long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        synchronized (drainLock) {
+            drainWaiters++;
+            try {
+                while (isOpen() && backlog.get() > maxQueuedBytes) {
+                    long left = deadline - System.nanoTime();
+                    if (left <= 0) return false;
+                    TimeUnit.NANOSECONDS.timedWait(drainLock, left);
+                }
+                return isOpen();
+            } finally {
+                drainWaiters--;
+            }
+        }
+    }
+
+    @Override
+    public void close(int code, String reason) {
+        if (closeRequested || closed) return;
+        pushed.add(closeFrame(code, reason));
+        closeRequested = true;
+        server.schedule(this);
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !closed && !closeRequested && listener != null;
+    }
+
+    @Override
+    public HttpRequest getRequest() {
+        return upgradeRequest;
+    }
+
+    @Override
+    public InetSocketAddress getRemoteAddress() {
+        return remoteAddress;
+    }
+
+    @Override
+    public Object getAttribute(String key) {
+        return attributes.get(key);
+    }
+
+    @Override
+    public void setAttribute(String key, Object value) {
+        if (value == null) attributes.remove(key);
+        else attributes.put(key, value);
+    }
+
+    /**
+     * The place of a request in the response order of the connection.
+     */
+    private static final class Slot {
+        private final boolean keepAlive;
+        private final boolean head;
+        private volatile HttpResponse response;
+
+        private Slot(boolean keepAlive, boolean head) {
+            this.keepAlive = keepAlive;
+            this.head = head;
+        }
+
+        private void complete(HttpResponse response) {
+            this.response = response;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package de.julianweinelt.gop.tabula;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import de.julianweinelt.gop.modules.event.Event;
+import de.julianweinelt.gop.modules.event.EventManager;
+import de.julianweinelt.gop.modules.event.Priority;
+import de.julianweinelt.gop.tabula.config.Column;
+import de.julianweinelt.gop.tabula.config.Component;
+import de.julianweinelt.gop.tabula.config.DataSource;
+import de.julianweinelt.gop.tabula.http.WebSocketSession;
+import lombok.extern.slf4j.Slf4j;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Pushes changed rows of Tabula tables to the clients watching them.
+ * <p>
+ * A table lists the events which change its data in {@link DataSource#getEvents()}. When one of them is
+ * called, the key of the changed row is taken from the property named like the key column of the data
+ * source. The keys are collected per tab and at most {@code updatesPerSecond} times per second the
+ * changed rows are queried once and sent to every client watching the tab:
+ * <pre>{@code
+ * {"type": "rowsChanged", "module": "Shop", "component": "orders", "key": "id", "rows": [...], "removed": [17]}
+ * }</pre>
+ * The key column is part of the message because the data source, including its key column, is not sent
+ * to the clients.
+ * Keys are compared through the type of the key column, so an event carrying the key 17 as a string still
+ * matches the numeric row 17 of the database.
+ * If an event carries no key, or too many rows changed at once, the clients are told to reload the table
+ * instead: {@code {"type": "invalidate", "module": "Shop", "component": "orders"}}.
+ * <p>
+ * A client watches a tab after it queried one of its tables, until it sends
+ * {@code {"type": "unwatch", "module": "Shop"}} or disconnects. Tabs nobody watches cost no queries.
+ */
+@Slf4j
+final class TabulaLive {
+    private static final Gson GSON = new GsonBuilder().disableHtmlEscaping().create();
+    private static final int MAX_KEYS = 512;
+
+    private final TabulaManager manager;
+    private final EventManager eventManager;
+    private final Map<String, LiveTab> liveTabs = new ConcurrentHashMap<>();
+    private final Map<String, Set<WebSocketSession>> watchers = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "Tabula-Live");
+        t.setDaemon(true);
+        return t;
+    });
+    private volatile long intervalMillis = 250;
+
+    TabulaLive(TabulaManager manager, EventManager eventManager) {
+        this.manager = manager;
+        this.eventManager = eventManager;
+    }
+
+    void setUpdatesPerSecond(int updatesPerSecond) {
+        intervalMillis = 1000L / Math.max(1, updatesPerSecond);
+    }
+
+    /**
+     * Subscribes to the events of the data sources of a tab, replacing the subscriptions of an older version.
+     */
+    void register(CompiledTab compiled) {
+        String module = compiled.getTab().getModuleName();
+        unregister(module);
+        LiveTab live = new LiveTab(module);
+        for (Component component : compiled.getTab().getContent().getComponents()) {
+            DataSource source = component.getDataSource();
+            if (source == null || source.getEvents() == null || source.getEvents().isEmpty()) continue;
+            live.components.put(component.getId(), component);
+            for (String eventName : source.getEvents()) {
+                eventManager.subscribe(live, eventName, Priority.MONITOR, true, false,
+                        "Tabula " + module + "/" + component.getId(), event -> live.onEvent(component, event));
+            }
+        }
+        if (!live.components.isEmpty()) liveTabs.put(module, live);
+    }
+
+    void unregister(String module) {
+        LiveTab old = liveTabs.remove(module);
+        if (old != null) eventManager.unregisterListeners(old);
+    }
+
+    void watch(WebSocketSession session, String module) {
+        watchers.computeIfAbsent(module, m -> ConcurrentHashMap.newKeySet()).add(session);
+    }
+
+    void unwatch(WebSocketSession session, String module) {
+        Set<WebSocketSession> sessions = watchers.get(module);
+        if (sessions != null) sessions.remove(session);
+    }
+
+    void unwatchAll(WebSocketSession session) {
+        for (Set<WebSocketSession> sessions : watchers.values()) sessions.remove(session);
+    }
+
+    private void send(String module, String message) {
+        Set<WebSocketSession> sessions = watchers.get(module);
+        if (sessions == null) return;
+        for (WebSocketSession session : sessions) {
+            if (!session.send(message)) sessions.remove(session);
+        }
+    }
+
+    private boolean isWatched(String module) {
+        Set<WebSocketSession> sessions = watchers.get(module);
+        return sessions != null && !sessions.isEmpty();
+    }
+
+    /**
+     * The changes of one tab collected since the last push.
+     */
+    private final class LiveTab {
+        private final String module;
+        private final Map<String, Component> components = new HashMap<>();
+        private final Map<String, Set<Object>> changedKeys = new ConcurrentHashMap<>();
+        private final Set<String> invalidated = ConcurrentHashMap.newKeySet();
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+        private volatile long lastPush = 0;
+
+        private LiveTab(String module) {
+            this.module = module;
+        }
+
+        private void onEvent(Component component, Event event) {
+            String keyColumn = component.getDataSource().getKeyColumn();
+            Object key = keyColumn != null && event.has(keyColumn) ? event.get(keyColumn) : null;
+            if (key == null) {
+                invalidated.add(component.getId());
+            } else {
+                Set<Object> keys = changedKeys.computeIfAbsent(component.getId(), c -> ConcurrentHashMap.newKeySet());
+                if (keys.size() < MAX_KEYS) keys.add(key);
+                else invalidated.add(component.getId());
+            }
+            if (scheduled.compareAndSet(false, true)) {
+                long delay = Math.max(0, lastPush + intervalMillis - System.currentTimeMillis());
+                timer.schedule(this::push, delay, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private void push() {
+            // vor dem Abholen zurücksetzen, damit spätere Events einen neuen Push planen
+            scheduled.set(false);
+            lastPush = System.currentTimeMillis();
+            manager.invalidateCachedPages(module);
+            boolean watched = isWatched(module);
+
+            for (Component component : components.values()) {
+                String id = component.getId();
+                Set<Object> keys = changedKeys.remove(id);
+                boolean invalid = invalidated.remove(id);
+                if (!watched || (keys == null && !invalid)) continue;
+
+                TabulaSQL sql = manager.getSql();
+                ExecutorService queries = manager.getQueries();
+                if (invalid || sql == null || queries == null) {
+                    send(module, "{\"type\":\"invalidate\",\"module\":" + GSON.toJson(module)
+                            + ",\"component\":" + GSON.toJson(id) + "}");
+                    continue;
+                }
+                try {
+                    queries.execute(() -> pushRows(sql, component, keys));
+                } catch (RejectedExecutionException e) {
+                    send(module, "{\"type\":\"invalidate\",\"module\":" + GSON.toJson(module)
+                            + ",\"component\":" + GSON.toJson(id) + "}");
+                }
+            }
+        }
+
+        private void pushRows(TabulaSQL sql, Component component, Set<Object> keys) {
+            String keyColumn = component.getDataSource().getKeyColumn();
+            Column.Type declared = keyType(component, keyColumn);
+            // die Schlüssel der Events in den Typ der Spalte umwandeln, gleiche Schlüssel nur einmal abfragen
+            Map<String, Object> changed = new LinkedHashMap<>();
+            for (Object key : keys) {
+                JsonElement json = TabulaSQL.toJson(key);
+                Object value = key;
+                if (declared != null) {
+                    try {
+                        value = TabulaQuery.convert(declared, json);
+                    } catch (IllegalArgumentException ignored) {
+                        // bleibt wie im Event, die Zeile wird dann als entfernt gemeldet
+                    }
+                }
+                changed.putIfAbsent(keyText(declared, json), value);
+            }
+            TabulaQuery query = TabulaQuery.rows(component, changed.values());
+            JsonArray rows = new JsonArray();
+            try {
+                sql.stream(query.getSql(), query.getParameters(), MAX_KEYS, (chunk, last) -> {
+                    rows.addAll(chunk);
+                    return true;
+                });
+            } catch (Exception e) {
+                log.error("Could not query the changed rows of {}/{}.", module, component.getId());
+                log.error(e.getMessage());
+                return;
+            }
+
+            Set<String> found = new HashSet<>();
+            for (JsonElement row : rows) found.add(keyText(declared, row.getAsJsonObject().get(keyColumn)));
+            JsonArray removed = new JsonArray();
+            for (Map.Entry<String, Object> key : changed.entrySet()) {
+                if (!found.contains(key.getKey())) removed.add(TabulaSQL.toJson(key.getValue()));
+            }
+
+            JsonObject message = new JsonObject();
+            message.addProperty("type", "rowsChanged");
+            message.addProperty("module", module);
+            message.addProperty("component", component.getId());
+            message.addProperty("key", keyColumn);
+            message.add("rows", rows);
+            message.add("removed", removed);
+            send(module, GSON.toJson(message));
+        }
+    }
+
+    private static Column.Type keyType(Component component, String keyColumn) {
+        if (component.getColumns() == null) return null;
+        for (Column column : component.getColumns()) {
+            if (column.getKey().equals(keyColumn)) return column.getType();
+        }
+        return null;
+    }
+
+    /**
+     * @return The key as text, numbers without trailing zeros, so 17, 17.0 and "17" are the same key.
+     */
+    private static String keyText(Column.Type type, JsonElement value) {
+        if (value == null || value.isJsonNull()) return "null";
+        String text = value.isJsonPrimitive() ? value.getAsString() : value.toString();
+        boolean numeric = type == Column.Type.NUMBER
+                || (type == null && value.isJsonPrimitive() && value.getAsJsonPrimitive().isNumber());
+        if (!numeric) return text;
+        try {
+            return new BigDecimal(text).stripTrailingZeros().toPlainString();
+        } catch (NumberFormatException e) {
+            return text;
+        }
+    }
+}
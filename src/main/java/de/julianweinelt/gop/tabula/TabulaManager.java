@@ -1,4 +1,551 @@
 package de.julianweinelt.gop.tabula;
 
+import com.google.gson.ExclusionStrategy;
+import com.google.gson.FieldAttributes;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import de.julianweinelt.gop.except.ModuleInvalidException;
+import de.julianweinelt.gop.modules.event.EventManager;
+import de.julianweinelt.gop.permission.PermissionManager;
+import de.julianweinelt.gop.permission.PermissionTrie;
+import de.julianweinelt.gop.tabula.config.*;
+import de.julianweinelt.gop.tabula.http.HttpRequest;
+import de.julianweinelt.gop.tabula.http.HttpResponse;
+import de.julianweinelt.gop.tabula.http.WebSocketListener;
+import de.julianweinelt.gop.tabula.http.WebSocketSession;
+import de.julianweinelt.gop.util.TabulaJWT;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps the Tabula tabs of all loaded modules.
+ * <p>
+ * The "tabula.json" of a module is compiled into the typed model once, when the module is loaded.
+ * The JSON sent to the clients is created at the same time and cached as bytes together with an ETag
+ * (see {@link CompiledTab}), so serving a tab never serializes anything.
+ * <p>
+ * Connected clients are told about changed tabs through the "/api/live" WebSocket. While a module is
+ * reloaded, changes are collected with {@link #beginUpdate()} and {@link #endUpdate()}, so clients
+ * only receive the tabs whose content actually changed.
+ * <p>
+ * If a database is configured (see {@link #enableSQL(TabulaSQL, int, long)}), clients request pages of a table
+ * through the same WebSocket and receive the rows in chunks. Sorting, filters and the cursor of the next page
+ * are described in {@link TabulaQuery}.
+ * <pre>{@code
+ * -> {"type": "query", "id": 1, "module": "Shop", "component": "orders", "sort": "pixels", "order": "desc"}
+ * <- {"type": "rows", "id": 1, "rows": [...], "last": false}
+ * <- {"type": "rows", "id": 1, "rows": [...], "last": true, "next": "eyJm..."}
+ * }</pre>
+ * Pages are cached for a short time and shared by all clients, see {@link QueryCache}. Changed rows are
+ * pushed to the clients when the events of a data source are called, see {@link TabulaLive}.
+ * <p>
+ * Every request needs a token (see {@link TabulaJWT}), sent as "Authorization: Bearer" header or, for the
+ * WebSocket, as "token" query parameter. Clients only see the tabs they have the permission of. The list of
+ * visible tabs is created once per resolved {@link PermissionTrie}, which users with the same roles share.
+ */
+@Slf4j
 public class TabulaManager {
+    private static final Gson GSON = new GsonBuilder().disableHtmlEscaping().create();
+    // SQL, Schlüsselspalte und Events der Datenquellen bleiben auf dem Server
+    private static final Set<String> SERVER_ONLY = Set.of("query", "keyColumn", "events");
+    private static final Gson CLIENT_GSON = new GsonBuilder().disableHtmlEscaping()
+            .setExclusionStrategies(new ExclusionStrategy() {
+                @Override
+                public boolean shouldSkipField(FieldAttributes field) {
+                    return field.getDeclaringClass() == DataSource.class && SERVER_ONLY.contains(field.getName());
+                }
+
+                @Override
+                public boolean shouldSkipClass(Class<?> type) {
+                    return false;
+                }
+            }).create();
+    private static final int QUERY_QUEUE_SIZE = 256;
+    private static final long MAX_QUEUED_BYTES = 1024 * 1024;
+    private static final long DRAIN_TIMEOUT_MILLIS = 5000;
+    private static final int ROWS_PER_MESSAGE = 100;
+    private static final int MAX_CACHED_QUERIES = 1024;
+    private static final String USER = "user";
+    private static final String PERMISSIONS = "permissions";
+
+    private final Map<String, CompiledTab> tabs = new ConcurrentHashMap<>();
+    // Schlüssel sind die von PermissionManager gecachten Tries, alte Tries fallen von selbst raus
+    // wird nur unter der Sperre der Map gelesen und geändert, zusammen mit listVersion
+    private final Map<PermissionTrie, CompiledList> visibleLists = new WeakHashMap<>();
+    private long listVersion = 0;
+    private final PermissionManager permissionManager;
+    private final TabulaLive live;
+    private TabulaServer server;
+    @Getter(AccessLevel.PACKAGE)
+    private volatile TabulaSQL sql;
+    @Getter(AccessLevel.PACKAGE)
+    private volatile ThreadPoolExecutor queries;
+    private volatile QueryCache cache;
+    @Getter
+    @Setter
+    private TabulaJWT jwt;
+
+    private int updateDepth = 0;
+    private Map<String, String> etagsBeforeUpdate;
+
+    public TabulaManager(EventManager eventManager, PermissionManager permissionManager) {
+        this.permissionManager = permissionManager;
+        this.live = new TabulaLive(this, eventManager);
+        permissionManager.addInvalidationListener(this::permissionsChanged);
+    }
+
+    /**
+     * Compiles the "tabula.json" of a module and registers the tab, replacing an older version.
+     *
+     * @param moduleName The name of the module.
+     * @param tabula     The content of the "tabula.json".
+     * @param permission The permission needed to see the tab.
+     * @param shortName  The short name shown in the navigation of the client.
+     * @return The compiled tab.
+     * @throws ModuleInvalidException If the "tabula.json" is incomplete.
+     */
+    public CompiledTab createTab(String moduleName, JsonObject tabula, String permission, String shortName) {
+        TabConfig config = GSON.fromJson(tabula.get("config"), TabConfig.class);
+        TabContent content = GSON.fromJson(tabula.get("content"), TabContent.class);
+        TabulaTab tab = new TabulaTab(moduleName, permission, shortName, config, content);
+        validate(tab);
+        CompiledTab compiled = CompiledTab.of(tab, CLIENT_GSON.toJson(tab));
+
+        synchronized (this) {
+            CompiledTab old = tabs.put(moduleName, compiled);
+            clearVisibleLists();
+            live.register(compiled);
+            if (updateDepth == 0 && (old == null || !old.getEtag().equals(compiled.getEtag()))) push(moduleName);
+        }
+        return compiled;
+    }
+
+    public synchronized void removeTab(String moduleName) {
+        if (tabs.remove(moduleName) == null) return;
+        live.unregister(moduleName);
+        log.info("Removed Tabula tab of module {}.", moduleName);
+        clearVisibleLists();
+        if (updateDepth == 0) push(moduleName);
+    }
+
+    public CompiledTab getTab(String moduleName) {
+        return tabs.get(moduleName);
+    }
+
+    public Collection<CompiledTab> getTabs() {
+        return Collections.unmodifiableCollection(tabs.values());
+    }
+
+    /**
+     * Holds back the notifications of the clients until {@link #endUpdate()}, e.g. while modules are reloaded.
+     * Calls may be nested.
+     */
+    public synchronized void beginUpdate() {
+        if (updateDepth++ == 0) {
+            etagsBeforeUpdate = new HashMap<>();
+            for (Map.Entry<String, CompiledTab> e : tabs.entrySet()) etagsBeforeUpdate.put(e.getKey(), e.getValue().getEtag());
+        }
+    }
+
+    /**
+     * Notifies the clients about every tab that has been added, changed or removed since {@link #beginUpdate()}.
+     */
+    public synchronized void endUpdate() {
+        if (updateDepth == 0 || --updateDepth > 0) return;
+        Set<String> names = new HashSet<>(etagsBeforeUpdate.keySet());
+        names.addAll(tabs.keySet());
+        for (String name : names) {
+            CompiledTab tab = tabs.get(name);
+            String before = etagsBeforeUpdate.get(name);
+            if (!Objects.equals(before, tab == null ? null : tab.getEtag())) push(name);
+        }
+        etagsBeforeUpdate = null;
+    }
+
+    /**
+     * Registers the endpoints of the Tabula client on the server:
+     * <p>
+     * - GET /api/tabs lists all tabs.
+     * - GET /api/tabs/{module} returns the tab of a module.
+     * - /api/live is the WebSocket used to push changes to the client.
+     * <p>
+     * Both GET endpoints answer with 304 if the client sends the current ETag in "If-None-Match", with 401
+     * without a valid token and GET /api/tabs/{module} with 403 without the permission of the tab.
+     *
+     * @param server The server to register the endpoints on.
+     */
+    public void registerRoutes(TabulaServer server) {
+        this.server = server;
+        server.route("GET", "/api/tabs", request -> {
+            TabulaJWT.Result auth = authenticate(request);
+            if (!auth.isValid()) return unauthorized(auth);
+            PermissionTrie permissions = permissionManager.getPermissions(auth.getSubject());
+            CompiledList visible = visibleList(permissions);
+            return cached(request, visible.json, visible.etag);
+        });
+        server.route("GET", "/api/tabs/{module}", request -> {
+            TabulaJWT.Result auth = authenticate(request);
+            if (!auth.isValid()) return unauthorized(auth);
+            CompiledTab tab = tabs.get(request.getPathParameter("module"));
+            if (tab == null) return HttpResponse.status(404);
+            if (!permissionManager.getPermissions(auth.getSubject()).has(tab.getTab().getPermission())) {
+                return HttpResponse.status(403);
+            }
+            return cached(request, tab.getJson(), tab.getEtag());
+        });
+        server.webSocket("/api/live", new WebSocketListener() {
+            @Override
+            public void onOpen(WebSocketSession session) {
+                TabulaJWT.Result auth = authenticate(session.getRequest());
+                if (!auth.isValid()) {
+                    session.close(1008, auth.getFailReason().name());
+                    return;
+                }
+                session.setAttribute(USER, auth.getSubject());
+                session.setAttribute(PERMISSIONS, permissionManager.getPermissions(auth.getSubject()));
+            }
+
+            @Override
+            public void onMessage(WebSocketSession session, String message) {
+                handleMessage(session, message);
+            }
+
+            @Override
+            public void onClose(WebSocketSession session) {
+                live.unwatchAll(session);
+            }
+        });
+    }
+
+    /**
+     * Lets the clients query the data sources of their tables.
+     *
+     * @param sql         The database of the data sources.
+     * @param threads     The number of queries run at the same time, usually the size of the connection pool.
+     * @param cacheMillis How long a page is reused for other clients, 0 to only share running queries.
+     */
+    public synchronized void enableSQL(TabulaSQL sql, int threads, long cacheMillis) {
+        closeSQL();
+        int size = Math.max(1, threads);
+        AtomicInteger threadId = new AtomicInteger();
+        queries = new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(QUERY_QUEUE_SIZE), r -> {
+            Thread t = new Thread(r, "Tabula-Query-" + threadId.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        cache = new QueryCache(cacheMillis, MAX_CACHED_QUERIES);
+        this.sql = sql;
+    }
+
+    /**
+     * Limits how often changed rows of a tab are pushed to the clients.
+     */
+    public void setLiveUpdatesPerSecond(int updatesPerSecond) {
+        live.setUpdatesPerSecond(updatesPerSecond);
+    }
+
+    /**
+     * Drops the cached pages of all tables of a module, e.g. because their data has changed.
+     */
+    void invalidateCachedPages(String moduleName) {
+        QueryCache pages = cache;
+        if (pages != null) pages.invalidate(moduleName + '|');
+    }
+
+    public synchronized void closeSQL() {
+        if (sql == null) return;
+        queries.shutdownNow();
+        cache.clear();
+        sql.close();
+        sql = null;
+        queries = null;
+    }
+
+    /**
+     * Checks the token of a request, taken from the "Authorization" header or the "token" query parameter.
+     */
+    public TabulaJWT.Result authenticate(HttpRequest request) {
+        String header = request.getHeader("Authorization");
+        String token = header != null && header.regionMatches(true, 0, "Bearer ", 0, 7)
+                ? header.substring(7).trim()
+                : request.getQueryParameter("token");
+        TabulaJWT verifier = jwt;
+        return verifier == null ? TabulaJWT.Result.failed(FailReason.TOKEN_INVALID) : verifier.verify(token);
+    }
+
+    private static HttpResponse unauthorized(TabulaJWT.Result auth) {
+        return HttpResponse.json(401, "{\"reason\":\"" + auth.getFailReason().name() + "\"}")
+                .header("WWW-Authenticate", "Bearer");
+    }
+
+    /**
+     * Gives the open sessions of the affected users their new permissions and tells the clients to reload
+     * their tabs.
+     */
+    private void permissionsChanged(String user) {
+        if (user == null) clearVisibleLists();
+        TabulaServer current = server;
+        if (current == null) return;
+        for (WebSocketSession session : current.getSessions()) {
+            Object sessionUser = session.getAttribute(USER);
+            if (sessionUser == null || (user != null && !user.equals(sessionUser))) continue;
+            session.setAttribute(PERMISSIONS, permissionManager.getPermissions((String) sessionUser));
+            live.unwatchAll(session);
+            session.send("{\"type\":\"permissionsChanged\"}");
+        }
+    }
+
+    private static boolean canSee(WebSocketSession session, CompiledTab tab) {
+        Object permissions = session.getAttribute(PERMISSIONS);
+        return permissions instanceof PermissionTrie trie && trie.has(tab.getTab().getPermission());
+    }
+
+    private void handleMessage(WebSocketSession session, String message) {
+        if (session.getAttribute(USER) == null) return;
+        JsonObject request;
+        try {
+            request = JsonParser.parseString(message).getAsJsonObject();
+        } catch (Exception e) {
+            sendError(session, 0, "Invalid message");
+            return;
+        }
+        String type = request.has("type") ? request.get("type").getAsString() : "";
+        long id = request.has("id") ? request.get("id").getAsLong() : 0;
+        if (type.equals("unwatch") && request.has("module")) {
+            live.unwatch(session, request.get("module").getAsString());
+            return;
+        }
+        if (!type.equals("query")) {
+            sendError(session, id, "Unknown message type");
+            return;
+        }
+
+        CompiledTab tab = request.has("module") ? tabs.get(request.get("module").getAsString()) : null;
+        if (tab != null && !canSee(session, tab)) {
+            sendError(session, id, "Forbidden");
+            return;
+        }
+        Component component = tab == null || !request.has("component") ? null
+                : findComponent(tab.getTab(), request.get("component").getAsString());
+        if (component == null || component.getDataSource() == null) {
+            sendError(session, id, "Unknown component");
+            return;
+        }
+        TabulaSQL database = sql;
+        ThreadPoolExecutor executor = queries;
+        QueryCache pages = cache;
+        if (database == null || executor == null || pages == null) {
+            sendError(session, id, "No database configured");
+            return;
+        }
+
+        TabulaQuery query;
+        try {
+            query = TabulaQuery.of(component, request);
+        } catch (RuntimeException e) {
+            sendError(session, id, "Invalid query: " + e.getMessage());
+            return;
+        }
+        live.watch(session, tab.getTab().getModuleName());
+        String key = tab.getTab().getModuleName() + '|' + tab.getEtag() + '|' + component.getId() + '|'
+                + query.getSql() + '|' + query.getParameters();
+        QueryCache.Lookup lookup = pages.lookup(key);
+        if (!lookup.owner()) {
+            lookup.result().whenComplete((messages, error) -> {
+                if (error != null) sendError(session, id, "Query failed");
+                else for (String body : messages) session.send(rowsPrefix(id) + body);
+            });
+            return;
+        }
+        try {
+            executor.execute(() -> runQuery(session, id, database, query, pages, key, lookup.result()));
+        } catch (RejectedExecutionException e) {
+            pages.fail(key, lookup.result(), e);
+            sendError(session, id, "Too many queries");
+        }
+    }
+
+    private void runQuery(WebSocketSession session, long id, TabulaSQL database, TabulaQuery query,
+                          QueryCache pages, String key, CompletableFuture<List<String>> result) {
+        List<String> messages = new ArrayList<>();
+        int[] sent = {0};
+        JsonObject[] lastRow = {null};
+        boolean[] connected = {true};
+        try {
+            database.stream(query.getSql(), query.getParameters(), ROWS_PER_MESSAGE, (rows, last) -> {
+                // die Abfrage liefert eine Zeile mehr als angefragt, die nur anzeigt, dass es weitergeht
+                boolean more = sent[0] + rows.size() > query.getLimit();
+                JsonArray page = rows;
+                if (more) {
+                    page = new JsonArray();
+                    for (int i = 0; i < query.getLimit() - sent[0]; i++) page.add(rows.get(i));
+                }
+                sent[0] += page.size();
+                if (!page.isEmpty()) lastRow[0] = page.get(page.size() - 1).getAsJsonObject();
+
+                boolean done = last || more;
+                String body = "\"rows\":" + page + ",\"last\":" + done
+                        + (done ? ",\"next\":" + GSON.toJson(more ? query.nextCursor(lastRow[0]) : null) : "") + "}";
+                messages.add(body);
+                // die Seite wird auch ohne Client fertig gelesen, andere warten evtl. darauf
+                if (connected[0]) {
+                    connected[0] = session.awaitDrain(MAX_QUEUED_BYTES, DRAIN_TIMEOUT_MILLIS)
+                            && session.send(rowsPrefix(id) + body);
+                }
+                return !done;
+            });
+            pages.complete(key, result, messages);
+        } catch (Exception e) {
+            pages.fail(key, result, e);
+            log.error("Query of a Tabula data source failed.");
+            log.error(e.getMessage());
+            sendError(session, id, "Query failed");
+        }
+    }
+
+    private static String rowsPrefix(long id) {
+        return "{\"type\":\"rows\",\"id\":" + id + ",";
+    }
+
+    private static Component findComponent(TabulaTab tab, String id) {
+        for (Component component : tab.getContent().getComponents()) {
+            if (component.getId().equals(id)) return component;
+        }
+        return null;
+    }
+
+    private static void sendError(WebSocketSession session, long id, String message) {
+        session.send("{\"type\":\"error\",\"id\":" + id + ",\"message\":" + GSON.toJson(message) + "}");
+    }
+
+    private static HttpResponse cached(HttpRequest request, byte[] json, String etag) {
+        HttpResponse response = etag.equals(request.getHeader("If-None-Match"))
+                ? HttpResponse.status(304)
+                : HttpResponse.json(200, json);
+        return response.header("ETag", etag).header("Cache-Control", "no-cache");
+    }
+
+    /**
+     * @return The tabs visible with the permissions, compiled once per trie. A list compiled while the tabs
+     * or the permissions changed is returned but not cached.
+     */
+    private CompiledList visibleList(PermissionTrie permissions) {
+        long before;
+        synchronized (visibleLists) {
+            CompiledList visible = visibleLists.get(permissions);
+            if (visible != null) return visible;
+            before = listVersion;
+        }
+        CompiledList visible = compileList(permissions);
+        synchronized (visibleLists) {
+            if (listVersion != before) return visible;
+            CompiledList cached = visibleLists.putIfAbsent(permissions, visible);
+            return cached == null ? visible : cached;
+        }
+    }
+
+    private void clearVisibleLists() {
+        synchronized (visibleLists) {
+            listVersion++;
+            visibleLists.clear();
+        }
+    }
+
+    private CompiledList compileList(PermissionTrie permissions) {
+        JsonArray array = new JsonArray();
+        List<CompiledTab> sorted = new ArrayList<>(tabs.values());
+        sorted.sort(Comparator.comparing(t -> t.getTab().getModuleName()));
+        for (CompiledTab compiled : sorted) {
+            TabulaTab tab = compiled.getTab();
+            if (!permissions.has(tab.getPermission())) continue;
+            JsonObject o = new JsonObject();
+            o.addProperty("module", tab.getModuleName());
+            o.addProperty("shortName", tab.getShortName());
+            o.addProperty("permission", tab.getPermission());
+            o.addProperty("etag", compiled.getEtag());
+            array.add(o);
+        }
+        byte[] json = array.toString().getBytes(StandardCharsets.UTF_8);
+        return new CompiledList(json, CompiledTab.etag(json));
+    }
+
+    /**
+     * Sends the current state of a tab to all connected clients allowed to see it, or a removal notice if it
+     * doesn't exist anymore.
+     */
+    private void push(String moduleName) {
+        if (server == null) return;
+        CompiledTab tab = tabs.get(moduleName);
+        if (tab == null) {
+            server.broadcast("{\"type\":\"tabRemoved\",\"module\":" + GSON.toJson(moduleName) + "}");
+            return;
+        }
+        String message = "{\"type\":\"tab\",\"module\":" + GSON.toJson(moduleName) + ",\"etag\":" + GSON.toJson(tab.getEtag())
+                + ",\"tab\":" + new String(tab.getJson(), StandardCharsets.UTF_8) + "}";
+        for (WebSocketSession session : server.getSessions()) {
+            if (canSee(session, tab)) session.send(message);
+        }
+    }
+
+    private static void validate(TabulaTab tab) {
+        String module = tab.getModuleName();
+        if (tab.getConfig() == null) throw new ModuleInvalidException("The tabula.json of " + module + " has no config.");
+        if (tab.getContent() == null || tab.getContent().getComponents() == null) {
+            throw new ModuleInvalidException("The tabula.json of " + module + " has no components.");
+        }
+        Set<String> ids = new HashSet<>();
+        for (Component component : tab.getContent().getComponents()) {
+            if (component.getId() == null || !ids.add(component.getId())) {
+                throw new ModuleInvalidException("The tabula.json of " + module + " contains a component without a unique id.");
+            }
+            if (component.getDisplay() == Display.TABLE) {
+                if (component.getDataSource() == null || component.getDataSource().getQuery() == null) {
+                    throw new ModuleInvalidException("Table " + component.getId() + " of " + module + " has no data source.");
+                }
+                String keyColumn = component.getDataSource().getKeyColumn();
+                if (keyColumn != null && !TabulaQuery.isIdentifier(keyColumn)) {
+                    throw new ModuleInvalidException("Table " + component.getId() + " of " + module + " has an invalid key column.");
+                }
+                if (component.getColumns() == null || component.getColumns().isEmpty()) {
+                    throw new ModuleInvalidException("Table " + component.getId() + " of " + module + " has no columns.");
+                }
+                for (Column column : component.getColumns()) {
+                    if (column.getKey() == null || column.getKey().isBlank()) {
+                        throw new ModuleInvalidException("Table " + component.getId() + " of " + module + " has a column without key.");
+                    }
+                    // unbekannte Typen (auch "number" statt "NUMBER") liest Gson als null
+                    if (column.getType() == null) {
+                        throw new ModuleInvalidException("Column " + column.getKey() + " of " + module + " has an unknown type, use one of "
+                                + Arrays.toString(Column.Type.values()) + ".");
+                    }
+                    // nur diese Spalten landen im generierten SQL
+                    if ((column.isSortable() || column.isFilterable()) && !TabulaQuery.isIdentifier(column.getKey())) {
+                        throw new ModuleInvalidException("Column " + column.getKey() + " of " + module + " can't be sorted or filtered.");
+                    }
+                }
+            }
+            if (component.getButtons() == null) continue;
+            for (Button button : component.getButtons()) {
+                Execution execution = button.getExecution();
+                if (execution == null || execution.getAction() == null
+                        || (execution.getAction() != Action.REFRESH && execution.getTarget() == null)) {
+                    throw new ModuleInvalidException("Button " + button.getId() + " of " + module + " has no valid execution.");
+                }
+            }
+        }
+    }
+
+    private record CompiledList(byte[] json, String etag) {
+    }
 }
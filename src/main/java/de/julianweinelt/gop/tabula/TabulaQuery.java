@@ -0,0 +1,273 @@
+package de.julianweinelt.gop.tabula;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import de.julianweinelt.gop.tabula.config.Column;
+import de.julianweinelt.gop.tabula.config.Component;
+import de.julianweinelt.gop.tabula.config.DataSource;
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * One page of a Tabula table as requested by a client, translated into SQL.
+ * <p>
+ * The query of the {@link DataSource} is wrapped into an outer query, so sorting, filtering and paging
+ * happen in the database:
+ * <pre>{@code
+ * SELECT * FROM (<query of the data source>) tabula_src
+ * WHERE name LIKE ? ESCAPE '\' AND (pixels < ? OR (pixels = ? AND id < ?))
+ * ORDER BY pixels DESC, id DESC LIMIT 51
+ * }</pre>
+ * Only columns declared in the "tabula.json" can be used, and only if they are marked as sortable or
+ * filterable. Values are always passed as parameters.
+ * <p>
+ * Pages are continued with keyset pagination: the cursor sent to the client holds the sort value and the
+ * key of the last row, so the next page starts right after it, no matter how far the client has scrolled.
+ * Sortable columns should therefore not contain {@code null}.
+ * <p>
+ * Example request:
+ * <pre>{@code
+ * {"type": "query", "id": 2, "module": "Shop", "component": "orders", "sort": "pixels", "order": "desc",
+ *  "filters": [{"column": "name", "op": "contains", "value": "pixel"}], "limit": 50, "cursor": "eyJm..."}
+ * }</pre>
+ */
+@Getter
+public class TabulaQuery {
+    public static final int MAX_LIMIT = 1000;
+    private static final int MAX_FILTERS = 10;
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+    private final String sql;
+    private final List<Object> parameters;
+    private final int limit;
+    private final String keyColumn;
+    private final String sortColumn;
+    private final boolean descending;
+    private final String fingerprint;
+
+    private TabulaQuery(String sql, List<Object> parameters, int limit, String keyColumn, String sortColumn,
+                        boolean descending, String fingerprint) {
+        this.sql = sql;
+        this.parameters = parameters;
+        this.limit = limit;
+        this.keyColumn = keyColumn;
+        this.sortColumn = sortColumn;
+        this.descending = descending;
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * Builds the query for a page of a table.
+     *
+     * @param component The table.
+     * @param request   The query message of the client.
+     * @return The query.
+     * @throws IllegalArgumentException If the request uses unknown columns or operators, or an invalid cursor.
+     */
+    public static TabulaQuery of(Component component, JsonObject request) {
+        DataSource source = component.getDataSource();
+        String keyColumn = source.getKeyColumn();
+        int limit = request.has("limit") ? request.get("limit").getAsInt() : source.getPageSize();
+        if (limit < 1 || limit > MAX_LIMIT) throw new IllegalArgumentException("limit must be between 1 and " + MAX_LIMIT);
+
+        String sortColumn = null;
+        if (request.has("sort") && !request.get("sort").isJsonNull()) {
+            Column column = column(component, request.get("sort").getAsString());
+            if (!column.isSortable()) throw new IllegalArgumentException("Column " + column.getKey() + " is not sortable");
+            sortColumn = column.getKey();
+        }
+        boolean descending = request.has("order") && request.get("order").getAsString().equalsIgnoreCase("desc");
+        if (sortColumn != null && sortColumn.equals(keyColumn)) sortColumn = null;
+
+        StringBuilder where = new StringBuilder();
+        List<Object> parameters = new ArrayList<>();
+        StringBuilder fingerprint = new StringBuilder().append(sortColumn).append(descending);
+        JsonArray filters = request.has("filters") ? request.getAsJsonArray("filters") : new JsonArray();
+        if (filters.size() > MAX_FILTERS) throw new IllegalArgumentException("Too many filters");
+        for (JsonElement element : filters) {
+            JsonObject filter = element.getAsJsonObject();
+            Column column = column(component, filter.get("column").getAsString());
+            if (!column.isFilterable()) throw new IllegalArgumentException("Column " + column.getKey() + " is not filterable");
+            String op = filter.get("op").getAsString();
+            JsonElement value = filter.get("value");
+            where.append(where.isEmpty() ? " WHERE " : " AND ");
+            appendFilter(where, parameters, column, op, value);
+            fingerprint.append('|').append(column.getKey()).append(op).append(value);
+        }
+
+        String print = Integer.toHexString(fingerprint.toString().hashCode());
+        if (keyColumn != null && request.has("cursor") && !request.get("cursor").isJsonNull()) {
+            JsonObject cursor = decodeCursor(request.get("cursor").getAsString());
+            if (!print.equals(cursor.get("f").getAsString())) {
+                throw new IllegalArgumentException("The cursor belongs to a different sorting or filter");
+            }
+            Object key = convert(typeOf(component, keyColumn, cursor.get("k")), cursor.get("k"));
+            String cmp = descending ? " < ?" : " > ?";
+            where.append(where.isEmpty() ? " WHERE " : " AND ");
+            if (sortColumn == null) {
+                where.append(keyColumn).append(cmp);
+                parameters.add(key);
+            } else {
+                Object sortValue = convert(column(component, sortColumn).getType(), cursor.get("s"));
+                where.append('(').append(sortColumn).append(cmp).append(" OR (").append(sortColumn).append(" = ? AND ")
+                        .append(keyColumn).append(cmp).append("))");
+                parameters.add(sortValue);
+                parameters.add(sortValue);
+                parameters.add(key);
+            }
+        }
+
+        String direction = descending ? " DESC" : " ASC";
+        StringBuilder sql = new StringBuilder("SELECT * FROM (").append(stripSemicolon(source.getQuery()))
+                .append(") tabula_src").append(where);
+        if (sortColumn != null || keyColumn != null) {
+            sql.append(" ORDER BY ");
+            if (sortColumn != null) sql.append(sortColumn).append(direction);
+            if (sortColumn != null && keyColumn != null) sql.append(", ");
+            if (keyColumn != null) sql.append(keyColumn).append(direction);
+        }
+        // eine Zeile mehr, um zu wissen, ob es eine nächste Seite gibt
+        sql.append(" LIMIT ").append(limit + 1);
+        return new TabulaQuery(sql.toString(), parameters, limit, keyColumn, sortColumn, descending, print);
+    }
+
+    /**
+     * Builds the query for the rows with the given keys, used to push changed rows to the clients.
+     * The list of keys is padded to a power of two, so only a few different statements are prepared.
+     *
+     * @param component The table, its data source needs a key column.
+     * @param keys      The keys of the rows, at least one.
+     * @return The query.
+     */
+    public static TabulaQuery rows(Component component, Collection<?> keys) {
+        DataSource source = component.getDataSource();
+        String keyColumn = source.getKeyColumn();
+        if (keyColumn == null) throw new IllegalArgumentException("Table " + component.getId() + " has no key column");
+        List<Object> parameters = new ArrayList<>(keys);
+        if (parameters.isEmpty()) throw new IllegalArgumentException("No keys");
+        int size = 1;
+        while (size < parameters.size()) size <<= 1;
+        while (parameters.size() < size) parameters.add(parameters.get(parameters.size() - 1));
+
+        StringBuilder sql = new StringBuilder("SELECT * FROM (").append(stripSemicolon(source.getQuery()))
+                .append(") tabula_src WHERE ").append(keyColumn).append(" IN (");
+        for (int i = 0; i < size; i++) sql.append(i == 0 ? "?" : ", ?");
+        sql.append(')');
+        return new TabulaQuery(sql.toString(), parameters, keys.size(), keyColumn, null, false, null);
+    }
+
+    /**
+     * Creates the cursor pointing behind the given row.
+     *
+     * @param lastRow The last row of the current page.
+     * @return The cursor, or {@code null} if the data source has no key column.
+     */
+    public String nextCursor(JsonObject lastRow) {
+        if (keyColumn == null || lastRow == null) return null;
+        JsonObject cursor = new JsonObject();
+        cursor.addProperty("f", fingerprint);
+        cursor.add("k", valueOf(lastRow, keyColumn));
+        if (sortColumn != null) cursor.add("s", valueOf(lastRow, sortColumn));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return Whether the name can be used as column name in the generated SQL.
+     */
+    public static boolean isIdentifier(String name) {
+        return name != null && IDENTIFIER.matcher(name).matches();
+    }
+
+    private static void appendFilter(StringBuilder where, List<Object> parameters, Column column, String op, JsonElement value) {
+        String key = column.getKey();
+        switch (op) {
+            case "isNull" -> where.append(key).append(" IS NULL");
+            case "notNull" -> where.append(key).append(" IS NOT NULL");
+            case "contains", "startsWith" -> {
+                String escaped = value.getAsString().replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+                where.append(key).append(" LIKE ? ESCAPE '\\'");
+                parameters.add(op.equals("contains") ? "%" + escaped + "%" : escaped + "%");
+            }
+            default -> {
+                String operator = switch (op) {
+                    case "eq" -> " = ?";
+                    case "ne" -> " <> ?";
+                    case "lt" -> " < ?";
+                    case "le" -> " <= ?";
+                    case "gt" -> " > ?";
+                    case "ge" -> " >= ?";
+                    default -> throw new IllegalArgumentException("Unknown filter operator " + op);
+                };
+                where.append(key).append(operator);
+                parameters.add(convert(column.getType(), value));
+            }
+        }
+    }
+
+    private static Column column(Component component, String key) {
+        for (Column column : component.getColumns()) {
+            if (column.getKey().equals(key)) return column;
+        }
+        throw new IllegalArgumentException("Unknown column " + key);
+    }
+
+    private static Column.Type typeOf(Component component, String key, JsonElement value) {
+        for (Column column : component.getColumns()) {
+            if (column.getKey().equals(key)) return column.getType();
+        }
+        return value.isJsonPrimitive() && value.getAsJsonPrimitive().isNumber() ? Column.Type.NUMBER : Column.Type.STRING;
+    }
+
+    /**
+     * Converts a value sent by the client, or written by {@link TabulaSQL} into a row, back into a SQL parameter.
+     */
+    static Object convert(Column.Type type, JsonElement value) {
+        if (value == null || value.isJsonNull()) throw new IllegalArgumentException("Missing value");
+        try {
+            return switch (type) {
+                case NUMBER -> value.getAsBigDecimal();
+                case BOOLEAN -> value.getAsBoolean();
+                case DATE -> {
+                    String text = value.getAsString();
+                    yield text.contains("T") ? Timestamp.from(Instant.parse(text)) : java.sql.Date.valueOf(LocalDate.parse(text));
+                }
+                case STRING -> value.getAsString();
+            };
+        } catch (DateTimeParseException | UnsupportedOperationException | IllegalStateException e) {
+            throw new IllegalArgumentException("Invalid value " + value + " for type " + type);
+        }
+    }
+
+    private static JsonElement valueOf(JsonObject row, String column) {
+        JsonElement value = row.get(column);
+        return value == null ? JsonNull.INSTANCE : value;
+    }
+
+    private static JsonObject decodeCursor(String cursor) {
+        try {
+            return JsonParser.parseString(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8))
+                    .getAsJsonObject();
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+
+    private static String stripSemicolon(String query) {
+        String trimmed = query.strip();
+        while (trimmed.endsWith(";")) trimmed = trimmed.substring(0, trimmed.length() - 1).strip();
+        return trimmed;
+    }
+}
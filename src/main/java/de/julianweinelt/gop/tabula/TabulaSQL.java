@@ -0,0 +1,261 @@
+package de.julianweinelt.gop.tabula;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import de.julianweinelt.gop.tabula.config.DataSource;
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the queries of the Tabula {@link DataSource}s.
+ * <p>
+ * Connections are kept in a bounded pool, so the number of open database connections never exceeds
+ * the configured size, no matter how many clients are looking at a table. Every connection caches
+ * its prepared statements by query (least recently used ones are closed first), so a data source is
+ * only prepared once per connection.
+ * <p>
+ * Results are never collected into a list. Rows are converted while the result set is read and handed
+ * to a {@link RowSink} in chunks, which sends them to the client right away.
+ * <p>
+ * Example:
+ * <pre>{@code
+ * TabulaSQL sql = new TabulaSQL("jdbc:h2:./data/tabula", "sa", "", 4, 32, 10);
+ * sql.stream(dataSource, List.of(), 50, (rows, last) -> session.send(rows.toString()));
+ * }</pre>
+ */
+@Slf4j
+public class TabulaSQL implements AutoCloseable {
+    private static final long BORROW_TIMEOUT_MILLIS = 5000;
+    private static final long VALIDATE_AFTER_MILLIS = 30_000;
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int statementCacheSize;
+    private final int queryTimeoutSeconds;
+    private final Semaphore permits;
+    private final BlockingQueue<PooledConnection> idle;
+    private volatile boolean closed = false;
+
+    /**
+     * @param url                 The JDBC url of the database.
+     * @param user                The user name, may be {@code null}.
+     * @param password            The password, may be {@code null}.
+     * @param maxConnections      The maximum number of open connections.
+     * @param statementCacheSize  The number of prepared statements kept open per connection.
+     * @param queryTimeoutSeconds The time after which a query is cancelled, 0 for no limit.
+     */
+    public TabulaSQL(String url, String user, String password, int maxConnections, int statementCacheSize,
+                     int queryTimeoutSeconds) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.statementCacheSize = Math.max(1, statementCacheSize);
+        this.queryTimeoutSeconds = Math.max(0, queryTimeoutSeconds);
+        int size = Math.max(1, maxConnections);
+        this.permits = new Semaphore(size, true);
+        this.idle = new ArrayBlockingQueue<>(size);
+    }
+
+    /**
+     * Receives the rows of a query in chunks.
+     */
+    @FunctionalInterface
+    public interface RowSink {
+        /**
+         * @param rows The next rows, one {@link JsonObject} per row with the column labels as keys.
+         * @param last Whether this is the last chunk. The last chunk may be empty.
+         * @return {@code false} to stop reading, e.g. because the client has disconnected.
+         */
+        boolean accept(JsonArray rows, boolean last) throws Exception;
+    }
+
+    /**
+     * Runs the query of a data source and streams the rows to the sink.
+     *
+     * @param source     The data source to query.
+     * @param parameters The values of the "?" placeholders of the query.
+     * @param chunkSize  The number of rows per chunk.
+     * @param sink       Receives the rows.
+     * @return The number of rows sent.
+     * @throws SQLException If the query fails or no connection is available in time.
+     */
+    public int stream(DataSource source, List<?> parameters, int chunkSize, RowSink sink) throws SQLException {
+        return stream(source.getQuery(), parameters, chunkSize, sink);
+    }
+
+    /**
+     * Runs a query and streams the rows to the sink. Prepared statements are cached by the query string.
+     *
+     * @see #stream(DataSource, List, int, RowSink)
+     */
+    public int stream(String query, List<?> parameters, int chunkSize, RowSink sink) throws SQLException {
+        int size = Math.max(1, chunkSize);
+        PooledConnection connection = borrow();
+        boolean broken = false;
+        try {
+            PreparedStatement statement = connection.prepare(query);
+            statement.clearParameters();
+            for (int i = 0; i < parameters.size(); i++) statement.setObject(i + 1, parameters.get(i));
+            statement.setFetchSize(size);
+
+            int count = 0;
+            try (ResultSet result = statement.executeQuery()) {
+                ResultSetMetaData meta = result.getMetaData();
+                int columns = meta.getColumnCount();
+                String[] labels = new String[columns];
+                for (int i = 0; i < columns; i++) labels[i] = meta.getColumnLabel(i + 1);
+
+                JsonArray chunk = new JsonArray(size);
+                while (result.next()) {
+                    JsonObject row = new JsonObject();
+                    for (int i = 0; i < columns; i++) row.add(labels[i], toJson(result.getObject(i + 1)));
+                    chunk.add(row);
+                    count++;
+                    if (chunk.size() == size) {
+                        if (!sink.accept(chunk, false)) return count;
+                        chunk = new JsonArray(size);
+                    }
+                }
+                sink.accept(chunk, true);
+            }
+            return count;
+        } catch (SQLException e) {
+            broken = isConnectionError(e);
+            throw e;
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new SQLException("The rows could not be sent.", e);
+        } finally {
+            release(connection, broken);
+        }
+    }
+
+    /**
+     * Closes all idle connections. Connections in use are closed when they are returned.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        PooledConnection connection;
+        while ((connection = idle.poll()) != null) connection.close();
+    }
+
+    private PooledConnection borrow() throws SQLException {
+        if (closed) throw new SQLException("The Tabula database has been closed.");
+        try {
+            if (!permits.tryAcquire(BORROW_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("No Tabula database connection available.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection.", e);
+        }
+        try {
+            PooledConnection connection;
+            while ((connection = idle.poll()) != null) {
+                if (connection.isUsable()) return connection;
+                connection.close();
+            }
+            return new PooledConnection(DriverManager.getConnection(url, user, password));
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private void release(PooledConnection connection, boolean broken) {
+        try {
+            connection.lastUsed = System.currentTimeMillis();
+            if (broken || closed || !idle.offer(connection)) connection.close();
+        } finally {
+            permits.release();
+        }
+    }
+
+    // SQLState class 08 = connection exception
+    private static boolean isConnectionError(SQLException e) {
+        return e instanceof SQLRecoverableException || e instanceof SQLNonTransientConnectionException
+                || (e.getSQLState() != null && e.getSQLState().startsWith("08"));
+    }
+
+    static JsonElement toJson(Object value) {
+        if (value == null) return JsonNull.INSTANCE;
+        if (value instanceof Number number) return new JsonPrimitive(number);
+        if (value instanceof Boolean bool) return new JsonPrimitive(bool);
+        if (value instanceof Timestamp timestamp) return new JsonPrimitive(timestamp.toInstant().toString());
+        if (value instanceof java.sql.Date date) return new JsonPrimitive(date.toLocalDate().toString());
+        if (value instanceof Time time) return new JsonPrimitive(time.toLocalTime().toString());
+        if (value instanceof byte[] bytes) return new JsonPrimitive(Base64.getEncoder().encodeToString(bytes));
+        return new JsonPrimitive(value.toString());
+    }
+
+    /**
+     * A connection of the pool together with its prepared statements.
+     */
+    private final class PooledConnection {
+        private final Connection connection;
+        private final Map<String, PreparedStatement> statements;
+        private long lastUsed = System.currentTimeMillis();
+
+        private PooledConnection(Connection connection) throws SQLException {
+            this.connection = connection;
+            // Tabula zeigt nur an, geändert wird über Events der Module
+            connection.setReadOnly(true);
+            this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                    if (size() <= statementCacheSize) return false;
+                    closeQuietly(eldest.getValue());
+                    return true;
+                }
+            };
+        }
+
+        private PreparedStatement prepare(String query) throws SQLException {
+            PreparedStatement statement = statements.get(query);
+            if (statement != null && !statement.isClosed()) return statement;
+            statement = connection.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            if (queryTimeoutSeconds > 0) statement.setQueryTimeout(queryTimeoutSeconds);
+            statements.put(query, statement);
+            return statement;
+        }
+
+        private boolean isUsable() {
+            try {
+                if (connection.isClosed()) return false;
+                return System.currentTimeMillis() - lastUsed < VALIDATE_AFTER_MILLIS || connection.isValid(2);
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+
+        private void close() {
+            for (PreparedStatement statement : statements.values()) closeQuietly(statement);
+            statements.clear();
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                log.error("Could not close a Tabula database connection.");
+                log.error(e.getMessage());
+            }
+        }
+
+        private void closeQuietly(Statement statement) {
+            try {
+                statement.close();
+            } catch (SQLException ignored) {
+            }
+        }
+    }
+}
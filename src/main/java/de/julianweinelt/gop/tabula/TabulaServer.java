@@ -1,4 +1,276 @@
 package de.julianweinelt.gop.tabula;
 
+import de.julianweinelt.gop.modules.statistics.Histogram;
+import de.julianweinelt.gop.modules.statistics.StatisticManager;
+import de.julianweinelt.gop.tabula.http.AsyncHttpHandler;
+import de.julianweinelt.gop.tabula.http.HttpHandler;
+import de.julianweinelt.gop.tabula.http.Router;
+import de.julianweinelt.gop.tabula.http.WebSocketListener;
+import de.julianweinelt.gop.tabula.http.WebSocketSession;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The HTTP and WebSocket server used by the Tabula admin client.
+ * <p>
+ * All connections are handled by a single event loop thread using non-blocking sockets, so an open
+ * dashboard only costs a few buffers instead of a thread. Connections are kept alive between requests
+ * and may pipeline requests. The registered {@link HttpHandler}s run on a small pool of worker threads,
+ * while the event loop writes their responses back in request order.
+ * <p>
+ * WebSocket sessions are used to push changes to the connected clients, see {@link #broadcast(String)}.
+ * <p>
+ * Example:
+ * <pre>{@code
+ * TabulaServer server = new TabulaServer("127.0.0.1", 8095, 4);
+ * server.route("GET", "/api/tabs/{module}", request -> HttpResponse.json(200, ...));
+ * server.webSocket("/api/live", new WebSocketListener() {});
+ * server.start();
+ * }</pre>
+ */
+@Slf4j
 public class TabulaServer {
+    private static final long IDLE_CHECK_MILLIS = 1000;
+    private static final int WORKER_QUEUE_SIZE = 1024;
+
+    private final String host;
+    private final int port;
+    private final int workerThreads;
+    @Getter
+    private final Router router = new Router();
+    private final Map<String, WebSocketListener> webSockets = new ConcurrentHashMap<>();
+    private final Set<WebSocketSession> sessions = ConcurrentHashMap.newKeySet();
+    private final Set<TabulaConnection> connections = new HashSet<>();
+    private final Queue<TabulaConnection> scheduled = new ConcurrentLinkedQueue<>();
+
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private ThreadPoolExecutor workers;
+    private Thread eventLoop;
+    private volatile boolean running = false;
+    @Setter
+    private volatile StatisticManager statistics;
+    private final Map<String, Histogram> requestTimes = new ConcurrentHashMap<>();
+
+    /**
+     * @param host          The address to listen on.
+     * @param port          The port to listen on, or 0 for any free port.
+     * @param workerThreads The number of threads running the handlers.
+     */
+    public TabulaServer(String host, int port, int workerThreads) {
+        this.host = host;
+        this.port = port;
+        this.workerThreads = Math.max(1, workerThreads);
+    }
+
+    /**
+     * Registers a handler for requests with the given method and path. Segments written as {@code {name}}
+     * match any value, see {@link de.julianweinelt.gop.tabula.http.HttpRequest#getPathParameter(String)}.
+     */
+    public void route(String method, String pattern, HttpHandler handler) {
+        router.add(method, pattern, handler);
+    }
+
+    /**
+     * Registers a handler whose response is completed later, see {@link AsyncHttpHandler}.
+     */
+    public void routeAsync(String method, String pattern, AsyncHttpHandler handler) {
+        router.add(method, pattern, handler);
+    }
+
+    /**
+     * Accepts WebSocket connections on the given path.
+     */
+    public void webSocket(String path, WebSocketListener listener) {
+        webSockets.put(path, listener);
+    }
+
+    /**
+     * @return All open WebSocket sessions.
+     */
+    public Collection<WebSocketSession> getSessions() {
+        return Collections.unmodifiableSet(sessions);
+    }
+
+    /**
+     * Sends a text message to every open WebSocket session.
+     */
+    public void broadcast(String message) {
+        for (WebSocketSession session : sessions) session.send(message);
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * @return The port the server is listening on.
+     */
+    public int getPort() {
+        try {
+            return serverChannel == null ? port : ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+        } catch (IOException e) {
+            return port;
+        }
+    }
+
+    /**
+     * Binds the server socket and starts the event loop and the worker threads.
+     *
+     * @throws IOException If the address can't be bound.
+     */
+    public synchronized void start() throws IOException {
+        if (running) return;
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        serverChannel.bind(new InetSocketAddress(host, port), 256);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        AtomicInteger workerId = new AtomicInteger();
+        workers = new ThreadPoolExecutor(workerThreads, workerThreads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(WORKER_QUEUE_SIZE), r -> {
+            Thread t = new Thread(r, "Tabula-Worker-" + workerId.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+        running = true;
+        eventLoop = new Thread(this::runEventLoop, "Tabula-EventLoop");
+        eventLoop.setDaemon(true);
+        eventLoop.start();
+        log.info("Tabula server is listening on {}:{}.", host, getPort());
+    }
+
+    /**
+     * Closes all connections and stops the server.
+     */
+    public synchronized void stop() {
+        if (!running) return;
+        running = false;
+        selector.wakeup();
+        try {
+            eventLoop.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        workers.shutdown();
+        log.info("Tabula server has been stopped.");
+    }
+
+    private void runEventLoop() {
+        long nextIdleCheck = System.currentTimeMillis() + IDLE_CHECK_MILLIS;
+        while (running) {
+            try {
+                selector.select(IDLE_CHECK_MILLIS);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) continue;
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    TabulaConnection connection = (TabulaConnection) key.attachment();
+                    if (key.isReadable()) connection.onReadable();
+                    if (key.isValid() && key.isWritable()) connection.onWritable();
+                }
+
+                TabulaConnection connection;
+                while ((connection = scheduled.poll()) != null) connection.process();
+
+                long now = System.currentTimeMillis();
+                if (now >= nextIdleCheck) {
+                    nextIdleCheck = now + IDLE_CHECK_MILLIS;
+                    for (TabulaConnection c : new ArrayList<>(connections)) c.checkIdle(now);
+                }
+            } catch (Exception e) {
+                log.error("Error in the Tabula event loop.");
+                log.error(e.getMessage());
+            }
+        }
+
+        for (TabulaConnection c : new ArrayList<>(connections)) c.close();
+        try {
+            serverChannel.close();
+            selector.close();
+        } catch (IOException e) {
+            log.error("Could not close the Tabula server socket.");
+            log.error(e.getMessage());
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+            TabulaConnection connection = new TabulaConnection(this, channel, key);
+            key.attach(connection);
+            connections.add(connection);
+        }
+    }
+
+    /**
+     * Lets the event loop process the connection, e.g. because a response or a message is ready.
+     * May be called from any thread.
+     */
+    void schedule(TabulaConnection connection) {
+        if (!connection.markScheduled()) return;
+        scheduled.add(connection);
+        if (Thread.currentThread() != eventLoop) selector.wakeup();
+    }
+
+    /**
+     * Records the time from parsing a request (or WebSocket message) until its response is ready, including
+     * the time it waited for a worker thread.
+     */
+    void recordRequest(String route, long startNanos) {
+        StatisticManager current = statistics;
+        if (current == null || route == null) return;
+        requestTimes.computeIfAbsent(route, r -> current.histogram("gop_tabula_request_seconds",
+                "Time from parsing a Tabula request until its response is ready", "route", r)).recordSince(startNanos);
+    }
+
+    /**
+     * Runs a task on the worker threads.
+     *
+     * @return {@code false} if the workers are overloaded and the task has been rejected.
+     */
+    boolean dispatch(Runnable task) {
+        try {
+            workers.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    WebSocketListener getWebSocket(String path) {
+        return webSockets.get(path);
+    }
+
+    void addSession(WebSocketSession session) {
+        sessions.add(session);
+    }
+
+    void removeSession(WebSocketSession session) {
+        sessions.remove(session);
+    }
+
+    void removeConnection(TabulaConnection connection) {
+        connections.remove(connection);
+    }
 }
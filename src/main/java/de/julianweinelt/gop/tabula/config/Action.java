@@ -0,0 +1,15 @@
+package de.julianweinelt.gop.tabula.config;
+
+/**
+ * What happens when a {@link Button} is pressed.
+ */
+public enum Action {
+    /** Fires the event named in {@link Execution#getTarget()} on the server. */
+    FIRE_EVENT,
+    /** Runs the console command in {@link Execution#getTarget()}. */
+    RUN_COMMAND,
+    /** Opens the URL in {@link Execution#getTarget()} in the client. */
+    OPEN_URL,
+    /** Reloads the data of the component. */
+    REFRESH
+}
@@ -0,0 +1,15 @@
+package de.julianweinelt.gop.tabula.config;
+
+import lombok.Getter;
+
+/**
+ * A button of a {@link Component}. If a permission is set, only users with this permission see the button.
+ */
+@Getter
+public class Button {
+    private String id;
+    private String label;
+    private Icon icon;
+    private String permission;
+    private Execution execution;
+}
@@ -0,0 +1,23 @@
+package de.julianweinelt.gop.tabula.config;
+
+import lombok.Getter;
+
+/**
+ * A column of a table component. The key is the name of the column in the result of the {@link DataSource}.
+ */
+@Getter
+public class Column {
+    private String key;
+    private String title;
+    private Type type = Type.STRING;
+    private boolean sortable;
+    private boolean filterable;
+    private boolean hidden;
+
+    public enum Type {
+        STRING,
+        NUMBER,
+        BOOLEAN,
+        DATE
+    }
+}
@@ -0,0 +1,19 @@
+package de.julianweinelt.gop.tabula.config;
+
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * A building block of a tab, e.g. a table with its data source, columns and buttons.
+ */
+@Getter
+public class Component {
+    private String id;
+    private String title;
+    private Display display = Display.TABLE;
+    private String text;
+    private DataSource dataSource;
+    private List<Column> columns;
+    private List<Button> buttons;
+}
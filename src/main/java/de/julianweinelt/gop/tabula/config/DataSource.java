@@ -0,0 +1,22 @@
+package de.julianweinelt.gop.tabula.config;
+
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Where a {@link Component} gets its rows from.
+ * <p>
+ * Example:
+ * <pre>{@code
+ * {"query": "SELECT id, name, pixels FROM players", "keyColumn": "id", "pageSize": 50, "events": ["PlayerUpdate"]}
+ * }</pre>
+ * Only the page size is sent to the clients, the query, key column and events stay on the server.
+ */
+@Getter
+public class DataSource {
+    private String query;
+    private String keyColumn;
+    private int pageSize = 50;
+    private List<String> events;
+}
@@ -0,0 +1,12 @@
+package de.julianweinelt.gop.tabula.config;
+
+/**
+ * How the Tabula client renders a {@link Component}.
+ */
+public enum Display {
+    TABLE,
+    LIST,
+    CARDS,
+    CHART,
+    TEXT
+}
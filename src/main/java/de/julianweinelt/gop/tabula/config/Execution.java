@@ -0,0 +1,21 @@
+package de.julianweinelt.gop.tabula.config;
+
+import lombok.Getter;
+
+import java.util.Map;
+
+/**
+ * Describes the {@link Action} of a {@link Button} together with its target and parameters.
+ * <p>
+ * Example:
+ * <pre>{@code
+ * {"action": "FIRE_EVENT", "target": "ShopRefund", "parameters": {"order": "$row.id"}, "confirm": "Refund this order?"}
+ * }</pre>
+ */
+@Getter
+public class Execution {
+    private Action action;
+    private String target;
+    private Map<String, String> parameters;
+    private String confirm;
+}
@@ -0,0 +1,12 @@
+package de.julianweinelt.gop.tabula.config;
+
+import lombok.Getter;
+
+/**
+ * An icon shown by the Tabula client, e.g. {@code {"name": "users", "color": "#3b82f6"}}.
+ */
+@Getter
+public class Icon {
+    private String name;
+    private String color;
+}
@@ -0,0 +1,14 @@
+package de.julianweinelt.gop.tabula.config;
+
+import lombok.Getter;
+
+/**
+ * General settings of a tab, found under "config" in the "tabula.json" of a module.
+ */
+@Getter
+public class TabConfig {
+    private String title;
+    private String description;
+    private Icon icon;
+    private int order;
+}
@@ -0,0 +1,13 @@
+package de.julianweinelt.gop.tabula.config;
+
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * The components of a tab, found under "content" in the "tabula.json" of a module.
+ */
+@Getter
+public class TabContent {
+    private List<Component> components;
+}
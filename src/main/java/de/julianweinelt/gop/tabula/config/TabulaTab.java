@@ -1,4 +1,18 @@
 package de.julianweinelt.gop.tabula.config;
 
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * The tab a module adds to the Tabula client. Name, permission and short name come from the "module.json",
+ * config and content from the "tabula.json" of the module.
+ */
+@Getter
+@AllArgsConstructor
 public class TabulaTab {
+    private final String moduleName;
+    private final String permission;
+    private final String shortName;
+    private final TabConfig config;
+    private final TabContent content;
 }
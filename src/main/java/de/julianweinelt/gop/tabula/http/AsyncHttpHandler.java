@@ -0,0 +1,18 @@
+package de.julianweinelt.gop.tabula.http;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A handler finishing its work on another pool, e.g. hashing passwords. The worker thread only starts the
+ * work and is free again; the response is sent when the returned future completes.
+ */
+@FunctionalInterface
+public interface AsyncHttpHandler extends HttpHandler {
+    @Override
+    CompletableFuture<HttpResponse> handleAsync(HttpRequest request) throws Exception;
+
+    @Override
+    default HttpResponse handle(HttpRequest request) throws Exception {
+        return handleAsync(request).get();
+    }
+}
@@ -0,0 +1,20 @@
+package de.julianweinelt.gop.tabula.http;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Handles a request routed to it by the {@link de.julianweinelt.gop.tabula.TabulaServer}.
+ * Handlers run on the worker threads of the server, so they may block (e.g. for database queries)
+ * without delaying other connections.
+ */
+@FunctionalInterface
+public interface HttpHandler {
+    HttpResponse handle(HttpRequest request) throws Exception;
+
+    /**
+     * Called by the server. Handlers which don't block, see {@link AsyncHttpHandler}, override this.
+     */
+    default CompletableFuture<HttpResponse> handleAsync(HttpRequest request) throws Exception {
+        return CompletableFuture.completedFuture(handle(request));
+    }
+}
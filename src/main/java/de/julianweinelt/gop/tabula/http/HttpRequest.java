@@ -0,0 +1,120 @@
+package de.julianweinelt.gop.tabula.http;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.io.ByteArrayOutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A parsed HTTP request. Header names are case-insensitive.
+ * <p>
+ * The path is split into its segments before they are percent-decoded, so an encoded slash stays part of
+ * its segment. Unlike the query, a "+" in the path is not a space.
+ * <p>
+ * Example:
+ * <pre>{@code
+ * // GET /api/tabs/Shop%2FLegacy/a+b?filter=red+blue
+ * request.getSegments();              // ["api", "tabs", "Shop/Legacy", "a+b"]
+ * request.getQueryParameter("filter"); // "red blue"
+ * }</pre>
+ */
+@Getter
+public class HttpRequest {
+    private final String method;
+    private final String path;
+    private final List<String> segments;
+    private final Map<String, String> query;
+    private final String version;
+    private final Map<String, String> headers;
+    private final byte[] body;
+    private final InetSocketAddress remoteAddress;
+    @Setter(AccessLevel.PACKAGE)
+    private Map<String, String> pathParameters = Collections.emptyMap();
+    @Setter(AccessLevel.PACKAGE)
+    private String route; // z.B. "GET /api/tabs/{module}", gesetzt vom Router
+
+    public HttpRequest(String method, String target, String version, Map<String, String> headers, byte[] body,
+                       InetSocketAddress remoteAddress) {
+        this.method = method;
+        this.version = version;
+        this.headers = headers;
+        this.body = body;
+        this.remoteAddress = remoteAddress;
+
+        int queryStart = target.indexOf('?');
+        String rawPath = queryStart < 0 ? target : target.substring(0, queryStart);
+        this.path = decodePath(rawPath);
+        List<String> decoded = new ArrayList<>();
+        for (String segment : Router.split(rawPath)) decoded.add(decodePath(segment));
+        this.segments = Collections.unmodifiableList(decoded);
+        this.query = queryStart < 0 ? Collections.emptyMap() : parseQuery(target.substring(queryStart + 1));
+    }
+
+    public String getHeader(String name) {
+        return headers.get(name);
+    }
+
+    public String getQueryParameter(String name) {
+        return query.get(name);
+    }
+
+    /**
+     * @param name The name of a placeholder of the route, e.g. "module" for "/api/tabs/{module}".
+     * @return The value of the placeholder in the path of this request.
+     */
+    public String getPathParameter(String name) {
+        return pathParameters.get(name);
+    }
+
+    public String getBodyAsString() {
+        return new String(body, StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> result = new HashMap<>();
+        for (String pair : query.split("&")) {
+            if (pair.isEmpty()) continue;
+            int eq = pair.indexOf('=');
+            if (eq < 0) result.put(decode(pair), "");
+            else result.put(decode(pair.substring(0, eq)), decode(pair.substring(eq + 1)));
+        }
+        return result;
+    }
+
+    // Prozent-Kodierung ohne "+" als Leerzeichen, ungültige Sequenzen bleiben stehen
+    private static String decodePath(String s) {
+        if (s.indexOf('%') < 0) return s;
+        byte[] raw = s.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length);
+        for (int i = 0; i < raw.length; i++) {
+            if (raw[i] == '%' && i + 2 < raw.length) {
+                int high = Character.digit(raw[i + 1], 16);
+                int low = Character.digit(raw[i + 2], 16);
+                if (high >= 0 && low >= 0) {
+                    out.write(high << 4 | low);
+                    i += 2;
+                    continue;
+                }
+            }
+            out.write(raw[i]);
+        }
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    private static String decode(String s) {
+        try {
+            return URLDecoder.decode(s, StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            return s;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package de.julianweinelt.gop.tabula.http;
+
+import lombok.Getter;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An HTTP response created by a {@link HttpHandler}. Content-Length and Connection are set by the server.
+ * <p>
+ * Example:
+ * <pre>{@code
+ * server.route("GET", "/api/ping", request -> HttpResponse.text(200, "pong"));
+ * }</pre>
+ */
+@Getter
+public class HttpResponse {
+    private static final byte[] EMPTY = new byte[0];
+
+    private final int status;
+    private final Map<String, String> headers = new LinkedHashMap<>();
+    private final byte[] body;
+
+    public HttpResponse(int status, byte[] body) {
+        this.status = status;
+        this.body = body == null ? EMPTY : body;
+    }
+
+    public static HttpResponse status(int status) {
+        return new HttpResponse(status, EMPTY);
+    }
+
+    public static HttpResponse text(int status, String text) {
+        return new HttpResponse(status, text.getBytes(StandardCharsets.UTF_8))
+                .header("Content-Type", "text/plain; charset=utf-8");
+    }
+
+    public static HttpResponse json(int status, String json) {
+        return json(status, json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static HttpResponse json(int status, byte[] json) {
+        return new HttpResponse(status, json).header("Content-Type", "application/json; charset=utf-8");
+    }
+
+    public HttpResponse header(String name, String value) {
+        headers.put(name, value);
+        return this;
+    }
+
+    /**
+     * Encodes status line, headers and body into one buffer ready to be written.
+     *
+     * @param keepAlive Whether the connection stays open after this response.
+     * @param head      Whether the request was a HEAD request, which gets no body.
+     */
+    public ByteBuffer encode(boolean keepAlive, boolean head) {
+        StringBuilder sb = new StringBuilder(128);
+        sb.append("HTTP/1.1 ").append(status).append(' ').append(reason(status)).append("\r\n");
+        for (Map.Entry<String, String> e : headers.entrySet()) {
+            sb.append(e.getKey()).append(": ").append(e.getValue()).append("\r\n");
+        }
+        sb.append("Content-Length: ").append(body.length).append("\r\n");
+        sb.append("Connection: ").append(keepAlive ? "keep-alive" : "close").append("\r\n\r\n");
+        byte[] headerBytes = sb.toString().getBytes(StandardCharsets.ISO_8859_1);
+        int bodyLength = head || status == 304 || status == 204 ? 0 : body.length;
+        ByteBuffer buffer = ByteBuffer.allocate(headerBytes.length + bodyLength);
+        buffer.put(headerBytes);
+        if (bodyLength > 0) buffer.put(body);
+        return buffer.flip();
+    }
+
+    static String reason(int status) {
+        return switch (status) {
+            case 101 -> "Switching Protocols";
+            case 200 -> "OK";
+            case 201 -> "Created";
+            case 204 -> "No Content";
+            case 304 -> "Not Modified";
+            case 400 -> "Bad Request";
+            case 401 -> "Unauthorized";
+            case 403 -> "Forbidden";
+            case 404 -> "Not Found";
+            case 405 -> "Method Not Allowed";
+            case 413 -> "Payload Too Large";
+            case 429 -> "Too Many Requests";
+            case 431 -> "Request Header Fields Too Large";
+            case 500 -> "Internal Server Error";
+            case 501 -> "Not Implemented";
+            case 503 -> "Service Unavailable";
+            default -> "Unknown";
+        };
+    }
+}
@@ -0,0 +1,57 @@
+package de.julianweinelt.gop.tabula.http;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Maps method and path of a request to its {@link HttpHandler}. Path segments written as {@code {name}}
+ * match any value, which is passed to the handler as path parameter.
+ */
+public class Router {
+    private final List<Route> routes = new CopyOnWriteArrayList<>();
+
+    public void add(String method, String pattern, HttpHandler handler) {
+        routes.add(new Route(method.toUpperCase(), split(pattern), method.toUpperCase() + " " + pattern, handler));
+    }
+
+    /**
+     * Finds the handler of a request and stores the path parameters and the matched route in the request.
+     * HEAD requests are answered by the GET handler.
+     *
+     * @return The handler, or {@code null} if no route matches.
+     */
+    public HttpHandler resolve(HttpRequest request) {
+        String method = request.getMethod().equals("HEAD") ? "GET" : request.getMethod();
+        List<String> path = request.getSegments();
+        for (Route route : routes) {
+            if (!route.method.equals(method) || route.segments.length != path.size()) continue;
+            Map<String, String> parameters = null;
+            boolean matches = true;
+            for (int i = 0; i < path.size() && matches; i++) {
+                String segment = route.segments[i];
+                if (segment.startsWith("{") && segment.endsWith("}")) {
+                    if (parameters == null) parameters = new HashMap<>();
+                    parameters.put(segment.substring(1, segment.length() - 1), path.get(i));
+                } else {
+                    matches = segment.equals(path.get(i));
+                }
+            }
+            if (!matches) continue;
+            if (parameters != null) request.setPathParameters(parameters);
+            request.setRoute(route.name);
+            return route.handler;
+        }
+        return null;
+    }
+
+    static String[] split(String path) {
+        String trimmed = path.startsWith("/") ? path.substring(1) : path;
+        if (trimmed.endsWith("/")) trimmed = trimmed.substring(0, trimmed.length() - 1);
+        return trimmed.isEmpty() ? new String[0] : trimmed.split("/");
+    }
+
+    private record Route(String method, String[] segments, String name, HttpHandler handler) {
+    }
+}
@@ -0,0 +1,15 @@
+package de.julianweinelt.gop.tabula.http;
+
+/**
+ * Receives the events of the WebSocket sessions opened on a path of the {@link de.julianweinelt.gop.tabula.TabulaServer}.
+ * All calls for one session happen one after another on the worker threads of the server.
+ */
+public interface WebSocketListener {
+    default void onOpen(WebSocketSession session) {}
+
+    default void onMessage(WebSocketSession session, String message) {}
+
+    default void onBinary(WebSocketSession session, byte[] data) {}
+
+    default void onClose(WebSocketSession session) {}
+}
@@ -0,0 +1,53 @@
+package de.julianweinelt.gop.tabula.http;
+
+import java.net.InetSocketAddress;
+
+/**
+ * An open WebSocket connection of a Tabula client. Messages can be sent from any thread; they are
+ * queued and written by the event loop of the server.
+ */
+public interface WebSocketSession {
+
+    /**
+     * Sends a text message.
+     *
+     * @return {@code false} if the session is closed or the client is too slow and has been disconnected.
+     */
+    boolean send(String message);
+
+    /**
+     * Sends a binary message.
+     *
+     * @return {@code false} if the session is closed or the client is too slow and has been disconnected.
+     */
+    boolean send(byte[] data);
+
+    /**
+     * Waits until at most the given number of bytes are still queued for this session. Used by senders of
+     * large amounts of data, which would otherwise get the client disconnected for being too slow.
+     *
+     * @return {@code false} if the session has been closed or the timeout elapsed.
+     */
+    boolean awaitDrain(long maxQueuedBytes, long timeoutMillis) throws InterruptedException;
+
+    /**
+     * Closes the session after all queued messages have been sent.
+     *
+     * @param code   The WebSocket close code, e.g. 1000 for a normal closure.
+     * @param reason A short reason.
+     */
+    void close(int code, String reason);
+
+    boolean isOpen();
+
+    /**
+     * @return The request which opened the session.
+     */
+    HttpRequest getRequest();
+
+    InetSocketAddress getRemoteAddress();
+
+    Object getAttribute(String key);
+
+    void setAttribute(String key, Object value);
+}
@@ -1,4 +1,113 @@
 package de.julianweinelt.gop.util;
 
+import lombok.Getter;
+import org.jose4j.jwa.AlgorithmConstraints;
+import org.jose4j.jws.AlgorithmIdentifiers;
+import org.jose4j.jws.JsonWebSignature;
+import org.jose4j.jwt.JwtClaims;
+import org.jose4j.jwt.NumericDate;
+import org.jose4j.jwt.consumer.InvalidJwtException;
+import org.jose4j.jwt.consumer.JwtConsumer;
+import org.jose4j.jwt.consumer.JwtConsumerBuilder;
+import org.jose4j.keys.HmacKey;
+import org.jose4j.lang.JoseException;
+
+import java.security.SecureRandom;
+import java.util.Map;
+
+/**
+ * Creates and verifies HMAC-SHA256 signed JWTs.
+ * <p>
+ * The key and the {@link JwtConsumer} are created once in the constructor and shared by all threads,
+ * so verifying a token doesn't build anything. Only HS256 is accepted, tokens with another algorithm
+ * (including "none") are rejected.
+ * <p>
+ * Example:
+ * <pre>{@code
+ * JWTUtil jwt = new JWTUtil(JWTUtil.randomSecret(), "GoP");
+ * String token = jwt.createToken("admin", 3600, Map.of("role", "owner"));
+ * JwtClaims claims = jwt.parse(token);
+ * }</pre>
+ */
 public class JWTUtil {
+    private static final int MIN_SECRET_LENGTH = 32;
+    /**
+     * Tokens are still accepted this long after their expiration, see {@link TabulaJWT}.
+     */
+    public static final int CLOCK_SKEW_SECONDS = 30;
+
+    private final HmacKey key;
+    @Getter
+    private final String issuer;
+    private final JwtConsumer consumer;
+
+    /**
+     * @param secret The HMAC secret, at least 32 bytes.
+     * @param issuer The issuer written into and expected in every token.
+     */
+    public JWTUtil(byte[] secret, String issuer) {
+        if (secret == null || secret.length < MIN_SECRET_LENGTH) {
+            throw new IllegalArgumentException("The JWT secret must be at least " + MIN_SECRET_LENGTH + " bytes long.");
+        }
+        this.key = new HmacKey(secret.clone());
+        this.issuer = issuer;
+        this.consumer = new JwtConsumerBuilder()
+                .setRequireExpirationTime()
+                .setRequireSubject()
+                .setRequireJwtId()
+                .setAllowedClockSkewInSeconds(CLOCK_SKEW_SECONDS)
+                .setExpectedIssuer(issuer)
+                .setVerificationKey(key)
+                .setJwsAlgorithmConstraints(new AlgorithmConstraints(AlgorithmConstraints.ConstraintType.PERMIT,
+                        AlgorithmIdentifiers.HMAC_SHA256))
+                .build();
+    }
+
+    /**
+     * Creates a signed token with a random id ("jti") and the issue time ("iat").
+     *
+     * @param subject    The subject, e.g. the name of the user.
+     * @param ttlSeconds The lifetime of the token.
+     * @param claims     Additional claims, may be empty.
+     * @return The compact serialization of the token.
+     * @throws JoseException If the token can't be signed.
+     */
+    public String createToken(String subject, long ttlSeconds, Map<String, Object> claims) throws JoseException {
+        JwtClaims jwtClaims = new JwtClaims();
+        jwtClaims.setIssuer(issuer);
+        jwtClaims.setSubject(subject);
+        jwtClaims.setGeneratedJwtId();
+        jwtClaims.setIssuedAtToNow();
+        NumericDate expiration = NumericDate.now();
+        expiration.addSeconds(ttlSeconds);
+        jwtClaims.setExpirationTime(expiration);
+        for (Map.Entry<String, Object> e : claims.entrySet()) jwtClaims.setClaim(e.getKey(), e.getValue());
+
+        // JsonWebSignature ist nicht threadsicher, daher pro Token
+        JsonWebSignature jws = new JsonWebSignature();
+        jws.setPayload(jwtClaims.toJson());
+        jws.setAlgorithmHeaderValue(AlgorithmIdentifiers.HMAC_SHA256);
+        jws.setKey(key);
+        return jws.getCompactSerialization();
+    }
+
+    /**
+     * Verifies the signature, issuer and expiration of a token.
+     *
+     * @param token The compact serialization of the token.
+     * @return The claims of the token.
+     * @throws InvalidJwtException If the token is invalid or expired, see {@link InvalidJwtException#hasExpired()}.
+     */
+    public JwtClaims parse(String token) throws InvalidJwtException {
+        return consumer.processToClaims(token);
+    }
+
+    /**
+     * @return A new random secret suitable for {@link #JWTUtil(byte[], String)}.
+     */
+    public static byte[] randomSecret() {
+        byte[] secret = new byte[MIN_SECRET_LENGTH];
+        new SecureRandom().nextBytes(secret);
+        return secret;
+    }
 }
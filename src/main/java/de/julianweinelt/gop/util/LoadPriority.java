@@ -1,4 +1,6 @@
 package de.julianweinelt.gop.util;
 
 public enum LoadPriority {
+    LOAD_BEFORE,
+    LOAD_AFTER
 }
@@ -1,36 +1,76 @@
-package de.julianweinelt.gop.database.util;
+package de.julianweinelt.gop.util;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import de.julianweinelt.gop.util.codec.BinaryCodec;
+import de.julianweinelt.gop.util.codec.DataCodec;
+import de.julianweinelt.gop.util.codec.JsonCodec;
 import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 
 import javax.crypto.Cipher;
+import javax.crypto.CipherInputStream;
+import javax.crypto.CipherOutputStream;
+import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 import java.io.*;
 import java.lang.reflect.Type;
-import java.nio.file.NoSuchFileException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * A utility class for managing the saving and loading of objects to and from JSON files,
  * with optional encryption support.
  *
  * <p>The class is generic and allows type-safe handling of specific types. It uses GSON for
- * serialization and deserialization, and AES encryption for secure storage if enabled.</p>
+ * serialization and deserialization, and AES/GCM encryption for secure storage if enabled.</p>
  *
  * @param <T> The type of object to be managed by this class.
  */
 public abstract class LoadableManager<T> {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long MAPPING_THRESHOLD = 1024 * 1024;
+    private static final byte[] MAGIC = {'G', 'O', 'P', 'E'};
+    private static final byte FORMAT_VERSION = 1;
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_BITS = 128;
+    private static final int HEADER_LENGTH = MAGIC.length + 1 + IV_LENGTH;
+    private static final SecureRandom RANDOM = new SecureRandom();
+    // Cipher-Objekte sind nicht threadsicher, werden aber pro Thread wiederverwendet
+    private static final ThreadLocal<Cipher> GCM_CIPHER = cipherPerThread("AES/GCM/NoPadding");
+    private static final ThreadLocal<Cipher> CBC_CIPHER = cipherPerThread("AES/CBC/PKCS5PADDING");
+    private static final Set<LoadableManager<?>> WRITE_BEHIND = ConcurrentHashMap.newKeySet();
+    private static final ScheduledExecutorService FLUSHER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "LoadableManager-Flusher");
+        t.setDaemon(true);
+        return t;
+    });
 
-    private final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+    private final Gson GSON;
     private final Logger log;
     private final boolean encrypt;
     private final String encryptionKey;
-    private T toSave;
+    private final SecretKeySpec secretKey;
+    private volatile DataCodec codec = JsonCodec.INSTANCE;
+    private volatile T toSave;
+    private final AtomicBoolean dirty = new AtomicBoolean(false);
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private volatile File writeBehindFile;
+    private volatile long writeBehindDelay;
 
     /**
-     * Constructs a new instance of {@code LoadableManager}.
+     * Constructs a new instance of {@code LoadableManager}, which writes pretty printed JSON.
      *
      * @param log           The {@link Logger} instance used for logging information or errors.
      * @param encrypt       A flag indicating whether encryption is enabled.
@@ -38,16 +78,40 @@ public abstract class LoadableManager<T> {
      *                      Must be a valid AES key.
      */
     protected LoadableManager(Logger log, boolean encrypt, String encryptionKey) {
+        this(log, encrypt, encryptionKey, true);
+    }
+
+    /**
+     * Constructs a new instance of {@code LoadableManager}.
+     *
+     * @param log            The {@link Logger} instance used for logging information or errors.
+     * @param encrypt        A flag indicating whether encryption is enabled.
+     * @param encryptionKey  The encryption key used for encrypting and decrypting data.
+     *                       Must be a valid AES key.
+     * @param prettyPrinting Whether the JSON should be pretty printed. Compact JSON is smaller and
+     *                       faster to write, which matters for large data files.
+     */
+    protected LoadableManager(Logger log, boolean encrypt, String encryptionKey, boolean prettyPrinting) {
         this.log = log;
         this.encrypt = encrypt;
         this.encryptionKey = encryptionKey;
+        this.secretKey = encrypt ? new SecretKeySpec(encryptionKey.getBytes(), "AES") : null;
+        GsonBuilder builder = new GsonBuilder();
+        if (prettyPrinting) builder.setPrettyPrinting();
+        this.GSON = builder.create();
     }
 
     /**
      * Loads a JSON file from the specified file path and deserializes it into the specified type.
      *
-     * <p>If encryption is enabled, the method attempts to decrypt the file content
-     * before deserializing it.</p>
+     * <p>Unencrypted JSON files are parsed while they are read, so their content is never held in memory
+     * as a whole. Encrypted files are not: AES/GCM only releases the plain text once the authentication
+     * tag at the end of the file has been verified, so the cipher buffers the whole file while decrypting
+     * and memory grows with its size.</p>
+     *
+     * <p>The format of the file is detected by its header, so files written with any {@link DataCodec}
+     * can be loaded. Binary files are always decoded from memory, see {@link BinaryCodec}. Large
+     * unencrypted binary files are memory mapped instead of being copied into a buffer.</p>
      *
      * @param path The file path of the JSON file to be loaded.
      * @param type The type of the object to be deserialized. This can be specified
@@ -68,30 +132,22 @@ public abstract class LoadableManager<T> {
         if (!new File(path).exists()) {
             throw new NoSuchFileException(path);
         }
-        if (encrypt) {
-            try {
-                byte[] encryptedData = loadEncryptedData(path);
-                byte[] key = encryptionKey.getBytes();
-                byte[] iv = encryptionKey.getBytes();
-                String decryptedData = decrypt(encryptedData, key, iv);
-                return GSON.fromJson(decryptedData, type);
-            } catch (Exception e) {
-                log.error("Could not parse file. Maybe it's not encrypted?");
-                log.error(e.getMessage());
-                return null;
-            }
-        } else {
-            try (BufferedReader br = new BufferedReader(new FileReader(path))) {
-                StringBuilder jsonStringBuilder = new StringBuilder();
-                String line;
-                while ((line = br.readLine()) != null) {
-                    jsonStringBuilder.append(line);
+        try {
+            Path file = Path.of(path);
+            if (!encrypt && Files.size(file) >= MAPPING_THRESHOLD) {
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                    DataCodec detected = DataCodec.detect(buffer);
+                    if (detected.supportsMapping()) return detected.read(GSON, type, buffer);
                 }
-                return GSON.fromJson(jsonStringBuilder.toString(), type);
-            } catch (IOException e) {
-                log.error(e.getMessage());
-                return null;
             }
+            try (InputStream in = openInput(file)) {
+                return DataCodec.detect(in).read(GSON, type, in);
+            }
+        } catch (Exception e) {
+            if (encrypt) log.error("Could not parse file. Maybe it's not encrypted?");
+            log.error(e.getMessage());
+            return null;
         }
     }
 
@@ -103,67 +159,171 @@ public abstract class LoadableManager<T> {
      * @param directory The directory where the JSON file should be saved.
      *                  If the directory does not exist, it will be created.
      * @param fileName  The name of the JSON file (without the path).
+     * @return Whether the object has been saved.
      * @throws NullPointerException if {@code directory} or {@code fileName} is {@code null}.
      */
-    public void saveObject(File directory, String fileName) {
+    public boolean saveObject(File directory, String fileName) {
         if (directory.mkdirs()) {
             log.info("Creating data folders...");
         }
-        if (encrypt) {
-            try {
-                byte[] encryptedData = encrypt(GSON.toJson(toSave), encryptionKey.getBytes(), encryptionKey.getBytes());
-                try (FileOutputStream fos = new FileOutputStream(new File(directory, fileName + ".json"))) {
-                    fos.write(encryptedData);
-                }
-            } catch (Exception e) {
-                log.error("Failed to save encrypted data:");
-                log.error(e.getMessage());
-            }
-        } else {
-            try (FileWriter writer = new FileWriter(new File(directory, fileName + ".json"))) {
-                writer.write(GSON.toJson(toSave));
-            } catch (IOException e) {
-                log.error("Failed to save object: " + e.getMessage());
-            }
-        }
+        return saveObject(new File(directory, fileName + ".json"));
     }
 
     /**
      * Saves the given object as a JSON file at the specified path.
      *
-     * <p>If encryption is enabled, the method encrypts the JSON content before writing it to the file.</p>
+     * <p>The object is serialized directly into a buffered stream of the file, so no JSON
+     * {@link String} of the whole object is built. If encryption is enabled, the JSON content is
+     * encrypted on the fly.</p>
+     *
+     * <p>The content is written to a temporary file next to the target, synced to disk and then
+     * moved over the target in one step. If the system crashes while saving, the old file stays
+     * intact.</p>
+     *
+     * <p>The save holds the lock of the manager, so changes of the object made while holding the same lock
+     * ({@code synchronized (manager)}) never overlap with it. Managers changing their object under other
+     * locks override {@link #snapshot(Object)}.</p>
      *
      * @param file  The name of the JSON file (without the path).
+     * @return Whether the object has been saved. Failures are logged.
      * @throws NullPointerException if {@code directory} or {@code fileName} is {@code null}.
      */
-    public void saveObject(File file) {
-        if (encrypt) {
+    public synchronized boolean saveObject(File file) {
+        Path target = file.toPath().toAbsolutePath();
+        Path tmp = null;
+        try {
+            T data = snapshot(toSave);
+            tmp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+            try (OutputStream out = openOutput(tmp)) {
+                codec.write(GSON, data, out);
+            }
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
             try {
-                byte[] encryptedData = encrypt(GSON.toJson(toSave), encryptionKey.getBytes(), encryptionKey.getBytes());
-                try (FileOutputStream fos = new FileOutputStream(file)) {
-                    fos.write(encryptedData);
-                }
-            } catch (Exception e) {
-                log.error("Failed to save encrypted data:");
-                log.error(e.getMessage());
+                Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
             }
-        } else {
-            try (FileWriter writer = new FileWriter(file)) {
-                writer.write(GSON.toJson(toSave));
-            } catch (IOException e) {
-                log.error("Failed to save object: " + e.getMessage());
+            syncDirectory(target.getParent());
+            return true;
+        } catch (Exception e) {
+            log.error(encrypt ? "Failed to save encrypted data:" : "Failed to save object:");
+            log.error(e.getMessage());
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException ignored) {
+                    // Nothing left to do, the temporary file is overwritten with the next save
+                }
             }
+            return false;
+        }
+    }
+
+    /**
+     * Returns the object written by a save. Called while holding the lock of the manager.
+     * <p>
+     * The default returns the object itself. Managers whose object is changed under other locks, e.g.
+     * one lock per entry, return a copy taken under these locks, so the serialization never walks an
+     * object which is being changed.
+     *
+     * @param data The object to save.
+     * @return The object to serialize.
+     */
+    protected T snapshot(T data) {
+        return data;
+    }
+
+    /**
+     * Enables the write-behind mode. Afterwards {@link #setDataToSave(Object)} and {@link #markDirty()}
+     * don't write anything themselves, but a background thread saves the object to the given file.
+     * Repeated changes are combined into one save, and a change is saved at the latest after
+     * {@code maxDelayMillis}. Pending saves are written by {@link #flushAll()} when the system stops.
+     *
+     * @param file           The file the object is saved to.
+     * @param maxDelayMillis The maximum time a change may stay unsaved.
+     */
+    public void enableWriteBehind(File file, long maxDelayMillis) {
+        this.writeBehindFile = file;
+        this.writeBehindDelay = maxDelayMillis;
+        WRITE_BEHIND.add(this);
+    }
+
+    /**
+     * Disables the write-behind mode after saving any pending change.
+     */
+    public void disableWriteBehind() {
+        WRITE_BEHIND.remove(this);
+        flush();
+        writeBehindFile = null;
+    }
+
+    /**
+     * Marks the object to save as changed. In write-behind mode, a save is scheduled if none is pending.
+     * Use this after modifying the object returned by {@link #getSaveData()}.
+     */
+    public void markDirty() {
+        if (writeBehindFile == null) return;
+        dirty.set(true);
+        if (flushScheduled.compareAndSet(false, true)) {
+            FLUSHER.schedule(() -> {
+                flushScheduled.set(false);
+                flush();
+            }, writeBehindDelay, TimeUnit.MILLISECONDS);
         }
     }
 
     /**
-     * Sets the object to be saved. This object will be serialized to JSON when {@link #saveObject(File, String)} is called.
+     * Saves the object now if it has been changed since the last save in write-behind mode.
+     * If the save fails, the change stays pending and is retried after the delay.
+     */
+    public void flush() {
+        File file = writeBehindFile;
+        if (file == null || !dirty.compareAndSet(true, false)) return;
+        if (!saveObject(file)) markDirty();
+    }
+
+    /**
+     * Saves all pending changes of every manager in write-behind mode. Called when the system stops.
+     */
+    public static void flushAll() {
+        for (LoadableManager<?> manager : WRITE_BEHIND) manager.flush();
+    }
+
+    private static void syncDirectory(Path directory) {
+        // Makes the rename itself durable. Not supported on every platform, so failures are ignored.
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Sets the format used for saving. Loading detects the format of every file by itself, so existing
+     * files are converted with their next save.
+     *
+     * @param codec The codec, e.g. {@link JsonCodec#INSTANCE} for editable configs or {@link BinaryCodec#DEFLATE}
+     *              for large data.
+     */
+    public void setCodec(DataCodec codec) {
+        this.codec = codec;
+    }
+
+    public DataCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * Sets the object to be saved. This object will be serialized to JSON when {@link #saveObject(File, String)} is called,
+     * or by the background flusher in write-behind mode.
      *
      * @param object The object to save.
      * @throws NullPointerException if {@code object} is {@code null}.
      */
     public void setDataToSave(T object) {
         this.toSave = object;
+        markDirty();
     }
 
     /**
@@ -176,53 +336,76 @@ public abstract class LoadableManager<T> {
     }
 
     /**
-     * Decrypts the given encrypted data using AES.
+     * Opens a buffered stream for reading the file, decrypting its content if encryption is enabled.
      *
-     * @param encryptedData The encrypted data as a byte array.
-     * @param key           The AES key as a byte array.
-     * @param iv            The initialization vector as a byte array.
-     * @return The decrypted data as a {@link String}.
-     * @throws Exception If decryption fails.
-     */
-    private String decrypt(byte[] encryptedData, byte[] key, byte[] iv) throws Exception {
-        SecretKeySpec keySpec = new SecretKeySpec(key, "AES");
-        IvParameterSpec ivSpec = new IvParameterSpec(iv);
-        Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5PADDING");
-        cipher.init(Cipher.DECRYPT_MODE, keySpec, ivSpec);
-        byte[] decryptedBytes = cipher.doFinal(encryptedData);
-        return new String(decryptedBytes);
-    }
-
-    /**
-     * Encrypts the given data using AES.
+     * <p>Encrypted files start with the {@code GOPE} header, followed by the format version and the
+     * IV of the file. Files without this header have been written by older versions with AES/CBC
+     * and are still readable. They are stored in the new format with the next save.</p>
+     *
+     * <p>The returned stream of a GCM file only yields data once the whole file has been read and
+     * its tag verified, so the cipher holds the complete content in memory. Tampered data is never
+     * handed to the parser.</p>
      *
-     * @param data The data to encrypt as a {@link String}.
-     * @param key  The AES key as a byte array.
-     * @param iv   The initialization vector as a byte array.
-     * @return The encrypted data as a byte array.
-     * @throws Exception If encryption fails.
+     * @param path The file to read.
+     * @return The stream to read the plain JSON from.
+     * @throws Exception If the file can't be opened or the cipher can't be initialized.
      */
-    private byte[] encrypt(String data, byte[] key, byte[] iv) throws Exception {
-        SecretKeySpec keySpec = new SecretKeySpec(key, "AES");
-        IvParameterSpec ivSpec = new IvParameterSpec(iv);
-        Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5PADDING");
-        cipher.init(Cipher.ENCRYPT_MODE, keySpec, ivSpec);
-        return cipher.doFinal(data.getBytes());
+    private InputStream openInput(Path path) throws Exception {
+        InputStream in = new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE);
+        if (!encrypt) return in;
+
+        in.mark(HEADER_LENGTH);
+        byte[] header = in.readNBytes(HEADER_LENGTH);
+        if (header.length == HEADER_LENGTH && Arrays.equals(header, 0, MAGIC.length, MAGIC, 0, MAGIC.length)) {
+            if (header[MAGIC.length] != FORMAT_VERSION) {
+                in.close();
+                throw new IOException("Unsupported encryption format version " + header[MAGIC.length]);
+            }
+            Cipher cipher = GCM_CIPHER.get();
+            cipher.init(Cipher.DECRYPT_MODE, secretKey,
+                    new GCMParameterSpec(TAG_BITS, header, MAGIC.length + 1, IV_LENGTH));
+            return new BufferedInputStream(new CipherInputStream(in, cipher), BUFFER_SIZE);
+        }
+
+        in.reset();
+        log.info("Reading legacy encrypted file {}, it will be converted with the next save.", path.getFileName());
+        Cipher cipher = CBC_CIPHER.get();
+        cipher.init(Cipher.DECRYPT_MODE, secretKey, new IvParameterSpec(encryptionKey.getBytes()));
+        return new BufferedInputStream(new CipherInputStream(in, cipher), BUFFER_SIZE);
     }
 
     /**
-     * Loads encrypted data from a file.
+     * Opens a buffered stream for writing the file, encrypting the content if encryption is enabled.
+     * Encrypted files are written with AES/GCM and a random IV, so the content is authenticated and
+     * the same data never results in the same file.
      *
-     * @param filePath The path to the file containing the encrypted data.
-     * @return The encrypted data as a byte array.
-     * @throws IOException If reading the file fails.
+     * @param path The file to write.
+     * @return The stream to write the plain JSON to.
+     * @throws Exception If the file can't be opened or the cipher can't be initialized.
      */
-    private byte[] loadEncryptedData(String filePath) throws IOException {
-        try (FileInputStream fis = new FileInputStream(filePath)) {
-            return fis.readAllBytes();
-        }
+    private OutputStream openOutput(Path path) throws Exception {
+        OutputStream out = new BufferedOutputStream(Files.newOutputStream(path), BUFFER_SIZE);
+        if (!encrypt) return out;
+
+        byte[] iv = new byte[IV_LENGTH];
+        RANDOM.nextBytes(iv);
+        Cipher cipher = GCM_CIPHER.get();
+        cipher.init(Cipher.ENCRYPT_MODE, secretKey, new GCMParameterSpec(TAG_BITS, iv));
+        out.write(MAGIC);
+        out.write(FORMAT_VERSION);
+        out.write(iv);
+        return new CipherOutputStream(out, cipher);
     }
 
+    private static ThreadLocal<Cipher> cipherPerThread(String transformation) {
+        return ThreadLocal.withInitial(() -> {
+            try {
+                return Cipher.getInstance(transformation);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Cipher " + transformation + " is not available", e);
+            }
+        });
+    }
 
     public abstract void loadData();
     public abstract void saveData();
@@ -0,0 +1,91 @@
+package de.julianweinelt.gop.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Token buckets by key, e.g. one per user name or per IP address.
+ * <p>
+ * Every key may do {@code burst} attempts at once and gets {@code perMinute} attempts per minute back.
+ * Buckets which have filled up again are dropped from time to time, so keys seen only once don't stay
+ * in memory.
+ * <p>
+ * Example:
+ * <pre>{@code
+ * RateLimiter logins = new RateLimiter(5, 5);
+ * if (!logins.tryAcquire(user)) return HttpResponse.status(429);
+ * }</pre>
+ */
+public class RateLimiter {
+    private static final long SWEEP_NANOS = 60_000_000_000L;
+
+    private final double burst;
+    private final double perNano;
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private volatile long nextSweep = System.nanoTime() + SWEEP_NANOS;
+
+    /**
+     * @param burst     The attempts a key may do at once.
+     * @param perMinute The attempts a key gets back per minute.
+     */
+    public RateLimiter(int burst, int perMinute) {
+        this.burst = Math.max(1, burst);
+        this.perNano = Math.max(1, perMinute) / 60_000_000_000d;
+    }
+
+    /**
+     * Takes one attempt from the bucket of the key.
+     *
+     * @return {@code false} if the key has no attempts left.
+     */
+    public boolean tryAcquire(String key) {
+        long now = System.nanoTime();
+        if (now - nextSweep >= 0) sweep(now);
+        return buckets.computeIfAbsent(key, k -> new Bucket(burst, now)).tryAcquire(now);
+    }
+
+    /**
+     * @return The milliseconds until the key has an attempt again, 0 if it has one now.
+     */
+    public long getRetryMillis(String key) {
+        Bucket bucket = buckets.get(key);
+        return bucket == null ? 0 : bucket.retryMillis(System.nanoTime());
+    }
+
+    private void sweep(long now) {
+        nextSweep = now + SWEEP_NANOS;
+        buckets.values().removeIf(bucket -> bucket.isFull(now));
+    }
+
+    private final class Bucket {
+        private double tokens;
+        private long updated;
+
+        private Bucket(double tokens, long updated) {
+            this.tokens = tokens;
+            this.updated = updated;
+        }
+
+        private synchronized boolean tryAcquire(long now) {
+            refill(now);
+            if (tokens < 1) return false;
+            tokens--;
+            return true;
+        }
+
+        private synchronized long retryMillis(long now) {
+            refill(now);
+            return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / perNano / 1_000_000);
+        }
+
+        private synchronized boolean isFull(long now) {
+            refill(now);
+            return tokens >= burst;
+        }
+
+        private void refill(long now) {
+            tokens = Math.min(burst, tokens + (now - updated) * perNano);
+            updated = now;
+        }
+    }
+}
@@ -1,4 +1,267 @@
 package de.julianweinelt.gop.util;
 
+import de.julianweinelt.gop.tabula.FailReason;
+import lombok.Getter;
+import org.jose4j.jwt.JwtClaims;
+import org.jose4j.jwt.MalformedClaimException;
+import org.jose4j.jwt.consumer.InvalidJwtException;
+import org.jose4j.lang.JoseException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Issues and verifies the tokens of the Tabula clients.
+ * <p>
+ * Every request of a client carries its token, so verified tokens are cached: the next request with the
+ * same token only costs a SHA-256 hash and a map lookup instead of a signature check. The cache is keyed
+ * by the hash of the token, holds at most {@code maxCached} tokens and every entry is dropped when the
+ * {@link JWTUtil} would stop accepting its token, i.e. {@link JWTUtil#CLOCK_SKEW_SECONDS} after it expired.
+ * If the cache is full, the token expiring first is dropped.
+ * <p>
+ * Tokens can be revoked at any time, either one token with {@link #revoke(String)} or all tokens of a user
+ * issued before the current second with {@link #revokeSubject(String)}. Revocations are checked on every
+ * call, including cache hits, and are kept until every token they cover has expired. Tokens living longer
+ * than {@code maxTtlSeconds} are rejected, so revocations of a user can be dropped after that time.
+ * <p>
+ * Example:
+ * <pre>{@code
+ * TabulaJWT jwt = new TabulaJWT(new JWTUtil(secret, "GoP"), 10_000, 3600);
+ * String token = jwt.issue("admin", 3600, Map.of());
+ * TabulaJWT.Result result = jwt.verify(token);
+ * if (!result.isValid()) return HttpResponse.status(401);
+ * }</pre>
+ */
 public class TabulaJWT {
+    private static final long REVOCATION_SWEEP_MILLIS = 60_000;
+    private static final long SKEW_MILLIS = TimeUnit.SECONDS.toMillis(JWTUtil.CLOCK_SKEW_SECONDS);
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    });
+
+    @Getter
+    private final JWTUtil util;
+    private final int maxCached;
+    private final long maxTtlSeconds;
+    private final Map<String, Result> verified = new ConcurrentHashMap<>();
+    private final PriorityQueue<Expiry> expiries = new PriorityQueue<>(Comparator.comparingLong(Expiry::at));
+    private final Map<String, Long> revokedIds = new ConcurrentHashMap<>();       // jti -> akzeptiert bis
+    private final Map<String, Long> revokedSubjects = new ConcurrentHashMap<>();  // sub -> Sekunde des Widerrufs
+    private volatile long nextExpiry = Long.MAX_VALUE;
+    private volatile long nextRevocationSweep = System.currentTimeMillis() + REVOCATION_SWEEP_MILLIS;
+
+    /**
+     * @param util          Signs and verifies the tokens.
+     * @param maxCached     The maximum number of verified tokens kept, 0 to verify every token again.
+     * @param maxTtlSeconds The longest lifetime of a token, longer living tokens are neither issued nor accepted.
+     */
+    public TabulaJWT(JWTUtil util, int maxCached, long maxTtlSeconds) {
+        this.util = util;
+        this.maxCached = Math.max(0, maxCached);
+        this.maxTtlSeconds = maxTtlSeconds;
+    }
+
+    /**
+     * Issues a new token.
+     *
+     * @param subject    The name of the user.
+     * @param ttlSeconds The lifetime of the token.
+     * @param claims     Additional claims, may be empty.
+     * @return The token.
+     * @throws JoseException            If the token can't be signed.
+     * @throws IllegalArgumentException If the lifetime is longer than {@code maxTtlSeconds}.
+     */
+    public String issue(String subject, long ttlSeconds, Map<String, Object> claims) throws JoseException {
+        if (ttlSeconds > maxTtlSeconds) {
+            throw new IllegalArgumentException("Tokens may live at most " + maxTtlSeconds + " seconds.");
+        }
+        return util.createToken(subject, ttlSeconds, claims);
+    }
+
+    /**
+     * Verifies a token, using the cache if it has been verified before.
+     *
+     * @param token The token sent by the client.
+     * @return The result, see {@link Result#isValid()}.
+     */
+    public Result verify(String token) {
+        if (token == null || token.isEmpty()) return Result.failed(FailReason.TOKEN_INVALID);
+        long now = System.currentTimeMillis();
+        sweep(now);
+        String hash = hash(token);
+
+        Result result = verified.get(hash);
+        if (result != null) {
+            if (acceptedUntil(result.expiresAt) <= now) {
+                verified.remove(hash, result);
+                return Result.failed(FailReason.TOKEN_EXPIRED);
+            }
+            return isRevoked(result) ? Result.failed(FailReason.TOKEN_INVALID) : result;
+        }
+
+        try {
+            result = Result.of(util.parse(token));
+        } catch (InvalidJwtException e) {
+            return Result.failed(e.hasExpired() ? FailReason.TOKEN_EXPIRED : FailReason.TOKEN_INVALID);
+        } catch (MalformedClaimException e) {
+            return Result.failed(FailReason.TOKEN_INVALID);
+        }
+        // ohne iat oder mit zu langer Laufzeit ließe sich ein Widerruf des Users nie aufräumen
+        if (result.issuedAt == 0 || result.expiresAt - result.issuedAt > TimeUnit.SECONDS.toMillis(maxTtlSeconds)) {
+            return Result.failed(FailReason.TOKEN_INVALID);
+        }
+        if (isRevoked(result)) return Result.failed(FailReason.TOKEN_INVALID);
+        cache(hash, result);
+        return result;
+    }
+
+    /**
+     * Revokes a single token. Does nothing if the token is invalid anyway.
+     */
+    public void revoke(String token) {
+        Result result = verify(token);
+        if (!result.isValid()) return;
+        revokedIds.put(result.tokenId, acceptedUntil(result.expiresAt));
+        verified.remove(hash(token));
+    }
+
+    /**
+     * Revokes a single token by its id ("jti"), e.g. when the session it has been issued for is closed.
+     *
+     * @param tokenId   The id of the token.
+     * @param expiresAt The expiration of the token, the revocation is kept until the token is no longer accepted.
+     */
+    public void revokeId(String tokenId, long expiresAt) {
+        if (tokenId == null || acceptedUntil(expiresAt) <= System.currentTimeMillis()) return;
+        revokedIds.put(tokenId, acceptedUntil(expiresAt));
+        verified.values().removeIf(r -> tokenId.equals(r.tokenId));
+    }
+
+    /**
+     * Revokes all tokens issued to the user before the current second, e.g. after the password or the roles
+     * have changed. The issue time of a token only has whole seconds, so tokens issued within the current
+     * second stay valid, including the one of a login right after the revocation.
+     */
+    public void revokeSubject(String subject) {
+        revokedSubjects.put(subject, TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()));
+        verified.values().removeIf(r -> subject.equals(r.subject));
+    }
+
+    /**
+     * Drops all cached tokens. Revocations are kept.
+     */
+    public void clearCache() {
+        synchronized (expiries) {
+            verified.clear();
+            expiries.clear();
+            nextExpiry = Long.MAX_VALUE;
+        }
+    }
+
+    private boolean isRevoked(Result result) {
+        if (revokedIds.containsKey(result.tokenId)) return true;
+        Long revokedAt = revokedSubjects.get(result.subject);
+        return revokedAt != null && TimeUnit.MILLISECONDS.toSeconds(result.issuedAt) < revokedAt;
+    }
+
+    /**
+     * @return The time until a token expiring at {@code expiresAt} is accepted, the same rule as in {@link JWTUtil}.
+     */
+    private static long acceptedUntil(long expiresAt) {
+        return expiresAt + SKEW_MILLIS;
+    }
+
+    private void cache(String hash, Result result) {
+        if (maxCached == 0) return;
+        synchronized (expiries) {
+            // Cache voll: das Token, das als nächstes abläuft, fliegt raus
+            while (verified.size() >= maxCached) {
+                Expiry first = expiries.poll();
+                if (first == null) break;
+                verified.remove(first.hash, first.result);
+            }
+            verified.put(hash, result);
+            expiries.add(new Expiry(acceptedUntil(result.expiresAt), hash, result));
+            nextExpiry = expiries.peek().at;
+        }
+    }
+
+    private void sweep(long now) {
+        if (now >= nextExpiry) {
+            synchronized (expiries) {
+                Expiry head;
+                while ((head = expiries.peek()) != null && head.at <= now) {
+                    expiries.poll();
+                    verified.remove(head.hash, head.result);
+                }
+                nextExpiry = head == null ? Long.MAX_VALUE : head.at;
+            }
+        }
+        if (now >= nextRevocationSweep) {
+            nextRevocationSweep = now + REVOCATION_SWEEP_MILLIS;
+            revokedIds.values().removeIf(until -> until <= now);
+            // alle vor dem Widerruf ausgestellten Tokens sind spätestens maxTtlSeconds danach abgelaufen
+            revokedSubjects.values().removeIf(at -> acceptedUntil(TimeUnit.SECONDS.toMillis(at + maxTtlSeconds)) <= now);
+        }
+    }
+
+    private static String hash(String token) {
+        byte[] digest = SHA256.get().digest(token.getBytes(StandardCharsets.UTF_8));
+        return Base64.getEncoder().encodeToString(digest);
+    }
+
+    /**
+     * The outcome of {@link #verify(String)}. Valid results are immutable and shared by all requests
+     * carrying the same token.
+     */
+    @Getter
+    public static final class Result {
+        private static final Map<FailReason, Result> FAILED = new EnumMap<>(FailReason.class);
+
+        static {
+            for (FailReason reason : FailReason.values()) FAILED.put(reason, new Result(reason, null, null, 0, 0, Map.of()));
+        }
+
+        private final FailReason failReason;
+        private final String subject;
+        private final String tokenId;
+        private final long issuedAt;
+        private final long expiresAt;
+        private final Map<String, Object> claims;
+
+        private Result(FailReason failReason, String subject, String tokenId, long issuedAt, long expiresAt,
+                       Map<String, Object> claims) {
+            this.failReason = failReason;
+            this.subject = subject;
+            this.tokenId = tokenId;
+            this.issuedAt = issuedAt;
+            this.expiresAt = expiresAt;
+            this.claims = claims;
+        }
+
+        public static Result failed(FailReason reason) {
+            return FAILED.get(reason);
+        }
+
+        private static Result of(JwtClaims claims) throws MalformedClaimException {
+            long issuedAt = claims.getIssuedAt() != null ? claims.getIssuedAt().getValueInMillis() : 0;
+            return new Result(null, claims.getSubject(), claims.getJwtId(), issuedAt,
+                    claims.getExpirationTime().getValueInMillis(), Collections.unmodifiableMap(claims.getClaimsMap()));
+        }
+
+        public boolean isValid() {
+            return failReason == null;
+        }
+    }
+
+    private record Expiry(long at, String hash, Result result) {
+    }
 }
@@ -0,0 +1,109 @@
+package de.julianweinelt.gop.util;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * A hashed timing wheel calling a handler for items whose deadline has passed.
+ * <p>
+ * Scheduling an item only appends it to the slot of its deadline, and every tick only looks at one slot,
+ * so the cost doesn't grow with the number of items waiting. Deadlines further away than one turn of the
+ * wheel stay in their slot for several turns. Items are called at most one tick late.
+ * <p>
+ * Items can't be cancelled. Instead, the handler checks whether the item is really due and schedules it
+ * again if its deadline has been moved in the meantime.
+ * <p>
+ * Example:
+ * <pre>{@code
+ * TimingWheel<Session> wheel = new TimingWheel<>("Session-Expiry", 1000, 512, session -> {
+ *     if (session.getExpiresAt() > System.currentTimeMillis()) wheel.schedule(session, session.getExpiresAt());
+ *     else remove(session);
+ * });
+ * wheel.schedule(session, session.getExpiresAt());
+ * }</pre>
+ *
+ * @param <T> The type of the scheduled items.
+ */
+@Slf4j
+public class TimingWheel<T> {
+    private final long tickMillis;
+    private final Queue<Timeout<T>>[] slots;
+    private final Consumer<T> handler;
+    private final long start = System.currentTimeMillis();
+    private final ScheduledExecutorService ticker;
+    private volatile long currentTick;
+
+    /**
+     * @param name       The name of the thread advancing the wheel.
+     * @param tickMillis The length of one tick, i.e. the precision of the deadlines.
+     * @param size       The number of slots, one turn of the wheel takes {@code tickMillis * size}.
+     * @param handler    Called on the thread of the wheel for every item whose deadline has passed.
+     */
+    @SuppressWarnings("unchecked")
+    public TimingWheel(String name, long tickMillis, int size, Consumer<T> handler) {
+        this.tickMillis = Math.max(1, tickMillis);
+        this.slots = new Queue[Math.max(1, size)];
+        for (int i = 0; i < slots.length; i++) slots[i] = new ConcurrentLinkedQueue<>();
+        this.handler = handler;
+        this.ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        });
+        ticker.scheduleAtFixedRate(this::advance, this.tickMillis, this.tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Schedules an item. Deadlines in the past are handled with the next tick.
+     *
+     * @param item     The item passed to the handler.
+     * @param deadline The time in milliseconds since the epoch.
+     */
+    public void schedule(T item, long deadline) {
+        long tick = Math.max(currentTick + 1, (deadline - start + tickMillis - 1) / tickMillis);
+        slots[(int) (tick % slots.length)].add(new Timeout<>(item, tick));
+    }
+
+    /**
+     * Stops the wheel. Items still scheduled are dropped.
+     */
+    public void stop() {
+        ticker.shutdownNow();
+    }
+
+    private void advance() {
+        long target = (System.currentTimeMillis() - start) / tickMillis;
+        // Ticks, die der Thread verpasst hat, werden nachgeholt
+        while (currentTick < target) {
+            long tick = currentTick + 1;
+            currentTick = tick;
+            Queue<Timeout<T>> slot = slots[(int) (tick % slots.length)];
+            List<Timeout<T>> later = new ArrayList<>();
+            Timeout<T> timeout;
+            while ((timeout = slot.poll()) != null) {
+                if (timeout.tick > tick) {
+                    later.add(timeout);
+                    continue;
+                }
+                try {
+                    handler.accept(timeout.item);
+                } catch (Exception e) {
+                    log.error("Error in the handler of a timing wheel.");
+                    log.error(e.getMessage());
+                }
+            }
+            slot.addAll(later);
+        }
+    }
+
+    private record Timeout<T>(T item, long tick) {
+    }
+}
@@ -0,0 +1,239 @@
+package de.julianweinelt.gop.util.codec;
+
+import com.google.gson.*;
+
+import java.io.*;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+
+/**
+ * Stores the data in a compact binary format, optionally compressed with Deflate.
+ * <p>
+ * A file starts with the {@code GOPB} header, the format version and a flag byte. Afterward the
+ * object follows as a sequence of tagged values: numbers are stored as variable length integers or
+ * 8 byte doubles, strings are length prefixed UTF-8, and every property name is only written once
+ * per file and referenced by its index afterward. This makes files of large, repetitive data
+ * (statistics, player data) several times smaller than JSON and much faster to read.
+ * <p>
+ * Uncompressed files can be read directly from a memory mapped file.
+ * <p>
+ * Unlike {@link JsonCodec}, reading is not streamed: the whole file is held in memory (read into a
+ * byte array, or mapped), compressed files are inflated into a second buffer, and the values are decoded
+ * into a {@link JsonElement} tree before Gson binds it to the requested type. Memory therefore grows
+ * with the size of the data. Gson's map adapters only work with its own readers, which is why the
+ * values aren't decoded into a {@link com.google.gson.stream.JsonReader} directly. Data which is
+ * too large to be held in memory belongs in a {@link de.julianweinelt.gop.util.store.LogStore}.
+ * <p>
+ * Example:
+ * <pre>{@code
+ * public StatisticManager() {
+ *     super(log, false, null);
+ *     setCodec(BinaryCodec.DEFLATE);
+ * }
+ * }</pre>
+ */
+public final class BinaryCodec implements DataCodec {
+    static final byte[] MAGIC = {'G', 'O', 'P', 'B'};
+    static final byte FORMAT_VERSION = 1;
+    static final int FLAG_DEFLATE = 1;
+
+    static final byte NULL = 0;
+    static final byte FALSE = 1;
+    static final byte TRUE = 2;
+    static final byte LONG = 3;
+    static final byte DOUBLE = 4;
+    static final byte STRING = 5;
+    static final byte NUMBER = 6;
+    static final byte BEGIN_ARRAY = 7;
+    static final byte END_ARRAY = 8;
+    static final byte BEGIN_OBJECT = 9;
+    static final byte END_OBJECT = 10;
+    static final byte NAME = 11;
+    static final byte NAME_REF = 12;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** Binary format without compression, readable from memory mapped files. */
+    public static final BinaryCodec PLAIN = new BinaryCodec(false);
+    /** Binary format compressed with Deflate. */
+    public static final BinaryCodec DEFLATE = new BinaryCodec(true);
+
+    private final boolean compress;
+
+    private BinaryCodec(boolean compress) {
+        this.compress = compress;
+    }
+
+    @Override
+    public void write(Gson gson, Object value, OutputStream out) throws IOException {
+        out.write(MAGIC);
+        out.write(FORMAT_VERSION);
+        out.write(compress ? FLAG_DEFLATE : 0);
+
+        Deflater deflater = compress ? new Deflater(Deflater.BEST_SPEED) : null;
+        try {
+            DeflaterOutputStream deflated = compress ? new DeflaterOutputStream(out, deflater, BUFFER_SIZE) : null;
+            BinaryJsonWriter writer = new BinaryJsonWriter(
+                    new DataOutputStream(new BufferedOutputStream(compress ? deflated : out, BUFFER_SIZE)));
+            if (value == null) writer.nullValue();
+            else gson.toJson(value, value.getClass(), writer);
+            writer.flush();
+            if (deflated != null) deflated.finish();
+        } finally {
+            if (deflater != null) deflater.end();
+        }
+    }
+
+    /**
+     * Reads the whole stream into memory and decodes it, see the class description.
+     */
+    @Override
+    public <T> T read(Gson gson, Type type, InputStream in) throws IOException {
+        return read(gson, type, ByteBuffer.wrap(in.readAllBytes()));
+    }
+
+    @Override
+    public boolean supportsMapping() {
+        return true;
+    }
+
+    @Override
+    public <T> T read(Gson gson, Type type, ByteBuffer buffer) throws IOException {
+        try {
+            for (byte b : MAGIC) {
+                if (buffer.get() != b) throw new IOException("Not a binary data file");
+            }
+            byte version = buffer.get();
+            if (version != FORMAT_VERSION) throw new IOException("Unsupported binary format version " + version);
+            int flags = buffer.get();
+            if ((flags & FLAG_DEFLATE) != 0) buffer = inflate(buffer);
+
+            JsonElement element = new Decoder(buffer).readValue(buffer.get());
+            return gson.fromJson(element, type);
+        } catch (BufferUnderflowException e) {
+            throw new EOFException("Binary data file is truncated");
+        }
+    }
+
+    private static ByteBuffer inflate(ByteBuffer compressed) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(compressed.remaining() * 4, 1024));
+            byte[] chunk = new byte[BUFFER_SIZE];
+            while (!inflater.finished()) {
+                int read = inflater.inflate(chunk);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new EOFException("Compressed data file is truncated");
+                }
+                out.write(chunk, 0, read);
+            }
+            return ByteBuffer.wrap(out.toByteArray());
+        } catch (DataFormatException e) {
+            throw new IOException("Compressed data file is corrupt", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Turns the tagged values back into a {@link JsonElement} tree, which Gson maps to the requested type.
+     */
+    private static final class Decoder {
+        private final ByteBuffer buffer;
+        private final List<String> names = new ArrayList<>();
+
+        private Decoder(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        private JsonElement readValue(byte tag) throws IOException {
+            switch (tag) {
+                case NULL:
+                    return JsonNull.INSTANCE;
+                case FALSE:
+                    return new JsonPrimitive(false);
+                case TRUE:
+                    return new JsonPrimitive(true);
+                case LONG:
+                    return new JsonPrimitive(readLong());
+                case DOUBLE:
+                    return new JsonPrimitive(buffer.getDouble());
+                case STRING:
+                    return new JsonPrimitive(readString());
+                case NUMBER:
+                    return new JsonPrimitive(new BigDecimal(readString()));
+                case BEGIN_ARRAY: {
+                    JsonArray array = new JsonArray();
+                    byte next;
+                    while ((next = buffer.get()) != END_ARRAY) array.add(readValue(next));
+                    return array;
+                }
+                case BEGIN_OBJECT: {
+                    JsonObject object = new JsonObject();
+                    byte next;
+                    while ((next = buffer.get()) != END_OBJECT) {
+                        String name = readName(next);
+                        object.add(name, readValue(buffer.get()));
+                    }
+                    return object;
+                }
+                default:
+                    throw new IOException("Unknown value tag " + tag + " at position " + (buffer.position() - 1));
+            }
+        }
+
+        private String readName(byte tag) throws IOException {
+            if (tag == NAME) {
+                String name = readString();
+                names.add(name);
+                return name;
+            }
+            if (tag == NAME_REF) {
+                int index = (int) readVarLong();
+                if (index < 0 || index >= names.size()) throw new IOException("Unknown name reference " + index);
+                return names.get(index);
+            }
+            throw new IOException("Expected a property name at position " + (buffer.position() - 1));
+        }
+
+        private String readString() throws IOException {
+            int length = (int) readVarLong();
+            if (length < 0 || length > buffer.remaining()) throw new EOFException("Binary data file is truncated");
+            String value;
+            if (buffer.hasArray()) {
+                value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+                buffer.position(buffer.position() + length);
+            } else {
+                byte[] bytes = new byte[length];
+                buffer.get(bytes);
+                value = new String(bytes, StandardCharsets.UTF_8);
+            }
+            return value;
+        }
+
+        private long readLong() throws IOException {
+            long zigZag = readVarLong();
+            return (zigZag >>> 1) ^ -(zigZag & 1);
+        }
+
+        private long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = buffer.get();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+            throw new IOException("Malformed variable length number");
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package de.julianweinelt.gop.util.codec;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link JsonWriter} that writes the tagged values of the {@link BinaryCodec} instead of JSON text,
+ * so Gson can serialize objects straight into the binary format.
+ */
+final class BinaryJsonWriter extends JsonWriter {
+    private static final Writer UNWRITABLE = new Writer() {
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+            throw new AssertionError();
+        }
+
+        @Override
+        public void flush() {
+            throw new AssertionError();
+        }
+
+        @Override
+        public void close() {
+            throw new AssertionError();
+        }
+    };
+
+    private final DataOutputStream out;
+    private final Map<String, Integer> names = new HashMap<>();
+    private String pendingName;
+
+    BinaryJsonWriter(DataOutputStream out) {
+        super(UNWRITABLE);
+        this.out = out;
+    }
+
+    @Override
+    public JsonWriter beginArray() throws IOException {
+        writePendingName();
+        out.writeByte(BinaryCodec.BEGIN_ARRAY);
+        return this;
+    }
+
+    @Override
+    public JsonWriter endArray() throws IOException {
+        out.writeByte(BinaryCodec.END_ARRAY);
+        return this;
+    }
+
+    @Override
+    public JsonWriter beginObject() throws IOException {
+        writePendingName();
+        out.writeByte(BinaryCodec.BEGIN_OBJECT);
+        return this;
+    }
+
+    @Override
+    public JsonWriter endObject() throws IOException {
+        out.writeByte(BinaryCodec.END_OBJECT);
+        return this;
+    }
+
+    @Override
+    public JsonWriter name(String name) throws IOException {
+        if (name == null) throw new NullPointerException("name == null");
+        if (pendingName != null) throw new IllegalStateException("Name " + pendingName + " has no value");
+        pendingName = name;
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(String value) throws IOException {
+        if (value == null) return nullValue();
+        writePendingName();
+        out.writeByte(BinaryCodec.STRING);
+        writeString(value);
+        return this;
+    }
+
+    @Override
+    public JsonWriter jsonValue(String value) throws IOException {
+        throw new UnsupportedOperationException("Raw JSON values can't be written in the binary format");
+    }
+
+    @Override
+    public JsonWriter nullValue() throws IOException {
+        if (pendingName != null) {
+            // Wie beim JsonWriter: Felder mit null werden nur mit serializeNulls geschrieben
+            if (!getSerializeNulls()) {
+                pendingName = null;
+                return this;
+            }
+            writePendingName();
+        }
+        out.writeByte(BinaryCodec.NULL);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(boolean value) throws IOException {
+        writePendingName();
+        out.writeByte(value ? BinaryCodec.TRUE : BinaryCodec.FALSE);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(Boolean value) throws IOException {
+        if (value == null) return nullValue();
+        return value(value.booleanValue());
+    }
+
+    @Override
+    public JsonWriter value(float value) throws IOException {
+        return value((double) value);
+    }
+
+    @Override
+    public JsonWriter value(double value) throws IOException {
+        writePendingName();
+        out.writeByte(BinaryCodec.DOUBLE);
+        out.writeDouble(value);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(long value) throws IOException {
+        writePendingName();
+        out.writeByte(BinaryCodec.LONG);
+        writeVarLong((value << 1) ^ (value >> 63));
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(Number value) throws IOException {
+        if (value == null) return nullValue();
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte
+                || value instanceof AtomicInteger || value instanceof AtomicLong) {
+            return value(value.longValue());
+        }
+        if (value instanceof Double || value instanceof Float) return value(value.doubleValue());
+        if (value instanceof BigInteger big && big.bitLength() < 64) return value(big.longValue());
+
+        writePendingName();
+        out.writeByte(BinaryCodec.NUMBER);
+        writeString(value.toString());
+        return this;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+
+    private void writePendingName() throws IOException {
+        if (pendingName == null) return;
+        Integer index = names.get(pendingName);
+        if (index != null) {
+            out.writeByte(BinaryCodec.NAME_REF);
+            writeVarLong(index);
+        } else {
+            names.put(pendingName, names.size());
+            out.writeByte(BinaryCodec.NAME);
+            writeString(pendingName);
+        }
+        pendingName = null;
+    }
+
+    private void writeString(String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(bytes.length);
+        out.write(bytes);
+    }
+
+    private void writeVarLong(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+}
@@ -0,0 +1,92 @@
+package de.julianweinelt.gop.util.codec;
+
+import com.google.gson.Gson;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Describes how the data of a {@link de.julianweinelt.gop.util.LoadableManager} is stored on disk.
+ * <p>
+ * Codecs only convert between objects and bytes. Buffering, encryption and the atomic replacement
+ * of the file are handled by the manager.
+ * <p>
+ * The format of a file is detected by its first bytes when it is loaded, so a manager can switch
+ * its codec at any time: old files are still read and written in the new format with the next save.
+ */
+public interface DataCodec {
+
+    /**
+     * Writes the given object to the stream. The stream must not be closed.
+     *
+     * @param gson  The {@link Gson} instance of the manager.
+     * @param value The object to write, may be {@code null}.
+     * @param out   The stream to write to.
+     * @throws IOException If the object could not be written.
+     */
+    void write(Gson gson, Object value, OutputStream out) throws IOException;
+
+    /**
+     * Reads an object of the given type from the stream.
+     *
+     * @param gson The {@link Gson} instance of the manager.
+     * @param type The type of the object.
+     * @param in   The stream to read from, positioned at the start of the file.
+     * @return The object that has been read.
+     * @throws IOException If the content could not be read.
+     */
+    <T> T read(Gson gson, Type type, InputStream in) throws IOException;
+
+    /**
+     * @return Whether this codec can read directly from a memory mapped file using {@link #read(Gson, Type, ByteBuffer)}.
+     */
+    default boolean supportsMapping() {
+        return false;
+    }
+
+    /**
+     * Reads an object of the given type from a buffer, e.g. a memory mapped file.
+     *
+     * @param gson   The {@link Gson} instance of the manager.
+     * @param type   The type of the object.
+     * @param buffer The buffer containing the whole file.
+     * @return The object that has been read.
+     * @throws IOException If the content could not be read.
+     */
+    default <T> T read(Gson gson, Type type, ByteBuffer buffer) throws IOException {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " can't read from buffers");
+    }
+
+    /**
+     * Detects the codec of a file by looking at its first bytes. The stream must support {@link InputStream#mark(int)}
+     * and is reset to its start afterwards.
+     *
+     * @param in The stream of the file.
+     * @return The detected codec. Files without a known header are treated as JSON.
+     * @throws IOException If the stream could not be read.
+     */
+    static DataCodec detect(InputStream in) throws IOException {
+        in.mark(BinaryCodec.MAGIC.length);
+        byte[] header = in.readNBytes(BinaryCodec.MAGIC.length);
+        in.reset();
+        return Arrays.equals(header, BinaryCodec.MAGIC) ? BinaryCodec.PLAIN : JsonCodec.INSTANCE;
+    }
+
+    /**
+     * Detects the codec of a file by looking at its first bytes. The position of the buffer is not changed.
+     *
+     * @param buffer The buffer containing the file.
+     * @return The detected codec. Files without a known header are treated as JSON.
+     */
+    static DataCodec detect(ByteBuffer buffer) {
+        if (buffer.remaining() < BinaryCodec.MAGIC.length) return JsonCodec.INSTANCE;
+        for (int i = 0; i < BinaryCodec.MAGIC.length; i++) {
+            if (buffer.get(buffer.position() + i) != BinaryCodec.MAGIC[i]) return JsonCodec.INSTANCE;
+        }
+        return BinaryCodec.PLAIN;
+    }
+}
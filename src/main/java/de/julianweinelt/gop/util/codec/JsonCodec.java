@@ -0,0 +1,34 @@
+package de.julianweinelt.gop.util.codec;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonNull;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.*;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Stores the data as UTF-8 encoded JSON. This is the default codec, as the files can be edited by hand.
+ * Whether the JSON is pretty printed depends on the {@link Gson} instance of the manager.
+ */
+public final class JsonCodec implements DataCodec {
+    public static final JsonCodec INSTANCE = new JsonCodec();
+
+    private JsonCodec() {}
+
+    @Override
+    public void write(Gson gson, Object value, OutputStream out) throws IOException {
+        JsonWriter writer = gson.newJsonWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        if (value == null) gson.toJson(JsonNull.INSTANCE, writer);
+        else gson.toJson(value, value.getClass(), writer);
+        writer.flush();
+    }
+
+    @Override
+    public <T> T read(Gson gson, Type type, InputStream in) throws IOException {
+        JsonReader reader = gson.newJsonReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        return gson.fromJson(reader, type);
+    }
+}
@@ -0,0 +1,189 @@
+package de.julianweinelt.gop.util.store;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32C;
+
+/**
+ * A single, preallocated and memory mapped file of a {@link LogStore}.
+ * <p>
+ * Records are appended one after another. Every record is stored as
+ * {@code [crc][sequence][key length][value length][key][value]}. The CRC covers everything after itself,
+ * a value length of -1 marks a deleted key. The unused rest of the file is filled with zeros, so the
+ * end of the log is reached at the first record with a key length of 0.
+ * <p>
+ * Only the store writes to a segment, and only while holding its lock. Reads use absolute positions
+ * and may happen from any thread.
+ */
+final class LogSegment {
+    static final int HEADER_SIZE = 4 + 8 + 4 + 4;
+
+    @Getter(AccessLevel.PACKAGE)
+    private final long id;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    @Getter(AccessLevel.PACKAGE)
+    private final int capacity;
+    @Getter(AccessLevel.PACKAGE)
+    private final AtomicLong deadBytes = new AtomicLong();
+    @Getter(AccessLevel.PACKAGE)
+    private Path path;
+    @Getter(AccessLevel.PACKAGE)
+    private int writePosition;
+
+    private LogSegment(long id, Path path, FileChannel channel, int capacity) throws IOException {
+        this.id = id;
+        this.path = path;
+        this.channel = channel;
+        this.capacity = capacity;
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    /**
+     * Creates a new, empty segment of the given size.
+     */
+    static LogSegment create(Path path, long id, int capacity) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            // Die Datei wird mit Nullen vorbelegt, damit das Ende des Logs erkennbar bleibt
+            channel.write(ByteBuffer.wrap(new byte[1]), capacity - 1);
+            return new LogSegment(id, path, channel, capacity);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens an existing segment. The write position stays at 0 until {@link #recover(RecordVisitor)} is called.
+     */
+    static LogSegment open(Path path, long id) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) throw new IOException("Segment " + path + " is too large");
+            return new LogSegment(id, path, channel, (int) size);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    static int recordSize(int keyLength, int valueLength) {
+        return HEADER_SIZE + keyLength + Math.max(valueLength, 0);
+    }
+
+    /**
+     * Appends a record.
+     *
+     * @param value The value, or {@code null} to write a deletion marker.
+     * @return The offset of the record, or -1 if it doesn't fit into this segment.
+     */
+    int append(long sequence, byte[] key, byte[] value) {
+        int size = recordSize(key.length, value == null ? -1 : value.length);
+        if (capacity - writePosition < size) return -1;
+        int offset = writePosition;
+        buffer.putLong(offset + 4, sequence);
+        buffer.putInt(offset + 12, key.length);
+        buffer.putInt(offset + 16, value == null ? -1 : value.length);
+        buffer.put(offset + HEADER_SIZE, key);
+        if (value != null) buffer.put(offset + HEADER_SIZE + key.length, value);
+        buffer.putInt(offset, checksum(offset, size));
+        writePosition += size;
+        return offset;
+    }
+
+    /**
+     * Copies a record of another segment byte by byte. The checksum stays valid.
+     *
+     * @return The offset of the record, or -1 if it doesn't fit into this segment.
+     */
+    int copy(LogSegment source, int sourceOffset, int size) {
+        if (capacity - writePosition < size) return -1;
+        int offset = writePosition;
+        buffer.put(offset, source.buffer, sourceOffset, size);
+        writePosition += size;
+        return offset;
+    }
+
+    byte[] read(int offset, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(offset, bytes);
+        return bytes;
+    }
+
+    /**
+     * Reads all records from the start of the segment and moves the write position behind the last valid one.
+     * A record with a wrong checksum or an impossible length is treated as the torn tail of an interrupted
+     * write: it and everything behind it is discarded and overwritten with zeros.
+     *
+     * @return {@code true} if the segment ended cleanly, {@code false} if a broken tail has been discarded.
+     */
+    boolean recover(RecordVisitor visitor) {
+        int position = 0;
+        boolean clean = true;
+        while (capacity - position >= HEADER_SIZE) {
+            int keyLength = buffer.getInt(position + 12);
+            int valueLength = buffer.getInt(position + 16);
+            if (keyLength == 0 && valueLength == 0 && buffer.getLong(position + 4) == 0 && buffer.getInt(position) == 0) break;
+            if (keyLength <= 0 || valueLength < -1) {
+                clean = false;
+                break;
+            }
+            long size = (long) HEADER_SIZE + keyLength + Math.max(valueLength, 0);
+            if (size > capacity - position || buffer.getInt(position) != checksum(position, (int) size)) {
+                clean = false;
+                break;
+            }
+            visitor.visit(this, position, (int) size, buffer.getLong(position + 4),
+                    new String(read(position + HEADER_SIZE, keyLength), StandardCharsets.UTF_8),
+                    keyLength, valueLength);
+            position += (int) size;
+        }
+        writePosition = position;
+        if (!clean) {
+            for (int i = position; i < capacity; i++) buffer.put(i, (byte) 0);
+        }
+        return clean;
+    }
+
+    private int checksum(int offset, int size) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(offset + 4, size - 4));
+        return (int) crc.getValue();
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    void moveTo(Path target) throws IOException {
+        Files.move(path, target, StandardCopyOption.ATOMIC_MOVE);
+        path = target;
+    }
+
+    void close() throws IOException {
+        channel.close();
+    }
+
+    int getRemaining() {
+        return capacity - writePosition;
+    }
+
+    @FunctionalInterface
+    interface RecordVisitor {
+        void visit(LogSegment segment, int offset, int size, long sequence, String key, int keyLength, int valueLength);
+    }
+}
@@ -0,0 +1,454 @@
+package de.julianweinelt.gop.util.store;
+
+import de.julianweinelt.gop.except.StoreException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An embedded key-value store for module data, built as an append-only log.
+ * <p>
+ * Every change is appended as a small record to a memory mapped segment file instead of rewriting
+ * the whole data file, which makes frequent small updates cheap. An index in memory maps every key
+ * to the position of its latest value, so reads never search the files.
+ * <p>
+ * Records that have been overwritten or deleted stay in their segment until a background compaction
+ * copies the remaining values of the full segments into new ones and removes the old files.
+ * <p>
+ * When the store is opened, all segments are read again to rebuild the index. A record that has only
+ * been written partially (e.g. because the system crashed) fails its checksum and is discarded together
+ * with the rest of the log tail. Changes are written to disk at the latest after one second, or
+ * immediately with {@link #flush()}.
+ * <p>
+ * Modules get their own store through {@link de.julianweinelt.gop.modules.Module#getStore()}.
+ * <p>
+ * Example:
+ * <pre>{@code
+ * LogStore store = getStore();
+ * store.put("pixels." + playerId, Integer.toString(pixels));
+ * String value = store.getString("pixels." + playerId);
+ * }</pre>
+ */
+@Slf4j
+public class LogStore implements AutoCloseable {
+    public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String COMPACTING_SUFFIX = ".compacting";
+    private static final String OBSOLETE_FILE = "obsolete-segments";
+    private static final long SYNC_INTERVAL_MILLIS = 1000;
+
+    private static final ScheduledExecutorService MAINTENANCE = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "LogStore-Maintenance");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final Path directory;
+    private final int segmentSize;
+    private final Map<String, Location> index = new ConcurrentHashMap<>();
+    private final NavigableMap<Long, LogSegment> segments = new ConcurrentSkipListMap<>();
+    private final ReentrantLock compactionLock = new ReentrantLock();
+    private final ScheduledFuture<?> syncTask;
+
+    private LogSegment active;
+    private long nextSequence = 1;
+    private long nextSegmentId = 1;
+    private volatile boolean dirty = false;
+    private volatile boolean compactionQueued = false;
+    private volatile boolean closed = false;
+
+    private LogStore(Path directory, int segmentSize) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.syncTask = MAINTENANCE.scheduleWithFixedDelay(this::sync,
+                SYNC_INTERVAL_MILLIS, SYNC_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Opens the store inside the given folder, creating it if necessary.
+     *
+     * @param folder The folder containing the segment files.
+     * @return The opened store.
+     * @throws StoreException If the folder or its segments can't be opened.
+     */
+    public static LogStore open(File folder) {
+        return open(folder, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Opens the store inside the given folder, creating it if necessary.
+     *
+     * @param folder      The folder containing the segment files.
+     * @param segmentSize The size of new segment files in bytes.
+     * @return The opened store.
+     * @throws StoreException If the folder or its segments can't be opened.
+     */
+    public static LogStore open(File folder, int segmentSize) {
+        if (segmentSize < LogSegment.HEADER_SIZE + 1) throw new IllegalArgumentException("Segment size too small");
+        LogStore store = new LogStore(folder.toPath(), segmentSize);
+        try {
+            Files.createDirectories(store.directory);
+            store.recover();
+        } catch (IOException | RuntimeException e) {
+            store.syncTask.cancel(false);
+            store.closeSegments();
+            throw new StoreException("Could not open store in " + folder, e);
+        }
+        return store;
+    }
+
+    /**
+     * Stores a value, replacing the previous one.
+     *
+     * @param key   The key, must not be empty.
+     * @param value The value.
+     */
+    public void put(String key, byte[] value) {
+        append(key, Objects.requireNonNull(value, "value"));
+    }
+
+    /**
+     * Stores a string as UTF-8, replacing the previous value.
+     *
+     * @param key   The key, must not be empty.
+     * @param value The value.
+     */
+    public void put(String key, String value) {
+        put(key, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param key The key.
+     * @return A copy of the stored value, or {@code null} if the key doesn't exist.
+     */
+    public byte[] get(String key) {
+        Location location = index.get(key);
+        if (location == null) return null;
+        return location.segment.read(location.offset + LogSegment.HEADER_SIZE + location.keyLength, location.valueLength);
+    }
+
+    /**
+     * @param key The key.
+     * @return The stored value decoded as UTF-8, or {@code null} if the key doesn't exist.
+     */
+    public String getString(String key) {
+        byte[] value = get(key);
+        return value == null ? null : new String(value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Deletes a key.
+     *
+     * @param key The key.
+     * @return {@code true} if the key existed.
+     */
+    public boolean delete(String key) {
+        if (!index.containsKey(key)) return false;
+        return append(key, null) != null;
+    }
+
+    public boolean contains(String key) {
+        return index.containsKey(key);
+    }
+
+    /**
+     * @return A read-only view of all keys.
+     */
+    public Set<String> keys() {
+        return Collections.unmodifiableSet(index.keySet());
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * Writes all changes to disk now.
+     */
+    public synchronized void flush() {
+        ensureOpen();
+        active.force();
+        dirty = false;
+    }
+
+    /**
+     * Compacts the full segments right away instead of waiting for the background compaction.
+     */
+    public void compact() {
+        ensureOpen();
+        runCompaction();
+    }
+
+    /**
+     * Writes all changes to disk and closes the segment files. Waits for a running compaction.
+     */
+    @Override
+    public void close() {
+        compactionLock.lock();
+        try {
+            synchronized (this) {
+                if (closed) return;
+                closed = true;
+                syncTask.cancel(false);
+                if (active != null) active.force();
+                closeSegments();
+            }
+        } finally {
+            compactionLock.unlock();
+        }
+    }
+
+    /**
+     * Appends a record and updates the index.
+     *
+     * @param value The new value, or {@code null} to delete the key.
+     * @return The previous location of the key, or {@code null} if it didn't exist.
+     */
+    private synchronized Location append(String key, byte[] value) {
+        ensureOpen();
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        if (keyBytes.length == 0) throw new IllegalArgumentException("Key must not be empty");
+        int valueLength = value == null ? -1 : value.length;
+        int size = LogSegment.recordSize(keyBytes.length, valueLength);
+        if (active.getRemaining() < size) roll(size);
+
+        long sequence = nextSequence++;
+        int offset = active.append(sequence, keyBytes, value);
+        dirty = true;
+
+        Location previous;
+        if (value == null) {
+            // Löschmarker werden nur für die Wiederherstellung gebraucht
+            active.getDeadBytes().addAndGet(size);
+            previous = index.remove(key);
+        } else {
+            previous = index.put(key, new Location(active, offset, size, keyBytes.length, valueLength, sequence));
+        }
+        if (previous != null) previous.segment.getDeadBytes().addAndGet(previous.size);
+        return previous;
+    }
+
+    /**
+     * Seals the active segment and starts a new one big enough for the next record.
+     */
+    private void roll(int recordSize) {
+        try {
+            active.force();
+            LogSegment segment = createSegment(Math.max(segmentSize, recordSize), SEGMENT_SUFFIX);
+            segments.put(segment.getId(), segment);
+            active = segment;
+        } catch (IOException e) {
+            throw new StoreException("Could not create a new segment in " + directory, e);
+        }
+        scheduleCompactionIfNeeded();
+    }
+
+    private LogSegment createSegment(int capacity, String suffix) throws IOException {
+        long id = nextSegmentId++;
+        return LogSegment.create(directory.resolve(SEGMENT_PREFIX + String.format("%012d", id) + suffix), id, capacity);
+    }
+
+    /**
+     * Starts a background compaction if at least half of the sealed data is outdated.
+     */
+    private void scheduleCompactionIfNeeded() {
+        long used = 0;
+        long dead = 0;
+        for (LogSegment segment : segments.values()) {
+            if (segment == active) continue;
+            used += segment.getWritePosition();
+            dead += segment.getDeadBytes().get();
+        }
+        if (dead * 2 < used || dead < segmentSize / 2 || compactionQueued) return;
+        compactionQueued = true;
+        MAINTENANCE.execute(() -> {
+            compactionQueued = false;
+            if (!closed) runCompaction();
+        });
+    }
+
+    /**
+     * Copies the live records of all sealed segments into new segments and deletes the old ones.
+     * Writers are not blocked: a key that is changed while its record is copied keeps its new location,
+     * and the copy simply counts as outdated.
+     */
+    private void runCompaction() {
+        compactionLock.lock();
+        try {
+            if (closed) return;
+            List<LogSegment> inputs = new ArrayList<>();
+            synchronized (this) {
+                for (LogSegment segment : segments.values()) if (segment != active) inputs.add(segment);
+            }
+            if (inputs.isEmpty()) return;
+
+            Map<LogSegment, List<Map.Entry<String, Location>>> liveRecords = new HashMap<>();
+            for (LogSegment input : inputs) liveRecords.put(input, new ArrayList<>());
+            for (Map.Entry<String, Location> e : index.entrySet()) {
+                List<Map.Entry<String, Location>> records = liveRecords.get(e.getValue().segment);
+                if (records != null) records.add(e);
+            }
+
+            List<LogSegment> outputs = new ArrayList<>();
+            long live = 0;
+            for (LogSegment input : inputs) {
+                List<Map.Entry<String, Location>> records = liveRecords.get(input);
+                records.sort(Comparator.comparingInt(e -> e.getValue().offset));
+                for (Map.Entry<String, Location> e : records) {
+                    Location location = e.getValue();
+                    LogSegment output = outputs.isEmpty() ? null : outputs.get(outputs.size() - 1);
+                    int offset = output == null ? -1 : output.copy(input, location.offset, location.size);
+                    if (offset < 0) {
+                        synchronized (this) {
+                            output = createSegment(Math.max(segmentSize, location.size), COMPACTING_SUFFIX);
+                        }
+                        outputs.add(output);
+                        offset = output.copy(input, location.offset, location.size);
+                    }
+                    Location moved = new Location(output, offset, location.size, location.keyLength,
+                            location.valueLength, location.sequence);
+                    if (index.replace(e.getKey(), location, moved)) live += location.size;
+                    else output.getDeadBytes().addAndGet(location.size);
+                }
+            }
+
+            for (LogSegment output : outputs) {
+                output.force();
+                Path path = output.getPath();
+                String name = path.getFileName().toString();
+                output.moveTo(path.resolveSibling(name.substring(0, name.length() - COMPACTING_SUFFIX.length()) + SEGMENT_SUFFIX));
+                segments.put(output.getId(), output);
+            }
+            for (LogSegment input : inputs) segments.remove(input.getId());
+            deleteSegments(inputs);
+            log.info("Compacted {} segments of {} into {} ({} bytes live).", inputs.size(), directory, outputs.size(), live);
+        } catch (IOException e) {
+            log.error("Compaction of {} failed.", directory);
+            log.error(e.getMessage());
+        } finally {
+            compactionLock.unlock();
+        }
+    }
+
+    /**
+     * Deletes segments whose records have been copied. Their ids are written to a file first, so a crash
+     * in between can't leave some of them behind: an old value surviving while the deletion marker that
+     * replaced it is gone would bring the value back.
+     */
+    private void deleteSegments(List<LogSegment> obsolete) throws IOException {
+        Path marker = directory.resolve(OBSOLETE_FILE);
+        List<String> names = new ArrayList<>();
+        for (LogSegment segment : obsolete) names.add(segment.getPath().getFileName().toString());
+        Files.write(marker, names, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE, StandardOpenOption.SYNC);
+        for (LogSegment segment : obsolete) {
+            segment.close();
+            Files.deleteIfExists(segment.getPath());
+        }
+        Files.delete(marker);
+    }
+
+    /**
+     * Rebuilds the index from all segments. For every key the record with the highest sequence number wins,
+     * so the order of the files doesn't matter.
+     */
+    private synchronized void recover() throws IOException {
+        Path marker = directory.resolve(OBSOLETE_FILE);
+        if (Files.exists(marker)) {
+            for (String name : Files.readAllLines(marker)) {
+                if (!name.isBlank()) Files.deleteIfExists(directory.resolve(name.trim()));
+            }
+            Files.delete(marker);
+        }
+
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*")) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                // Unfertige Kompaktierung, die alten Segmente sind noch vollständig vorhanden
+                if (name.endsWith(COMPACTING_SUFFIX)) Files.delete(path);
+                else if (name.endsWith(SEGMENT_SUFFIX)) files.add(path);
+            }
+        }
+
+        Map<String, Location> latest = new HashMap<>();
+        LogSegment last = null;
+        for (Path path : files) {
+            String name = path.getFileName().toString();
+            long id = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+            LogSegment segment = LogSegment.open(path, id);
+            segments.put(id, segment);
+            nextSegmentId = Math.max(nextSegmentId, id + 1);
+        }
+        int segmentCount = 0;
+        for (LogSegment segment : segments.values()) {
+            boolean clean = segment.recover((seg, offset, size, sequence, key, keyLength, valueLength) -> {
+                Location location = new Location(seg, offset, size, keyLength, valueLength, sequence);
+                Location existing = latest.get(key);
+                if (existing == null || existing.sequence < sequence) {
+                    latest.put(key, location);
+                    if (existing != null) existing.segment.getDeadBytes().addAndGet(existing.size);
+                } else {
+                    seg.getDeadBytes().addAndGet(size);
+                }
+                nextSequence = Math.max(nextSequence, sequence + 1);
+            });
+            if (!clean) log.warn("Discarded an incomplete record at the end of {}.", segment.getPath().getFileName());
+            segmentCount++;
+            last = segment;
+        }
+        for (Map.Entry<String, Location> e : latest.entrySet()) {
+            Location location = e.getValue();
+            if (location.valueLength < 0) location.segment.getDeadBytes().addAndGet(location.size);
+            else index.put(e.getKey(), location);
+        }
+
+        if (last != null && last.getRemaining() > LogSegment.HEADER_SIZE) {
+            active = last;
+        } else {
+            active = createSegment(segmentSize, SEGMENT_SUFFIX);
+            segments.put(active.getId(), active);
+        }
+        if (segmentCount > 0) log.info("Recovered {} keys from {} segments in {}.", index.size(), segmentCount, directory);
+        scheduleCompactionIfNeeded();
+    }
+
+    private synchronized void sync() {
+        if (closed || !dirty) return;
+        dirty = false;
+        active.force();
+    }
+
+    private void ensureOpen() {
+        if (closed) throw new StoreException("Store " + directory + " is closed");
+    }
+
+    private void closeSegments() {
+        for (LogSegment segment : segments.values()) {
+            try {
+                segment.close();
+            } catch (IOException e) {
+                log.error("Could not close segment {}.", segment.getPath());
+                log.error(e.getMessage());
+            }
+        }
+        segments.clear();
+    }
+
+    /**
+     * The position of the latest record of a key.
+     */
+    private record Location(LogSegment segment, int offset, int size, int keyLength, int valueLength, long sequence) {
+    }
+}
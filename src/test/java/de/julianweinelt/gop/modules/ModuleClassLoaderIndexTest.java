@@ -0,0 +1,159 @@
+package de.julianweinelt.gop.modules;
+
+import de.julianweinelt.gop.modules.fixture.core.CoreApi;
+import de.julianweinelt.gop.modules.fixture.shop.Shop;
+import de.julianweinelt.gop.util.LoadPriority;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Loads classes of several module jars through a {@link ModuleClassLoaderIndex}, including dependencies,
+ * split packages and modules which are reloaded or removed.
+ */
+class ModuleClassLoaderIndexTest {
+    private static final String CORE_PACKAGE = CoreApi.class.getPackageName();
+    private static final String SHOP_PACKAGE = Shop.class.getPackageName();
+
+    @TempDir
+    Path dir;
+
+    private ModuleClassLoaderIndex index;
+
+    @BeforeEach
+    void createIndex() {
+        // der Parent darf die Fixtures nicht kennen, sonst würden sie nicht aus den Modul-Jars geladen
+        String hidden = ModuleClassLoaderIndexTest.class.getPackageName() + ".fixture.";
+        index = new ModuleClassLoaderIndex(new ClassLoader(getClass().getClassLoader()) {
+            @Override
+            protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+                if (name.startsWith(hidden)) throw new ClassNotFoundException(name);
+                return super.loadClass(name, resolve);
+            }
+        });
+    }
+
+    @AfterEach
+    void removeModules() {
+        for (String module : List.of("Core", "Shop", "Copy")) index.remove(module);
+    }
+
+    @Test
+    void dependencyClassesAreLoadedByTheOwningModule() throws Exception {
+        ModuleClassLoader core = index.create("Core", jar("core", CoreApi.class), List.of(CORE_PACKAGE));
+        ModuleClassLoader shop = index.create("Shop", jar("shop", Shop.class), List.of(SHOP_PACKAGE));
+        index.link("Shop", List.of(dependency("Core")));
+
+        assertSame(shop, shop.loadClass(Shop.class.getName()).getClassLoader());
+        assertEquals(core.getName(), coreLoaderName(shop));
+        assertSame(core.loadClass(CoreApi.class.getName()), shop.loadClass(CoreApi.class.getName()));
+    }
+
+    @Test
+    void classesOfOtherModulesNeedADependency() throws Exception {
+        index.create("Core", jar("core", CoreApi.class), List.of(CORE_PACKAGE));
+        ModuleClassLoader shop = index.create("Shop", jar("shop", Shop.class), List.of(SHOP_PACKAGE));
+
+        ClassNotFoundException e = assertThrows(ClassNotFoundException.class,
+                () -> shop.loadClass(CoreApi.class.getName()));
+        assertTrue(e.getMessage().contains("not a dependency of Shop"), e.getMessage());
+        assertThrows(NoClassDefFoundError.class, () -> coreLoaderName(shop));
+    }
+
+    @Test
+    void splitPackagesAreLoadedFromTheOwnJar() throws Exception {
+        ModuleClassLoader core = index.create("Core", jar("core", CoreApi.class), List.of(CORE_PACKAGE));
+        ModuleClassLoader copy = index.create("Copy", jar("copy", CoreApi.class), List.of(CORE_PACKAGE));
+
+        // Core bleibt Besitzer des Packages, Copy benutzt ohne Abhängigkeit seine eigene Kopie
+        assertSame(core, index.getOwner(CORE_PACKAGE));
+        assertSame(copy, copy.loadClass(CoreApi.class.getName()).getClassLoader());
+        assertSame(core, core.loadClass(CoreApi.class.getName()).getClassLoader());
+    }
+
+    @Test
+    void reloadedModuleGetsANewLoader() throws Exception {
+        ModuleClassLoader oldCore = index.create("Core", jar("core", CoreApi.class), List.of(CORE_PACKAGE));
+        ModuleClassLoader shop = index.create("Shop", jar("shop", Shop.class), List.of(SHOP_PACKAGE));
+        index.link("Shop", List.of(dependency("Core")));
+        Class<?> oldApi = oldCore.loadClass(CoreApi.class.getName());
+
+        // wie ModuleLoader#reloadModule: der alte Loader wird ersetzt, abhängige Module neu verknüpft
+        ModuleClassLoader newCore = index.create("Core", jar("core-2", CoreApi.class), List.of(CORE_PACKAGE));
+        assertSame(newCore, index.get("Core"));
+        assertSame(newCore, index.getOwner(CORE_PACKAGE));
+        assertNull(oldCore.findResource(CoreApi.class.getName().replace('.', '/') + ".class"));
+        assertThrows(ClassNotFoundException.class, () -> shop.loadClass(CoreApi.class.getName()));
+
+        index.link("Shop", List.of(dependency("Core")));
+        Class<?> newApi = shop.loadClass(CoreApi.class.getName());
+        assertNotSame(oldApi, newApi);
+        assertSame(newCore, newApi.getClassLoader());
+    }
+
+    @Test
+    void removedModuleIsNoLongerResolved() throws Exception {
+        index.create("Core", jar("core", CoreApi.class), List.of(CORE_PACKAGE));
+        ModuleClassLoader shop = index.create("Shop", jar("shop", Shop.class), List.of(SHOP_PACKAGE));
+        index.link("Shop", List.of(dependency("Core"), dependency("NotLoaded")));
+
+        index.remove("Core");
+
+        assertNull(index.get("Core"));
+        assertNull(index.getOwner(CORE_PACKAGE));
+        assertThrows(ClassNotFoundException.class, () -> shop.loadClass(CoreApi.class.getName()));
+    }
+
+    @Test
+    void removeAllClosesEveryLoader() throws Exception {
+        ModuleClassLoader core = index.create("Core", jar("core", CoreApi.class), List.of(CORE_PACKAGE));
+        ModuleClassLoader shop = index.create("Shop", jar("shop", Shop.class), List.of(SHOP_PACKAGE));
+
+        index.removeAll();
+
+        assertNull(index.get("Core"));
+        assertNull(index.get("Shop"));
+        assertNull(core.findResource(CoreApi.class.getName().replace('.', '/') + ".class"));
+        assertNull(shop.findResource(Shop.class.getName().replace('.', '/') + ".class"));
+    }
+
+    private static String coreLoaderName(ModuleClassLoader shop) throws Exception {
+        try {
+            return (String) shop.loadClass(Shop.class.getName()).getMethod("coreLoaderName").invoke(null);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof Error error) throw error;
+            throw e;
+        }
+    }
+
+    private static ModuleDependency dependency(String name) {
+        return new ModuleDependency(name, "1.0.0", true, LoadPriority.LOAD_BEFORE);
+    }
+
+    private URL jar(String name, Class<?> content) throws Exception {
+        Path jar = dir.resolve(name + ".jar");
+        String entry = content.getName().replace('.', '/') + ".class";
+        try (OutputStream file = Files.newOutputStream(jar);
+             JarOutputStream out = new JarOutputStream(file);
+             InputStream in = content.getClassLoader().getResourceAsStream(entry)) {
+            assertNotNull(in);
+            out.putNextEntry(new JarEntry(entry));
+            in.transferTo(out);
+            out.closeEntry();
+        }
+        return jar.toUri().toURL();
+    }
+}
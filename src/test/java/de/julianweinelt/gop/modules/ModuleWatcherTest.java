@@ -0,0 +1,84 @@
+package de.julianweinelt.gop.modules;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Changes jars in a watched folder and checks which modules the {@link ModuleWatcher} reloads.
+ */
+class ModuleWatcherTest {
+
+    @TempDir
+    Path dir;
+
+    private final List<String> reloaded = new CopyOnWriteArrayList<>();
+    private ModuleWatcher watcher;
+
+    @AfterEach
+    void stopWatcher() {
+        if (watcher != null) watcher.stop();
+    }
+
+    @Test
+    void changedJarIsReloadedOnceAfterTheFolderIsQuiet() throws Exception {
+        watcher = new ModuleWatcher(recordingLoader(), dir);
+        watcher.start();
+        assertTrue(watcher.isRunning());
+
+        // ein Kopiervorgang erzeugt mehrere Ereignisse
+        Path jar = dir.resolve("ShopModule.jar");
+        for (int i = 0; i < 5; i++) {
+            Files.write(jar, new byte[]{(byte) i});
+            Thread.sleep(20);
+        }
+        Files.writeString(dir.resolve("notes.txt"), "not a module");
+
+        assertTrue(waitFor(() -> !reloaded.isEmpty()));
+        Thread.sleep(1500);
+        assertEquals(List.of("ShopModule"), reloaded);
+    }
+
+    @Test
+    void removedJarIsReloadedAndStoppedWatcherIgnoresChanges() throws Exception {
+        Path jar = Files.write(dir.resolve("CoreModule.jar"), new byte[]{1});
+        watcher = new ModuleWatcher(recordingLoader(), dir);
+        watcher.start();
+
+        Files.delete(jar);
+        assertTrue(waitFor(() -> reloaded.contains("CoreModule")));
+
+        watcher.stop();
+        assertFalse(watcher.isRunning());
+        reloaded.clear();
+        Files.write(jar, new byte[]{2});
+        Thread.sleep(1500);
+        assertEquals(List.of(), reloaded);
+    }
+
+    private ModuleLoader recordingLoader() {
+        return new ModuleLoader(new Registry(), dir.toFile(), dir.toFile()) {
+            @Override
+            public synchronized boolean reloadModule(String name) {
+                reloaded.add(name);
+                return true;
+            }
+        };
+    }
+
+    private static boolean waitFor(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        long end = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > end) return false;
+            Thread.sleep(10);
+        }
+        return true;
+    }
+}
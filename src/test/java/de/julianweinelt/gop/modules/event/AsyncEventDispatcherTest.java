@@ -0,0 +1,194 @@
+package de.julianweinelt.gop.modules.event;
+
+import de.julianweinelt.gop.modules.statistics.ModuleAccounting;
+import de.julianweinelt.gop.modules.statistics.StatisticManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the ordering and shutdown guarantees of the {@link AsyncEventDispatcher}.
+ */
+class AsyncEventDispatcherTest {
+    private static final EventType TYPE = EventType.of("AsyncDispatcherTestEvent");
+    private static final EventProperty<Integer> SEQUENCE = TYPE.property("sequence", Integer.class);
+
+    private final StatisticManager statistics = new StatisticManager();
+    private final ModuleAccounting accounting = new ModuleAccounting(statistics);
+    private AsyncEventDispatcher dispatcher;
+
+    @AfterEach
+    void shutdown() {
+        if (dispatcher != null) dispatcher.shutdown();
+    }
+
+    @Test
+    void deliversEventsWithTheSameKeyInOrder() throws Exception {
+        dispatcher = new AsyncEventDispatcher(4, 16, 4, OverflowPolicy.BLOCK, accounting);
+        Map<String, List<Integer>> received = new ConcurrentHashMap<>();
+        CountDownLatch done = new CountDownLatch(8 * 500);
+        RegisteredHandler[] handlers = handlers(e -> {
+            received.computeIfAbsent(e.getKey(), k -> Collections.synchronizedList(new ArrayList<>())).add(e.getInt(SEQUENCE));
+            done.countDown();
+        });
+
+        for (int i = 0; i < 500; i++) {
+            for (int key = 0; key < 8; key++) dispatcher.dispatch(event("key" + key, i), handlers);
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        for (int key = 0; key < 8; key++) assertEquals(range(500), received.get("key" + key), "key" + key);
+    }
+
+    @Test
+    void shutdownDeliversEveryPublishedEvent() throws Exception {
+        // mehrere Produzenten veröffentlichen weiter, während der Dispatcher heruntergefahren wird
+        for (OverflowPolicy policy : List.of(OverflowPolicy.BLOCK, OverflowPolicy.CALLER_RUNS)) {
+            AsyncEventDispatcher d = new AsyncEventDispatcher(2, 4, 2, policy, accounting);
+            AtomicInteger received = new AtomicInteger();
+            RegisteredHandler[] handlers = handlers(e -> received.incrementAndGet());
+            int producers = 4;
+            int perProducer = 2000;
+            CyclicBarrier start = new CyclicBarrier(producers + 1);
+            List<Thread> threads = new ArrayList<>();
+            for (int p = 0; p < producers; p++) {
+                String key = "producer" + p;
+                Thread t = new Thread(() -> {
+                    try {
+                        start.await();
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                    for (int i = 0; i < perProducer; i++) d.dispatch(event(key, i), handlers);
+                });
+                t.start();
+                threads.add(t);
+            }
+            start.await();
+            d.shutdown();
+            for (Thread t : threads) {
+                t.join(TimeUnit.SECONDS.toMillis(10));
+                assertFalse(t.isAlive(), policy + ": producer still blocked after shutdown");
+            }
+            assertEquals(producers * perProducer, received.get(), policy.name());
+        }
+    }
+
+    @Test
+    void blockedProducerDeliversAfterQueuedEventsOnShutdown() throws Exception {
+        dispatcher = new AsyncEventDispatcher(1, 1, 1, OverflowPolicy.BLOCK, accounting);
+        List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch handlerStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        RegisteredHandler[] handlers = handlers(e -> {
+            if (e.getInt(SEQUENCE) == 0) {
+                handlerStarted.countDown();
+                release.await();
+            }
+            received.add(e.getInt(SEQUENCE));
+        });
+
+        dispatcher.dispatch(event("key", 0), handlers);
+        assertTrue(handlerStarted.await(5, TimeUnit.SECONDS));
+        dispatcher.dispatch(event("key", 1), handlers); // füllt den Buffer
+        Thread producer = new Thread(() -> dispatcher.dispatch(event("key", 2), handlers));
+        producer.start();
+        Thread stopper = new Thread(dispatcher::shutdown);
+        stopper.start();
+        Thread.sleep(100);
+        release.countDown();
+
+        producer.join(TimeUnit.SECONDS.toMillis(10));
+        stopper.join(TimeUnit.SECONDS.toMillis(10));
+        assertFalse(producer.isAlive());
+        assertEquals(List.of(0, 1, 2), received);
+    }
+
+    @Test
+    void dispatchAfterShutdownRunsOnCaller() {
+        dispatcher = new AsyncEventDispatcher(2, 8, 4, OverflowPolicy.BLOCK, accounting);
+        List<Thread> threads = new ArrayList<>();
+        dispatcher.shutdown();
+
+        dispatcher.dispatch(event("key", 0), handlers(e -> threads.add(Thread.currentThread())));
+
+        assertEquals(List.of(Thread.currentThread()), threads);
+    }
+
+    @Test
+    void dropOldestCountsDroppedEvents() throws Exception {
+        dispatcher = new AsyncEventDispatcher(1, 2, 1, OverflowPolicy.DROP_OLDEST, accounting);
+        List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch handlerStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(3);
+        RegisteredHandler[] handlers = handlers(e -> {
+            if (e.getInt(SEQUENCE) == 0) {
+                handlerStarted.countDown();
+                release.await();
+            }
+            received.add(e.getInt(SEQUENCE));
+            done.countDown();
+        });
+
+        dispatcher.dispatch(event("key", 0), handlers);
+        assertTrue(handlerStarted.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i <= 3; i++) dispatcher.dispatch(event("key", i), handlers);
+        release.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, dispatcher.getDroppedCount());
+        assertEquals(List.of(0, 2, 3), received);
+    }
+
+    @Test
+    void callerRunsWhenBufferIsFull() throws Exception {
+        dispatcher = new AsyncEventDispatcher(1, 1, 1, OverflowPolicy.CALLER_RUNS, accounting);
+        Map<Integer, Thread> threads = new ConcurrentHashMap<>();
+        CountDownLatch handlerStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        RegisteredHandler[] handlers = handlers(e -> {
+            if (e.getInt(SEQUENCE) == 0) {
+                handlerStarted.countDown();
+                release.await();
+            }
+            threads.put(e.getInt(SEQUENCE), Thread.currentThread());
+        });
+
+        dispatcher.dispatch(event("key", 0), handlers);
+        assertTrue(handlerStarted.await(5, TimeUnit.SECONDS));
+        dispatcher.dispatch(event("key", 1), handlers);
+        dispatcher.dispatch(event("key", 2), handlers);
+        release.countDown();
+
+        assertSame(Thread.currentThread(), threads.get(2));
+    }
+
+    private RegisteredHandler[] handlers(EventExecutor executor) {
+        return new RegisteredHandler[]{new RegisteredHandler(this, "test", Priority.NORMAL, false, true, executor,
+                accounting.getUsage(ModuleAccounting.SYSTEM))};
+    }
+
+    private static Event event(String key, int sequence) {
+        Event event = new Event(TYPE).setInt(SEQUENCE, sequence);
+        event.setKey(key);
+        return event;
+    }
+
+    private static List<Integer> range(int n) {
+        List<Integer> list = new ArrayList<>();
+        for (int i = 0; i < n; i++) list.add(i);
+        return list;
+    }
+}
@@ -0,0 +1,154 @@
+package de.julianweinelt.gop.modules.event;
+
+import de.julianweinelt.gop.modules.ModuleClassLoader;
+import de.julianweinelt.gop.modules.ModuleClassLoaderIndex;
+import de.julianweinelt.gop.modules.event.fixture.ModuleListener;
+import de.julianweinelt.gop.modules.statistics.ModuleAccounting;
+import de.julianweinelt.gop.modules.statistics.StatisticManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Registers listeners on an {@link EventManager} and checks which handlers are called, and in which order.
+ */
+class EventManagerTest {
+    private static final String FIXTURE_PACKAGE = ModuleListener.class.getPackageName();
+
+    @TempDir
+    Path dir;
+
+    private EventManager events;
+
+    @BeforeEach
+    void createManager() {
+        StatisticManager statistics = new StatisticManager();
+        events = new EventManager(statistics, new ModuleAccounting(statistics));
+    }
+
+    @AfterEach
+    void shutdown() {
+        events.shutdown();
+    }
+
+    @Test
+    void callsHandlersInOrderOfPriority() {
+        List<String> calls = new ArrayList<>();
+        events.subscribe(this, "OrderEvent", Priority.LOW, false, false, "low", e -> calls.add("low"));
+        events.subscribe(this, "OrderEvent", Priority.HIGHEST, false, false, "highest", e -> calls.add("highest"));
+        events.subscribe(this, "OrderEvent", Priority.NORMAL, false, false, "normal1", e -> calls.add("normal1"));
+        events.subscribe(this, "OrderEvent", Priority.NORMAL, false, false, "normal2", e -> calls.add("normal2"));
+        events.subscribe(this, "OrderEvent", Priority.MONITOR, false, false, "monitor", e -> calls.add("monitor"));
+
+        events.callEvent(new Event("OrderEvent"));
+
+        assertEquals(List.of("highest", "normal1", "normal2", "low", "monitor"), calls);
+    }
+
+    @Test
+    void skipsHandlersIgnoringCancelledEvents() {
+        List<String> calls = new ArrayList<>();
+        events.subscribe(this, "CancelEvent", Priority.HIGH, false, false, "cancel", e -> e.setCancelled(true));
+        events.subscribe(this, "CancelEvent", Priority.NORMAL, true, false, "ignoring", e -> calls.add("ignoring"));
+        events.subscribe(this, "CancelEvent", Priority.MONITOR, false, false, "monitor", e -> calls.add("monitor"));
+
+        events.callEvent(new Event("CancelEvent"));
+
+        assertEquals(List.of("monitor"), calls);
+    }
+
+    @Test
+    void handlerFailureDoesNotStopOtherHandlers() {
+        List<String> calls = new ArrayList<>();
+        events.subscribe(this, "FailEvent", Priority.HIGH, false, false, "failing", e -> {
+            throw new IllegalStateException("broken handler");
+        });
+        events.subscribe(this, "FailEvent", Priority.LOW, false, false, "second", e -> calls.add("second"));
+
+        events.callEvent(new Event("FailEvent"));
+
+        assertEquals(List.of("second"), calls);
+    }
+
+    @Test
+    void unregisterRemovesOnlyHandlersOfOwner() {
+        Object other = new Object();
+        List<String> calls = new ArrayList<>();
+        events.subscribe(this, "OwnerEvent", Priority.NORMAL, false, false, "own", e -> calls.add("own"));
+        events.subscribe(other, "OwnerEvent", Priority.NORMAL, false, false, "other", e -> calls.add("other"));
+
+        events.unregisterListeners(this);
+        events.callEvent(new Event("OwnerEvent"));
+
+        assertEquals(List.of("other"), calls);
+    }
+
+    @Test
+    void bindsListenerOfTestClass() {
+        List<String> calls = new ArrayList<>();
+        events.registerListener(this, new EventListener() {
+            @Subscribe("LocalListenerEvent")
+            public void onEvent(Event event) {
+                calls.add(event.getName());
+            }
+        });
+
+        events.callEvent(new Event("LocalListenerEvent"));
+
+        assertEquals(List.of("LocalListenerEvent"), calls);
+    }
+
+    @Test
+    void bindsListenerLoadedByModuleClassLoader() throws Exception {
+        // der Parent darf die Fixture nicht kennen, sonst würde sie nicht aus dem Modul-Jar geladen
+        ClassLoader parent = new ClassLoader(getClass().getClassLoader()) {
+            @Override
+            protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+                if (name.startsWith(FIXTURE_PACKAGE + ".")) throw new ClassNotFoundException(name);
+                return super.loadClass(name, resolve);
+            }
+        };
+        ModuleClassLoaderIndex index = new ModuleClassLoaderIndex(parent);
+        ModuleClassLoader loader = index.create("ListenerModule", moduleJar(ModuleListener.class).toUri().toURL(),
+                List.of(FIXTURE_PACKAGE));
+        try {
+            Class<?> listenerClass = loader.loadClass(ModuleListener.class.getName());
+            assertSame(loader, listenerClass.getClassLoader());
+
+            events.registerListener(this, (EventListener) listenerClass.getConstructor().newInstance());
+            Event event = new Event("ModuleListenerEvent");
+            events.callEvent(event);
+
+            assertEquals(loader.getName(), event.get("subscribe"));
+            assertEquals(loader.getName(), event.get("eventHandler"));
+        } finally {
+            index.remove("ListenerModule");
+        }
+    }
+
+    private Path moduleJar(Class<?> listenerClass) throws Exception {
+        Path jar = dir.resolve("listener-module.jar");
+        String entry = listenerClass.getName().replace('.', '/') + ".class";
+        try (OutputStream file = Files.newOutputStream(jar);
+             JarOutputStream out = new JarOutputStream(file);
+             InputStream in = listenerClass.getClassLoader().getResourceAsStream(entry)) {
+            assertNotNull(in);
+            out.putNextEntry(new JarEntry(entry));
+            in.transferTo(out);
+            out.closeEntry();
+        }
+        return jar;
+    }
+}
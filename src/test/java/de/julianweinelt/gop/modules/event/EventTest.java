@@ -0,0 +1,103 @@
+package de.julianweinelt.gop.modules.event;
+
+import de.julianweinelt.gop.except.EventPropertyKeyInvalidException;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Reads and writes the typed and the untyped properties of an {@link Event}.
+ */
+class EventTest {
+
+    @Test
+    void typedPropertiesKeepTheirValues() {
+        EventType type = EventType.of("TypedPropertiesEvent");
+        EventProperty<Integer> x = type.property("x", Integer.class);
+        EventProperty<Long> time = type.property("time", Long.class);
+        EventProperty<Double> factor = type.property("factor", Double.class);
+        EventProperty<Boolean> visible = type.property("visible", Boolean.class);
+        EventProperty<String> name = type.property("name", String.class);
+
+        Event event = new Event(type).setInt(x, -12).setLong(time, Long.MAX_VALUE).setDouble(factor, 0.25)
+                .setBoolean(visible, true).set(name, "pixel");
+
+        assertEquals(-12, event.getInt(x));
+        assertEquals(Long.MAX_VALUE, event.getLong(time));
+        assertEquals(0.25, event.getDouble(factor));
+        assertTrue(event.getBoolean(visible));
+        assertEquals("pixel", event.get(name));
+        assertEquals(-12, event.get("x"));
+    }
+
+    @Test
+    void untypedKeysAcceptAnyValue() {
+        Event first = new Event("UntypedPropertiesEvent").set("amount", 1).set("items", new ArrayList<>(List.of("a")));
+        Event second = new Event("UntypedPropertiesEvent").set("amount", 2L).set("items", List.of("b"));
+        second.set("amount", "three");
+
+        assertEquals(1, first.get("amount"));
+        assertEquals("three", second.get("amount"));
+        assertEquals(List.of("b"), second.get("items"));
+    }
+
+    @Test
+    void typedPropertiesRejectOtherTypes() {
+        EventType type = EventType.of("StrictPropertiesEvent");
+        type.property("count", Integer.class);
+
+        Event event = new Event(type);
+
+        assertThrows(EventPropertyKeyInvalidException.class, () -> event.set("count", 1L));
+        assertThrows(EventPropertyKeyInvalidException.class, () -> type.property("count", Long.class));
+        assertEquals(3, event.set("count", 3).get("count"));
+    }
+
+    @Test
+    void missingValuesAndForeignPropertiesAreRejected() {
+        EventType type = EventType.of("MissingPropertiesEvent");
+        EventProperty<Integer> x = type.property("x", Integer.class);
+        EventProperty<Integer> foreign = EventType.of("OtherPropertiesEvent").property("x", Integer.class);
+        Event event = new Event(type);
+
+        assertFalse(event.has("x"));
+        assertThrows(EventPropertyKeyInvalidException.class, () -> event.getInt(x));
+        assertThrows(EventPropertyKeyInvalidException.class, () -> event.get("unknown"));
+        assertThrows(EventPropertyKeyInvalidException.class, () -> event.setInt(foreign, 1));
+    }
+
+    @Test
+    void propertiesDeclaredLaterAreStoredInOlderEvents() {
+        EventType type = EventType.of("GrowingPropertiesEvent");
+        Event event = new Event(type);
+        EventProperty<Integer> late = type.property("late", Integer.class);
+        EventProperty<String> lateName = type.property("lateName", String.class);
+
+        event.setInt(late, 7).set(lateName, "late");
+
+        assertEquals(7, event.getInt(late));
+        assertEquals("late", event.get(lateName));
+    }
+
+    @Test
+    void releasedEventsAreClearedAndCopiesAreIndependent() {
+        EventType type = EventType.of("PooledPropertiesEvent");
+        EventProperty<Integer> x = type.property("x", Integer.class);
+        Event event = type.acquire().setInt(x, 5);
+        event.setCancelled(true);
+        Event copy = event.copy();
+
+        event.release();
+        Event reused = type.acquire();
+
+        assertSame(event, reused);
+        assertFalse(reused.has("x"));
+        assertFalse(reused.isCancelled());
+        assertFalse(copy.isPooled());
+        assertEquals(5, copy.getInt(x));
+        assertTrue(copy.isCancelled());
+    }
+}
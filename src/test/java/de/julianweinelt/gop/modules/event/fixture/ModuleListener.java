@@ -0,0 +1,20 @@
+package de.julianweinelt.gop.modules.event.fixture;
+
+import de.julianweinelt.gop.modules.event.Event;
+import de.julianweinelt.gop.modules.event.EventHandler;
+import de.julianweinelt.gop.modules.event.EventListener;
+import de.julianweinelt.gop.modules.event.Subscribe;
+
+// Wird im EventManagerTest über einen eigenen ModuleClassLoader geladen, wie der Listener eines Moduls
+public class ModuleListener implements EventListener {
+
+    @Subscribe("ModuleListenerEvent")
+    public void onSubscribe(Event event) {
+        event.set("subscribe", getClass().getClassLoader().getName());
+    }
+
+    @EventHandler("ModuleListenerEvent")
+    private void onEventHandler(Event event) {
+        event.set("eventHandler", getClass().getClassLoader().getName());
+    }
+}
@@ -0,0 +1,9 @@
+package de.julianweinelt.gop.modules.fixture.core;
+
+// Wird im ModuleClassLoaderIndexTest aus dem Jar eines Moduls geladen
+public class CoreApi {
+
+    public static String loaderName() {
+        return CoreApi.class.getClassLoader().getName();
+    }
+}
@@ -0,0 +1,11 @@
+package de.julianweinelt.gop.modules.fixture.shop;
+
+import de.julianweinelt.gop.modules.fixture.core.CoreApi;
+
+// Ein Modul, das CoreApi aus einem anderen Modul benutzt
+public class Shop {
+
+    public static String coreLoaderName() {
+        return CoreApi.loaderName();
+    }
+}
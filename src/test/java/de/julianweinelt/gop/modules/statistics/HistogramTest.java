@@ -0,0 +1,104 @@
+package de.julianweinelt.gop.modules.statistics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Records values in a {@link Histogram} and checks the buckets and percentiles it derives from them.
+ */
+class HistogramTest {
+
+    @Test
+    void smallValuesHaveTheirOwnBucket() {
+        for (int value = 0; value < 16; value++) {
+            assertEquals(value, Histogram.bucket(value));
+            assertEquals(value, Histogram.upperBound(value));
+        }
+        assertEquals(16, Histogram.bucket(16));
+        assertEquals(16, Histogram.upperBound(16));
+    }
+
+    @Test
+    void everyValueLiesInItsBucketWithinOneSixteenth() {
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            long value = random.nextLong() >>> (1 + random.nextInt(63));
+            check(value);
+        }
+        for (int shift = 0; shift < 63; shift++) {
+            check(1L << shift);
+            check((1L << shift) - 1);
+            check((1L << shift) + 1);
+        }
+        check(Long.MAX_VALUE);
+    }
+
+    @Test
+    void bucketsAreContiguous() {
+        int last = Histogram.bucket(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, Histogram.upperBound(last));
+        for (int bucket = 1; bucket <= last; bucket++) {
+            long lower = Histogram.upperBound(bucket - 1) + 1;
+            assertEquals(bucket, Histogram.bucket(lower), "lower bound of bucket " + bucket);
+            assertEquals(bucket, Histogram.bucket(Histogram.upperBound(bucket)), "upper bound of bucket " + bucket);
+        }
+    }
+
+    @Test
+    void percentilesAreAtMostOneBucketAbove() {
+        Histogram histogram = new Histogram("test_seconds", "Test");
+        // 1 bis 1000 Mikrosekunden
+        for (int i = 1; i <= 1000; i++) histogram.record(i * 1000L);
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500_500_000L, histogram.getSum());
+        assertEquals(1_000_000L, histogram.getMax());
+        assertBetween(500_000, histogram.getPercentile(0.5));
+        assertBetween(990_000, histogram.getPercentile(0.99));
+        assertEquals(1_000_000L, histogram.getPercentile(1));
+        assertBetween(1000, histogram.getPercentile(0));
+    }
+
+    @Test
+    void emptyAndNegativeValues() {
+        Histogram histogram = new Histogram("test_seconds", "Test");
+        assertEquals(0, histogram.getPercentile(0.5));
+
+        histogram.record(-5);
+
+        assertEquals(1, histogram.getCount());
+        assertEquals(0, histogram.getSum());
+        assertEquals(0, histogram.getPercentile(0.99));
+    }
+
+    @Test
+    void prometheusOutputHasQuantilesSumAndCount() {
+        Histogram histogram = new Histogram("gop_module_load_seconds", "Load time", "module", "Shop");
+        histogram.record(2_000_000_000L);
+        StringBuilder out = new StringBuilder();
+
+        histogram.writePrometheus(out);
+
+        String text = out.toString();
+        assertTrue(text.contains("gop_module_load_seconds{module=\"Shop\",quantile=\"0.5\"} 2.0\n"), text);
+        assertTrue(text.contains("gop_module_load_seconds{module=\"Shop\",quantile=\"0.999\"} 2.0\n"), text);
+        assertTrue(text.contains("gop_module_load_seconds_sum{module=\"Shop\"} 2.0\n"), text);
+        assertTrue(text.contains("gop_module_load_seconds_count{module=\"Shop\"} 1\n"), text);
+        assertEquals("summary", histogram.getType());
+    }
+
+    private static void check(long value) {
+        int bucket = Histogram.bucket(value);
+        long upper = Histogram.upperBound(bucket);
+        assertTrue(value <= upper, value + " above bucket " + bucket);
+        assertTrue(bucket == 0 || value > Histogram.upperBound(bucket - 1), value + " below bucket " + bucket);
+        assertTrue(upper - value <= value / 16, value + " too far from " + upper);
+    }
+
+    private static void assertBetween(long expected, long actual) {
+        assertTrue(actual >= expected && actual <= expected + expected / 16, actual + " not close above " + expected);
+    }
+}
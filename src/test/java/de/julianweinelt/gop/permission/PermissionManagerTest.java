@@ -0,0 +1,90 @@
+package de.julianweinelt.gop.permission;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Resolves the permissions of users through a {@link PermissionManager} and checks that the cached tries
+ * follow every change.
+ */
+class PermissionManagerTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void rolesAndParentsAreResolved() {
+        PermissionManager permissions = manager();
+        permissions.setRole(new Role("default", List.of("pixels.view"), List.of()));
+        permissions.setRole(new Role("moderator", List.of("tabula.*", "-tabula.shop.refund"), List.of("default", "moderator")));
+        permissions.setUserRoles("julian", List.of("moderator"));
+
+        assertTrue(permissions.has("julian", "pixels.view"));
+        assertTrue(permissions.has("julian", "tabula.shop.view"));
+        assertFalse(permissions.has("julian", "tabula.shop.refund"));
+        assertTrue(permissions.has("guest", "pixels.view"));
+        assertFalse(permissions.has("guest", "tabula.shop.view"));
+    }
+
+    @Test
+    void usersWithTheSameRolesShareOneTrie() {
+        PermissionManager permissions = manager();
+        permissions.setRole(new Role("admin", List.of("*"), List.of()));
+        permissions.setUserRoles("a", List.of("admin"));
+        permissions.setUserRoles("b", List.of("admin"));
+
+        assertSame(permissions.getPermissions("a"), permissions.getPermissions("b"));
+        assertSame(permissions.getPermissions("a"), permissions.getPermissions("a"));
+    }
+
+    @Test
+    void changesReplaceTheCachedTries() {
+        PermissionManager permissions = manager();
+        List<String> invalidated = new ArrayList<>();
+        permissions.addInvalidationListener(invalidated::add);
+        permissions.setRole(new Role("editor", List.of("pixels.edit"), List.of()));
+        permissions.setUserRoles("julian", List.of("editor"));
+        assertTrue(permissions.has("julian", "pixels.edit"));
+
+        permissions.setRole(new Role("editor", List.of("pixels.view"), List.of()));
+        assertFalse(permissions.has("julian", "pixels.edit"));
+
+        permissions.setUserRoles("julian", List.of());
+        assertFalse(permissions.has("julian", "pixels.view"));
+        // null steht für eine geänderte Rolle, die alle Benutzer betreffen kann
+        assertEquals(Arrays.asList(null, "julian", null, "julian"), invalidated);
+    }
+
+    @Test
+    void concurrentChangesNeverLeaveAStaleTrieCached() throws InterruptedException {
+        PermissionManager permissions = manager();
+        permissions.setUserRoles("julian", List.of("editor"));
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread reader = new Thread(() -> {
+            while (running.get()) permissions.getPermissions("julian");
+        });
+        reader.start();
+
+        for (int i = 0; i < 2000; i++) {
+            boolean allowed = i % 2 == 0;
+            permissions.setRole(new Role("editor", List.of(allowed ? "pixels.edit" : "-pixels.edit"), List.of()));
+            Thread.onSpinWait();
+            // spätestens nach dem Ändern darf kein alter Trie mehr im Cache liegen
+            assertEquals(allowed, permissions.has("julian", "pixels.edit"), "after change " + i);
+        }
+        running.set(false);
+        reader.join();
+    }
+
+    private PermissionManager manager() {
+        return new PermissionManager(dir.resolve("permissions.json").toFile());
+    }
+}
@@ -0,0 +1,64 @@
+package de.julianweinelt.gop.permission;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks which permissions a compiled {@link PermissionTrie} grants.
+ */
+class PermissionTrieTest {
+
+    @Test
+    void exactNodesOnlyGrantThemselves() {
+        PermissionTrie trie = PermissionTrie.compile(List.of("pixels.view"));
+
+        assertTrue(trie.has("pixels.view"));
+        assertFalse(trie.has("pixels"));
+        assertFalse(trie.has("pixels.view.all"));
+        assertFalse(trie.has("pixels.edit"));
+    }
+
+    @Test
+    void wildcardsGrantEverythingBelow() {
+        PermissionTrie trie = PermissionTrie.compile(List.of("tabula.*"));
+
+        assertTrue(trie.has("tabula.shop"));
+        assertTrue(trie.has("tabula.shop.view"));
+        assertFalse(trie.has("tabula"));
+        assertFalse(trie.has("pixels.view"));
+        assertTrue(PermissionTrie.compile(List.of("*")).has("anything.at.all"));
+    }
+
+    @Test
+    void mostSpecificNodeDecides() {
+        PermissionTrie trie = PermissionTrie.compile(List.of("tabula.*", "-tabula.shop.*", "tabula.shop.view"));
+
+        assertTrue(trie.has("tabula.players"));
+        assertFalse(trie.has("tabula.shop.refund"));
+        assertTrue(trie.has("tabula.shop.view"));
+        assertFalse(PermissionTrie.compile(List.of("*", "-tabula.shop.refund")).has("tabula.shop.refund"));
+    }
+
+    @Test
+    void denyWinsOverEquallySpecificGrant() {
+        PermissionTrie trie = PermissionTrie.compile(List.of("pixels.edit", "-pixels.edit", "pixels.*", "-pixels.*"));
+
+        assertFalse(trie.has("pixels.edit"));
+        assertFalse(trie.has("pixels.view"));
+    }
+
+    @Test
+    void nodesAreNormalized() {
+        PermissionTrie trie = PermissionTrie.compile(Arrays.asList(" Pixels.View ", null, "", "-"));
+
+        assertTrue(trie.has("pixels.view"));
+        assertTrue(trie.has("PIXELS.VIEW"));
+        assertTrue(trie.has(null));
+        assertTrue(trie.has(""));
+        assertFalse(PermissionTrie.compile(List.of()).has("pixels.view"));
+    }
+}
@@ -0,0 +1,113 @@
+package de.julianweinelt.gop.session;
+
+import de.julianweinelt.gop.tabula.FailReason;
+import de.julianweinelt.gop.util.JWTUtil;
+import de.julianweinelt.gop.util.TabulaJWT;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Refreshes sessions of a {@link SessionManager} and checks that a refresh token can only be used once.
+ */
+class SessionManagerTest {
+    private static final long ACCESS_SECONDS = 60;
+    private static final long SESSION_MILLIS = 60_000;
+
+    private final TabulaJWT jwt = new TabulaJWT(new JWTUtil(JWTUtil.randomSecret(), "GoP"), 100, 3600);
+    private final SessionManager sessions = new SessionManager(jwt, ACCESS_SECONDS, SESSION_MILLIS, false);
+
+    @Test
+    void refreshReplacesBothTokens() {
+        SessionTokens tokens = sessions.create("julian");
+        assertTrue(tokens.isValid());
+
+        SessionTokens next = sessions.refresh(tokens.refreshToken());
+
+        assertTrue(next.isValid());
+        assertEquals("julian", next.user());
+        assertNotEquals(tokens.refreshToken(), next.refreshToken());
+        assertTrue(jwt.verify(next.accessToken()).isValid());
+        // das alte Access-Token wird beim Refresh widerrufen
+        assertEquals(FailReason.TOKEN_INVALID, jwt.verify(tokens.accessToken()).getFailReason());
+        assertTrue(sessions.refresh(next.refreshToken()).isValid());
+    }
+
+    @Test
+    void reusedRefreshTokenClosesTheSession() {
+        SessionTokens tokens = sessions.create("julian");
+        SessionTokens next = sessions.refresh(tokens.refreshToken());
+
+        SessionTokens reused = sessions.refresh(tokens.refreshToken());
+
+        assertEquals(FailReason.TOKEN_INVALID, reused.failReason());
+        assertEquals(List.of(), sessions.getSessions("julian"));
+        // auch das Token des rechtmäßigen Clients gilt nicht mehr
+        assertEquals(FailReason.TOKEN_INVALID, sessions.refresh(next.refreshToken()).failReason());
+        assertEquals(FailReason.TOKEN_INVALID, jwt.verify(next.accessToken()).getFailReason());
+    }
+
+    @Test
+    void concurrentRefreshWithOneTokenSucceedsOnce() throws Exception {
+        SessionTokens tokens = sessions.create("julian");
+        int threads = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<SessionTokens>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                results.add(pool.submit(() -> {
+                    start.await();
+                    return sessions.refresh(tokens.refreshToken());
+                }));
+            }
+            start.countDown();
+
+            int valid = 0;
+            for (Future<SessionTokens> result : results) if (result.get().isValid()) valid++;
+            // der erste Refresh gelingt, jede weitere Benutzung schließt die Session
+            assertEquals(1, valid);
+            assertEquals(List.of(), sessions.getSessions("julian"));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void unknownAndLoggedOutTokensAreRejected() {
+        SessionTokens first = sessions.create("julian");
+        SessionTokens second = sessions.create("julian");
+        SessionTokens other = sessions.create("admin");
+
+        assertEquals(FailReason.TOKEN_INVALID, sessions.refresh("unknown").failReason());
+        assertEquals(FailReason.TOKEN_INVALID, sessions.refresh(null).failReason());
+
+        assertTrue(sessions.logout(first.refreshToken()));
+        assertFalse(sessions.logout(first.refreshToken()));
+        assertEquals(FailReason.TOKEN_INVALID, sessions.refresh(first.refreshToken()).failReason());
+
+        assertEquals(1, sessions.logoutAll("julian"));
+        assertEquals(FailReason.TOKEN_INVALID, sessions.refresh(second.refreshToken()).failReason());
+        assertTrue(sessions.refresh(other.refreshToken()).isValid());
+    }
+
+    @Test
+    void expiredSessionCannotBeRefreshed() throws InterruptedException {
+        SessionManager shortLived = new SessionManager(jwt, ACCESS_SECONDS, 50, false);
+        SessionTokens tokens = shortLived.create("julian");
+        Thread.sleep(100);
+
+        SessionTokens refreshed = shortLived.refresh(tokens.refreshToken());
+
+        // entweder schon vom TimingWheel geschlossen oder beim Refresh als abgelaufen erkannt
+        assertFalse(refreshed.isValid());
+        assertEquals(List.of(), shortLived.getSessions("julian"));
+    }
+}
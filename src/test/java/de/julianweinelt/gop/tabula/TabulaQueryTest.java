@@ -0,0 +1,136 @@
+package de.julianweinelt.gop.tabula;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import de.julianweinelt.gop.tabula.config.Component;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Translates query messages into SQL with {@link TabulaQuery}, without a database. {@link TabulaSQLTest}
+ * runs the generated queries against H2.
+ */
+class TabulaQueryTest {
+    private static final String SOURCE = "SELECT * FROM (SELECT id, name, pixels FROM players) tabula_src";
+
+    @Test
+    void keyColumnOrdersWhenNothingIsSorted() {
+        TabulaQuery query = query("{}");
+
+        assertEquals(SOURCE + " ORDER BY id ASC LIMIT 51", query.getSql());
+        assertEquals(List.of(), query.getParameters());
+        assertEquals(50, query.getLimit());
+    }
+
+    @Test
+    void sortAndFiltersBecomeParameters() {
+        TabulaQuery query = query("""
+                {"sort": "pixels", "order": "desc", "limit": 10, "filters": [
+                  {"column": "name", "op": "contains", "value": "50%_off\\\\"},
+                  {"column": "pixels", "op": "ge", "value": 30},
+                  {"column": "name", "op": "notNull"}]}
+                """);
+
+        assertEquals(SOURCE + " WHERE name LIKE ? ESCAPE '\\' AND pixels >= ? AND name IS NOT NULL"
+                + " ORDER BY pixels DESC, id DESC LIMIT 11", query.getSql());
+        assertEquals(List.of("%50\\%\\_off\\\\%", new BigDecimal(30)), query.getParameters());
+    }
+
+    @Test
+    void cursorContinuesBehindTheLastRow() {
+        JsonObject request = request("{\"sort\": \"pixels\", \"order\": \"desc\", \"limit\": 3}");
+        TabulaQuery first = TabulaQuery.of(component(), request);
+        request.addProperty("cursor", first.nextCursor(row(7, "player7", 30)));
+
+        TabulaQuery next = TabulaQuery.of(component(), request);
+
+        assertEquals(SOURCE + " WHERE (pixels < ? OR (pixels = ? AND id < ?)) ORDER BY pixels DESC, id DESC LIMIT 4",
+                next.getSql());
+        assertEquals(List.of(new BigDecimal(30), new BigDecimal(30), new BigDecimal(7)), next.getParameters());
+    }
+
+    @Test
+    void cursorWithoutSortOnlyComparesTheKey() {
+        JsonObject request = request("{\"sort\": \"id\"}");
+        TabulaQuery first = TabulaQuery.of(component(), request);
+        request.addProperty("cursor", first.nextCursor(row(4, "player4", 30)));
+
+        TabulaQuery next = TabulaQuery.of(component(), request);
+
+        assertNull(next.getSortColumn());
+        assertEquals(SOURCE + " WHERE id > ? ORDER BY id ASC LIMIT 51", next.getSql());
+        assertEquals(List.of(new BigDecimal(4)), next.getParameters());
+    }
+
+    @Test
+    void cursorOfAnotherQueryIsRejected() {
+        JsonObject filtered = request("{\"filters\": [{\"column\": \"pixels\", \"op\": \"ge\", \"value\": 30}]}");
+        String cursor = TabulaQuery.of(component(), filtered).nextCursor(row(1, "player1", 40));
+        JsonObject sorted = request("{\"sort\": \"pixels\"}");
+        sorted.addProperty("cursor", cursor);
+        JsonObject broken = request("{}");
+        broken.addProperty("cursor", Base64.getUrlEncoder().encodeToString("no json".getBytes(StandardCharsets.UTF_8)));
+
+        assertThrows(IllegalArgumentException.class, () -> TabulaQuery.of(component(), sorted));
+        assertThrows(IllegalArgumentException.class, () -> TabulaQuery.of(component(), broken));
+    }
+
+    @Test
+    void undeclaredColumnsAndOperatorsAreRejected() {
+        for (String request : List.of(
+                "{\"sort\": \"name\"}",
+                "{\"sort\": \"password\"}",
+                "{\"filters\": [{\"column\": \"id\", \"op\": \"eq\", \"value\": 1}]}",
+                "{\"filters\": [{\"column\": \"pixels\", \"op\": \"; DROP TABLE players\", \"value\": 1}]}",
+                "{\"filters\": [{\"column\": \"pixels\", \"op\": \"eq\", \"value\": \"many\"}]}",
+                "{\"limit\": 0}",
+                "{\"limit\": " + (TabulaQuery.MAX_LIMIT + 1) + "}")) {
+            assertThrows(IllegalArgumentException.class, () -> query(request), request);
+        }
+    }
+
+    @Test
+    void rowQueriesArePaddedToAPowerOfTwo() {
+        TabulaQuery query = TabulaQuery.rows(component(), List.of(1, 2, 3));
+
+        assertEquals(SOURCE + " WHERE id IN (?, ?, ?, ?)", query.getSql());
+        assertEquals(List.of(1, 2, 3, 3), query.getParameters());
+        assertEquals(3, query.getLimit());
+        assertThrows(IllegalArgumentException.class, () -> TabulaQuery.rows(component(), List.of()));
+    }
+
+    private static TabulaQuery query(String request) {
+        return TabulaQuery.of(component(), request(request));
+    }
+
+    private static JsonObject request(String json) {
+        return JsonParser.parseString(json).getAsJsonObject();
+    }
+
+    private static JsonObject row(int id, String name, int pixels) {
+        JsonObject row = new JsonObject();
+        row.addProperty("id", id);
+        row.addProperty("name", name);
+        row.addProperty("pixels", pixels);
+        return row;
+    }
+
+    private static Component component() {
+        return new Gson().fromJson("""
+                {"id": "players",
+                 "dataSource": {"query": "SELECT id, name, pixels FROM players;", "keyColumn": "id", "pageSize": 50},
+                 "columns": [
+                   {"key": "id", "type": "NUMBER", "sortable": true},
+                   {"key": "name", "filterable": true},
+                   {"key": "pixels", "type": "NUMBER", "sortable": true, "filterable": true}
+                 ]}
+                """, Component.class);
+    }
+}
@@ -0,0 +1,323 @@
+package de.julianweinelt.gop.tabula;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import de.julianweinelt.gop.tabula.config.Component;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs {@link TabulaSQL} and {@link TabulaQuery} against an in-memory H2 database. The connections are
+ * opened through a {@link CountingDriver}, which wraps H2 and counts open connections and prepared statements.
+ */
+class TabulaSQLTest {
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+
+    private CountingDriver driver;
+    private String h2Url;
+    private TabulaSQL sql;
+
+    @BeforeEach
+    void createDatabase() throws SQLException {
+        // ein eigenes Schema pro Test, DATABASE_TO_LOWER liefert die Spalten so wie in der tabula.json
+        h2Url = "jdbc:h2:mem:tabula" + DATABASES.incrementAndGet() + ";DB_CLOSE_DELAY=-1;DATABASE_TO_LOWER=TRUE";
+        try (Connection connection = DriverManager.getConnection(h2Url, "sa", "");
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE players (id INT PRIMARY KEY, name VARCHAR(32), pixels INT NOT NULL)");
+            int[] pixels = {40, 10, 30, 30, 50, 10, 30, 20};
+            for (int i = 0; i < pixels.length; i++) {
+                statement.execute("INSERT INTO players VALUES (" + (i + 1) + ", 'player" + (i + 1) + "', " + pixels[i] + ")");
+            }
+        }
+        driver = new CountingDriver();
+        DriverManager.registerDriver(driver);
+    }
+
+    @AfterEach
+    void closeDatabase() throws SQLException {
+        if (sql != null) sql.close();
+        DriverManager.deregisterDriver(driver);
+        try (Connection connection = DriverManager.getConnection(h2Url, "sa", "");
+             Statement statement = connection.createStatement()) {
+            statement.execute("SHUTDOWN");
+        }
+    }
+
+    @Test
+    void poolNeverOpensMoreThanMaxConnections() throws Exception {
+        sql = new TabulaSQL(CountingDriver.PREFIX + h2Url, "sa", "", 2, 8, 10);
+        ExecutorService executor = Executors.newFixedThreadPool(6);
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int i = 0; i < 12; i++) {
+                results.add(executor.submit(() -> sql.stream("SELECT id FROM players", List.of(), 100, (rows, last) -> {
+                    maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+                    Thread.sleep(20);
+                    active.decrementAndGet();
+                    return true;
+                })));
+            }
+            for (Future<Integer> result : results) assertEquals(8, result.get(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+        assertTrue(maxActive.get() <= 2, "at most 2 queries at once, was " + maxActive.get());
+        assertTrue(driver.maxOpen.get() <= 2, "at most 2 open connections, was " + driver.maxOpen.get());
+        assertTrue(driver.opened.get() <= 2, "idle connections are reused, opened " + driver.opened.get());
+    }
+
+    @Test
+    void closeReleasesIdleConnections() throws Exception {
+        sql = new TabulaSQL(CountingDriver.PREFIX + h2Url, "sa", "", 2, 8, 10);
+        sql.stream("SELECT id FROM players", List.of(), 100, (rows, last) -> true);
+        assertEquals(1, driver.open.get());
+        sql.close();
+        assertEquals(0, driver.open.get());
+        assertThrows(SQLException.class, () -> sql.stream("SELECT id FROM players", List.of(), 100, (rows, last) -> true));
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedStatement() throws Exception {
+        sql = new TabulaSQL(CountingDriver.PREFIX + h2Url, "sa", "", 1, 2, 10);
+        String a = "SELECT id FROM players WHERE pixels > ?";
+        String b = "SELECT id FROM players WHERE pixels < ?";
+        String c = "SELECT id FROM players WHERE pixels = ?";
+
+        run(a);
+        run(b);
+        run(a); // a ist jetzt zuletzt benutzt, b fliegt als Nächstes raus
+        run(c);
+        run(a);
+        run(b);
+
+        assertEquals(1, driver.prepared(a), "a stays cached");
+        assertEquals(2, driver.prepared(b), "b is evicted by c and prepared again");
+        assertEquals(1, driver.prepared(c));
+        assertEquals(1, driver.closed(b), "the evicted statement is closed");
+        assertEquals(1, driver.closed(c), "c is evicted by b");
+        assertEquals(0, driver.closed(a));
+    }
+
+    @Test
+    void streamsRowsInChunks() throws Exception {
+        sql = new TabulaSQL(CountingDriver.PREFIX + h2Url, "sa", "", 1, 8, 10);
+        List<Integer> sizes = new ArrayList<>();
+        List<Boolean> lasts = new ArrayList<>();
+        List<Integer> ids = new ArrayList<>();
+        int count = sql.stream("SELECT id, name FROM players ORDER BY id", List.of(), 3, (rows, last) -> {
+            sizes.add(rows.size());
+            lasts.add(last);
+            for (JsonElement row : rows) ids.add(row.getAsJsonObject().get("id").getAsInt());
+            return true;
+        });
+
+        assertEquals(8, count);
+        assertEquals(List.of(3, 3, 2), sizes);
+        assertEquals(List.of(false, false, true), lasts);
+        assertEquals(List.of(1, 2, 3, 4, 5, 6, 7, 8), ids);
+    }
+
+    @Test
+    void sendsEmptyLastChunkOnExactBoundary() throws Exception {
+        sql = new TabulaSQL(CountingDriver.PREFIX + h2Url, "sa", "", 1, 8, 10);
+        List<Integer> sizes = new ArrayList<>();
+        List<Boolean> lasts = new ArrayList<>();
+        int count = sql.stream("SELECT id FROM players", List.of(), 4, (rows, last) -> {
+            sizes.add(rows.size());
+            lasts.add(last);
+            return true;
+        });
+
+        assertEquals(8, count);
+        assertEquals(List.of(4, 4, 0), sizes);
+        assertEquals(List.of(false, false, true), lasts);
+    }
+
+    @Test
+    void stopsWhenSinkDeclines() throws Exception {
+        sql = new TabulaSQL(CountingDriver.PREFIX + h2Url, "sa", "", 1, 8, 10);
+        AtomicInteger chunks = new AtomicInteger();
+        int count = sql.stream("SELECT id FROM players", List.of(), 3, (rows, last) -> chunks.incrementAndGet() < 1);
+
+        assertEquals(3, count);
+        assertEquals(1, chunks.get());
+        // die Verbindung ist wieder frei
+        assertEquals(8, sql.stream("SELECT id FROM players", List.of(), 100, (rows, last) -> true));
+    }
+
+    @Test
+    void pagesWithKeysetCursor() throws Exception {
+        sql = new TabulaSQL(CountingDriver.PREFIX + h2Url, "sa", "", 1, 8, 10);
+        Component component = component();
+        JsonObject request = JsonParser.parseString("{\"sort\": \"pixels\", \"order\": \"desc\", \"limit\": 3}").getAsJsonObject();
+
+        List<Integer> ids = new ArrayList<>();
+        int pages = 0;
+        String cursor = null;
+        do {
+            if (cursor != null) request.addProperty("cursor", cursor);
+            TabulaQuery query = TabulaQuery.of(component, request);
+            JsonArray page = new JsonArray();
+            sql.stream(query.getSql(), query.getParameters(), 100, (rows, last) -> {
+                page.addAll(rows);
+                return true;
+            });
+            boolean more = page.size() > query.getLimit();
+            int shown = Math.min(page.size(), query.getLimit());
+            for (int i = 0; i < shown; i++) ids.add(page.get(i).getAsJsonObject().get("id").getAsInt());
+            cursor = more ? query.nextCursor(page.get(shown - 1).getAsJsonObject()) : null;
+            pages++;
+        } while (cursor != null && pages < 10);
+
+        // pixels absteigend, bei gleichen pixels die id absteigend
+        assertEquals(List.of(5, 1, 7, 4, 3, 8, 6, 2), ids);
+        assertEquals(3, pages);
+    }
+
+    @Test
+    void filtersAndRejectsForeignCursor() throws Exception {
+        sql = new TabulaSQL(CountingDriver.PREFIX + h2Url, "sa", "", 1, 8, 10);
+        Component component = component();
+        JsonObject request = JsonParser.parseString("{\"filters\": [{\"column\": \"pixels\", \"op\": \"ge\", \"value\": 30}], "
+                + "\"limit\": 2}").getAsJsonObject();
+        TabulaQuery query = TabulaQuery.of(component, request);
+        JsonArray page = new JsonArray();
+        sql.stream(query.getSql(), query.getParameters(), 100, (rows, last) -> {
+            page.addAll(rows);
+            return true;
+        });
+        assertEquals(3, page.size(), "limit + 1 rows to detect the next page");
+        assertEquals(1, page.get(0).getAsJsonObject().get("id").getAsInt());
+
+        String cursor = query.nextCursor(page.get(1).getAsJsonObject());
+        JsonObject sorted = JsonParser.parseString("{\"sort\": \"pixels\", \"limit\": 2}").getAsJsonObject();
+        sorted.addProperty("cursor", cursor);
+        assertThrows(IllegalArgumentException.class, () -> TabulaQuery.of(component, sorted));
+    }
+
+    private void run(String query) throws SQLException {
+        sql.stream(query, List.of(20), 100, (rows, last) -> true);
+    }
+
+    private static Component component() {
+        return new Gson().fromJson("""
+                {"id": "players",
+                 "dataSource": {"query": "SELECT id, name, pixels FROM players;", "keyColumn": "id"},
+                 "columns": [
+                   {"key": "id", "type": "NUMBER", "sortable": true},
+                   {"key": "name", "filterable": true},
+                   {"key": "pixels", "type": "NUMBER", "sortable": true, "filterable": true}
+                 ]}
+                """, Component.class);
+    }
+
+    /**
+     * Opens H2 connections for urls starting with {@value PREFIX} and counts what happens with them.
+     */
+    static final class CountingDriver implements Driver {
+        static final String PREFIX = "jdbc:counting:";
+
+        final AtomicInteger open = new AtomicInteger();
+        final AtomicInteger maxOpen = new AtomicInteger();
+        final AtomicInteger opened = new AtomicInteger();
+        private final Map<String, AtomicInteger> prepared = new ConcurrentHashMap<>();
+        private final Map<String, AtomicInteger> closed = new ConcurrentHashMap<>();
+
+        int prepared(String query) {
+            return prepared.getOrDefault(query, new AtomicInteger()).get();
+        }
+
+        int closed(String query) {
+            return closed.getOrDefault(query, new AtomicInteger()).get();
+        }
+
+        @Override
+        public Connection connect(String url, Properties info) throws SQLException {
+            if (!acceptsURL(url)) return null;
+            Connection connection = DriverManager.getConnection(url.substring(PREFIX.length()), info);
+            opened.incrementAndGet();
+            maxOpen.accumulateAndGet(open.incrementAndGet(), Math::max);
+            return proxy(Connection.class, (method, args) -> {
+                if (method.getName().equals("close") && !connection.isClosed()) open.decrementAndGet();
+                Object result = invoke(connection, method, args);
+                if (method.getName().equals("prepareStatement")) {
+                    String query = (String) args[0];
+                    prepared.computeIfAbsent(query, q -> new AtomicInteger()).incrementAndGet();
+                    PreparedStatement statement = (PreparedStatement) result;
+                    return proxy(PreparedStatement.class, (m, a) -> {
+                        if (m.getName().equals("close") && !statement.isClosed()) {
+                            closed.computeIfAbsent(query, q -> new AtomicInteger()).incrementAndGet();
+                        }
+                        return invoke(statement, m, a);
+                    });
+                }
+                return result;
+            });
+        }
+
+        @Override
+        public boolean acceptsURL(String url) {
+            return url != null && url.startsWith(PREFIX);
+        }
+
+        @Override
+        public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+            return new DriverPropertyInfo[0];
+        }
+
+        @Override
+        public int getMajorVersion() {
+            return 1;
+        }
+
+        @Override
+        public int getMinorVersion() {
+            return 0;
+        }
+
+        @Override
+        public boolean jdbcCompliant() {
+            return false;
+        }
+
+        @Override
+        public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+            throw new SQLFeatureNotSupportedException();
+        }
+
+        private interface Handler {
+            Object handle(Method method, Object[] args) throws Throwable;
+        }
+
+        private static <T> T proxy(Class<T> type, Handler handler) {
+            InvocationHandler invocation = (proxy, method, args) -> handler.handle(method, args);
+            return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, invocation));
+        }
+
+        private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
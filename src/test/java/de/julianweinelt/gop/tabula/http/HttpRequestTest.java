@@ -0,0 +1,60 @@
+package de.julianweinelt.gop.tabula.http;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Parses request targets into an {@link HttpRequest} and routes them with a {@link Router}.
+ */
+class HttpRequestTest {
+
+    @Test
+    void segmentsAreSplitBeforeTheyAreDecoded() {
+        HttpRequest request = get("/api/tabs/Shop%2FLegacy/caf%C3%A9/");
+
+        assertEquals(List.of("api", "tabs", "Shop/Legacy", "café"), request.getSegments());
+        assertEquals("/api/tabs/Shop/Legacy/café/", request.getPath());
+    }
+
+    @Test
+    void plusIsOnlyASpaceInTheQuery() {
+        HttpRequest request = get("/api/tabs/a+b%20c?filter=red+blue&empty");
+
+        assertEquals(List.of("api", "tabs", "a+b c"), request.getSegments());
+        assertEquals("red blue", request.getQueryParameter("filter"));
+        assertEquals("", request.getQueryParameter("empty"));
+    }
+
+    @Test
+    void invalidEscapesAreKept() {
+        assertEquals(List.of("100%", "%zz", "%4"), get("/100%/%zz/%4").getSegments());
+        assertEquals(List.of(), get("/").getSegments());
+    }
+
+    @Test
+    void routerMatchesDecodedSegments() {
+        Router router = new Router();
+        HttpHandler tab = request -> HttpResponse.status(200);
+        HttpHandler tabs = request -> HttpResponse.status(200);
+        router.add("GET", "/api/tabs", tabs);
+        router.add("GET", "/api/tabs/{module}", tab);
+
+        HttpRequest encoded = get("/api/tabs/Shop%2FLegacy");
+        assertSame(tab, router.resolve(encoded));
+        assertEquals("Shop/Legacy", encoded.getPathParameter("module"));
+        assertEquals("GET /api/tabs/{module}", encoded.getRoute());
+
+        assertSame(tabs, router.resolve(get("/api/tabs/")));
+        assertNull(router.resolve(get("/api/tabs/Shop/Legacy")));
+        assertNull(router.resolve(new HttpRequest("POST", "/api/tabs", "HTTP/1.1",
+                new TreeMap<>(String.CASE_INSENSITIVE_ORDER), new byte[0], null)));
+    }
+
+    private static HttpRequest get(String target) {
+        return new HttpRequest("GET", target, "HTTP/1.1", new TreeMap<>(String.CASE_INSENSITIVE_ORDER), new byte[0], null);
+    }
+}
@@ -0,0 +1,278 @@
+package de.julianweinelt.gop.util;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import de.julianweinelt.gop.util.codec.DataCodec;
+import de.julianweinelt.gop.util.codec.JsonCodec;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Saves and loads data through a {@link LoadableManager}, including failing saves, the write-behind mode
+ * and encrypted files.
+ */
+class LoadableManagerTest {
+    private static final Logger log = LoggerFactory.getLogger(LoadableManagerTest.class);
+    private static final String KEY = "0123456789abcdef";
+    private static final Type DATA_TYPE = new TypeToken<Map<String, Integer>>(){}.getType();
+
+    @TempDir
+    Path dir;
+
+    private DataManager manager;
+
+    @AfterEach
+    void stopWriteBehind() {
+        if (manager != null) manager.disableWriteBehind();
+    }
+
+    @Test
+    void savedObjectIsLoadedAgain() throws Exception {
+        manager = new DataManager(false, null);
+        manager.setDataToSave(data("pixels", 42, "players", 3));
+
+        assertTrue(manager.saveObject(dir.toFile(), "data"));
+
+        assertEquals(data("pixels", 42, "players", 3), manager.loadObject(dir.resolve("data.json").toString(), DATA_TYPE));
+        assertEquals(List.of("data.json"), fileNames());
+    }
+
+    @Test
+    void failedSaveKeepsTheOldFile() throws Exception {
+        manager = new DataManager(false, null);
+        manager.setDataToSave(data("pixels", 1));
+        assertTrue(manager.saveObject(dir.toFile(), "data"));
+        String saved = Files.readString(dir.resolve("data.json"));
+
+        manager.setCodec(new FailingCodec());
+        manager.setDataToSave(data("pixels", 2));
+
+        assertFalse(manager.saveObject(dir.toFile(), "data"));
+        assertEquals(saved, Files.readString(dir.resolve("data.json")));
+        assertEquals(List.of("data.json"), fileNames());
+    }
+
+    @Test
+    void writeBehindCombinesChangesIntoOneSave() throws Exception {
+        manager = new DataManager(false, null);
+        CountingCodec codec = new CountingCodec();
+        manager.setCodec(codec);
+        File file = dir.resolve("data.json").toFile();
+        manager.enableWriteBehind(file, 200);
+
+        Map<String, Integer> data = data("pixels", 1);
+        manager.setDataToSave(data);
+        for (int i = 2; i <= 10; i++) {
+            synchronized (manager) {
+                data.put("pixels", i);
+            }
+            manager.markDirty();
+        }
+
+        assertTrue(waitFor(() -> file.exists()));
+        Thread.sleep(300);
+        assertEquals(1, codec.writes);
+        assertEquals(data("pixels", 10), manager.loadObject(file.getPath(), DATA_TYPE));
+    }
+
+    @Test
+    void failedWriteBehindSaveIsRetried() throws Exception {
+        manager = new DataManager(false, null);
+        manager.setCodec(new FailingCodec());
+        File file = dir.resolve("data.json").toFile();
+        manager.enableWriteBehind(file, 50);
+        manager.setDataToSave(data("pixels", 7));
+
+        manager.flush();
+        assertFalse(file.exists());
+        manager.setCodec(JsonCodec.INSTANCE);
+
+        assertTrue(waitFor(file::exists));
+        assertEquals(data("pixels", 7), manager.loadObject(file.getPath(), DATA_TYPE));
+    }
+
+    @Test
+    void flushWritesPendingChangesImmediately() throws Exception {
+        manager = new DataManager(false, null);
+        File file = dir.resolve("data.json").toFile();
+        manager.enableWriteBehind(file, 60_000);
+        manager.setDataToSave(data("pixels", 5));
+        assertFalse(file.exists());
+
+        LoadableManager.flushAll();
+
+        assertEquals(data("pixels", 5), manager.loadObject(file.getPath(), DATA_TYPE));
+    }
+
+    @Test
+    void snapshotIsSavedInsteadOfTheLiveObject() throws Exception {
+        manager = new DataManager(false, null) {
+            @Override
+            protected Map<String, Integer> snapshot(Map<String, Integer> data) {
+                Map<String, Integer> copy = new LinkedHashMap<>(data);
+                copy.put("snapshot", 1);
+                return copy;
+            }
+        };
+        manager.setDataToSave(data("pixels", 3));
+
+        assertTrue(manager.saveObject(dir.toFile(), "data"));
+
+        assertEquals(data("pixels", 3, "snapshot", 1),
+                manager.loadObject(dir.resolve("data.json").toString(), DATA_TYPE));
+        assertEquals(data("pixels", 3), manager.getSaveData());
+    }
+
+    @Test
+    void encryptedFileIsAuthenticatedAndLoadedAgain() throws Exception {
+        manager = new DataManager(true, KEY);
+        manager.setDataToSave(data("pixels", 42));
+        assertTrue(manager.saveObject(dir.toFile(), "data"));
+
+        byte[] file = Files.readAllBytes(dir.resolve("data.json"));
+
+        assertArrayEquals("GOPE".getBytes(StandardCharsets.US_ASCII), Arrays.copyOf(file, 4));
+        assertFalse(new String(file, StandardCharsets.ISO_8859_1).contains("pixels"));
+        assertEquals(data("pixels", 42), manager.loadObject(dir.resolve("data.json").toString(), DATA_TYPE));
+    }
+
+    @Test
+    void sameDataIsEncryptedWithDifferentIvs() throws Exception {
+        manager = new DataManager(true, KEY);
+        manager.setDataToSave(data("pixels", 42));
+
+        assertTrue(manager.saveObject(dir.toFile(), "first"));
+        assertTrue(manager.saveObject(dir.toFile(), "second"));
+
+        assertFalse(Arrays.equals(Files.readAllBytes(dir.resolve("first.json")),
+                Files.readAllBytes(dir.resolve("second.json"))));
+    }
+
+    @Test
+    void tamperedEncryptedFileIsRejected() throws Exception {
+        manager = new DataManager(true, KEY);
+        manager.setDataToSave(data("pixels", 42));
+        assertTrue(manager.saveObject(dir.toFile(), "data"));
+        Path path = dir.resolve("data.json");
+        byte[] file = Files.readAllBytes(path);
+        file[file.length - 20] ^= 1;
+        Files.write(path, file);
+
+        assertNull(manager.loadObject(path.toString(), DATA_TYPE));
+    }
+
+    @Test
+    void encryptedFileIsRejectedWithAnotherKey() throws Exception {
+        manager = new DataManager(true, KEY);
+        manager.setDataToSave(data("pixels", 42));
+        assertTrue(manager.saveObject(dir.toFile(), "data"));
+
+        DataManager other = new DataManager(true, "fedcba9876543210");
+
+        assertNull(other.loadObject(dir.resolve("data.json").toString(), DATA_TYPE));
+    }
+
+    @Test
+    void legacyCbcFileIsReadAndConvertedOnSave() throws Exception {
+        // so haben ältere Versionen verschlüsselt: AES/CBC mit dem Schlüssel als IV
+        Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5PADDING");
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(KEY.getBytes(), "AES"), new IvParameterSpec(KEY.getBytes()));
+        Path path = dir.resolve("data.json");
+        Files.write(path, cipher.doFinal("{\"pixels\": 9}".getBytes(StandardCharsets.UTF_8)));
+        manager = new DataManager(true, KEY);
+
+        Map<String, Integer> loaded = manager.loadObject(path.toString(), DATA_TYPE);
+        assertEquals(data("pixels", 9), loaded);
+
+        manager.setDataToSave(loaded);
+        assertTrue(manager.saveObject(dir.toFile(), "data"));
+        assertArrayEquals("GOPE".getBytes(StandardCharsets.US_ASCII), Arrays.copyOf(Files.readAllBytes(path), 4));
+        assertEquals(data("pixels", 9), manager.loadObject(path.toString(), DATA_TYPE));
+    }
+
+    private List<String> fileNames() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.map(p -> p.getFileName().toString()).sorted().toList();
+        }
+    }
+
+    static Map<String, Integer> data(Object... entries) {
+        Map<String, Integer> data = new LinkedHashMap<>();
+        for (int i = 0; i < entries.length; i += 2) data.put((String) entries[i], (Integer) entries[i + 1]);
+        return data;
+    }
+
+    static boolean waitFor(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        long end = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > end) return false;
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    static class DataManager extends LoadableManager<Map<String, Integer>> {
+        DataManager(boolean encrypt, String encryptionKey) {
+            super(log, encrypt, encryptionKey, false);
+        }
+
+        @Override
+        public void loadData() {
+        }
+
+        @Override
+        public void saveData() {
+        }
+    }
+
+    // Schreibt einen Teil der Daten und bricht dann ab, wie bei einer vollen Platte
+    static class FailingCodec implements DataCodec {
+        @Override
+        public void write(Gson gson, Object value, OutputStream out) throws IOException {
+            out.write("{\"pixels\":".getBytes(StandardCharsets.UTF_8));
+            throw new IOException("No space left on device");
+        }
+
+        @Override
+        public <T> T read(Gson gson, Type type, InputStream in) throws IOException {
+            return JsonCodec.INSTANCE.read(gson, type, in);
+        }
+    }
+
+    static class CountingCodec implements DataCodec {
+        volatile int writes = 0;
+
+        @Override
+        public void write(Gson gson, Object value, OutputStream out) throws IOException {
+            writes++;
+            JsonCodec.INSTANCE.write(gson, value, out);
+        }
+
+        @Override
+        public <T> T read(Gson gson, Type type, InputStream in) throws IOException {
+            return JsonCodec.INSTANCE.read(gson, type, in);
+        }
+    }
+}
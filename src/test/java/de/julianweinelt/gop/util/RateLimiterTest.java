@@ -0,0 +1,94 @@
+package de.julianweinelt.gop.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Takes attempts from the buckets of a {@link RateLimiter} and waits for them to refill.
+ */
+class RateLimiterTest {
+
+    @Test
+    void burstIsAvailableAtOnce() {
+        RateLimiter limiter = new RateLimiter(3, 1);
+
+        assertTrue(limiter.tryAcquire("julian"));
+        assertTrue(limiter.tryAcquire("julian"));
+        assertEquals(0, limiter.getRetryMillis("julian"));
+        assertTrue(limiter.tryAcquire("julian"));
+        assertFalse(limiter.tryAcquire("julian"));
+
+        // eins pro Minute, der Rest einer Minute bleibt
+        long retry = limiter.getRetryMillis("julian");
+        assertTrue(retry > 59_000 && retry <= 60_000, "retry " + retry);
+    }
+
+    @Test
+    void keysHaveTheirOwnBuckets() {
+        RateLimiter limiter = new RateLimiter(1, 1);
+
+        assertTrue(limiter.tryAcquire("julian"));
+        assertFalse(limiter.tryAcquire("julian"));
+
+        assertTrue(limiter.tryAcquire("127.0.0.1"));
+        assertEquals(0, limiter.getRetryMillis("unknown"));
+    }
+
+    @Test
+    void attemptsComeBackOverTime() throws InterruptedException {
+        // 600 pro Minute, alle 100 ms ein Versuch
+        RateLimiter limiter = new RateLimiter(2, 600);
+        assertTrue(limiter.tryAcquire("julian"));
+        assertTrue(limiter.tryAcquire("julian"));
+        assertFalse(limiter.tryAcquire("julian"));
+        assertTrue(limiter.getRetryMillis("julian") <= 100);
+
+        Thread.sleep(250);
+
+        assertTrue(limiter.tryAcquire("julian"));
+        assertTrue(limiter.tryAcquire("julian"));
+        assertFalse(limiter.tryAcquire("julian"));
+    }
+
+    @Test
+    void invalidLimitsAllowOneAttempt() {
+        RateLimiter limiter = new RateLimiter(0, 0);
+
+        assertTrue(limiter.tryAcquire("julian"));
+        assertFalse(limiter.tryAcquire("julian"));
+    }
+
+    @Test
+    void concurrentAttemptsNeverExceedTheBurst() throws Exception {
+        RateLimiter limiter = new RateLimiter(50, 1);
+        int threads = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                results.add(pool.submit(() -> {
+                    start.await();
+                    int acquired = 0;
+                    for (int j = 0; j < 100; j++) if (limiter.tryAcquire("julian")) acquired++;
+                    return acquired;
+                }));
+            }
+            start.countDown();
+
+            int acquired = 0;
+            for (Future<Integer> result : results) acquired += result.get();
+            assertEquals(50, acquired);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package de.julianweinelt.gop.util;
+
+import de.julianweinelt.gop.tabula.FailReason;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Issues tokens with a {@link TabulaJWT}, verifies them and checks that expired and revoked tokens are
+ * rejected, also when they have been cached before.
+ */
+class TabulaJWTTest {
+    private static final long MAX_TTL = 3600;
+
+    private final JWTUtil util = new JWTUtil(JWTUtil.randomSecret(), "GoP");
+    private final TabulaJWT jwt = new TabulaJWT(util, 100, MAX_TTL);
+
+    @Test
+    void validTokenIsVerifiedAndCached() throws Exception {
+        String token = jwt.issue("julian", 60, Map.of("sid", "session-1"));
+
+        TabulaJWT.Result result = jwt.verify(token);
+
+        assertTrue(result.isValid());
+        assertEquals("julian", result.getSubject());
+        assertEquals("session-1", result.getClaims().get("sid"));
+        assertNotNull(result.getTokenId());
+        assertTrue(result.getExpiresAt() > result.getIssuedAt());
+        assertSame(result, jwt.verify(token));
+    }
+
+    @Test
+    void expiredTokenIsRejected() throws Exception {
+        // abgelaufen, auch mit der erlaubten Abweichung der Uhren
+        String token = jwt.issue("julian", -JWTUtil.CLOCK_SKEW_SECONDS - 60, Map.of());
+
+        assertEquals(FailReason.TOKEN_EXPIRED, jwt.verify(token).getFailReason());
+    }
+
+    @Test
+    void invalidTokensAreRejected() throws Exception {
+        String token = jwt.issue("julian", 60, Map.of());
+        String foreign = new JWTUtil(JWTUtil.randomSecret(), "GoP").createToken("julian", 60, Map.of());
+        String otherIssuer = new TabulaJWT(new JWTUtil(JWTUtil.randomSecret(), "Other"), 0, MAX_TTL)
+                .issue("julian", 60, Map.of());
+        String tampered = token.substring(0, token.length() - 2) + (token.endsWith("A") ? "BB" : "AA");
+
+        for (String invalid : new String[]{null, "", "not.a.token", foreign, otherIssuer, tampered}) {
+            assertEquals(FailReason.TOKEN_INVALID, jwt.verify(invalid).getFailReason(), invalid);
+        }
+    }
+
+    @Test
+    void tokensLivingTooLongAreNeitherIssuedNorAccepted() throws Exception {
+        assertThrows(IllegalArgumentException.class, () -> jwt.issue("julian", MAX_TTL + 1, Map.of()));
+
+        String token = util.createToken("julian", MAX_TTL + 60, Map.of());
+
+        assertEquals(FailReason.TOKEN_INVALID, jwt.verify(token).getFailReason());
+    }
+
+    @Test
+    void revokedTokenIsRejectedAfterItWasCached() throws Exception {
+        String token = jwt.issue("julian", 60, Map.of());
+        String other = jwt.issue("julian", 60, Map.of());
+        assertTrue(jwt.verify(token).isValid());
+
+        jwt.revoke(token);
+        jwt.clearCache();
+
+        assertEquals(FailReason.TOKEN_INVALID, jwt.verify(token).getFailReason());
+        assertTrue(jwt.verify(other).isValid());
+    }
+
+    @Test
+    void tokenIsRevokedById() throws Exception {
+        String token = jwt.issue("julian", 60, Map.of());
+        TabulaJWT.Result result = jwt.verify(token);
+
+        jwt.revokeId(result.getTokenId(), result.getExpiresAt());
+
+        assertEquals(FailReason.TOKEN_INVALID, jwt.verify(token).getFailReason());
+    }
+
+    @Test
+    void revokingASubjectOnlyCoversEarlierTokens() throws Exception {
+        String before = jwt.issue("julian", 60, Map.of());
+        String otherUser = jwt.issue("admin", 60, Map.of());
+        assertTrue(jwt.verify(before).isValid());
+        // iat hat nur ganze Sekunden, der Widerruf muss in einer späteren Sekunde liegen
+        Thread.sleep(1100);
+
+        jwt.revokeSubject("julian");
+        String after = jwt.issue("julian", 60, Map.of());
+
+        assertEquals(FailReason.TOKEN_INVALID, jwt.verify(before).getFailReason());
+        assertTrue(jwt.verify(after).isValid());
+        assertTrue(jwt.verify(otherUser).isValid());
+    }
+
+    @Test
+    void uncachedVerifierChecksEveryToken() throws Exception {
+        TabulaJWT uncached = new TabulaJWT(util, 0, MAX_TTL);
+        String token = uncached.issue("julian", 60, Map.of());
+
+        TabulaJWT.Result first = uncached.verify(token);
+
+        assertTrue(first.isValid());
+        assertNotSame(first, uncached.verify(token));
+    }
+}
@@ -0,0 +1,167 @@
+package de.julianweinelt.gop.util.codec;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Writes objects with the {@link BinaryCodec} and the {@link JsonCodec} and reads them back.
+ */
+class BinaryCodecTest {
+    private static final Gson GSON = new GsonBuilder().serializeNulls().create();
+
+    @Test
+    void plainAndCompressedFilesKeepAllValues() throws IOException {
+        for (BinaryCodec codec : List.of(BinaryCodec.PLAIN, BinaryCodec.DEFLATE)) {
+            PlayerData data = PlayerData.sample();
+
+            PlayerData read = codec.read(GSON, PlayerData.class, new ByteArrayInputStream(write(codec, data)));
+
+            assertEquals(data, read);
+        }
+    }
+
+    @Test
+    void plainFilesAreReadFromBuffers() throws IOException {
+        PlayerData data = PlayerData.sample();
+        byte[] bytes = write(BinaryCodec.PLAIN, data);
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+
+        assertSame(BinaryCodec.PLAIN, DataCodec.detect(direct));
+        assertEquals(data, BinaryCodec.PLAIN.read(GSON, PlayerData.class, direct));
+    }
+
+    @Test
+    void repeatedNamesAreWrittenOnce() throws IOException {
+        List<Map<String, Integer>> rows = new ArrayList<>();
+        for (int i = 0; i < 100; i++) rows.add(Map.of("pixelCount", i));
+        Type type = new TypeToken<List<Map<String, Integer>>>(){}.getType();
+
+        byte[] bytes = write(BinaryCodec.PLAIN, rows);
+
+        assertEquals(1, occurrences(bytes, "pixelCount".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(rows, BinaryCodec.PLAIN.read(GSON, type, new ByteArrayInputStream(bytes)));
+    }
+
+    @Test
+    void formatIsDetectedByHeader() throws IOException {
+        byte[] binary = write(BinaryCodec.DEFLATE, PlayerData.sample());
+        byte[] json = write(JsonCodec.INSTANCE, PlayerData.sample());
+
+        assertSame(BinaryCodec.PLAIN, DataCodec.detect(new BufferedInputStream(new ByteArrayInputStream(binary))));
+        assertSame(JsonCodec.INSTANCE, DataCodec.detect(new BufferedInputStream(new ByteArrayInputStream(json))));
+        assertSame(JsonCodec.INSTANCE, DataCodec.detect(ByteBuffer.wrap(new byte[]{'G', 'O'})));
+    }
+
+    @Test
+    void detectedCodecReadsEitherFormat() throws IOException {
+        PlayerData data = PlayerData.sample();
+        for (DataCodec codec : List.of(JsonCodec.INSTANCE, BinaryCodec.PLAIN, BinaryCodec.DEFLATE)) {
+            InputStream in = new BufferedInputStream(new ByteArrayInputStream(write(codec, data)));
+
+            assertEquals(data, DataCodec.detect(in).read(GSON, PlayerData.class, in));
+        }
+    }
+
+    @Test
+    void truncatedFilesAreRejected() throws IOException {
+        for (BinaryCodec codec : List.of(BinaryCodec.PLAIN, BinaryCodec.DEFLATE)) {
+            byte[] bytes = write(codec, PlayerData.sample());
+            byte[] truncated = Arrays.copyOf(bytes, bytes.length / 2);
+
+            assertThrows(EOFException.class,
+                    () -> codec.read(GSON, PlayerData.class, new ByteArrayInputStream(truncated)));
+        }
+    }
+
+    @Test
+    void unknownVersionIsRejected() throws IOException {
+        byte[] bytes = write(BinaryCodec.PLAIN, PlayerData.sample());
+        bytes[BinaryCodec.MAGIC.length] = 99;
+
+        IOException e = assertThrows(IOException.class,
+                () -> BinaryCodec.PLAIN.read(GSON, PlayerData.class, new ByteArrayInputStream(bytes)));
+        assertTrue(e.getMessage().contains("99"));
+    }
+
+    private static byte[] write(DataCodec codec, Object value) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        codec.write(GSON, value, out);
+        return out.toByteArray();
+    }
+
+    private static int occurrences(byte[] bytes, byte[] part) {
+        int count = 0;
+        for (int i = 0; i + part.length <= bytes.length; i++) {
+            if (Arrays.equals(bytes, i, i + part.length, part, 0, part.length)) count++;
+        }
+        return count;
+    }
+
+    static final class PlayerData {
+        String name;
+        String nickname;
+        boolean online;
+        int pixels;
+        long lastSeen;
+        double ratio;
+        BigDecimal balance;
+        List<Integer> history;
+        Map<String, PlayerData> friends;
+
+        static PlayerData sample() {
+            PlayerData friend = new PlayerData();
+            friend.name = "Grüße ✓";
+            friend.pixels = -7;
+            friend.history = List.of();
+            friend.friends = Map.of();
+
+            PlayerData data = new PlayerData();
+            data.name = "pixel";
+            data.nickname = null;
+            data.online = true;
+            data.pixels = Integer.MAX_VALUE;
+            data.lastSeen = Long.MIN_VALUE;
+            data.ratio = 0.1;
+            data.balance = new BigDecimal("12345678901234567890.123456789");
+            data.history = List.of(1, -1, 300, 0);
+            data.friends = new LinkedHashMap<>();
+            data.friends.put("friend", friend);
+            return data;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof PlayerData p && GSON.toJson(this).equals(GSON.toJson(p));
+        }
+
+        @Override
+        public int hashCode() {
+            return GSON.toJson(this).hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return GSON.toJson(this);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package de.julianweinelt.gop.util.store;
+
+import de.julianweinelt.gop.except.StoreException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Writes to a {@link LogStore}, reopens it and checks what has been recovered, including torn records
+ * and compacted segments.
+ */
+class LogStoreTest {
+    private static final int SEGMENT_SIZE = 4096;
+
+    @TempDir
+    Path dir;
+
+    private LogStore store;
+
+    @AfterEach
+    void closeStore() {
+        if (store != null) store.close();
+    }
+
+    @Test
+    void storesReplacesAndDeletesValues() {
+        store = LogStore.open(dir.toFile(), SEGMENT_SIZE);
+
+        store.put("pixels.1", "10");
+        store.put("pixels.2", "20");
+        store.put("pixels.1", "11");
+
+        assertEquals("11", store.getString("pixels.1"));
+        assertTrue(store.delete("pixels.2"));
+        assertFalse(store.delete("pixels.2"));
+        assertNull(store.get("pixels.2"));
+        assertFalse(store.contains("pixels.2"));
+        assertEquals(Set.of("pixels.1"), store.keys());
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    void reopenedStoreKeepsLatestValuesAndDeletions() {
+        store = LogStore.open(dir.toFile(), SEGMENT_SIZE);
+        store.put("a", "1");
+        store.put("b", "2");
+        store.put("a", "3");
+        store.delete("b");
+        store.put("c", new byte[0]);
+        store.close();
+
+        store = LogStore.open(dir.toFile(), SEGMENT_SIZE);
+
+        assertEquals(Set.of("a", "c"), store.keys());
+        assertEquals("3", store.getString("a"));
+        assertEquals(0, store.get("c").length);
+    }
+
+    @Test
+    void tornRecordIsDiscardedAndOverwritten() throws IOException {
+        store = LogStore.open(dir.toFile(), SEGMENT_SIZE);
+        store.put("a", "1");
+        store.put("b", "2");
+        store.put("c", "3");
+        store.close();
+        // jeder Datensatz ist 20 Byte Header + 1 Byte Key + 1 Byte Wert, das letzte Byte von "c" wird verfälscht
+        try (RandomAccessFile file = new RandomAccessFile(segmentFiles().get(0).toFile(), "rw")) {
+            file.seek(2 * 22 + 21);
+            file.write('9');
+        }
+
+        store = LogStore.open(dir.toFile(), SEGMENT_SIZE);
+        assertEquals(Set.of("a", "b"), store.keys());
+        store.put("d", "4");
+        store.close();
+
+        store = LogStore.open(dir.toFile(), SEGMENT_SIZE);
+        assertEquals(Set.of("a", "b", "d"), store.keys());
+        assertEquals("4", store.getString("d"));
+    }
+
+    @Test
+    void valuesSpanningSeveralSegmentsAreRecovered() {
+        store = LogStore.open(dir.toFile(), 128);
+        for (int i = 0; i < 50; i++) store.put("key" + i, "value" + i);
+        store.close();
+
+        store = LogStore.open(dir.toFile(), 128);
+
+        assertEquals(50, store.size());
+        for (int i = 0; i < 50; i++) assertEquals("value" + i, store.getString("key" + i));
+    }
+
+    @Test
+    void recordLargerThanASegmentGetsItsOwnSegment() {
+        store = LogStore.open(dir.toFile(), 128);
+        byte[] large = new byte[1000];
+        large[999] = 42;
+
+        store.put("large", large);
+        store.put("small", "1");
+
+        assertArrayEquals(large, store.get("large"));
+        assertEquals("1", store.getString("small"));
+    }
+
+    @Test
+    void compactionDropsOutdatedRecords() throws IOException {
+        store = LogStore.open(dir.toFile(), 128);
+        for (int i = 0; i < 200; i++) store.put("key" + (i % 4), "value" + i);
+        store.delete("key3");
+
+        store.compact();
+
+        assertEquals(Set.of("key0", "key1", "key2"), store.keys());
+        for (int k = 0; k < 3; k++) assertEquals("value" + (196 + k), store.getString("key" + k));
+        // close wartet auf eine laufende Kompaktierung im Hintergrund, danach liegen die Dateien fest
+        store.close();
+        // die drei übrigen Werte passen in ein Segment, dazu kommt das aktive Segment
+        List<Path> segments = segmentFiles();
+        assertTrue(segments.size() <= 2, "segments after compaction: " + segments);
+
+        store = LogStore.open(dir.toFile(), 128);
+        assertEquals(Set.of("key0", "key1", "key2"), store.keys());
+        for (int k = 0; k < 3; k++) assertEquals("value" + (196 + k), store.getString("key" + k));
+    }
+
+    @Test
+    void unfinishedCompactionIsDiscardedOnOpen() throws IOException {
+        store = LogStore.open(dir.toFile(), SEGMENT_SIZE);
+        store.put("a", "1");
+        store.close();
+        Files.write(dir.resolve("segment-000000000099.log.compacting"), new byte[SEGMENT_SIZE]);
+
+        store = LogStore.open(dir.toFile(), SEGMENT_SIZE);
+
+        assertFalse(Files.exists(dir.resolve("segment-000000000099.log.compacting")));
+        assertEquals("1", store.getString("a"));
+    }
+
+    @Test
+    void closedStoreRejectsChanges() {
+        store = LogStore.open(dir.toFile(), SEGMENT_SIZE);
+        store.close();
+
+        assertThrows(StoreException.class, () -> store.put("a", "1"));
+        assertThrows(StoreException.class, () -> store.flush());
+    }
+
+    @Test
+    void emptyKeysAreRejected() {
+        store = LogStore.open(dir.toFile(), SEGMENT_SIZE);
+
+        assertThrows(IllegalArgumentException.class, () -> store.put("", "1"));
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(p -> p.getFileName().toString().endsWith(".log")).sorted().toList();
+        }
+    }
+}